@@ -1,38 +1,52 @@
 package org.example;
 
+import org.example.audio.AudioEngine;
+import org.example.ecs.Components;
+import org.example.ecs.World;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.GLFW;
 
+/**
+ * Fly camera. Its state is an entity (POSITION, ORIENTATION, CAMERA components); this class is the
+ * system that drives it from input and keeps the view matrix and a position vector for the renderer.
+ */
 public class Camera {
     public static Camera camera;
 
+    private final World world;
+    private final int entity;
     private Matrix4f viewMatrix;
     private Vector3f position;
     private Vector3f front;
     private Vector3f up;
-    private Vector3f worldUp;
-    private float speed = 0.05f;
-
-    private float yaw = 90.0f;   // Yaw starts facing towards -Z axis
-    private float pitch = 0.0f;   // Pitch is level at start
-    private float sensitivity = 0.1f; // Mouse sensitivity
+    private final Vector3f right = new Vector3f(); // scratch vector for strafing
 
     public Camera()
     {
         camera = this;
         EngineManager.engineManager.updatesToRun.add(this::update);
+        EngineManager.engineManager.lateUpdatesToRun.add(this::followTransform);
+
+        world = World.world;
+        entity = world.create(Components.POSITION, Components.ORIENTATION, Components.CAMERA);
+        world.setFloat3(entity, Components.POSITION, 0.0f, 0.0f, -3.0f);  // Initial position
+        world.setFloat(entity, Components.ORIENTATION, 0, 90.0f);   // Yaw starts facing towards -Z axis
+        world.setFloat(entity, Components.ORIENTATION, 1, 0.0f);    // Pitch is level at start
+        world.setFloat(entity, Components.CAMERA, 0, 0.05f);        // Speed
+        world.setFloat(entity, Components.CAMERA, 1, 0.1f);         // Mouse sensitivity
 
-        position = new Vector3f(0.0f, 0.0f, -3.0f);  // Initial position
+        position = new Vector3f(0.0f, 0.0f, -3.0f);
         front = new Vector3f(0.0f, 0.0f, 1.0f);  // Front direction
         up = new Vector3f(0.0f, 1.0f, 0.0f);    // Up vector
-        worldUp = up;
 
         Vector3f target = new Vector3f(position).add(front);  // Target point
         viewMatrix = new Matrix4f().lookAt(position, target, up);
     }
 
     private void updateCameraVectors() {
+        float yaw = world.getFloat(entity, Components.ORIENTATION, 0);
+        float pitch = world.getFloat(entity, Components.ORIENTATION, 1);
         // Calculate the new front vector
         front.x = (float) Math.cos(Math.toRadians(yaw)) * (float) Math.cos(Math.toRadians(pitch));
         front.y = (float) Math.sin(Math.toRadians(pitch));
@@ -41,52 +55,125 @@ public class Camera {
     }
 
     public void processMouseMovement(double xOffset, double yOffset) {
+        float sensitivity = world.getFloat(entity, Components.CAMERA, 1);
         xOffset *= sensitivity;
         yOffset *= sensitivity;
 
-        yaw += (float) xOffset;
-        pitch += (float) yOffset;
+        float yaw = world.getFloat(entity, Components.ORIENTATION, 0) + (float) xOffset;
+        float pitch = world.getFloat(entity, Components.ORIENTATION, 1) + (float) yOffset;
 
         // Constrain the pitch to avoid the camera flipping
         if (pitch > 89.0f) pitch = 89.0f;
         if (pitch < -89.0f) pitch = -89.0f;
+        world.setFloat(entity, Components.ORIENTATION, 0, yaw);
+        world.setFloat(entity, Components.ORIENTATION, 1, pitch);
 
         updateCameraVectors(); // Update the front, right, and up vectors
     }
 
     public void update()
     {
-        float cameraSpeed = speed * EngineManager.getDeltaTime();
+        WindowManager window = Main.getWindow();
+        if (window.getMouseDeltaX() != 0.0f || window.getMouseDeltaY() != 0.0f)
+            processMouseMovement(window.getMouseDeltaX(), window.getMouseDeltaY());
+
+        // The entity is the source of truth, other systems may have moved or turned it
+        position.set(world.getFloat(entity, Components.POSITION, 0), world.getFloat(entity, Components.POSITION, 1), world.getFloat(entity, Components.POSITION, 2));
+        updateCameraVectors();
+        float cameraSpeed = world.getFloat(entity, Components.CAMERA, 0) * EngineManager.getDeltaTime();
 
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_LEFT_SHIFT)) {
+        // Riding a transform node: followTransform places the camera, the mouse still looks around
+        if (world.has(entity, Components.TRANSFORM))
+            cameraSpeed = 0.0f;
+
+        if (window.isKeyPressed(GLFW.GLFW_KEY_LEFT_SHIFT)) {
             cameraSpeed *= 10;
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_W)) {
-            position.add(new Vector3f(front).mul(cameraSpeed));
+        if (window.isKeyPressed(GLFW.GLFW_KEY_W)) {
+            position.fma(cameraSpeed, front);
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_S)) {
-            position.sub(new Vector3f(front).mul(cameraSpeed));
+        if (window.isKeyPressed(GLFW.GLFW_KEY_S)) {
+            position.fma(-cameraSpeed, front);
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_A)) {
-            Vector3f right = new Vector3f(front).cross(up).normalize();
-            position.sub(right.mul(cameraSpeed));
+        if (window.isKeyPressed(GLFW.GLFW_KEY_A)) {
+            front.cross(up, right).normalize();
+            position.fma(-cameraSpeed, right);
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_D)) {
-            Vector3f right = new Vector3f(front).cross(up).normalize();
-            position.add(right.mul(cameraSpeed));
+        if (window.isKeyPressed(GLFW.GLFW_KEY_D)) {
+            front.cross(up, right).normalize();
+            position.fma(cameraSpeed, right);
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_SPACE)) {
-            position.add(new Vector3f(up).mul(cameraSpeed)); // Move up
+        if (window.isKeyPressed(GLFW.GLFW_KEY_SPACE)) {
+            position.fma(cameraSpeed, up); // Move up
         }
-        if (Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_LEFT_CONTROL)) {
-            position.sub(new Vector3f(up).mul(cameraSpeed)); // Move down
+        if (window.isKeyPressed(GLFW.GLFW_KEY_LEFT_CONTROL)) {
+            position.fma(-cameraSpeed, up); // Move down
         }
+        world.setFloat3(entity, Components.POSITION, position.x, position.y, position.z);
+
+        // Rebuild the view matrix in place, no per-frame allocations
+        viewMatrix.setLookAt(position.x, position.y, position.z,
+                position.x + front.x, position.y + front.y, position.z + front.z,
+                up.x, up.y, up.z);
+        if (AudioEngine.audio != null)
+            AudioEngine.audio.setListener(position, front, up);
+    }
 
-        viewMatrix = new Matrix4f().lookAt(position, new Vector3f(position).add(front), up);
+    // After the hierarchy update, so a riding camera sees its node where it is this frame
+    private void followTransform()
+    {
+        if (!world.has(entity, Components.TRANSFORM))
+            return;
+        TransformHierarchy transforms = TransformHierarchy.transforms;
+        int node = world.getInt(entity, Components.TRANSFORM, 0);
+        if (!transforms.isAlive(node))
+            return;
+        transforms.getWorldPosition(node, position);
+        world.setFloat3(entity, Components.POSITION, position.x, position.y, position.z);
+        viewMatrix.setLookAt(position.x, position.y, position.z,
+                position.x + front.x, position.y + front.y, position.z + front.z,
+                up.x, up.y, up.z);
+        if (AudioEngine.audio != null)
+            AudioEngine.audio.setListener(position, front, up);
+    }
+
+    /** Places the camera directly, used by scripted camera paths. */
+    public void setPose(float x, float y, float z, float yaw, float pitch)
+    {
+        position.set(x, y, z);
+        world.setFloat3(entity, Components.POSITION, x, y, z);
+        world.setFloat(entity, Components.ORIENTATION, 0, yaw);
+        world.setFloat(entity, Components.ORIENTATION, 1, Math.max(-89.0f, Math.min(89.0f, pitch)));
+        updateCameraVectors();
+        viewMatrix.setLookAt(position.x, position.y, position.z,
+                position.x + front.x, position.y + front.y, position.z + front.z,
+                up.x, up.y, up.z);
     }
 
     public Matrix4f getViewMatrix()
     {
         return viewMatrix;
     }
-}
+
+    public Vector3f getPosition()
+    {
+        return position;
+    }
+
+    /** Puts the camera on a transform node, INVALID_HANDLE hands it back to the fly controls. */
+    public void attach(int transformHandle)
+    {
+        if (transformHandle == TransformHierarchy.INVALID_HANDLE)
+        {
+            world.remove(entity, Components.TRANSFORM);
+            return;
+        }
+        world.add(entity, Components.TRANSFORM);
+        world.setInt(entity, Components.TRANSFORM, 0, transformHandle);
+    }
+
+    public int getEntity()
+    {
+        return entity;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,195 @@
+package org.example;
+
+import org.example.utils.LooseOctree;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+/**
+ * Per-frame emitter level of detail.
+ *
+ * Emitters are kept in a loose octree by their bounds radius. Each frame the octree is queried
+ * with the camera frustum; emitters outside it stop spawning, visible ones have their spawn rate
+ * scaled by projected screen size and distance. Distant emitters spawn fewer, larger particles so
+ * their apparent density holds. Only emitters visible this frame or last frame are touched, and the
+ * registry only re-uploads an emitter when its quantized LOD result changes.
+ */
+public class EmitterLod implements EmitterRegistry.Listener
+{
+    // World covered by the octree, emitters outside it fall back to the root node
+    private static final float WORLD_HALF_SIZE = 4096.0f;
+    private static final int MAX_DEPTH = 10;
+
+    private final EmitterRegistry registry;
+    private final LooseOctree octree;
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private int[] visible;
+    private int[] previousVisible;
+    private int visibleCount;
+    private int previousVisibleCount;
+    private final int[] visibleFrame;   // per slot, last frame the emitter was visible
+    private final boolean[] pending;    // per slot, already queued in previousVisible
+    private int frame = 0;
+
+    private float maxDistance = 500.0f;
+    private float fullDetailPixels = 64.0f; // projected radius in pixels at which an emitter runs at its authored rate
+    private float minSpawnFactor = 0.05f;
+    private float maxSizeScale = 4.0f;
+    private float spawnRateScale = 1.0f;
+    private boolean cullingEnabled = true;
+
+    public EmitterLod(EmitterRegistry registry)
+    {
+        this.registry = registry;
+        int capacity = registry.getCapacity();
+        octree = new LooseOctree(0.0f, 0.0f, 0.0f, WORLD_HALF_SIZE, MAX_DEPTH, capacity);
+        visible = new int[capacity];
+        previousVisible = new int[capacity];
+        visibleFrame = new int[capacity];
+        pending = new boolean[capacity];
+    }
+
+    @Override
+    public void emitterChanged(int slot)
+    {
+        int dense = registry.getDenseIndex(slot);
+        octree.update(slot, registry.getPositionX(dense), registry.getPositionY(dense), registry.getPositionZ(dense), registry.getRadius(dense));
+
+        // Re-evaluate next update even if it does not end up visible
+        if (!pending[slot])
+        {
+            pending[slot] = true;
+            previousVisible[previousVisibleCount++] = slot;
+        }
+    }
+
+    @Override
+    public void emitterDestroyed(int slot)
+    {
+        octree.remove(slot);
+    }
+
+    public void update(Matrix4fc projViewMatrix, Vector3fc cameraPosition, int viewportHeight)
+    {
+        frame++;
+
+        // Pixels covered by one world unit at distance 1
+        float pixelsPerUnit = viewportHeight / (2.0f * (float) Math.tan(WindowManager.FOV * 0.5f));
+
+        if (cullingEnabled)
+        {
+            frustum.set(projViewMatrix);
+            visibleCount = octree.query(frustum, visible);
+        }
+        else
+        {
+            visibleCount = registry.getCount();
+            for (int dense = 0; dense < visibleCount; dense++)
+                visible[dense] = registry.getSlot(dense);
+        }
+
+        for (int i = 0; i < visibleCount; i++)
+        {
+            int slot = visible[i];
+            applyLod(slot, cameraPosition, pixelsPerUnit);
+            visibleFrame[slot] = frame;
+        }
+
+        // Emitters that left the frustum (or were never in it) stop spawning
+        for (int i = 0; i < previousVisibleCount; i++)
+        {
+            int slot = previousVisible[i];
+            pending[slot] = false;
+            if (visibleFrame[slot] != frame && isAlive(slot))
+                registry.setLod(slot, 0.0f, 1.0f);
+        }
+
+        // This frame's visible set becomes the list re-checked next frame, pending keeps it free of duplicates
+        for (int i = 0; i < visibleCount; i++)
+            pending[visible[i]] = true;
+
+        int[] swap = previousVisible;
+        previousVisible = visible;
+        visible = swap;
+        previousVisibleCount = visibleCount;
+    }
+
+    private void applyLod(int slot, Vector3fc cameraPosition, float pixelsPerUnit)
+    {
+        int dense = registry.getDenseIndex(slot);
+        float dx = registry.getPositionX(dense) - cameraPosition.x();
+        float dy = registry.getPositionY(dense) - cameraPosition.y();
+        float dz = registry.getPositionZ(dense) - cameraPosition.z();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        if (distance > maxDistance)
+        {
+            registry.setLod(slot, 0.0f, 1.0f);
+            return;
+        }
+
+        // Screen-space coverage relative to the size that gets full detail
+        float projectedPixels = registry.getRadius(dense) * pixelsPerUnit / Math.max(distance, WindowManager.Z_NEAR);
+        float factor = Math.max(minSpawnFactor, Math.min(1.0f, projectedPixels / fullDetailPixels));
+
+        float spawnRate = Math.round(registry.getBaseSpawnRate(dense) * factor * spawnRateScale);
+        // Fewer particles, each bigger, quantized so small camera moves do not re-upload the emitter
+        float sizeScale = Math.min(maxSizeScale, (float) (1.0 / Math.sqrt(factor)));
+        sizeScale = Math.round(sizeScale * 4.0f) * 0.25f;
+
+        registry.setLod(slot, spawnRate, sizeScale);
+    }
+
+    private boolean isAlive(int slot)
+    {
+        int dense = registry.getDenseIndex(slot);
+        return dense < registry.getCount() && registry.getSlot(dense) == slot;
+    }
+
+    public int getVisibleCount()
+    {
+        return previousVisibleCount;
+    }
+
+    /** Slots visible after the last update, valid up to getVisibleCount(). */
+    public int[] getVisibleSlots()
+    {
+        return previousVisible;
+    }
+
+    public void setCullingEnabled(boolean cullingEnabled)
+    {
+        this.cullingEnabled = cullingEnabled;
+    }
+
+    public boolean isCullingEnabled()
+    {
+        return cullingEnabled;
+    }
+
+    public void setSpawnRateScale(float spawnRateScale)
+    {
+        this.spawnRateScale = spawnRateScale;
+    }
+
+    public float getSpawnRateScale()
+    {
+        return spawnRateScale;
+    }
+
+    public void setMaxDistance(float maxDistance)
+    {
+        this.maxDistance = maxDistance;
+    }
+
+    public float getMaxDistance()
+    {
+        return maxDistance;
+    }
+
+    public void setFullDetailPixels(float fullDetailPixels)
+    {
+        this.fullDetailPixels = fullDetailPixels;
+    }
+}
@@ -0,0 +1,479 @@
+package org.example;
+
+import org.example.metrics.EngineMetrics;
+import org.example.utils.OffHeap;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Owns every particle emitter on the CPU side.
+ *
+ * Emitters live in off-heap structure-of-arrays columns, packed densely so the active emitters
+ * are always [0, count). Callers hold stable int handles (slot + generation) that survive the
+ * swap-remove done on destroy. Writes mark 64-emitter blocks dirty and upload() only sends the
+ * dirty blocks to the emitter SSBO, converted to the std430 Emitter layout on the way out.
+ *
+ * Spawn rate and size scale are LOD outputs (see EmitterLod); they start at the authored values and
+ * only dirty an emitter when the LOD result actually changes.
+ */
+public class EmitterRegistry
+{
+    public static final int INVALID_HANDLE = 0;
+    // Emitter struct in particle_emit.glsl: 3 vec4 = 48 bytes
+    public static final int EMITTER_STRUCT_SIZE = 48;
+
+    private static final int SLOT_BITS = 17;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final int DIRTY_BLOCK_SHIFT = 6; // 64 emitters per dirty block
+
+    public static final float DEFAULT_SPAWN_RATE = 10.0f;
+    public static final float DEFAULT_RADIUS = 2.0f;
+
+    /** Notified with the stable slot of an emitter whenever its bounds change. */
+    public interface Listener
+    {
+        void emitterChanged(int slot);
+
+        void emitterDestroyed(int slot);
+    }
+
+    private final int capacity;
+    private int count;
+
+    // Dense SoA columns, indexed by dense emitter index
+    private final FloatBuffer posX, posY, posZ;
+    private final FloatBuffer velX, velY, velZ;
+    private final FloatBuffer life, scale, texture;
+    private final FloatBuffer baseSpawnRate, radius;
+    private final FloatBuffer spawnRate, sizeScale; // LOD outputs, uploaded to the GPU
+    private final IntBuffer denseToSlot;
+
+    // Sparse slot tables, indexed by the slot part of a handle
+    private final IntBuffer slotToDense;
+    private final IntBuffer slotGeneration;
+    private final IntBuffer freeSlots;
+    private int freeSlotCount;
+
+    private final long[] dirtyBlocks;
+    private final ByteBuffer staging;
+    private Listener listener;
+
+    public EmitterRegistry(int capacity)
+    {
+        if (capacity <= 0 || capacity > SLOT_MASK + 1)
+            throw new IllegalArgumentException("Emitter capacity must be in [1, " + (SLOT_MASK + 1) + "]: " + capacity);
+        this.capacity = capacity;
+
+        posX = OffHeap.allocFloat(capacity);
+        posY = OffHeap.allocFloat(capacity);
+        posZ = OffHeap.allocFloat(capacity);
+        velX = OffHeap.allocFloat(capacity);
+        velY = OffHeap.allocFloat(capacity);
+        velZ = OffHeap.allocFloat(capacity);
+        life = OffHeap.allocFloat(capacity);
+        scale = OffHeap.allocFloat(capacity);
+        texture = OffHeap.allocFloat(capacity);
+        baseSpawnRate = OffHeap.allocFloat(capacity);
+        radius = OffHeap.allocFloat(capacity);
+        spawnRate = OffHeap.allocFloat(capacity);
+        sizeScale = OffHeap.allocFloat(capacity);
+        denseToSlot = OffHeap.allocInt(capacity);
+
+        slotToDense = OffHeap.allocInt(capacity);
+        slotGeneration = OffHeap.callocInt(capacity);
+        freeSlots = OffHeap.allocInt(capacity);
+        // Hand out low slots first
+        for (int i = 0; i < capacity; i++)
+            freeSlots.put(i, capacity - i - 1);
+        freeSlotCount = capacity;
+
+        dirtyBlocks = new long[((capacity >> DIRTY_BLOCK_SHIFT) + 64) >> 6];
+        staging = OffHeap.alloc(capacity * EMITTER_STRUCT_SIZE);
+    }
+
+    public int create(float x, float y, float z, float vx, float vy, float vz, float meanLife, float emitterScale, float textureIndex)
+    {
+        if (freeSlotCount == 0)
+            throw new IllegalStateException("[Error]: Emitter registry is full (" + capacity + ")");
+
+        int slot = freeSlots.get(--freeSlotCount);
+        int generation = (slotGeneration.get(slot) + 1) & GENERATION_MASK;
+        if (generation == 0)
+            generation = 1; // generation 0 is reserved so INVALID_HANDLE never resolves
+        slotGeneration.put(slot, generation);
+
+        int dense = count++;
+        slotToDense.put(slot, dense);
+        denseToSlot.put(dense, slot);
+
+        posX.put(dense, x);
+        posY.put(dense, y);
+        posZ.put(dense, z);
+        velX.put(dense, vx);
+        velY.put(dense, vy);
+        velZ.put(dense, vz);
+        life.put(dense, meanLife);
+        scale.put(dense, emitterScale);
+        texture.put(dense, textureIndex);
+        baseSpawnRate.put(dense, DEFAULT_SPAWN_RATE);
+        radius.put(dense, DEFAULT_RADIUS);
+        spawnRate.put(dense, DEFAULT_SPAWN_RATE);
+        sizeScale.put(dense, 1.0f);
+        markDirty(dense);
+
+        if (listener != null)
+            listener.emitterChanged(slot);
+        return (generation << SLOT_BITS) | slot;
+    }
+
+    public void move(int handle, float x, float y, float z)
+    {
+        int dense = resolve(handle);
+        posX.put(dense, x);
+        posY.put(dense, y);
+        posZ.put(dense, z);
+        markDirty(dense);
+
+        if (listener != null)
+            listener.emitterChanged(handle & SLOT_MASK);
+    }
+
+    /**
+     * @param particlesPerFrame authored spawn rate at full detail
+     * @param boundsRadius      radius around the emitter its particles are expected to stay in, used for culling
+     */
+    public void setSpawnParameters(int handle, float particlesPerFrame, float boundsRadius)
+    {
+        int dense = resolve(handle);
+        baseSpawnRate.put(dense, particlesPerFrame);
+        radius.put(dense, boundsRadius);
+        spawnRate.put(dense, particlesPerFrame);
+        markDirty(dense);
+
+        if (listener != null)
+            listener.emitterChanged(handle & SLOT_MASK);
+    }
+
+    /** Applies an LOD result by slot, only dirtying the emitter when a value changed. */
+    public void setLod(int slot, float lodSpawnRate, float lodSizeScale)
+    {
+        int dense = slotToDense.get(slot);
+        if (spawnRate.get(dense) == lodSpawnRate && sizeScale.get(dense) == lodSizeScale)
+            return;
+        spawnRate.put(dense, lodSpawnRate);
+        sizeScale.put(dense, lodSizeScale);
+        markDirty(dense);
+    }
+
+    public void setVelocity(int handle, float vx, float vy, float vz)
+    {
+        int dense = resolve(handle);
+        velX.put(dense, vx);
+        velY.put(dense, vy);
+        velZ.put(dense, vz);
+        markDirty(dense);
+    }
+
+    public void destroy(int handle)
+    {
+        int dense = resolve(handle);
+        int slot = handle & SLOT_MASK;
+        int last = --count;
+
+        // Swap the last emitter into the hole to keep [0, count) packed
+        if (dense != last)
+        {
+            int movedSlot = denseToSlot.get(last);
+            posX.put(dense, posX.get(last));
+            posY.put(dense, posY.get(last));
+            posZ.put(dense, posZ.get(last));
+            velX.put(dense, velX.get(last));
+            velY.put(dense, velY.get(last));
+            velZ.put(dense, velZ.get(last));
+            life.put(dense, life.get(last));
+            scale.put(dense, scale.get(last));
+            texture.put(dense, texture.get(last));
+            baseSpawnRate.put(dense, baseSpawnRate.get(last));
+            radius.put(dense, radius.get(last));
+            spawnRate.put(dense, spawnRate.get(last));
+            sizeScale.put(dense, sizeScale.get(last));
+            denseToSlot.put(dense, movedSlot);
+            slotToDense.put(movedSlot, dense);
+            markDirty(dense);
+        }
+
+        // Bump the generation so stale handles stop resolving
+        slotGeneration.put(slot, (slotGeneration.get(slot) + 1) & GENERATION_MASK);
+        freeSlots.put(freeSlotCount++, slot);
+
+        if (listener != null)
+            listener.emitterDestroyed(slot);
+    }
+
+    public boolean isValid(int handle)
+    {
+        int slot = handle & SLOT_MASK;
+        int generation = (handle >>> SLOT_BITS) & GENERATION_MASK;
+        return handle != INVALID_HANDLE && slot < capacity && generation != 0 && slotGeneration.get(slot) == generation;
+    }
+
+    private int resolve(int handle)
+    {
+        if (!isValid(handle))
+            throw new IllegalArgumentException("[Error]: Stale or invalid emitter handle " + handle);
+        return slotToDense.get(handle & SLOT_MASK);
+    }
+
+    private void markDirty(int dense)
+    {
+        int block = dense >> DIRTY_BLOCK_SHIFT;
+        dirtyBlocks[block >> 6] |= 1L << block;
+    }
+
+    /**
+     * Uploads every dirty run of blocks inside [0, count) to the bound emitter buffer and clears the dirty set.
+     * Emitters past count are never read by the emit pass, so dirt beyond it is simply dropped.
+     *
+     * @return number of bytes uploaded
+     */
+    public long upload(int emitterBuffer)
+    {
+        int blockCount = (count + (1 << DIRTY_BLOCK_SHIFT) - 1) >> DIRTY_BLOCK_SHIFT;
+        long uploaded = 0;
+        int block = 0;
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, emitterBuffer);
+        while (block < blockCount)
+        {
+            if (!isBlockDirty(block))
+            {
+                block++;
+                continue;
+            }
+
+            // Coalesce adjacent dirty blocks into one glBufferSubData
+            int firstBlock = block;
+            while (block < blockCount && isBlockDirty(block))
+                block++;
+
+            int first = firstBlock << DIRTY_BLOCK_SHIFT;
+            int end = Math.min(block << DIRTY_BLOCK_SHIFT, count);
+            uploaded += uploadRange(first, end);
+        }
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        Arrays.fill(dirtyBlocks, 0L);
+        return uploaded;
+    }
+
+    /** Marks every active emitter dirty, used when the GPU copy has to be rebuilt from scratch. */
+    public void markAllDirty()
+    {
+        for (int dense = 0; dense < count; dense += 1 << DIRTY_BLOCK_SHIFT)
+            markDirty(dense);
+    }
+
+    private boolean isBlockDirty(int block)
+    {
+        return (dirtyBlocks[block >> 6] & (1L << block)) != 0;
+    }
+
+    private long uploadRange(int first, int end)
+    {
+        long base = MemoryUtil.memAddress(staging);
+        for (int i = first; i < end; i++)
+        {
+            long address = base + (long) (i - first) * EMITTER_STRUCT_SIZE;
+            // pos, w = LOD spawn rate
+            MemoryUtil.memPutFloat(address, posX.get(i));
+            MemoryUtil.memPutFloat(address + 4, posY.get(i));
+            MemoryUtil.memPutFloat(address + 8, posZ.get(i));
+            MemoryUtil.memPutFloat(address + 12, spawnRate.get(i));
+            // vel
+            MemoryUtil.memPutFloat(address + 16, velX.get(i));
+            MemoryUtil.memPutFloat(address + 20, velY.get(i));
+            MemoryUtil.memPutFloat(address + 24, velZ.get(i));
+            MemoryUtil.memPutFloat(address + 28, 0.0f);
+            // lifeTypeScale, w = LOD size scale
+            MemoryUtil.memPutFloat(address + 32, life.get(i));
+            MemoryUtil.memPutFloat(address + 36, scale.get(i));
+            MemoryUtil.memPutFloat(address + 40, texture.get(i));
+            MemoryUtil.memPutFloat(address + 44, sizeScale.get(i));
+        }
+
+        long size = (long) (end - first) * EMITTER_STRUCT_SIZE;
+        GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, (long) first * EMITTER_STRUCT_SIZE, size, base);
+        EngineMetrics.UPLOAD_BYTES.add(size);
+        return size;
+    }
+
+    /** Bytes needed by writeState() for the current emitter count. */
+    public long getStateSize()
+    {
+        return getStateSize(count);
+    }
+
+    /** Bytes writeState() writes for this many emitters, what readState() expects to find for them. */
+    public long getStateSize(int emitterCount)
+    {
+        // count + free slot count, 14 dense columns, 3 sparse slot tables
+        return 8 + (long) emitterCount * 14 * 4 + (long) capacity * 3 * 4;
+    }
+
+    /** Copies the full CPU state (columns and handle tables) to address, see readState(). */
+    public void writeState(long address)
+    {
+        MemoryUtil.memPutInt(address, count);
+        MemoryUtil.memPutInt(address + 4, freeSlotCount);
+        address += 8;
+        for (FloatBuffer column : denseFloatColumns())
+        {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(column), address, (long) count * 4);
+            address += (long) count * 4;
+        }
+        MemoryUtil.memCopy(MemoryUtil.memAddress(denseToSlot), address, (long) count * 4);
+        address += (long) count * 4;
+        for (IntBuffer table : new IntBuffer[]{slotToDense, slotGeneration, freeSlots})
+        {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(table), address, (long) capacity * 4);
+            address += (long) capacity * 4;
+        }
+    }
+
+    /**
+     * Replaces every emitter with the state written by writeState(). Handles held from before the
+     * capture resolve again. The GPU copy is expected to be restored alongside, so nothing is marked dirty.
+     */
+    public void readState(long address)
+    {
+        int restoredCount = MemoryUtil.memGetInt(address);
+        if (restoredCount < 0 || restoredCount > capacity)
+            throw new IllegalArgumentException("[Error]: Emitter state holds " + restoredCount + " emitters, capacity is " + capacity);
+        int restoredFreeSlots = MemoryUtil.memGetInt(address + 4);
+        if (restoredFreeSlots < 0 || restoredFreeSlots > capacity - restoredCount)
+            throw new IllegalArgumentException("[Error]: Emitter state holds " + restoredFreeSlots + " free slots for " + restoredCount + " emitters, capacity is " + capacity);
+
+        if (listener != null)
+        {
+            for (int dense = 0; dense < count; dense++)
+                listener.emitterDestroyed(denseToSlot.get(dense));
+        }
+
+        count = restoredCount;
+        freeSlotCount = restoredFreeSlots;
+        address += 8;
+        for (FloatBuffer column : denseFloatColumns())
+        {
+            MemoryUtil.memCopy(address, MemoryUtil.memAddress(column), (long) count * 4);
+            address += (long) count * 4;
+        }
+        MemoryUtil.memCopy(address, MemoryUtil.memAddress(denseToSlot), (long) count * 4);
+        address += (long) count * 4;
+        for (IntBuffer table : new IntBuffer[]{slotToDense, slotGeneration, freeSlots})
+        {
+            MemoryUtil.memCopy(address, MemoryUtil.memAddress(table), (long) capacity * 4);
+            address += (long) capacity * 4;
+        }
+        Arrays.fill(dirtyBlocks, 0L);
+
+        if (listener != null)
+        {
+            for (int dense = 0; dense < count; dense++)
+                listener.emitterChanged(denseToSlot.get(dense));
+        }
+    }
+
+    private FloatBuffer[] denseFloatColumns()
+    {
+        return new FloatBuffer[]{posX, posY, posZ, velX, velY, velZ, life, scale, texture, baseSpawnRate, radius, spawnRate, sizeScale};
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public static int slotOf(int handle)
+    {
+        return handle & SLOT_MASK;
+    }
+
+    public int getDenseIndex(int slot)
+    {
+        return slotToDense.get(slot);
+    }
+
+    public float getPositionX(int dense)
+    {
+        return posX.get(dense);
+    }
+
+    public float getPositionY(int dense)
+    {
+        return posY.get(dense);
+    }
+
+    public float getPositionZ(int dense)
+    {
+        return posZ.get(dense);
+    }
+
+    public float getRadius(int dense)
+    {
+        return radius.get(dense);
+    }
+
+    public float getSpawnRate(int dense)
+    {
+        return spawnRate.get(dense);
+    }
+
+    public float getBaseSpawnRate(int dense)
+    {
+        return baseSpawnRate.get(dense);
+    }
+
+    public int getSlot(int dense)
+    {
+        return denseToSlot.get(dense);
+    }
+
+    public void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public void cleanup()
+    {
+        OffHeap.free(posX);
+        OffHeap.free(posY);
+        OffHeap.free(posZ);
+        OffHeap.free(velX);
+        OffHeap.free(velY);
+        OffHeap.free(velZ);
+        OffHeap.free(life);
+        OffHeap.free(scale);
+        OffHeap.free(texture);
+        OffHeap.free(baseSpawnRate);
+        OffHeap.free(radius);
+        OffHeap.free(spawnRate);
+        OffHeap.free(sizeScale);
+        OffHeap.free(denseToSlot);
+        OffHeap.free(slotToDense);
+        OffHeap.free(slotGeneration);
+        OffHeap.free(freeSlots);
+        OffHeap.free(staging);
+    }
+}
@@ -0,0 +1,192 @@
+package org.example;
+
+import org.example.audio.AudioEngine;
+import org.example.ecs.Chunk;
+import org.example.ecs.Components;
+import org.example.ecs.Query;
+import org.example.ecs.World;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Particle emitters as entities: POSITION plus an EMITTER component holding the EmitterRegistry handle,
+ * and VELOCITY for emitters that travel, or TRANSFORM for emitters attached to a node of the transform
+ * hierarchy. The registry stays the GPU-facing store; this system moves the travelling emitters, follows
+ * the attached ones once the hierarchy is updated and pushes the positions that changed into it. Emitters with a SOUND
+ * component carry a looping sound source along, its position is handed to the AudioEngine the same way.
+ */
+public class EmitterSystem
+{
+    private final World world;
+    private final EmitterRegistry registry;
+    private final Query moving;
+    private final Query attached;
+    private final Query.ParallelChunkConsumer integrate = (chunk, commands) -> integrate(chunk);
+    private final Query.ChunkConsumer upload = this::upload;
+    private final Query.ChunkConsumer follow = this::follow;
+    private float deltaTime;
+
+    public EmitterSystem(World world, EmitterRegistry registry)
+    {
+        this.world = world;
+        this.registry = registry;
+        moving = world.query(Components.POSITION, Components.VELOCITY, Components.EMITTER).without(Components.TRANSFORM);
+        attached = world.query(Components.POSITION, Components.EMITTER, Components.TRANSFORM);
+        EngineManager.engineManager.updatesToRun.add(this::update);
+        EngineManager.engineManager.lateUpdatesToRun.add(this::followTransforms);
+    }
+
+    /** Creates the emitter and its entity, see EmitterRegistry.create for the parameters. Returns the entity. */
+    public int create(float x, float y, float z, float vx, float vy, float vz, float meanLife, float emitterScale, float textureIndex)
+    {
+        int handle = registry.create(x, y, z, vx, vy, vz, meanLife, emitterScale, textureIndex);
+        int entity = world.create(Components.POSITION, Components.EMITTER);
+        world.setFloat3(entity, Components.POSITION, x, y, z);
+        world.setInt(entity, Components.EMITTER, 0, handle);
+        return entity;
+    }
+
+    /** Makes the emitter travel, in world units per millisecond; a zero velocity stops it. */
+    public void setMotion(int entity, float vx, float vy, float vz)
+    {
+        if (vx == 0.0f && vy == 0.0f && vz == 0.0f)
+        {
+            world.remove(entity, Components.VELOCITY);
+            return;
+        }
+        world.add(entity, Components.VELOCITY);
+        world.setFloat3(entity, Components.VELOCITY, vx, vy, vz);
+    }
+
+    /** Makes the emitter follow a transform node's world position, INVALID_HANDLE detaches it where it is. */
+    public void attach(int entity, int transformHandle)
+    {
+        if (transformHandle == TransformHierarchy.INVALID_HANDLE)
+        {
+            world.remove(entity, Components.TRANSFORM);
+            return;
+        }
+        world.add(entity, Components.TRANSFORM);
+        world.setInt(entity, Components.TRANSFORM, 0, transformHandle);
+    }
+
+    /**
+     * Gives the emitter a looping sound at its position; does nothing while audio is off.
+     * @param priority see AudioEngine.createSource
+     */
+    public void attachSound(int entity, int clip, float gain, float priority)
+    {
+        AudioEngine audio = AudioEngine.audio;
+        if (audio == null)
+            return;
+        if (world.has(entity, Components.SOUND))
+            audio.destroy(world.getInt(entity, Components.SOUND, 0));
+        int sound = audio.createSource(clip, world.getFloat(entity, Components.POSITION, 0), world.getFloat(entity, Components.POSITION, 1),
+                world.getFloat(entity, Components.POSITION, 2), gain, priority, true);
+        audio.play(sound);
+        world.add(entity, Components.SOUND);
+        world.setInt(entity, Components.SOUND, 0, sound);
+    }
+
+    public void move(int entity, float x, float y, float z)
+    {
+        world.setFloat3(entity, Components.POSITION, x, y, z);
+        registry.move(getHandle(entity), x, y, z);
+        if (AudioEngine.audio != null && world.has(entity, Components.SOUND))
+            AudioEngine.audio.setPosition(world.getInt(entity, Components.SOUND, 0), x, y, z);
+    }
+
+    public void destroy(int entity)
+    {
+        registry.destroy(getHandle(entity));
+        if (AudioEngine.audio != null && world.has(entity, Components.SOUND))
+            AudioEngine.audio.destroy(world.getInt(entity, Components.SOUND, 0));
+        world.destroy(entity);
+    }
+
+    public int getHandle(int entity)
+    {
+        return world.getInt(entity, Components.EMITTER, 0);
+    }
+
+    public void update()
+    {
+        if (moving.count() == 0)
+            return;
+
+        // Integrate in parallel over the columns, then hand the results to the registry on this thread
+        deltaTime = EngineManager.getDeltaTime();
+        moving.forEachChunkParallel(integrate);
+        moving.forEachChunk(upload);
+    }
+
+    // After the hierarchy update, so attached emitters sit where their nodes are this frame
+    private void followTransforms()
+    {
+        if (attached.count() > 0)
+            attached.forEachChunk(follow);
+    }
+
+    private void integrate(Chunk chunk)
+    {
+        long position = chunk.address(Components.POSITION);
+        long velocity = chunk.address(Components.VELOCITY);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            long offset = row * 12L;
+            for (int lane = 0; lane < 12; lane += 4)
+                MemoryUtil.memPutFloat(position + offset + lane, MemoryUtil.memGetFloat(position + offset + lane) + MemoryUtil.memGetFloat(velocity + offset + lane) * deltaTime);
+        }
+    }
+
+    private void follow(Chunk chunk)
+    {
+        TransformHierarchy transforms = TransformHierarchy.transforms;
+        long position = chunk.address(Components.POSITION);
+        long emitter = chunk.address(Components.EMITTER);
+        long transform = chunk.address(Components.TRANSFORM);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            int node = MemoryUtil.memGetInt(transform + row * 4L);
+            if (!transforms.isAlive(node))
+                continue;
+            long matrix = transforms.getWorldAddress(node);
+            float x = MemoryUtil.memGetFloat(matrix + 48), y = MemoryUtil.memGetFloat(matrix + 52), z = MemoryUtil.memGetFloat(matrix + 56);
+            long offset = row * 12L;
+            if (x == MemoryUtil.memGetFloat(position + offset) && y == MemoryUtil.memGetFloat(position + offset + 4) && z == MemoryUtil.memGetFloat(position + offset + 8))
+                continue;
+            MemoryUtil.memPutFloat(position + offset, x);
+            MemoryUtil.memPutFloat(position + offset + 4, y);
+            MemoryUtil.memPutFloat(position + offset + 8, z);
+            registry.move(MemoryUtil.memGetInt(emitter + row * 4L), x, y, z);
+        }
+        moveSounds(chunk);
+    }
+
+    private void upload(Chunk chunk)
+    {
+        long position = chunk.address(Components.POSITION);
+        long emitter = chunk.address(Components.EMITTER);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            long offset = row * 12L;
+            registry.move(MemoryUtil.memGetInt(emitter + row * 4L), MemoryUtil.memGetFloat(position + offset),
+                    MemoryUtil.memGetFloat(position + offset + 4), MemoryUtil.memGetFloat(position + offset + 8));
+        }
+        moveSounds(chunk);
+    }
+
+    private static void moveSounds(Chunk chunk)
+    {
+        AudioEngine audio = AudioEngine.audio;
+        if (audio == null || !chunk.has(Components.SOUND))
+            return;
+        long position = chunk.address(Components.POSITION);
+        long sound = chunk.address(Components.SOUND);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            long offset = row * 12L;
+            audio.setPosition(MemoryUtil.memGetInt(sound + row * 4L), MemoryUtil.memGetFloat(position + offset),
+                    MemoryUtil.memGetFloat(position + offset + 4), MemoryUtil.memGetFloat(position + offset + 8));
+        }
+    }
+}
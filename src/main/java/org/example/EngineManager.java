@@ -1,14 +1,23 @@
 package org.example;
 
-import org.example.utils.Consts;
+import org.example.audio.AudioEngine;
+import org.example.benchmark.BenchmarkRunner;
+import org.example.ecs.World;
+import org.example.jfr.FrameCallbackEvent;
+import org.example.jfr.FrameEvent;
+import org.example.jfr.FramePhaseEvent;
+import org.example.jfr.GpuPassEvent;
+import org.example.mesh.MeshDemo;
+import org.example.metrics.EngineMetrics;
+import org.example.metrics.MetricsFileDump;
+import org.example.metrics.MetricsHttpServer;
+import org.example.utils.FrameArena;
+import org.example.utils.OffHeap;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GL;
-import org.lwjgl.opengl.GL43;
-import org.lwjgl.opengl.GLUtil;
-import org.lwjgl.system.Callback;
-import org.lwjgl.system.MemoryUtil;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,27 +25,56 @@ public class EngineManager {
     public static EngineManager engineManager;
 
     public static final long NANOSECOND = 1000000000L;
+    public static final int TRANSFORM_CAPACITY = 1 << 16;
 
     private static int fps;
     private static double deltaTime = 0f;
+    private static long frameIndex = 0;
     private boolean isRunning;
 
     private WindowManager window;
     private Renderer renderer;
     private Camera camera;
-    private Callback GLDebugCallback;
+    private World world;
+    private TransformHierarchy transforms;
+    private FrameArena frameArena;
+    private GlDebugLog glDebugLog;
+    private GlDebugLog.Mode glDebugMode = GlDebugLog.Mode.PRODUCTION;
     private int framesRendered = 0;
     private float timeRunning = 0.0f;
+    private boolean pipelineBenchmark = false;
+    private boolean restoreParticles = false;
+    private InputTrace inputTrace;
+    private BenchmarkRunner benchmarkRunner;
+    private int exitCode = 0;
+    private QualityGovernor qualityGovernor;
+    private GpuTimer frameGpuTimer;
+    private float frameCpuMs = 0.0f;
+    private long frameGpuSamples = 0;
+    private long uploadedBytes = 0;
+    private PerformanceHud hud;
+    private int meshDemoInstances = 0;
+    private int metricsPort = -1;
+    private Path metricsDumpPath;
+    private long metricsDumpInterval = 10;
+    private MetricsHttpServer metricsServer;
+    private MetricsFileDump metricsDump;
+    private boolean audioEnabled = false;
+    private String audioDevice;
+    private AudioEngine audio;
 
     public List<Runnable> updatesToRun = new ArrayList<>();
+    // Run after the transform hierarchy is updated, for systems that follow its nodes
+    public List<Runnable> lateUpdatesToRun = new ArrayList<>();
 
     private void init() throws Exception
     {
         engineManager = this;
+        // Scratch memory for everything that only lives until the next frame, renderers included
+        frameArena = new FrameArena();
         window = Main.getWindow();
         window.init();
-        enableDebugOutput();
-        setupCustomDebugMessageCallback();
+        glDebugLog = GlDebugLog.install(glDebugMode);
         try {
             renderer = new Renderer();
         } catch (Exception e)
@@ -53,80 +91,110 @@ public class EngineManager {
         run();
     }
 
-    public static void setupCustomDebugMessageCallback() {
-        if (GL.getCapabilities().OpenGL43) {
-            GL43.glDebugMessageCallback((source, type, id, severity, length, message, userParam) -> {
-                String msg = MemoryUtil.memUTF8(message, length);
-
-                // Log the message based on severity
-                if (severity == GL43.GL_DEBUG_SEVERITY_HIGH) {
-                    System.err.println("[OpenGL HIGH] " + msg);
-                } else if (severity == GL43.GL_DEBUG_SEVERITY_MEDIUM) {
-                    System.err.println("[OpenGL MEDIUM] " + msg);
-                } else if (severity == GL43.GL_DEBUG_SEVERITY_LOW) {
-                    System.out.println("[OpenGL LOW] " + msg);
-                } else {
-                    System.out.println("[OpenGL NOTIFICATION] " + msg);
-                }
-            }, 0);
-        }
-    }
-
-    private void enableDebugOutput() {
-        // Check if the OpenGL version supports debug output
-        if (GL.getCapabilities().GL_ARB_debug_output || GL.getCapabilities().OpenGL43) {
-            // Enable OpenGL debug output
-            GL43.glEnable(GL43.GL_DEBUG_OUTPUT);
-            GL43.glEnable(GL43.GL_DEBUG_OUTPUT_SYNCHRONOUS);  // Ensure immediate logging
-
-            // Register the debug callback
-            GLDebugCallback = GLUtil.setupDebugMessageCallback();
-
-            System.out.println("OpenGL debug output enabled.");
-        } else {
-            System.err.println("OpenGL debug output not supported on this system.");
-        }
-    }
-
     private void run()
     {
         isRunning = true;
         long lastTime = System.nanoTime();
 
-        // Create Camera
+        // Entities live in one world, the camera is the first
+        world = new World();
+        transforms = new TransformHierarchy(TRANSFORM_CAPACITY);
+        startAudio();
         camera = new Camera();
-        window.setCursorCallback(camera);
+        window.setCursorCallback();
+        frameGpuTimer = new GpuTimer();
+        startMetricsExport();
+        createHud();
 
         //Create a demo particle system
         ParticleSystem system = new ParticleSystem();
-        system.initializeRenderer();
+        if (benchmarkRunner != null)
+        {
+            // Scenarios bring their own particle renderers
+            benchmarkRunner.start();
+        }
+        else if (pipelineBenchmark)
+        {
+            system.initializeRenderer(ParticlePipelineBenchmark.PARTICLES);
+            new ParticlePipelineBenchmark(system.getRenderer());
+        }
+        else
+        {
+            system.initializeRenderer();
+            if (restoreParticles)
+                system.restoreSnapshot();
+            if (meshDemoInstances > 0)
+                createMeshDemo(system.getEmitterSystem());
+        }
 
         while (isRunning)
         {
+            FrameEvent frameEvent = new FrameEvent();
+            frameEvent.begin();
+            frameIndex++;
+            frameArena.reset();
             long startTime = System.nanoTime();
             long passedTime = startTime - lastTime;
             lastTime = startTime;
-            deltaTime = (double) (passedTime / 1_000_000.0);
+            double frameTime = passedTime / 1_000_000.0;
+            deltaTime = frameTime;
 
             //System.out.println(deltaTime + "ms");
 
             if (window.windowShouldClose())
                 stop();
 
+            // Latch this frame's input, then record it or swap in the recorded frame
+            window.beginFrame();
+            if (inputTrace != null)
+            {
+                float tracedDeltaTime = inputTrace.process((float) deltaTime, window);
+                if (tracedDeltaTime < 0.0f)
+                {
+                    System.out.println("[INFO]: Average frame time over the replay: " + timeRunning / framesRendered + "ms");
+                    stop();
+                    continue;
+                }
+                deltaTime = tracedDeltaTime;
+            }
+
+            FramePhaseEvent phaseEvent = new FramePhaseEvent();
+            phaseEvent.begin();
+            long phaseStart = System.nanoTime();
             input();
+            EngineMetrics.PHASE_INPUT.observe(EngineMetrics.millisSince(phaseStart));
+            phaseEvent.finish(frameIndex, FramePhaseEvent.INPUT);
+
+            phaseEvent = new FramePhaseEvent();
+            phaseEvent.begin();
+            phaseStart = System.nanoTime();
             update();
-            render();
+            EngineMetrics.PHASE_UPDATE.observe(EngineMetrics.millisSince(phaseStart));
+            phaseEvent.finish(frameIndex, FramePhaseEvent.UPDATE);
+            render(startTime);
+            if (qualityGovernor != null)
+                qualityGovernor.update(frameCpuMs, (float) frameGpuTimer.getLastMs());
 
-            timeRunning += (float) deltaTime;
+            // Wall-clock timings, deltaTime may come from a replayed trace
+            timeRunning += (float) frameTime;
             framesRendered++;
-            fps = (int) ( 1000.0f / deltaTime);
-            window.setTitle(Consts.WINDOW_TITLE + " " + fps + " FPS" + "  AVG FRAME TIME: " + timeRunning / framesRendered  + "ms");
+            fps = (int) ( 1000.0f / frameTime);
+            recordFrameMetrics(frameTime);
+            if (hud != null)
+                hud.recordFrame((float) frameTime, frameCpuMs, (float) frameGpuTimer.getLastMs());
+
+            frameEvent.end();
+            if (frameEvent.shouldCommit())
+            {
+                frameEvent.frameIndex = frameIndex;
+                frameEvent.commit();
+            }
 
         }
         cleanup();
     }
 
-    private void stop()
+    public void stop()
     {
         if (!isRunning)
             return;
@@ -142,27 +210,145 @@ public class EngineManager {
         }
     }
 
-    private void render()
+    private void render(long frameStartTime)
     {
+        FramePhaseEvent phaseEvent = new FramePhaseEvent();
+        phaseEvent.begin();
+        long renderStart = System.nanoTime();
+        frameGpuTimer.begin();
         renderer.render();
+        frameGpuTimer.end();
+        // CPU side of the frame ends with submission, the buffer swap may block on vsync or the GPU
+        long swapStart = System.nanoTime();
+        frameCpuMs = (swapStart - frameStartTime) / 1_000_000.0f;
+        EngineMetrics.PHASE_RENDER.observe((swapStart - renderStart) / 1_000_000.0);
+        phaseEvent.finish(frameIndex, FramePhaseEvent.RENDER);
+
+        phaseEvent = new FramePhaseEvent();
+        phaseEvent.begin();
         window.update();
+        EngineMetrics.PHASE_SWAP.observe(EngineMetrics.millisSince(swapStart));
+        phaseEvent.finish(frameIndex, FramePhaseEvent.SWAP);
+    }
+
+    private void recordFrameMetrics(double frameTime)
+    {
+        EngineMetrics.FRAMES.increment();
+        EngineMetrics.FRAME.observe(frameTime);
+        long uploaded = EngineMetrics.UPLOAD_BYTES.get();
+        EngineMetrics.UPLOAD_BYTES_FRAME.set(uploaded - uploadedBytes);
+        uploadedBytes = uploaded;
+        OffHeap.recordMetrics();
+        // GPU results arrive a few frames late, each one is recorded once
+        if (frameGpuTimer.getSamples() != frameGpuSamples)
+        {
+            frameGpuSamples = frameGpuTimer.getSamples();
+            EngineMetrics.GPU_FRAME.observe(frameGpuTimer.getLastMs());
+            GpuPassEvent.record("frame", frameGpuTimer.getLastMs());
+        }
+    }
+
+    private void createMeshDemo(EmitterSystem emitters)
+    {
+        try
+        {
+            new MeshDemo(meshDemoInstances, emitters);
+        }
+        catch (Exception e)
+        {
+            System.out.println("[ERROR]: Unable to create the mesh demo");
+            e.printStackTrace();
+        }
+    }
+
+    // Frame timings are on the HUD instead of the window title; benchmark scenarios measure without it
+    private void createHud()
+    {
+        if (benchmarkRunner != null)
+            return;
+        try
+        {
+            hud = new PerformanceHud();
+            renderer.overlays.add(hud::render);
+        }
+        catch (Exception e)
+        {
+            System.out.println("[ERROR]: Unable to create the performance HUD");
+            e.printStackTrace();
+        }
+    }
+
+    // Audio runs on its own threads; without a device the engine carries on silent
+    private void startAudio()
+    {
+        if (!audioEnabled)
+            return;
+        audio = new AudioEngine(audioDevice);
+        if (!audio.start())
+            audio = null;
+    }
+
+    private void startMetricsExport()
+    {
+        try
+        {
+            if (metricsPort >= 0)
+                metricsServer = new MetricsHttpServer(EngineMetrics.registry, metricsPort);
+        }
+        catch (IOException e)
+        {
+            System.out.println("[ERROR]: Unable to serve metrics on port " + metricsPort);
+            e.printStackTrace();
+        }
+        if (metricsDumpPath != null)
+            metricsDump = new MetricsFileDump(EngineMetrics.registry, metricsDumpPath, metricsDumpInterval);
     }
 
     private void update()
     {
+        int index = 0;
         for (Runnable updateFunction : updatesToRun) {
+            FrameCallbackEvent event = new FrameCallbackEvent();
+            event.begin();
             updateFunction.run();
+            event.finish(frameIndex, FrameCallbackEvent.UPDATES, index++, updateFunction);
         }
+        // Structural changes the updates deferred, then the world matrices of whatever moved
+        world.flush();
+        transforms.update();
+        index = 0;
+        for (Runnable updateFunction : lateUpdatesToRun) {
+            FrameCallbackEvent event = new FrameCallbackEvent();
+            event.begin();
+            updateFunction.run();
+            event.finish(frameIndex, FrameCallbackEvent.LATE_UPDATES, index++, updateFunction);
+        }
+        transforms.upload();
     }
 
     private void cleanup()
     {
+        if (inputTrace != null)
+            inputTrace.close();
+        frameGpuTimer.cleanup();
+        if (hud != null)
+            hud.cleanup();
+        if (metricsServer != null)
+            metricsServer.stop();
+        if (metricsDump != null)
+            metricsDump.stop();
+        if (audio != null)
+            audio.stop();
         renderer.cleanup();
+        world.cleanup();
+        transforms.cleanup();
+        if (glDebugLog != null)
+            glDebugLog.cleanup();
         window.cleanup();
-        if (GLDebugCallback != null) {
-            GLDebugCallback.free();
-        }
         GLFW.glfwTerminate();
+        // Every owner has cleaned up by now, whatever is left leaked
+        frameArena.cleanup();
+        OffHeap.report();
     }
 
     private int getFPS()
@@ -170,6 +356,88 @@ public class EngineManager {
         return fps;
     }
 
+    public void setPipelineBenchmark(boolean pipelineBenchmark)
+    {
+        this.pipelineBenchmark = pipelineBenchmark;
+    }
+
+    /** Records or replays per-frame input, must be set before start(). */
+    public void setInputTrace(InputTrace inputTrace)
+    {
+        this.inputTrace = inputTrace;
+        Main.getWindow().setReplaying(inputTrace != null && inputTrace.getMode() == InputTrace.Mode.REPLAY);
+    }
+
+    public void setBenchmarkRunner(BenchmarkRunner benchmarkRunner)
+    {
+        this.benchmarkRunner = benchmarkRunner;
+    }
+
+    public void setExitCode(int exitCode)
+    {
+        this.exitCode = exitCode;
+    }
+
+    public int getExitCode()
+    {
+        return exitCode;
+    }
+
+    /** Enables the quality governor holding frames at targetMs, must be set before start(). */
+    public void setTargetFrameMs(float targetMs)
+    {
+        qualityGovernor = new QualityGovernor(targetMs);
+    }
+
+    /** @return the quality governor, null when no frame-time target was set */
+    public QualityGovernor getQualityGovernor()
+    {
+        return qualityGovernor;
+    }
+
+    /** OpenGL debug output mode, must be set before start(). */
+    public void setGlDebugMode(GlDebugLog.Mode glDebugMode)
+    {
+        this.glDebugMode = glDebugMode;
+    }
+
+    /** Serves metrics on http://127.0.0.1:port/metrics, port 0 picks a free one. Must be set before start(). */
+    public void setMetricsPort(int metricsPort)
+    {
+        this.metricsPort = metricsPort;
+    }
+
+    /** Rewrites path with the metrics every intervalSeconds. Must be set before start(). */
+    public void setMetricsDump(Path path, long intervalSeconds)
+    {
+        this.metricsDumpPath = path;
+        this.metricsDumpInterval = intervalSeconds;
+    }
+
+    /** Adds the mesh demo scene with this many instances to the interactive run, must be set before start(). */
+    public void setMeshDemo(int instances)
+    {
+        this.meshDemoInstances = instances;
+    }
+
+    /** Plays sound through OpenAL, deviceName null for the default device. Must be set before start(). */
+    public void setAudio(boolean enabled, String deviceName)
+    {
+        this.audioEnabled = enabled;
+        this.audioDevice = deviceName;
+    }
+
+    public void setRestoreParticles(boolean restoreParticles)
+    {
+        this.restoreParticles = restoreParticles;
+    }
+
+    /** Iteration of the frame loop, 0 before the first frame. */
+    public static long getFrameIndex()
+    {
+        return frameIndex;
+    }
+
     public static float getDeltaTime()
     {
         return (float) deltaTime;
@@ -0,0 +1,95 @@
+package org.example;
+
+import org.example.metrics.EngineMetrics;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-frame constants shared by every shader program through a single uniform block.
+ * The layout matches the std140 FrameConstants struct in /shaders/frame_constants.glsl.
+ */
+public class FrameConstants
+{
+    // Uniform block binding point reserved for the frame constants (binding 0 is ComputeParametersBuffer)
+    public static final int BINDING = 1;
+
+    // std140 layout: 3 mat4, 5 vec4, 4 scalars
+    private static final int VIEW_OFFSET = 0;
+    private static final int PROJ_OFFSET = 64;
+    private static final int VIEW_PROJ_OFFSET = 128;
+    private static final int CAMERA_POSITION_OFFSET = 192;
+    private static final int CAMERA_RIGHT_OFFSET = 208;
+    private static final int CAMERA_UP_OFFSET = 224;
+    private static final int CAMERA_FORWARD_OFFSET = 240;
+    private static final int VIEWPORT_OFFSET = 256;
+    private static final int TIME_OFFSET = 272;
+    private static final int DT_OFFSET = 276;
+    private static final int FRAME_INDEX_OFFSET = 280;
+    public static final int SIZE = 288;
+
+    private final int uboId;
+    private final ByteBuffer data;
+
+    public FrameConstants()
+    {
+        data = BufferUtils.createByteBuffer(SIZE);
+
+        uboId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboId);
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+    }
+
+    /**
+     * Writes this frame's values and binds the block. Called once per frame by the Renderer
+     * before any program runs; the camera basis is read straight out of the view matrix rows.
+     */
+    public void update(Matrix4f view, Matrix4f proj, Matrix4f viewProj, Vector3f cameraPosition,
+                       int width, int height, float time, float dt, int frameIndex)
+    {
+        view.get(VIEW_OFFSET, data);
+        proj.get(PROJ_OFFSET, data);
+        viewProj.get(VIEW_PROJ_OFFSET, data);
+
+        putVec4(CAMERA_POSITION_OFFSET, cameraPosition.x, cameraPosition.y, cameraPosition.z, 1.0f);
+        putVec4(CAMERA_RIGHT_OFFSET, view.m00(), view.m10(), view.m20(), 0.0f);
+        putVec4(CAMERA_UP_OFFSET, view.m01(), view.m11(), view.m21(), 0.0f);
+        putVec4(CAMERA_FORWARD_OFFSET, -view.m02(), -view.m12(), -view.m22(), 0.0f);
+        putVec4(VIEWPORT_OFFSET, width, height, 1.0f / Math.max(width, 1), 1.0f / Math.max(height, 1));
+
+        data.putFloat(TIME_OFFSET, time);
+        data.putFloat(DT_OFFSET, dt);
+        data.putInt(FRAME_INDEX_OFFSET, frameIndex);
+
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboId);
+        GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+        EngineMetrics.UPLOAD_BYTES.add(data.remaining());
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+
+        GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, BINDING, uboId);
+    }
+
+    private void putVec4(int offset, float x, float y, float z, float w)
+    {
+        data.putFloat(offset, x);
+        data.putFloat(offset + 4, y);
+        data.putFloat(offset + 8, z);
+        data.putFloat(offset + 12, w);
+    }
+
+    public int getBufferId()
+    {
+        return uboId;
+    }
+
+    public void cleanup()
+    {
+        GL15.glDeleteBuffers(uboId);
+    }
+}
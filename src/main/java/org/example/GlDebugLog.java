@@ -0,0 +1,298 @@
+package org.example;
+
+import org.example.utils.OffHeap;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GLDebugMessageCallback;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * OpenGL debug output that stays out of the frame.
+ *
+ * The driver callback only copies the message into a preallocated ring; decoding and printing happen on
+ * a background thread. Messages are deduplicated by (source, type, id): a repeat within the same second is
+ * only counted, and the writer reports the counts once per second. At most MAX_LINES_PER_SECOND lines are
+ * printed, the rest are counted as dropped.
+ *
+ * VERBOSE keeps GL_DEBUG_OUTPUT_SYNCHRONOUS (messages arrive on the thread that caused them, useful with
+ * a debugger) and logs every severity. PRODUCTION drops synchronous output and asks the driver for
+ * medium and high severity only.
+ */
+public class GlDebugLog
+{
+    public enum Mode
+    {
+        OFF,
+        PRODUCTION,
+        VERBOSE
+    }
+
+    private static final int RING_SLOTS = 256;
+    private static final int MESSAGE_BYTES = 512;  // longer messages are truncated
+    private static final int DEDUPE_SLOTS = 1024;  // power of two
+    private static final int MAX_LINES_PER_SECOND = 50;
+    private static final long FLUSH_INTERVAL = 100_000_000L; // ns
+    private static final long DEDUPE_WINDOW = 1_000_000_000L; // ns
+
+    private final Mode mode;
+    private GLDebugMessageCallback callback;
+
+    // Ring of messages waiting for the writer, guarded by this
+    private final ByteBuffer text;
+    private final long textAddress;
+    private final int[] lengths = new int[RING_SLOTS];
+    private final int[] sources = new int[RING_SLOTS];
+    private final int[] types = new int[RING_SLOTS];
+    private final int[] ids = new int[RING_SLOTS];
+    private final int[] severities = new int[RING_SLOTS];
+    private long head = 0;
+    private long tail = 0;
+    private long overflowed = 0;
+
+    // Seen messages, open addressing by (source, type, id), guarded by this
+    private final long[] seenKeys = new long[DEDUPE_SLOTS];
+    private final long[] seenSince = new long[DEDUPE_SLOTS];
+    private final int[] seenRepeats = new int[DEDUPE_SLOTS];
+    private final int[] seenSeverities = new int[DEDUPE_SLOTS];
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Writer thread only
+    private final byte[] lineBytes = new byte[MESSAGE_BYTES];
+    private final long[] repeatKeys = new long[DEDUPE_SLOTS];
+    private final int[] repeatCounts = new int[DEDUPE_SLOTS];
+    private final int[] repeatSeverities = new int[DEDUPE_SLOTS];
+    private long lastRepeatReport = System.nanoTime();
+    private long secondStart = System.nanoTime();
+    private int linesThisSecond = 0;
+    private long droppedLines = 0;
+
+    private GlDebugLog(Mode mode)
+    {
+        this.mode = mode;
+        text = OffHeap.alloc(RING_SLOTS * MESSAGE_BYTES);
+        textAddress = MemoryUtil.memAddress(text);
+        writer = new Thread(this::write, "gl-debug-log");
+        writer.setDaemon(true);
+    }
+
+    /** Enables debug output on the current context, returns null when mode is OFF or debug output is unsupported. */
+    public static GlDebugLog install(Mode mode)
+    {
+        if (mode == Mode.OFF)
+            return null;
+        if (!GL.getCapabilities().OpenGL43)
+        {
+            System.err.println("OpenGL debug output not supported on this system.");
+            return null;
+        }
+
+        GlDebugLog log = new GlDebugLog(mode);
+        GL11.glEnable(GL43.GL_DEBUG_OUTPUT);
+        if (mode == Mode.VERBOSE)
+        {
+            GL11.glEnable(GL43.GL_DEBUG_OUTPUT_SYNCHRONOUS);
+        }
+        else
+        {
+            GL11.glDisable(GL43.GL_DEBUG_OUTPUT_SYNCHRONOUS);
+            // Filtered by the driver, nothing below medium reaches the callback
+            GL43.glDebugMessageControl(GL11.GL_DONT_CARE, GL11.GL_DONT_CARE, GL43.GL_DEBUG_SEVERITY_LOW, (int[]) null, false);
+            GL43.glDebugMessageControl(GL11.GL_DONT_CARE, GL11.GL_DONT_CARE, GL43.GL_DEBUG_SEVERITY_NOTIFICATION, (int[]) null, false);
+        }
+        log.callback = GLDebugMessageCallback.create(log::onMessage);
+        GL43.glDebugMessageCallback(log.callback, MemoryUtil.NULL);
+        log.writer.start();
+        System.out.println("OpenGL debug output enabled (" + mode + ").");
+        return log;
+    }
+
+    // Driver callback: copy and count only. May run on a driver thread when output is asynchronous.
+    private void onMessage(int source, int type, int id, int severity, int length, long message, long userParam)
+    {
+        if (mode == Mode.PRODUCTION && (severity == GL43.GL_DEBUG_SEVERITY_LOW || severity == GL43.GL_DEBUG_SEVERITY_NOTIFICATION))
+            return;
+
+        long key = (long) source << 48 ^ (long) type << 32 ^ (id & 0xFFFFFFFFL);
+        long now = System.nanoTime();
+        synchronized (this)
+        {
+            int slot = (int) (mix(key) & (DEDUPE_SLOTS - 1));
+            for (int probe = 0; probe < DEDUPE_SLOTS; probe++)
+            {
+                int index = (slot + probe) & (DEDUPE_SLOTS - 1);
+                if (seenKeys[index] == key && seenSince[index] != 0)
+                {
+                    if (now - seenSince[index] < DEDUPE_WINDOW)
+                    {
+                        seenRepeats[index]++;
+                        return;
+                    }
+                    seenSince[index] = now;
+                    break;
+                }
+                if (seenSince[index] == 0)
+                {
+                    seenKeys[index] = key;
+                    seenSince[index] = now;
+                    seenSeverities[index] = severity;
+                    break;
+                }
+            }
+
+            if (tail - head == RING_SLOTS)
+            {
+                overflowed++;
+                return;
+            }
+            int ring = (int) (tail % RING_SLOTS);
+            int bytes = Math.min(length, MESSAGE_BYTES);
+            MemoryUtil.memCopy(message, textAddress + (long) ring * MESSAGE_BYTES, bytes);
+            lengths[ring] = bytes;
+            sources[ring] = source;
+            types[ring] = type;
+            ids[ring] = id;
+            severities[ring] = severity;
+            tail++;
+        }
+    }
+
+    private static long mix(long key)
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return key ^ key >>> 33;
+    }
+
+    private void write()
+    {
+        while (running)
+        {
+            LockSupport.parkNanos(FLUSH_INTERVAL);
+            flush();
+        }
+        flush();
+    }
+
+    private void flush()
+    {
+        long now = System.nanoTime();
+        if (now - secondStart >= 1_000_000_000L)
+        {
+            if (droppedLines > 0)
+                System.err.println("[OpenGL] " + droppedLines + " debug message(s) dropped by the rate limit");
+            secondStart = now;
+            linesThisSecond = 0;
+            droppedLines = 0;
+        }
+
+        while (true)
+        {
+            int length = 0, source = 0, type = 0, id = 0, severity = 0;
+            long lost;
+            boolean empty;
+            synchronized (this)
+            {
+                lost = overflowed;
+                overflowed = 0;
+                empty = head == tail;
+                if (!empty)
+                {
+                    int ring = (int) (head % RING_SLOTS);
+                    length = lengths[ring];
+                    source = sources[ring];
+                    type = types[ring];
+                    id = ids[ring];
+                    severity = severities[ring];
+                    MemoryUtil.memByteBuffer(textAddress + (long) ring * MESSAGE_BYTES, length).get(lineBytes, 0, length);
+                    head++;
+                }
+            }
+            droppedLines += lost;
+            if (empty)
+                break;
+
+            if (linesThisSecond >= MAX_LINES_PER_SECOND)
+            {
+                droppedLines++;
+                continue;
+            }
+            linesThisSecond++;
+            String message = new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+            print(severity, String.format(Locale.ROOT, "%s (source 0x%X, type 0x%X, id %d)", message, source, type, id));
+        }
+
+        if (now - lastRepeatReport >= DEDUPE_WINDOW)
+        {
+            lastRepeatReport = now;
+            reportRepeats();
+        }
+    }
+
+    // Counts are taken under the lock and printed outside it
+    private void reportRepeats()
+    {
+        int count = 0;
+        synchronized (this)
+        {
+            for (int i = 0; i < DEDUPE_SLOTS; i++)
+            {
+                if (seenRepeats[i] == 0)
+                    continue;
+                repeatKeys[count] = seenKeys[i];
+                repeatCounts[count] = seenRepeats[i];
+                repeatSeverities[count] = seenSeverities[i];
+                seenRepeats[i] = 0;
+                count++;
+            }
+        }
+        for (int i = 0; i < count; i++)
+        {
+            long key = repeatKeys[i];
+            print(repeatSeverities[i], String.format(Locale.ROOT, "repeated %d time(s) (source 0x%X, type 0x%X, id %d)",
+                    repeatCounts[i], (int) (key >>> 48), (int) (key >>> 32) & 0xFFFF, (int) key));
+        }
+    }
+
+    private static void print(int severity, String line)
+    {
+        if (severity == GL43.GL_DEBUG_SEVERITY_HIGH)
+            System.err.println("[OpenGL HIGH] " + line);
+        else if (severity == GL43.GL_DEBUG_SEVERITY_MEDIUM)
+            System.err.println("[OpenGL MEDIUM] " + line);
+        else if (severity == GL43.GL_DEBUG_SEVERITY_LOW)
+            System.out.println("[OpenGL LOW] " + line);
+        else
+            System.out.println("[OpenGL NOTIFICATION] " + line);
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /** Detaches from the context, writes what is still queued and frees the ring. Call before the context goes away. */
+    public void cleanup()
+    {
+        GL43.glDebugMessageCallback(null, MemoryUtil.NULL);
+        running = false;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        callback.free();
+        OffHeap.free(text);
+    }
+}
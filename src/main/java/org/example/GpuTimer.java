@@ -0,0 +1,94 @@
+package org.example;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * GPU timer that never stalls the pipeline.
+ * Each measurement is a pair of GL_TIMESTAMP queries, so timers can nest (a frame timer around the
+ * particle compute timer). Pairs rotate through a small ring and a result is only read once the driver
+ * reports it available, so getLastMs() lags the current frame by a few frames.
+ */
+public class GpuTimer
+{
+    private static final int RING_SIZE = 4;
+
+    private final int[] startQueries = new int[RING_SIZE];
+    private final int[] endQueries = new int[RING_SIZE];
+    private final boolean[] pending = new boolean[RING_SIZE];
+    private int current = 0;
+    private boolean running = false;
+
+    private double lastMs = 0.0;
+    private double totalMs = 0.0;
+    private long samples = 0;
+
+    public GpuTimer()
+    {
+        GL15.glGenQueries(startQueries);
+        GL15.glGenQueries(endQueries);
+    }
+
+    public void begin()
+    {
+        collect();
+        // Ring full of in-flight queries: skip this sample rather than wait on the GPU
+        if (pending[current])
+            return;
+        GL33.glQueryCounter(startQueries[current], GL33.GL_TIMESTAMP);
+        running = true;
+    }
+
+    public void end()
+    {
+        if (!running)
+            return;
+        GL33.glQueryCounter(endQueries[current], GL33.GL_TIMESTAMP);
+        pending[current] = true;
+        current = (current + 1) % RING_SIZE;
+        running = false;
+    }
+
+    private void collect()
+    {
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            // The end timestamp is written last, once it is available both are
+            if (!pending[i] || GL15.glGetQueryObjecti(endQueries[i], GL15.GL_QUERY_RESULT_AVAILABLE) == 0)
+                continue;
+            long start = GL33.glGetQueryObjecti64(startQueries[i], GL15.GL_QUERY_RESULT);
+            long end = GL33.glGetQueryObjecti64(endQueries[i], GL15.GL_QUERY_RESULT);
+            lastMs = (end - start) / 1_000_000.0;
+            totalMs += lastMs;
+            samples++;
+            pending[i] = false;
+        }
+    }
+
+    public double getLastMs()
+    {
+        return lastMs;
+    }
+
+    public double getAverageMs()
+    {
+        return samples == 0 ? 0.0 : totalMs / samples;
+    }
+
+    public long getSamples()
+    {
+        return samples;
+    }
+
+    public void reset()
+    {
+        totalMs = 0.0;
+        samples = 0;
+    }
+
+    public void cleanup()
+    {
+        GL15.glDeleteQueries(startQueries);
+        GL15.glDeleteQueries(endQueries);
+    }
+}
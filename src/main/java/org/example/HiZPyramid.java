@@ -0,0 +1,171 @@
+package org.example;
+
+import org.example.utils.Loader;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Hierarchical depth (Hi-Z) pyramid for occlusion culling.
+ *
+ * Renderer builds it after the opaque pass: the frame's depth is copied into a texture, then one compute
+ * dispatch per level writes an R32F mip chain where each texel holds the farthest depth below it
+ * (hiz_downsample.glsl). Culling shaders include hiz_common.glsl, which projects a bounding sphere, picks
+ * the level where it covers at most 2x2 texels and keeps it unless it lies behind all of them.
+ *
+ * Particles are culled against the pyramid of the current frame. Meshes are part of the opaque pass, so
+ * they are culled against the previous frame's pyramid with the matrix it was built with; an object that
+ * was hidden last frame can show up one frame late when the camera moves quickly.
+ */
+public class HiZPyramid
+{
+    public static final int TEXTURE_UNIT = 3;
+    private static final int GROUP_SIZE = 8;
+
+    private final ShaderManager downsampleShader;
+    private final int levelLocation;
+
+    private int width = 0;
+    private int height = 0;
+    private int levels = 0;
+    private int depthTexture = 0;
+    private int pyramidTexture = 0;
+
+    private final Matrix4f viewProj = new Matrix4f();
+    private long builtFrame = -1;
+    private boolean enabled = true;
+
+    public HiZPyramid() throws Exception
+    {
+        downsampleShader = new ShaderManager();
+        downsampleShader.createComputeShader(Loader.loadShader("/shaders/hiz_downsample.glsl"));
+        downsampleShader.link();
+        levelLocation = downsampleShader.getUniformLocation("level");
+        downsampleShader.bind();
+        GL20.glUniform1i(downsampleShader.getUniformLocation("sceneDepth"), 0);
+        downsampleShader.unbind();
+    }
+
+    /**
+     * Builds the pyramid from the depth of the bound framebuffer, which was rendered with viewProj. A 0x0
+     * framebuffer (minimized window) builds nothing and leaves occlusion culling off until the next build.
+     */
+    public void build(int width, int height, Matrix4fc viewProj)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            builtFrame = -1;
+            return;
+        }
+        if (width != this.width || height != this.height)
+            allocate(width, height);
+
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, depthTexture);
+        GL11.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+        downsampleShader.bind();
+        GL45.glBindTextureUnit(0, depthTexture);
+        for (int level = 0; level < levels; level++)
+        {
+            int levelWidth = Math.max(1, width >> level);
+            int levelHeight = Math.max(1, height >> level);
+            GL20.glUniform1i(levelLocation, level);
+            if (level > 0)
+                GL42.glBindImageTexture(0, pyramidTexture, level - 1, false, 0, GL15.GL_READ_ONLY, GL30.GL_R32F);
+            GL42.glBindImageTexture(1, pyramidTexture, level, false, 0, GL15.GL_WRITE_ONLY, GL30.GL_R32F);
+            GL43.glDispatchCompute(ceilDiv(levelWidth, GROUP_SIZE), ceilDiv(levelHeight, GROUP_SIZE), 1);
+            GL42.glMemoryBarrier(GL42.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+        }
+        GL42.glMemoryBarrier(GL42.GL_TEXTURE_FETCH_BARRIER_BIT);
+        downsampleShader.unbind();
+
+        this.viewProj.set(viewProj);
+        builtFrame = EngineManager.getFrameIndex();
+    }
+
+    private void allocate(int width, int height)
+    {
+        release();
+        this.width = width;
+        this.height = height;
+        levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+
+        depthTexture = GL45.glCreateTextures(GL11.GL_TEXTURE_2D);
+        GL45.glTextureStorage2D(depthTexture, 1, GL30.GL_DEPTH_COMPONENT32F, width, height);
+        GL45.glTextureParameteri(depthTexture, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL45.glTextureParameteri(depthTexture, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+
+        pyramidTexture = GL45.glCreateTextures(GL11.GL_TEXTURE_2D);
+        GL45.glTextureStorage2D(pyramidTexture, levels, GL30.GL_R32F, width, height);
+        GL45.glTextureParameteri(pyramidTexture, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST_MIPMAP_NEAREST);
+        GL45.glTextureParameteri(pyramidTexture, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        builtFrame = -1;
+    }
+
+    /** Uniform locations hiz_common.glsl needs, look them up once per program. */
+    public static int[] getUniformLocations(ShaderManager shader) throws Exception
+    {
+        return new int[]{shader.getUniformLocation("hiZ"), shader.getUniformLocation("hiZViewProj"), shader.getUniformLocation("hiZLevels")};
+    }
+
+    /** Binds the pyramid for a culling program, which must be bound. */
+    public void bind(int[] uniformLocations)
+    {
+        GL45.glBindTextureUnit(TEXTURE_UNIT, pyramidTexture);
+        GL20.glUniform1i(uniformLocations[0], TEXTURE_UNIT);
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            GL20.glUniformMatrix4fv(uniformLocations[1], false, viewProj.get(stack.mallocFloat(16)));
+        }
+        GL20.glUniform1i(uniformLocations[2], levels);
+    }
+
+    /** Built during the current frame, particles are only culled then. */
+    public boolean isBuiltThisFrame()
+    {
+        return enabled && builtFrame == EngineManager.getFrameIndex();
+    }
+
+    /** Built during this or the previous frame, what mesh culling needs. */
+    public boolean isBuiltLastFrame()
+    {
+        return enabled && builtFrame >= 0 && EngineManager.getFrameIndex() - builtFrame <= 1;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    private static int ceilDiv(int value, int divisor)
+    {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private void release()
+    {
+        if (pyramidTexture == 0)
+            return;
+        GL11.glDeleteTextures(new int[]{depthTexture, pyramidTexture});
+        pyramidTexture = 0;
+    }
+
+    public void cleanup()
+    {
+        release();
+        downsampleShader.cleanup();
+    }
+}
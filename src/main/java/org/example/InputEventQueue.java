@@ -0,0 +1,141 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer / single-consumer ring of input events.
+ *
+ * The GLFW callbacks in WindowManager are the only producer (they run inside glfwPollEvents on the main
+ * thread), one InputState is the only consumer, on whichever thread runs the simulation. Each event is
+ * two longs: a header (type, action, key or button) and a payload (two floats for cursor and scroll
+ * movement). Nothing is allocated after construction. When the ring is full the producer drops the
+ * event and counts it instead of blocking the window thread.
+ */
+public class InputEventQueue
+{
+    public static final int KEY = 1;
+    public static final int MOUSE_MOVE = 2;
+    public static final int MOUSE_BUTTON = 3;
+    public static final int SCROLL = 4;
+
+    private final long[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next event to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next event to write, written by the producer
+    private long cachedHead = 0; // producer's last view of head
+    private long dropped = 0;    // producer side only
+
+    /** @param capacity events, rounded up to a power of two */
+    public InputEventQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new long[size * 2];
+        mask = size - 1;
+    }
+
+    public boolean pushKey(int key, int action)
+    {
+        return push(header(KEY, action, key), 0L);
+    }
+
+    public boolean pushMouseMove(float deltaX, float deltaY)
+    {
+        return push(MOUSE_MOVE, pack(deltaX, deltaY));
+    }
+
+    public boolean pushMouseButton(int button, int action)
+    {
+        return push(header(MOUSE_BUTTON, action, button), 0L);
+    }
+
+    public boolean pushScroll(float offsetX, float offsetY)
+    {
+        return push(SCROLL, pack(offsetX, offsetY));
+    }
+
+    private boolean push(long header, long payload)
+    {
+        long t = tail.get();
+        if (t - cachedHead > mask)
+        {
+            cachedHead = head.get();
+            if (t - cachedHead > mask)
+            {
+                dropped++;
+                return false;
+            }
+        }
+        int slot = (int) (t & mask) << 1;
+        ring[slot] = header;
+        ring[slot + 1] = payload;
+        // Release: the slot is visible before the new tail
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands every queued event to the consumer, consumer thread only.
+     * @return the number of events drained
+     */
+    public int drain(Consumer consumer)
+    {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++)
+        {
+            int slot = (int) (i & mask) << 1;
+            consumer.accept(ring[slot], ring[slot + 1]);
+        }
+        if (t != h)
+            head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    /** Events dropped because the consumer fell behind, producer thread only. */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    public static int type(long header)
+    {
+        return (int) (header & 0xFF);
+    }
+
+    public static int action(long header)
+    {
+        return (int) ((header >>> 8) & 0xFF);
+    }
+
+    /** Key code or mouse button of the event. */
+    public static int code(long header)
+    {
+        return (int) (header >>> 16);
+    }
+
+    public static float x(long payload)
+    {
+        return Float.intBitsToFloat((int) (payload >>> 32));
+    }
+
+    public static float y(long payload)
+    {
+        return Float.intBitsToFloat((int) payload);
+    }
+
+    private static long header(int type, int action, int code)
+    {
+        return type | (long) (action & 0xFF) << 8 | (long) code << 16;
+    }
+
+    private static long pack(float x, float y)
+    {
+        return (long) Float.floatToRawIntBits(x) << 32 | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    /** Receives drained events without boxing. */
+    public interface Consumer
+    {
+        void accept(long header, long payload);
+    }
+}
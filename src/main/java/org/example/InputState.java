@@ -0,0 +1,119 @@
+package org.example;
+
+import org.lwjgl.glfw.GLFW;
+
+/**
+ * Consumer side of the input queue: key and mouse button state as bitsets plus the mouse movement of
+ * the current frame. poll() drains the queue and latches the movement; everything else is plain field
+ * reads, so the update path makes no JNI calls. Owned by a single thread, the one that runs the
+ * simulation (the main thread via WindowManager.beginFrame() unless the simulation moves elsewhere).
+ */
+public class InputState implements InputEventQueue.Consumer
+{
+    public static final int KEY_WORDS = (GLFW.GLFW_KEY_LAST >> 6) + 1;
+
+    private final InputEventQueue queue;
+    private final long[] keyDown = new long[KEY_WORDS];
+    private int buttonsDown = 0;
+
+    private float pendingMouseDeltaX, pendingMouseDeltaY;
+    private float pendingScrollX, pendingScrollY;
+    private float mouseDeltaX, mouseDeltaY;
+    private float scrollX, scrollY;
+
+    public InputState(InputEventQueue queue)
+    {
+        this.queue = queue;
+    }
+
+    /** Applies every queued event and latches this frame's mouse movement and scrolling. */
+    public void poll()
+    {
+        queue.drain(this);
+        mouseDeltaX = pendingMouseDeltaX;
+        mouseDeltaY = pendingMouseDeltaY;
+        scrollX = pendingScrollX;
+        scrollY = pendingScrollY;
+        pendingMouseDeltaX = 0.0f;
+        pendingMouseDeltaY = 0.0f;
+        pendingScrollX = 0.0f;
+        pendingScrollY = 0.0f;
+    }
+
+    @Override
+    public void accept(long header, long payload)
+    {
+        switch (InputEventQueue.type(header))
+        {
+            case InputEventQueue.KEY:
+                int action = InputEventQueue.action(header);
+                if (action == GLFW.GLFW_PRESS)
+                    setKeyPressed(InputEventQueue.code(header), true);
+                else if (action == GLFW.GLFW_RELEASE)
+                    setKeyPressed(InputEventQueue.code(header), false);
+                break;
+            case InputEventQueue.MOUSE_MOVE:
+                pendingMouseDeltaX += InputEventQueue.x(payload);
+                pendingMouseDeltaY += InputEventQueue.y(payload);
+                break;
+            case InputEventQueue.MOUSE_BUTTON:
+                int bit = 1 << InputEventQueue.code(header);
+                buttonsDown = InputEventQueue.action(header) == GLFW.GLFW_RELEASE ? buttonsDown & ~bit : buttonsDown | bit;
+                break;
+            case InputEventQueue.SCROLL:
+                pendingScrollX += InputEventQueue.x(payload);
+                pendingScrollY += InputEventQueue.y(payload);
+                break;
+        }
+    }
+
+    public boolean isKeyPressed(int keycode)
+    {
+        return (keyDown[keycode >> 6] & (1L << keycode)) != 0;
+    }
+
+    public void setKeyPressed(int keycode, boolean pressed)
+    {
+        if (pressed)
+            keyDown[keycode >> 6] |= 1L << keycode;
+        else
+            keyDown[keycode >> 6] &= ~(1L << keycode);
+    }
+
+    /** 64 keys of the key state, bit i of word w is key w * 64 + i. */
+    public long getKeyWord(int word)
+    {
+        return keyDown[word];
+    }
+
+    public boolean isMouseButtonPressed(int button)
+    {
+        return (buttonsDown & (1 << button)) != 0;
+    }
+
+    public float getMouseDeltaX()
+    {
+        return mouseDeltaX;
+    }
+
+    public float getMouseDeltaY()
+    {
+        return mouseDeltaY;
+    }
+
+    public void setMouseDelta(float deltaX, float deltaY)
+    {
+        mouseDeltaX = deltaX;
+        mouseDeltaY = deltaY;
+    }
+
+    public float getScrollX()
+    {
+        return scrollX;
+    }
+
+    public float getScrollY()
+    {
+        return scrollY;
+    }
+}
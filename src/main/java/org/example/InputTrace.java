@@ -0,0 +1,163 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records or replays everything a frame reads from the outside world: dt, key state and mouse movement.
+ *
+ * The log is a small header followed by one record per frame: dt (ms), mouse delta x / y, the number of
+ * keys whose state flipped since the previous frame and their key codes. Replay pushes the same values
+ * back through WindowManager and EngineManager.getDeltaTime(), so the rest of the engine cannot tell a
+ * replayed frame from a live one.
+ */
+public class InputTrace
+{
+    private static final int MAGIC = 0x504E4941; // "AINP"
+    private static final int VERSION = 1;
+
+    public enum Mode
+    {
+        RECORD,
+        REPLAY
+    }
+
+    private final Mode mode;
+    private final Path path;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private final long[] lastKeys = new long[WindowManager.KEY_WORDS];
+    private int frames = 0;
+
+    private InputTrace(Mode mode, Path path) throws IOException
+    {
+        this.mode = mode;
+        this.path = path;
+
+        if (mode == Mode.RECORD)
+        {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        else
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                in.close();
+                throw new IOException("[Error]: Not an input trace (or wrong version): " + path);
+            }
+        }
+    }
+
+    public static InputTrace record(Path path) throws IOException
+    {
+        return new InputTrace(Mode.RECORD, path);
+    }
+
+    public static InputTrace replay(Path path) throws IOException
+    {
+        return new InputTrace(Mode.REPLAY, path);
+    }
+
+    /**
+     * Records the live frame input, or replaces it with the next recorded frame.
+     * Call after WindowManager.beginFrame() and before anything reads input.
+     *
+     * @return the dt to use for this frame, negative once a replay has run out of frames
+     */
+    public float process(float liveDt, WindowManager window)
+    {
+        try
+        {
+            return mode == Mode.RECORD ? recordFrame(liveDt, window) : replayFrame(window);
+        }
+        catch (EOFException e)
+        {
+            System.out.println("[INFO]: Replay of " + path + " finished after " + frames + " frames");
+            return -1.0f;
+        }
+        catch (IOException e)
+        {
+            System.err.println("[ERROR]: Input trace " + path + " failed at frame " + frames);
+            e.printStackTrace();
+            return -1.0f;
+        }
+    }
+
+    private float recordFrame(float dt, WindowManager window) throws IOException
+    {
+        out.writeFloat(dt);
+        out.writeFloat(window.getMouseDeltaX());
+        out.writeFloat(window.getMouseDeltaY());
+
+        int changed = 0;
+        for (int word = 0; word < WindowManager.KEY_WORDS; word++)
+            changed += Long.bitCount(window.getKeyWord(word) ^ lastKeys[word]);
+        out.writeShort(changed);
+
+        for (int word = 0; word < WindowManager.KEY_WORDS; word++)
+        {
+            long current = window.getKeyWord(word);
+            long flipped = current ^ lastKeys[word];
+            while (flipped != 0)
+            {
+                int bit = Long.numberOfTrailingZeros(flipped);
+                out.writeShort(word * 64 + bit);
+                flipped &= flipped - 1;
+            }
+            lastKeys[word] = current;
+        }
+        frames++;
+        return dt;
+    }
+
+    private float replayFrame(WindowManager window) throws IOException
+    {
+        float dt = in.readFloat();
+        float mouseDeltaX = in.readFloat();
+        float mouseDeltaY = in.readFloat();
+        window.setMouseDelta(mouseDeltaX, mouseDeltaY);
+
+        int changed = in.readUnsignedShort();
+        for (int i = 0; i < changed; i++)
+        {
+            int key = in.readUnsignedShort();
+            window.setKeyPressed(key, !window.isKeyPressed(key));
+        }
+        frames++;
+        return dt;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public int getFrames()
+    {
+        return frames;
+    }
+
+    public void close()
+    {
+        try
+        {
+            if (out != null)
+                out.close();
+            if (in != null)
+                in.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
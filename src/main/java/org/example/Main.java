@@ -1,8 +1,14 @@
 package org.example;
 
+import org.example.benchmark.BenchmarkRunner;
 import org.example.utils.Consts;
 import org.lwjgl.Version;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
 public class Main
 {
     private static WindowManager window;
@@ -13,6 +19,62 @@ public class Main
         System.out.println("[INFO]: Using LWJGL VERSION: " + Version.getVersion());
         window = new WindowManager(Consts.WINDOW_TITLE, 1600, 900, false);
         engine = new EngineManager();
+        String benchmarkSuite = null;
+        Path benchmarkOutput = Paths.get("build", "benchmark");
+        Path benchmarkBaseline = null;
+        double regressionThreshold = 0.10;
+        Path metricsDump = null;
+        long metricsInterval = 10;
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (args[i].equals("--benchmark-pipelines"))
+                    engine.setPipelineBenchmark(true);
+                else if (args[i].equals("--restore-particles"))
+                    engine.setRestoreParticles(true);
+                else if (args[i].equals("--headless"))
+                    window.setHeadless(true);
+                else if (args[i].equals("--record") && i + 1 < args.length)
+                    engine.setInputTrace(InputTrace.record(Paths.get(args[++i])));
+                else if (args[i].equals("--replay") && i + 1 < args.length)
+                    engine.setInputTrace(InputTrace.replay(Paths.get(args[++i])));
+                else if (args[i].equals("--benchmark") && i + 1 < args.length)
+                    benchmarkSuite = args[++i];
+                else if (args[i].equals("--benchmark-out") && i + 1 < args.length)
+                    benchmarkOutput = Paths.get(args[++i]);
+                else if (args[i].equals("--baseline") && i + 1 < args.length)
+                    benchmarkBaseline = Paths.get(args[++i]);
+                else if (args[i].equals("--regression-threshold") && i + 1 < args.length)
+                    regressionThreshold = Double.parseDouble(args[++i]);
+                else if (args[i].equals("--gl-debug") && i + 1 < args.length)
+                    engine.setGlDebugMode(GlDebugLog.Mode.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+                else if (args[i].equals("--metrics-port") && i + 1 < args.length)
+                    engine.setMetricsPort(Integer.parseInt(args[++i]));
+                else if (args[i].equals("--metrics-dump") && i + 1 < args.length)
+                    metricsDump = Paths.get(args[++i]);
+                else if (args[i].equals("--metrics-interval") && i + 1 < args.length)
+                    metricsInterval = Long.parseLong(args[++i]);
+                else if (args[i].equals("--target-frame-ms") && i + 1 < args.length)
+                    engine.setTargetFrameMs(Float.parseFloat(args[++i]));
+                else if (args[i].equals("--meshes") && i + 1 < args.length)
+                    engine.setMeshDemo(Integer.parseInt(args[++i]));
+                else if (args[i].equals("--audio"))
+                    engine.setAudio(true, null);
+                else if (args[i].equals("--audio-device") && i + 1 < args.length)
+                    engine.setAudio(true, args[++i]);
+            }
+            if (metricsDump != null)
+                engine.setMetricsDump(metricsDump, metricsInterval);
+            if (benchmarkSuite != null)
+                engine.setBenchmarkRunner(new BenchmarkRunner(benchmarkSuite, benchmarkOutput, benchmarkBaseline, regressionThreshold));
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            System.out.println("[ERROR]: Invalid command line arguments");
+            e.printStackTrace();
+            return;
+        }
         try
         {
             engine.start();
@@ -21,6 +83,10 @@ public class Main
         {
             e.printStackTrace();
         }
+
+        // Benchmark regressions fail the process so CI can gate on it
+        if (engine.getExitCode() != 0)
+            System.exit(engine.getExitCode());
     }
 
     public static WindowManager getWindow()
@@ -0,0 +1,210 @@
+package org.example;
+
+import org.example.utils.Loader;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL45;
+
+/**
+ * Reduced resolution render target for particles.
+ *
+ * Large overlapping particles are fill-rate bound, so with a factor of 2 or 4 they are drawn into a half
+ * or quarter resolution color target instead of the frame. begin() copies the frame's depth, downsamples
+ * it (farthest depth per block) into the target's depth buffer and binds the target; particles are then
+ * drawn as usual, depth-tested against the downsampled depth. end() composites the result back over the
+ * frame with a depth-aware upsample (particle_upsample.glsl). A factor of 1 disables the pass.
+ *
+ * The color target holds premultiplied color, so particles are blended into it with a separate alpha
+ * function and the composite uses ONE, ONE_MINUS_SRC_ALPHA.
+ */
+public class OffscreenParticleTarget
+{
+    private static final float EDGE_THRESHOLD = 0.1f;
+    private static final float[] TRANSPARENT = {0.0f, 0.0f, 0.0f, 0.0f};
+
+    private final ShaderManager downsampleShader;
+    private final ShaderManager upsampleShader;
+    private final int downsampleFactorLocation;
+    private final int vaoId;
+
+    private int factor = 1;
+    private int allocatedFactor = 0;
+    private int width = 0;  // full resolution the textures were allocated for
+    private int height = 0;
+    private int lowWidth;
+    private int lowHeight;
+
+    private int sceneDepthTexture = 0;
+    private int colorTexture = 0;
+    private int depthTexture = 0;
+    private int framebuffer = 0;
+
+    public OffscreenParticleTarget() throws Exception
+    {
+        downsampleShader = new ShaderManager();
+        downsampleShader.createVertexShader(Loader.loadShader("/shaders/fullscreen_vertex.glsl"));
+        downsampleShader.createFragmentShader(Loader.loadShader("/shaders/particle_depth_downsample.glsl"));
+        downsampleShader.link();
+        downsampleFactorLocation = downsampleShader.getUniformLocation("factor");
+
+        upsampleShader = new ShaderManager();
+        upsampleShader.createVertexShader(Loader.loadShader("/shaders/fullscreen_vertex.glsl"));
+        upsampleShader.createFragmentShader(Loader.loadShader("/shaders/particle_upsample.glsl"));
+        upsampleShader.link();
+
+        // Fixed texture units: 0 scene depth, 1 particle color, 2 downsampled depth
+        downsampleShader.bind();
+        GL30.glUniform1i(downsampleShader.getUniformLocation("sceneDepth"), 0);
+        downsampleShader.unbind();
+
+        upsampleShader.bind();
+        GL30.glUniform1i(upsampleShader.getUniformLocation("sceneDepth"), 0);
+        GL30.glUniform1i(upsampleShader.getUniformLocation("particleColor"), 1);
+        GL30.glUniform1i(upsampleShader.getUniformLocation("particleDepth"), 2);
+        GL30.glUniform1f(upsampleShader.getUniformLocation("edgeThreshold"), EDGE_THRESHOLD);
+        upsampleShader.unbind();
+
+        // Empty VAO for the attribute-less fullscreen triangle
+        vaoId = GL30.glGenVertexArrays();
+    }
+
+    /** @param factor 1 (full resolution, pass disabled), 2 (half) or 4 (quarter resolution) */
+    public void setFactor(int factor)
+    {
+        if (factor != 1 && factor != 2 && factor != 4)
+            throw new IllegalArgumentException("[Error]: Offscreen particle resolution factor must be 1, 2 or 4, got " + factor);
+        this.factor = factor;
+    }
+
+    public int getFactor()
+    {
+        return factor;
+    }
+
+    public boolean isEnabled()
+    {
+        return factor > 1;
+    }
+
+    /** Width of the low resolution target, valid after begin(). */
+    public int getTargetWidth()
+    {
+        return lowWidth;
+    }
+
+    /** Height of the low resolution target, valid after begin(). */
+    public int getTargetHeight()
+    {
+        return lowHeight;
+    }
+
+    /**
+     * Prepares the low resolution depth and binds the target, particles are drawn between begin() and end().
+     * @return false when the frame is 0x0 (minimized): nothing is bound and the pass should be skipped
+     */
+    public boolean begin(int frameWidth, int frameHeight)
+    {
+        if (frameWidth <= 0 || frameHeight <= 0)
+            return false;
+        if (frameWidth != width || frameHeight != height || factor != allocatedFactor)
+            allocate(frameWidth, frameHeight);
+
+        // Frame depth (whatever was drawn before the particles) into a texture
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, sceneDepthTexture);
+        GL11.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        GL11.glViewport(0, 0, lowWidth, lowHeight);
+        GL30.glClearBufferfv(GL11.GL_COLOR, 0, TRANSPARENT);
+
+        // DOWNSAMPLE DEPTH (depth only, every texel written)
+        GL30.glBindVertexArray(vaoId);
+        GL11.glColorMask(false, false, false, false);
+        GL11.glDepthFunc(GL11.GL_ALWAYS);
+        GL11.glDepthMask(true);
+        downsampleShader.bind();
+        GL30.glUniform1i(downsampleFactorLocation, factor);
+        GL45.glBindTextureUnit(0, sceneDepthTexture);
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, 3);
+        downsampleShader.unbind();
+        GL11.glDepthFunc(GL11.GL_LESS);
+        GL11.glColorMask(true, true, true, true);
+        GL30.glBindVertexArray(0);
+
+        // Premultiplied accumulation: color as usual, alpha as coverage
+        GL14.glBlendFuncSeparate(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA, GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        return true;
+    }
+
+    /** Composites the particles back over the frame and restores the frame's viewport and blending. */
+    public void end()
+    {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+        GL11.glViewport(0, 0, width, height);
+
+        GL11.glDisable(GL11.GL_DEPTH_TEST);
+        GL11.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        GL30.glBindVertexArray(vaoId);
+        upsampleShader.bind();
+        GL45.glBindTextureUnit(0, sceneDepthTexture);
+        GL45.glBindTextureUnit(1, colorTexture);
+        GL45.glBindTextureUnit(2, depthTexture);
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, 3);
+        upsampleShader.unbind();
+        GL30.glBindVertexArray(0);
+
+        GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        GL11.glEnable(GL11.GL_DEPTH_TEST);
+    }
+
+    private void allocate(int frameWidth, int frameHeight)
+    {
+        release();
+        width = frameWidth;
+        height = frameHeight;
+        allocatedFactor = factor;
+        lowWidth = Math.max(1, width / factor);
+        lowHeight = Math.max(1, height / factor);
+
+        sceneDepthTexture = createTexture(GL30.GL_DEPTH_COMPONENT32F, width, height);
+        colorTexture = createTexture(GL30.GL_RGBA16F, lowWidth, lowHeight);
+        depthTexture = createTexture(GL30.GL_DEPTH_COMPONENT32F, lowWidth, lowHeight);
+
+        framebuffer = GL45.glCreateFramebuffers();
+        GL45.glNamedFramebufferTexture(framebuffer, GL30.GL_COLOR_ATTACHMENT0, colorTexture, 0);
+        GL45.glNamedFramebufferTexture(framebuffer, GL30.GL_DEPTH_ATTACHMENT, depthTexture, 0);
+        if (GL45.glCheckNamedFramebufferStatus(framebuffer, GL30.GL_FRAMEBUFFER) != GL30.GL_FRAMEBUFFER_COMPLETE)
+            System.out.println("[ERROR]: Offscreen particle framebuffer is incomplete");
+        System.out.println("[INFO]: Offscreen particle target " + lowWidth + "x" + lowHeight + " (1/" + factor + " of " + width + "x" + height + ")");
+    }
+
+    private static int createTexture(int internalFormat, int width, int height)
+    {
+        int texture = GL45.glCreateTextures(GL11.GL_TEXTURE_2D);
+        GL45.glTextureStorage2D(texture, 1, internalFormat, width, height);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_WRAP_S, GL30.GL_CLAMP_TO_EDGE);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_WRAP_T, GL30.GL_CLAMP_TO_EDGE);
+        return texture;
+    }
+
+    private void release()
+    {
+        if (framebuffer == 0)
+            return;
+        GL30.glDeleteFramebuffers(framebuffer);
+        GL11.glDeleteTextures(new int[]{sceneDepthTexture, colorTexture, depthTexture});
+        framebuffer = 0;
+    }
+
+    public void cleanup()
+    {
+        release();
+        GL30.glDeleteVertexArrays(vaoId);
+        downsampleShader.cleanup();
+        upsampleShader.cleanup();
+    }
+}
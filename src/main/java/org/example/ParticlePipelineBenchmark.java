@@ -0,0 +1,80 @@
+package org.example;
+
+/**
+ * Runs the separate and fused particle compute pipelines back to back on the same workload
+ * and prints the average GPU compute time of each. Started with --benchmark-pipelines.
+ */
+public class ParticlePipelineBenchmark
+{
+    public static final int PARTICLES = 1 << 20;
+    private static final int EMITTER_GRID = 32; // 32 x 32 emitters
+    private static final float SPAWN_RATE = 128.0f;
+    private static final float MEAN_LIFE = 2000.0f;
+    private static final int WARMUP_FRAMES = 240;
+    private static final int MEASURED_FRAMES = 600;
+
+    private static final ParticleRenderer.Pipeline[] ORDER = {ParticleRenderer.Pipeline.SEPARATE, ParticleRenderer.Pipeline.FUSED};
+
+    private final ParticleRenderer renderer;
+    private final double[] averageMs = new double[ORDER.length];
+    private final long[] samples = new long[ORDER.length];
+    private int stage = 0;
+    private int frame = 0;
+
+    public ParticlePipelineBenchmark(ParticleRenderer renderer)
+    {
+        this.renderer = renderer;
+
+        // A wall of emitters in front of the camera, all at full detail so both pipelines see the same spawn load
+        EmitterRegistry emitters = renderer.getEmitters();
+        for (int x = 0; x < EMITTER_GRID; x++)
+        {
+            for (int y = 0; y < EMITTER_GRID; y++)
+            {
+                int handle = emitters.create((x - EMITTER_GRID / 2) * 2.0f, (y - EMITTER_GRID / 2) * 2.0f, 30.0f,
+                        0f, 0f, 0f, MEAN_LIFE, 1.0f, 1.0f);
+                emitters.setSpawnParameters(handle, SPAWN_RATE, EmitterRegistry.DEFAULT_RADIUS);
+            }
+        }
+        renderer.getEmitterLod().setFullDetailPixels(1.0f);
+
+        renderer.setPipeline(ORDER[0]);
+        EngineManager.engineManager.updatesToRun.add(this::update);
+    }
+
+    private void update()
+    {
+        frame++;
+        if (frame == WARMUP_FRAMES)
+            renderer.getComputeTimer().reset();
+        if (frame < WARMUP_FRAMES + MEASURED_FRAMES)
+            return;
+
+        GpuTimer timer = renderer.getComputeTimer();
+        averageMs[stage] = timer.getAverageMs();
+        samples[stage] = timer.getSamples();
+        stage++;
+        frame = 0;
+
+        if (stage < ORDER.length)
+        {
+            renderer.setPipeline(ORDER[stage]);
+            return;
+        }
+
+        report();
+        EngineManager.engineManager.stop();
+    }
+
+    private void report()
+    {
+        System.out.println("[BENCH]: Particle compute pipelines @ " + renderer.getMaxParticles() + " particles, "
+                + renderer.getEmitters().getCount() + " emitters, subgroups " + (renderer.areSubgroupsUsed() ? "on" : "off"));
+        for (int i = 0; i < ORDER.length; i++)
+        {
+            System.out.printf("[BENCH]: %-8s avg compute %.3f ms (%d samples)%n", ORDER[i], averageMs[i], samples[i]);
+        }
+        if (averageMs[1] > 0.0)
+            System.out.printf("[BENCH]: FUSED speedup x%.2f%n", averageMs[0] / averageMs[1]);
+    }
+}
@@ -0,0 +1,127 @@
+package org.example;
+
+/**
+ * Sizing policy for the particle pool.
+ *
+ * Watches the read-back particle counters and asks for twice the pool when it has been nearly full
+ * for a while, and half the pool when it has been mostly empty for much longer.
+ * Growing reacts fast so effects are not dropped, shrinking is slow, and every resize is followed by a
+ * cooldown so the pool does not oscillate around a threshold. The actual reallocation happens on the GPU
+ * in ParticleRenderer.resizePool().
+ */
+public class ParticlePool
+{
+    private int minCapacity;
+    private int maxCapacity;
+    private int budget = Integer.MAX_VALUE; // global particle budget, caps both limits
+    private final int alignment;
+
+    private float growOccupancy = 0.9f;
+    private float shrinkOccupancy = 0.25f;
+    private int growFrames = 30;
+    private int shrinkFrames = 600;
+    private int cooldownFrames = 120;
+
+    private int highFrames = 0;
+    private int lowFrames = 0;
+    private int cooldown = 0;
+
+    /**
+     * @param alignment every capacity is a multiple of this (workgroup size and instanceSize)
+     */
+    public ParticlePool(int minCapacity, int maxCapacity, int alignment)
+    {
+        this.alignment = alignment;
+        setLimits(minCapacity, maxCapacity);
+    }
+
+    /** Equal limits pin the pool to a fixed size. */
+    public void setLimits(int minCapacity, int maxCapacity)
+    {
+        if (minCapacity <= 0 || maxCapacity < minCapacity)
+            throw new IllegalArgumentException("[Error]: Invalid particle pool limits [" + minCapacity + ", " + maxCapacity + "]");
+        this.minCapacity = align(minCapacity);
+        this.maxCapacity = align(maxCapacity);
+    }
+
+    /** Caps the pool below its limits, e.g. from the quality governor. Integer.MAX_VALUE lifts the cap. */
+    public void setBudget(int budget)
+    {
+        this.budget = budget == Integer.MAX_VALUE ? budget : Math.max(alignment, budget / alignment * alignment);
+    }
+
+    public int getBudget()
+    {
+        return budget;
+    }
+
+    /** @return the capacity the pool should have, the current one if nothing should change */
+    public int evaluate(int capacity, ParticleStats stats)
+    {
+        int maxCapacity = Math.min(this.maxCapacity, budget);
+        int minCapacity = Math.min(this.minCapacity, maxCapacity);
+        if (capacity < minCapacity)
+            return minCapacity;
+        if (capacity > maxCapacity)
+            return maxCapacity;
+        if (cooldown > 0)
+        {
+            cooldown--;
+            return capacity;
+        }
+
+        float occupancy = (float) stats.getAlive() / capacity;
+        highFrames = occupancy >= growOccupancy ? highFrames + 1 : 0;
+        lowFrames = occupancy <= shrinkOccupancy ? lowFrames + 1 : 0;
+
+        int target = capacity;
+        if (highFrames >= growFrames)
+            target = Math.min(maxCapacity, align(capacity * 2));
+        else if (lowFrames >= shrinkFrames)
+            target = Math.max(minCapacity, align(capacity / 2));
+
+        if (target != capacity)
+            resized();
+        return target;
+    }
+
+    /** Restarts the hysteresis, also called when the pool is resized from outside the policy. */
+    public void resized()
+    {
+        highFrames = 0;
+        lowFrames = 0;
+        cooldown = cooldownFrames;
+    }
+
+    public int align(int capacity)
+    {
+        return (capacity + alignment - 1) / alignment * alignment;
+    }
+
+    public int getMinCapacity()
+    {
+        return minCapacity;
+    }
+
+    public int getMaxCapacity()
+    {
+        return maxCapacity;
+    }
+
+    public void setGrowThreshold(float occupancy, int frames)
+    {
+        this.growOccupancy = occupancy;
+        this.growFrames = frames;
+    }
+
+    public void setShrinkThreshold(float occupancy, int frames)
+    {
+        this.shrinkOccupancy = occupancy;
+        this.shrinkFrames = frames;
+    }
+
+    public void setCooldownFrames(int cooldownFrames)
+    {
+        this.cooldownFrames = cooldownFrames;
+    }
+}
@@ -1,30 +1,77 @@
 package org.example;
 
+import org.example.jfr.GpuPassEvent;
+import org.example.metrics.EngineMetrics;
+import org.example.metrics.Gauge;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metric;
+import org.example.utils.FrameArena;
 import org.example.utils.Loader;
-import org.joml.Matrix4f;
+import org.example.utils.OffHeap;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.*;
-import org.lwjgl.system.MemoryStack;
 import static org.lwjgl.opengl.GL30.*;
 import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.io.IOException;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
 
 
 public class ParticleRenderer
 {
     int GROUP_SIZE = 128;
+    public static final int DEFAULT_MAX_EMITTERS = 100_000;
+    public static final int DEFAULT_MAX_PARTICLES = 16384;
+    public static final int DEFAULT_INSTANCE_SIZE = 32;
+
+    /**
+     * SEPARATE runs emit and simulate as two dispatches with the free-list stack.
+     * FUSED simulates and re-spawns into each workgroup's own dead slots in one dispatch,
+     * with one global atomic per workgroup (see particle_update_fused.glsl).
+     */
+    public enum Pipeline
+    {
+        SEPARATE,
+        FUSED
+    }
+
+    /**
+     * How particle quads are rasterized, all pulling vertices from the particle SSBO.
+     * INDEXED draws batchSize quads per instance through the quad EBO (the original path).
+     * ARRAYS draws batchSize quads per instance as 6 vertices each with no index buffer.
+     * QUAD_PER_INSTANCE draws one 4 vertex triangle strip per instance, one instance per particle.
+     * Which one is fastest depends on the driver, compare them with the raster-* benchmark scenarios.
+     */
+    public enum DrawStrategy
+    {
+        INDEXED,
+        ARRAYS,
+        QUAD_PER_INSTANCE
+    }
+
+    /**
+     * ALPHA blends with SRC_ALPHA, ONE_MINUS_SRC_ALPHA, correct only for back-to-front draw order.
+     * WEIGHTED_OIT accumulates weighted blended order-independent transparency and resolves it after the
+     * draw (see WeightedOitTarget), stable regardless of order and without a sort.
+     */
+    public enum BlendMode
+    {
+        ALPHA,
+        WEIGHTED_OIT
+    }
 
     ShaderManager shader;
     ShaderManager initializationShader;
     ShaderManager emissionShader;
     ShaderManager simulationShader;
+    ShaderManager fusedShader;
+    ShaderManager freeListRebuildShader;
+    ShaderManager poolCompactShader;
+    private int compactSourceEndLocation;
 
     // ComputeParametersBuffer (UBO)
     private int computeParametersBuffer;
@@ -36,25 +83,30 @@ public class ParticleRenderer
     private int particleIndicesBuffer;
     // ComputeStateBuffer (SSBO)
     private int computeStateBuffer;
+    // SpawnTableBuffer (SSBO), fused pipeline only
+    private int spawnTableBuffer;
 
     private int vaoId;
-    private int viewProjLocation;
     private TextureAtlas textureAtlas;
+    private final Vector2f textureOffset = new Vector2f();
     private int textureOffsetLocation;
-    private int instanceSizePerQuadLocation;
-    private int rightLocation;
-    private int upLocation;
 
     private int eboId;
-    int instanceSize = 32;
+    private int eboQuads;   // quads covered by the index buffer
+    final int instanceSize; // default quads per instance, also the pool alignment
+    private DrawStrategy drawStrategy = DrawStrategy.INDEXED;
+    private int batchSize;  // quads per instance of the current strategy
+    private int batchSizeLocation;
+    private int verticesPerQuadLocation;
     float quadHalfSize = 0.5f;
+    private int quadHalfSizeLocation;
 
     // ComputeParameters structure
     class ComputeParameters {
         int MAX_PARTICLES;
         int MAX_EMITTERS;
         int num_emitters;
-        float dt;
+        int pad; // dt is read from FrameConstants
     }
 
     // Particle structure
@@ -64,26 +116,90 @@ public class ParticleRenderer
         Vector4f lifeScaleTexture; // life, scale, texture, padding
     }
 
-    class Emitter {
-        Vector4f pos;          // xyz for position, w for padding or other use
-        Vector4f vel;          // xyz for velocity, w for padding or other use
-        Vector4f lifeTypeScale; // life, scale, texture, padding
-    }
-
     // ComputeState structure
     class ComputeState {
-        int num_particles;
-        int NEW_PARTICLES;
-        int pad;
-        int padd;
+        int num_particles;  // alive particles
+        int NEW_PARTICLES;  // free slots left on the particle_allocator_buffer stack
+        int spawned;        // per-frame counters, cleared before the compute passes
+        int freed;
+        int spawn_cursor;
+        int[] pad = new int[3];
     }
+    static final int COMPUTE_STATE_SIZE = 32;
+    static final int PARTICLE_STRUCT_SIZE = 48;
+    private static final int[] ZERO = {0}; // clear value for GL_R32UI buffer clears
 
     ComputeParameters computeParams;
+    private final ByteBuffer computeParamsData = BufferUtils.createByteBuffer(16);
+    private int uploadedEmitterCount = -1;
+
+    // Emitters are owned on the CPU by the registry, only dirty ranges reach emitterBuffer
+    private final EmitterRegistry emitters;
+    private final EmitterLod emitterLod;
+    private final int maxWorkGroupsX; // GL only guarantees 65535, fewer than the emitters a registry can hold
+    private final ByteBuffer spawnTableData;
+
+    private Pipeline pipeline = Pipeline.SEPARATE;
+    private boolean freeListStale = false;
+    private final boolean subgroupsSupported;
+    private final GpuTimer computeTimer;
+    private final GpuTimer rasterTimer;
+    private final OffscreenParticleTarget offscreenTarget;
+    private final WeightedOitTarget oitTarget;
+    private BlendMode blendMode = BlendMode.ALPHA;
+    private int weightedOitLocation;
+
+    // Hi-Z occlusion culling of the instances (chunks of batchSize particles)
+    private final ShaderManager chunkCullShader;
+    private final int[] chunkCullHiZLocations;
+    private final int chunkCountLocation;
+    private final int chunkSizeLocation;
+    private final int quadRadiusLocation;
+    private final int chunkCullingLocation;
+    private final int visibleChunkBuffer;
+    private final int drawCommandBuffer;
+    private final int[] drawCommand = new int[5];
+    private int visibleChunkCapacity = 0;
+    private boolean occlusionCulling = true;
+    private final ParticleSnapshot snapshot;
+    private final ParticleStats stats;
+    private final ParticlePool pool;
+    private Path pendingSnapshotPath;
+
+    // Per-effect metrics, labelled with the order renderers were created in
+    private static int effectCount = 0;
+    private final Gauge aliveMetric;
+    private final Gauge capacityMetric;
+    private final Histogram computeMetric;
+    private final Histogram rasterMetric;
+    private long computeSamples = 0;
+    private long rasterSamples = 0;
+
+    private final Runnable renderCall = this::render;
+    private final Runnable cleanupCall = this::cleanup;
 
     public ParticleRenderer() throws Exception
     {
-        //Renderer.renderer.renderables.add(this::render);
-        Renderer.renderer.cleanupCalls.add(this::cleanup);
+        this(DEFAULT_MAX_PARTICLES);
+    }
+
+    public ParticleRenderer(int maxParticles) throws Exception
+    {
+        this(maxParticles, DEFAULT_MAX_EMITTERS, DEFAULT_INSTANCE_SIZE);
+    }
+
+    /**
+     * @param maxParticles initial particle pool size, a multiple of instanceSize. The pool stays at this
+     *                     size unless its limits are widened through getPool().setLimits()
+     * @param maxEmitters  emitter registry and SSBO capacity
+     * @param instanceSize quads drawn per instance
+     */
+    public ParticleRenderer(int maxParticles, int maxEmitters, int instanceSize) throws Exception
+    {
+        this.instanceSize = instanceSize;
+        this.batchSize = instanceSize;
+        Renderer.renderer.renderables.add(renderCall);
+        Renderer.renderer.cleanupCalls.add(cleanupCall);
 
 
         // Initialize Shaders
@@ -91,37 +207,74 @@ public class ParticleRenderer
         initializationShader = new ShaderManager();
         emissionShader = new ShaderManager();
         simulationShader = new ShaderManager();
+        fusedShader = new ShaderManager();
+        freeListRebuildShader = new ShaderManager();
+        poolCompactShader = new ShaderManager();
 
         shader.createVertexShader(Loader.loadShader("/shaders/vertex.glsl"));
         shader.createFragmentShader(Loader.loadShader("/shaders/fragment.glsl"));
         shader.link();
 
         // SETUP BUFFERS
-        initializationShader.createComputeShader(Loader.loadShader("/shaders/particle_emit.glsl"));
+        initializationShader.createComputeShader(Loader.loadShader("/shaders/particle_init.glsl"));
         initializationShader.link();
 
         // COMPUTE EMISSION
-        emissionShader.createComputeShader(Loader.loadShader("/shaders/particle_init.glsl"));
+        emissionShader.createComputeShader(Loader.loadShader("/shaders/particle_emit.glsl"));
         emissionShader.link();
 
         // SIMULATION
         simulationShader.createComputeShader(Loader.loadShader("/shaders/particle_simulate.glsl"));
         simulationShader.link();
 
-        // VERTEX UNIFORMS
-        instanceSizePerQuadLocation = shader.getUniformLocation("instanceSize");
+        // FUSED SIMULATION + EMISSION (subgroup-aggregated atomics where the driver has them)
+        subgroupsSupported = areSubgroupsSupported();
+        fusedShader.createComputeShader(subgroupsSupported
+                ? Loader.loadShader("/shaders/particle_update_fused.glsl", "USE_SUBGROUPS")
+                : Loader.loadShader("/shaders/particle_update_fused.glsl"));
+        fusedShader.link();
+
+        // FREE LIST REBUILD (when switching back to the separate pipeline)
+        freeListRebuildShader.createComputeShader(Loader.loadShader("/shaders/particle_free_rebuild.glsl"));
+        freeListRebuildShader.link();
+
+        // HI-Z CHUNK CULLING
+        chunkCullShader = new ShaderManager();
+        chunkCullShader.createComputeShader(Loader.loadShader("/shaders/hiz_cull_particles.glsl"));
+        chunkCullShader.link();
+        chunkCullHiZLocations = HiZPyramid.getUniformLocations(chunkCullShader);
+        chunkCountLocation = chunkCullShader.getUniformLocation("chunkCount");
+        chunkSizeLocation = chunkCullShader.getUniformLocation("chunkSize");
+        quadRadiusLocation = chunkCullShader.getUniformLocation("quadRadius");
+        visibleChunkBuffer = GL15.glGenBuffers();
+        drawCommandBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(drawCommandBuffer, drawCommand.length * Integer.BYTES, GL44.GL_DYNAMIC_STORAGE_BIT);
+
+        // POOL COMPACTION (moves live particles down before the pool shrinks)
+        poolCompactShader.createComputeShader(Loader.loadShader("/shaders/particle_pool_compact.glsl"));
+        poolCompactShader.link();
+        compactSourceEndLocation = poolCompactShader.getUniformLocation("sourceEnd");
+
+        // VERTEX UNIFORMS (camera and matrices come from the shared FrameConstants block)
+        batchSizeLocation = shader.getUniformLocation("instanceSize");
+        verticesPerQuadLocation = shader.getUniformLocation("verticesPerQuad");
+        weightedOitLocation = shader.getUniformLocation("weightedOit");
+        quadHalfSizeLocation = shader.getUniformLocation("quadHalfSize");
+        chunkCullingLocation = shader.getUniformLocation("chunkCulling");
         int textureAtlasUniformLocation = shader.getUniformLocation("atlasHandle");
         int textureSizeLocation = shader.getUniformLocation("textureSize");
         textureOffsetLocation = shader.getUniformLocation("textureOffset");
-        viewProjLocation = shader.getUniformLocation("projViewMatrix");
-        rightLocation = shader.getUniformLocation("right");
-        upLocation = shader.getUniformLocation("up");
 
         shader.bind();
         // Setup bind-less texture atlas
         textureAtlas = new TextureAtlas("/textures/particle_atlas.png", textureAtlasUniformLocation, 32);
         // Upload texture size
         glUniform2f(textureSizeLocation, textureAtlas.getTextureSizeX(), textureAtlas.getTextureSizeY());
+        // Changed only by setDrawStrategy()
+        glUniform1i(batchSizeLocation, batchSize);
+        glUniform1i(verticesPerQuadLocation, 4);
+        glUniform1i(weightedOitLocation, 0);
+        glUniform1f(quadHalfSizeLocation, quadHalfSize);
         shader.unbind();
 
         // Dummy VAO
@@ -132,31 +285,7 @@ public class ParticleRenderer
 
         //Ebo
         eboId = glGenBuffers();
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
-
-        // Generate indices for quads
-        int[] indices = new int[instanceSize * 6]; // 6 indices per quad, 32 quads per instance
-        int count = 0;
-
-        for (int i = 0; i < instanceSize; i++) {
-            // Each quad has 4 vertices, so indices need to point to 4 unique vertices
-            int baseIndex = i * 4;
-
-            // First triangle of the quad
-            indices[count++] = baseIndex;
-            indices[count++] = baseIndex + 1;
-            indices[count++] = baseIndex + 2;
-
-            // Second triangle of the quad
-            indices[count++] = baseIndex + 1;
-            indices[count++] = baseIndex + 3;
-            indices[count++] = baseIndex + 2;
-        }
-
-        IntBuffer indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-        indicesBuffer.put(indices);
-        indicesBuffer.flip();
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+        uploadQuadIndices(instanceSize);
 
         // Don't forget to bind your VAO and associate the EBO with it
         glBindVertexArray(vaoId);
@@ -170,36 +299,33 @@ public class ParticleRenderer
         emitterBuffer = GL15.glGenBuffers();
         particleIndicesBuffer = GL15.glGenBuffers();
         computeStateBuffer = GL15.glGenBuffers();
+        spawnTableBuffer = GL15.glGenBuffers();
+        computeTimer = new GpuTimer();
+        rasterTimer = new GpuTimer();
+        offscreenTarget = new OffscreenParticleTarget();
+        oitTarget = new WeightedOitTarget();
 
         // INITIALIZE COMPUTE PARAMETERS
+        emitters = new EmitterRegistry(maxEmitters);
+        maxWorkGroupsX = GL30.glGetIntegeri(GL43.GL_MAX_COMPUTE_WORK_GROUP_COUNT, 0);
+        emitterLod = new EmitterLod(emitters);
+        emitters.setListener(emitterLod);
         computeParams = new ComputeParameters();
-        computeParams.MAX_PARTICLES = 16384;
-        computeParams.MAX_EMITTERS = 1;
-        computeParams.dt = 0.0f;
+        computeParams.MAX_PARTICLES = maxParticles;
+        computeParams.MAX_EMITTERS = emitters.getCapacity();
         computeParams.num_emitters = 0;
 
-        ByteBuffer cpBuffer = BufferUtils.createByteBuffer(16);
-        cpBuffer.order(ByteOrder.nativeOrder());
-        cpBuffer.putInt(computeParams.MAX_PARTICLES);
-        cpBuffer.putInt(computeParams.MAX_EMITTERS);
-        cpBuffer.putInt(computeParams.num_emitters);
-        cpBuffer.putFloat(computeParams.dt);
-        cpBuffer.flip();
-
-        // Upload to the uniform buffer
-        GL43.glBindBuffer(GL43.GL_UNIFORM_BUFFER, computeParametersBuffer);
-        GL43.glBufferSubData(GL43.GL_UNIFORM_BUFFER, 0, cpBuffer);
-        GL43.glBindBuffer(GL43.GL_UNIFORM_BUFFER, 0);
+        GL15.glBindBuffer(GL43.GL_UNIFORM_BUFFER, computeParametersBuffer);
+        GL15.glBufferData(GL43.GL_UNIFORM_BUFFER, 16, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL43.GL_UNIFORM_BUFFER, 0);
+        uploadComputeParameters();
 
 
-       /* // INITIALIZE PARTICLE BUFFER
-        int maxParticles = computeParams.MAX_PARTICLES;
-        int particleStructSize = 48; // 48 bytes per particle
-
-        // [TODO] save and load particles here
-
+        // INITIALIZE PARTICLE BUFFER
         GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, particleBuffer);
-        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) maxParticles * particleStructSize, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) maxParticles * PARTICLE_STRUCT_SIZE, GL15.GL_DYNAMIC_DRAW);
+        // Zeroed life marks every slot dead
+        GL43.glClearBufferData(GL43.GL_SHADER_STORAGE_BUFFER, GL30.GL_R32UI, GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_INT, ZERO);
         GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
 
 
@@ -212,23 +338,26 @@ public class ParticleRenderer
 
 
         // INITIALIZE EMITTER BUFFER
-        int maxEmitters = computeParams.MAX_EMITTERS;
-        int emitterStructSize = 48; // 48 bytes per particle
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, emitterBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) maxEmitters * EmitterRegistry.EMITTER_STRUCT_SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
 
-        // [TODO] save and load particles here
 
-        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, emitterBuffer);
-        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) maxEmitters * emitterStructSize, GL15.GL_DYNAMIC_DRAW);
+        // INITIALIZE SPAWN TABLE BUFFER (16 byte header + one uvec2 per visible emitter)
+        spawnTableData = OffHeap.alloc(16 + maxEmitters * 8);
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, spawnTableBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, spawnTableData.capacity(), GL15.GL_DYNAMIC_DRAW);
         GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
 
 
         // INITIALIZE COMPUTE STATE BUFFER
         ComputeState computeState = new ComputeState();
         computeState.num_particles = 0;
-        computeState.NEW_PARTICLES = 0;
+        computeState.NEW_PARTICLES = maxParticles; // every slot starts on the free stack
 
-        IntBuffer computeStateData = BufferUtils.createIntBuffer(4);
-        computeStateData.put(new int[]{computeState.num_particles, computeState.NEW_PARTICLES, 0, 0});
+        IntBuffer computeStateData = BufferUtils.createIntBuffer(COMPUTE_STATE_SIZE / 4);
+        computeStateData.put(new int[]{computeState.num_particles, computeState.NEW_PARTICLES, 0, 0, 0, 0, 0, 0});
         computeStateData.flip();
 
         GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, computeStateBuffer);
@@ -241,158 +370,635 @@ public class ParticleRenderer
         GL30.glBindBufferBase(GL43.GL_UNIFORM_BUFFER, 0, computeParametersBuffer);
         GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 3, particleIndicesBuffer);
 
-        GL43.glDispatchCompute(computeParams.MAX_PARTICLES / GROUP_SIZE, 1, 1);
+        GL43.glDispatchCompute(ceilDiv(computeParams.MAX_PARTICLES, GROUP_SIZE), 1, 1);
         GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
 
-        initializationShader.unbind();*/
-    }
+        initializationShader.unbind();
 
-    public void render()
-    {
+        // Checkpoints of the buffers above, see captureSnapshot() / restoreSnapshot()
+        snapshot = new ParticleSnapshot(this, emitters);
+        stats = new ParticleStats(maxParticles);
+        // Pool sizes stay multiples of both the workgroup size and instanceSize (both powers of two)
+        pool = new ParticlePool(maxParticles, maxParticles, Math.max(GROUP_SIZE, instanceSize));
 
-        // UPDATE EMITTERS ON CPU
+        String effect = "effect=\"" + effectCount++ + "\"";
+        aliveMetric = EngineMetrics.registry.gauge("particles_alive", effect, "Live particles, read back a few frames late");
+        capacityMetric = EngineMetrics.registry.gauge("particles_capacity", effect, "Particle pool size");
+        computeMetric = EngineMetrics.registry.histogram("gpu_pass_ms", effect + ",pass=\"particle_compute\"", "GPU time of a render pass", Histogram.FRAME_MS);
+        rasterMetric = EngineMetrics.registry.histogram("gpu_pass_ms", effect + ",pass=\"particle_raster\"", "GPU time of a render pass", Histogram.FRAME_MS);
+    }
 
-        Emitter[] emitters = new Emitter[computeParams.MAX_EMITTERS];
-        for (int i = 0; i < computeParams.MAX_EMITTERS; i++) {
-            Emitter e = new Emitter();
-            e.pos = new Vector4f(0f);
-            e.vel = new Vector4f(0f);
-            e.lifeTypeScale = new Vector4f(100.0f, 1.0f, 1.0f, 1.0f);
-            emitters[i] = e;
+    // Timer results arrive a few frames late, each one is recorded once
+    private void recordMetrics()
+    {
+        aliveMetric.set(stats.getAlive());
+        capacityMetric.set(computeParams.MAX_PARTICLES);
+        if (computeTimer.getSamples() != computeSamples)
+        {
+            computeSamples = computeTimer.getSamples();
+            computeMetric.observe(computeTimer.getLastMs());
+            GpuPassEvent.record("particle_compute", computeTimer.getLastMs());
         }
+        if (rasterTimer.getSamples() != rasterSamples)
+        {
+            rasterSamples = rasterTimer.getSamples();
+            rasterMetric.observe(rasterTimer.getLastMs());
+            GpuPassEvent.record("particle_raster", rasterTimer.getLastMs());
+        }
+    }
 
+    // Index buffer covering the given number of quads, two triangles over 4 pulled vertices each.
+    // Written straight into frame scratch, the driver copies it before glBufferData returns
+    private void uploadQuadIndices(int quads)
+    {
+        IntBuffer indicesBuffer = FrameArena.arena.mallocInt(quads * 6); // 6 indices per quad
+        for (int i = 0; i < quads; i++) {
+            // Each quad has 4 vertices, so indices need to point to 4 unique vertices
+            int baseIndex = i * 4;
 
-        // UPDATE COMPUTE PARAMETERS
-        computeParams.dt = EngineManager.getDeltaTime();
-        computeParams.num_emitters = 1;
-
-
-        GL30.glBindBufferBase(GL43.GL_UNIFORM_BUFFER, 0, computeParametersBuffer);
-        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 1, computeStateBuffer);
-        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, particleBuffer);
-        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 3, particleIndicesBuffer);
-        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 4, emitterBuffer); // uploaded each frame [TODO] NOT DO THAT IMPLEMENT EMITTERS ON GPU?
-
-
-/*        // Create a ByteBuffer with std140 layout (16 bytes for ComputeParameters)
-        ByteBuffer cpBuffer = BufferUtils.createByteBuffer(16);
-        cpBuffer.order(ByteOrder.nativeOrder());
-        cpBuffer.putInt(computeParams.MAX_PARTICLES);
-        cpBuffer.putInt(computeParams.MAX_EMITTERS);
-        cpBuffer.putInt(computeParams.num_emitters);
-        cpBuffer.putFloat(computeParams.dt);
-        cpBuffer.flip();
-
-        GL43.glBindBuffer(GL43.GL_UNIFORM_BUFFER, computeParametersBuffer);
-        GL43.glBufferSubData(GL43.GL_UNIFORM_BUFFER, 0, cpBuffer);
-        GL43.glBindBuffer(GL43.GL_UNIFORM_BUFFER, 0);
-
+            // First triangle of the quad
+            indicesBuffer.put(baseIndex).put(baseIndex + 1).put(baseIndex + 2);
 
-        int emitterSize = 16 * 3; // 3 vec4s per emitter
-        ByteBuffer emitterBufferData = BufferUtils.createByteBuffer(computeParams.MAX_EMITTERS * emitterSize);
-        emitterBufferData.order(ByteOrder.nativeOrder());
+            // Second triangle of the quad
+            indicesBuffer.put(baseIndex + 1).put(baseIndex + 3).put(baseIndex + 2);
+        }
+        indicesBuffer.flip();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+        eboQuads = quads;
+    }
 
-        for (Emitter e : emitters) {
-            emitterBufferData.putFloat(e.pos.x).putFloat(e.pos.y).putFloat(e.pos.z).putFloat(e.pos.w);
-            // vel
-            emitterBufferData.putFloat(e.vel.x).putFloat(e.vel.y).putFloat(e.vel.z).putFloat(e.vel.w);
-            // lifeTypeScale
-            emitterBufferData.putFloat(e.lifeTypeScale.x).putFloat(e.lifeTypeScale.y)
-                    .putFloat(e.lifeTypeScale.z).putFloat(e.lifeTypeScale.w);
+    private static boolean areSubgroupsSupported()
+    {
+        if (!GL.getCapabilities().GL_KHR_shader_subgroup)
+            return false;
+        int stages = GL11.glGetInteger(KHRShaderSubgroup.GL_SUBGROUP_SUPPORTED_STAGES_KHR);
+        int features = GL11.glGetInteger(KHRShaderSubgroup.GL_SUBGROUP_SUPPORTED_FEATURES_KHR);
+        int required = KHRShaderSubgroup.GL_SUBGROUP_FEATURE_BASIC_BIT_KHR | KHRShaderSubgroup.GL_SUBGROUP_FEATURE_BALLOT_BIT_KHR;
+        return (stages & GL43.GL_COMPUTE_SHADER_BIT) != 0 && (features & required) == required;
+    }
 
-        } emitterBufferData.flip();
+    private void uploadComputeParameters()
+    {
+        computeParamsData.clear();
+        computeParamsData.putInt(computeParams.MAX_PARTICLES);
+        computeParamsData.putInt(computeParams.MAX_EMITTERS);
+        computeParamsData.putInt(computeParams.num_emitters);
+        computeParamsData.putInt(computeParams.pad);
+        computeParamsData.flip();
+
+        GL15.glBindBuffer(GL43.GL_UNIFORM_BUFFER, computeParametersBuffer);
+        GL15.glBufferSubData(GL43.GL_UNIFORM_BUFFER, 0, computeParamsData);
+        EngineMetrics.UPLOAD_BYTES.add(16);
+        GL15.glBindBuffer(GL43.GL_UNIFORM_BUFFER, 0);
+    }
 
-        // Upload to the SSBO
-        GL43.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, emitterBuffer);
-        GL43.glBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, emitterBufferData);
-        GL43.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+    public void render()
+    {
+        snapshot.poll();
+
+        // RESIZE THE POOL (policy reads the lagging counters, the copy itself stays on the GPU)
+        int poolSize = pool.evaluate(computeParams.MAX_PARTICLES, stats);
+        if (poolSize != computeParams.MAX_PARTICLES)
+            resizePool(poolSize);
+
+        // UPDATE COMPUTE PARAMETERS (only the emitter count changes at runtime)
+        computeParams.num_emitters = emitters.getCount();
+        if (computeParams.num_emitters != uploadedEmitterCount)
+        {
+            uploadComputeParameters();
+            uploadedEmitterCount = computeParams.num_emitters;
+        }
 
-        emissionShader.bind();
-        GL43.glDispatchCompute((int)Math.ceil(1.0 / GROUP_SIZE) , 1, 1); // only 1 emitter hardcoded currently
-        GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
-        emissionShader.unbind();
+        bindComputeBuffers();
 
+        // EMITTER LOD (frustum culling, spawn rate and size by screen coverage)
+        emitterLod.update(Renderer.renderer.getProjViewMatrix(), Camera.camera.getPosition(), Main.getWindow().getHeight());
 
-        simulationShader.bind();
-        GL43.glDispatchCompute(computeParams.MAX_PARTICLES / GROUP_SIZE, 1, 1);
-        GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
-        simulationShader.unbind();*/
+        // UPLOAD EMITTERS TO GPU (dirty ranges only)
+        emitters.upload(emitterBuffer);
 
+        // Per-frame counters (spawned, freed, spawn_cursor) start from zero
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, computeStateBuffer);
+        GL43.glClearBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, GL30.GL_R32UI, 8, 12, GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_INT, ZERO);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
 
+        computeTimer.begin();
+        if (pipeline == Pipeline.FUSED)
+        {
+            // SIMULATE + EMIT in one pass
+            buildSpawnTable();
+            GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 5, spawnTableBuffer);
+
+            fusedShader.bind();
+            GL43.glDispatchCompute(ceilDiv(computeParams.MAX_PARTICLES, GROUP_SIZE), 1, 1);
+            GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+            fusedShader.unbind();
+        }
+        else
+        {
+            if (freeListStale)
+                rebuildFreeList();
+
+            // EMIT PARTICLES (one workgroup per active emitter, rows of them past the x limit)
+            if (computeParams.num_emitters > 0)
+            {
+                emissionShader.bind();
+                int groupsX = Math.min(computeParams.num_emitters, maxWorkGroupsX);
+                GL43.glDispatchCompute(groupsX, ceilDiv(computeParams.num_emitters, groupsX), 1);
+                GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+                emissionShader.unbind();
+            }
+
+            // UPDATE PARTICLES
+            simulationShader.bind();
+            GL43.glDispatchCompute(ceilDiv(computeParams.MAX_PARTICLES, GROUP_SIZE), 1, 1);
+            GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+            simulationShader.unbind();
+        }
+        computeTimer.end();
 
-        // UPLOAD EMITTERS TO GPU
+        // STATISTICS (read back a few frames later, never waited on)
+        stats.capture(computeStateBuffer);
+        recordMetrics();
 
-        // EMIT PARTICLES
+        // CHECKPOINT (copies are queued behind the compute passes, written to disk off-thread)
+        if (pendingSnapshotPath != null && snapshot.capture(pendingSnapshotPath, computeParams.MAX_PARTICLES, pipeline == Pipeline.FUSED || freeListStale))
+            pendingSnapshotPath = null;
 
-        // UPDATE PARTICLES
+        // OCCLUSION CULLING (chunks hidden behind this frame's opaque depth are not drawn)
+        boolean culled = occlusionCulling && Renderer.renderer.getHiZPyramid().isBuiltThisFrame();
+        if (culled)
+            cullChunks();
 
         // RASTERIZE PARTICLES
 
+        rasterTimer.begin();
+        WindowManager window = Main.getWindow();
+        if (offscreenTarget.isEnabled() && !offscreenTarget.begin(window.getWidth(), window.getHeight()))
+        {
+            rasterTimer.end();
+            return;
+        }
+        if (blendMode == BlendMode.WEIGHTED_OIT)
+        {
+            boolean bound = offscreenTarget.isEnabled()
+                    ? oitTarget.begin(offscreenTarget.getTargetWidth(), offscreenTarget.getTargetHeight())
+                    : oitTarget.begin(window.getWidth(), window.getHeight());
+            if (!bound)
+            {
+                rasterTimer.end();
+                return;
+            }
+        }
 
         glDepthMask(false);
 
         shader.bind();
         glBindVertexArray(vaoId); // Empty dummy VAO
         GL45.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+        textureAtlas.bind();
 
-        // UNIFORMS
-        Matrix4f viewMatrix = Camera.camera.getViewMatrix();
-        Matrix4f viewProjMatrix = Renderer.renderer.getProjViewMatrix();
-        // Calculate the right and up vectors for billboarding
-        Vector3f right = new Vector3f(viewMatrix.m00(), viewMatrix.m10(), viewMatrix.m20()).mul(quadHalfSize);
-        Vector3f up = new Vector3f(viewMatrix.m01(), viewMatrix.m11(), viewMatrix.m21()).mul(quadHalfSize);
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            // Load and set the view-projection matrix
-            FloatBuffer viewProjBuffer = stack.mallocFloat(16);
-            viewProjMatrix.get(viewProjBuffer);
-            glUniformMatrix4fv(viewProjLocation, false, viewProjBuffer);
-
-            // Load and set the right and up vectors
-            FloatBuffer rightBuffer = stack.mallocFloat(3);
-            rightBuffer.put(new float[]{right.x, right.y, right.z}).flip();
-            glUniform3fv(rightLocation, rightBuffer);
-
-            FloatBuffer upBuffer = stack.mallocFloat(3);
-            upBuffer.put(new float[]{up.x, up.y, up.z}).flip();
-            glUniform3fv(upLocation, upBuffer);
-        }
-
-        // select texture
-        long timeInMs = System.currentTimeMillis();
-        double timeInSeconds = timeInMs / 100.0;
+        // select texture (driven by simulated time so recorded runs replay identically)
+        double timeInSeconds = Renderer.renderer.getTime() / 100.0;
         double sinValue = Math.sin(timeInSeconds);
         int min = 0;
         int max = 16;
         int sineWaveRange = (int) ((sinValue + 1) / 2 * (max - min) + min);
 
-        Vector2f textOff = textureAtlas.getTextureOffset(sineWaveRange);
+        Vector2f textOff = textureAtlas.getTextureOffset(sineWaveRange, textureOffset);
         // upload texture choice
         glUniform2f(textureOffsetLocation, textOff.x, textOff.y);
-        glUniform1i(instanceSizePerQuadLocation, instanceSize);
 
 
         // BIND PARTICLE POSITIONS
         GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, particleBuffer);
-        GL45.glDrawElementsInstanced(GL_TRIANGLES, instanceSize * 6, GL_UNSIGNED_INT, 0, computeParams.MAX_PARTICLES / instanceSize);
+        glUniform1i(chunkCullingLocation, culled ? 1 : 0);
+        if (culled)
+        {
+            // Same draws with the instance count written by the culling pass
+            GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 9, visibleChunkBuffer);
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, drawCommandBuffer);
+            switch (drawStrategy)
+            {
+                case INDEXED:
+                    GL40.glDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, 0);
+                    break;
+                case ARRAYS:
+                    GL40.glDrawArraysIndirect(GL_TRIANGLES, 0);
+                    break;
+                case QUAD_PER_INSTANCE:
+                    GL40.glDrawArraysIndirect(GL_TRIANGLE_STRIP, 0);
+                    break;
+            }
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+        }
+        else switch (drawStrategy)
+        {
+            case INDEXED:
+                GL45.glDrawElementsInstanced(GL_TRIANGLES, batchSize * 6, GL_UNSIGNED_INT, 0, computeParams.MAX_PARTICLES / batchSize);
+                break;
+            case ARRAYS:
+                GL45.glDrawArraysInstanced(GL_TRIANGLES, 0, batchSize * 6, computeParams.MAX_PARTICLES / batchSize);
+                break;
+            case QUAD_PER_INSTANCE:
+                GL45.glDrawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, computeParams.MAX_PARTICLES);
+                break;
+        }
 
         glBindVertexArray(0);
 
         shader.unbind();
         glDepthMask(true);
+
+        if (blendMode == BlendMode.WEIGHTED_OIT)
+            oitTarget.end();
+        if (offscreenTarget.isEnabled())
+            offscreenTarget.end();
+        rasterTimer.end();
+    }
+
+    // Appends the visible chunks to visibleChunkBuffer and counts them in the draw command's instanceCount
+    private void cullChunks()
+    {
+        int chunks = computeParams.MAX_PARTICLES / batchSize;
+        if (chunks > visibleChunkCapacity)
+        {
+            visibleChunkCapacity = chunks;
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, visibleChunkBuffer);
+            GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) chunks * Integer.BYTES, GL15.GL_DYNAMIC_DRAW);
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+        }
+
+        // Elements: count, instanceCount, firstIndex, baseVertex, baseInstance; arrays: count, instanceCount, first, baseInstance
+        drawCommand[0] = drawStrategy == DrawStrategy.QUAD_PER_INSTANCE ? 4 : batchSize * 6;
+        GL45.glNamedBufferSubData(drawCommandBuffer, 0, drawCommand);
+        EngineMetrics.UPLOAD_BYTES.add(drawCommand.length * Integer.BYTES);
+
+        chunkCullShader.bind();
+        Renderer.renderer.getHiZPyramid().bind(chunkCullHiZLocations);
+        GL30.glUniform1ui(chunkCountLocation, chunks);
+        GL30.glUniform1ui(chunkSizeLocation, batchSize);
+        glUniform1f(quadRadiusLocation, quadHalfSize * (float) Math.sqrt(2.0));
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, particleBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 9, visibleChunkBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 10, drawCommandBuffer);
+        GL43.glDispatchCompute(ceilDiv(chunks, 64), 1, 1);
+        GL43.glMemoryBarrier(GL43.GL_COMMAND_BARRIER_BIT | GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+        chunkCullShader.unbind();
+    }
+
+    /** Hi-Z occlusion culling of particle chunks, on by default; only active in frames with opaque geometry. */
+    public void setOcclusionCulling(boolean occlusionCulling)
+    {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    public boolean isOcclusionCulling()
+    {
+        return occlusionCulling;
+    }
+
+    private void bindComputeBuffers()
+    {
+        GL30.glBindBufferBase(GL43.GL_UNIFORM_BUFFER, 0, computeParametersBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 1, computeStateBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, particleBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 3, particleIndicesBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 4, emitterBuffer);
+    }
+
+    /**
+     * Reallocates the particle and allocator buffers for a new pool size without touching the CPU.
+     * Live particles are copied with glCopyBufferSubData; when shrinking, live particles above the new
+     * size are first moved into free slots below it. The free-list stack and alive count are rebuilt
+     * afterwards, dispatch and draw sizes follow MAX_PARTICLES from the next pass on.
+     */
+    public void resizePool(int maxParticles)
+    {
+        int oldMaxParticles = computeParams.MAX_PARTICLES;
+        if (maxParticles == oldMaxParticles)
+            return;
+
+        GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT | GL43.GL_BUFFER_UPDATE_BARRIER_BIT);
+        computeParams.MAX_PARTICLES = maxParticles;
+        uploadComputeParameters();
+        bindComputeBuffers();
+
+        if (maxParticles < oldMaxParticles)
+        {
+            // Free slots below the new size, then pull the survivors down into them
+            rebuildFreeList();
+            poolCompactShader.bind();
+            GL30.glUniform1ui(compactSourceEndLocation, oldMaxParticles);
+            GL43.glDispatchCompute(ceilDiv(oldMaxParticles - maxParticles, GROUP_SIZE), 1, 1);
+            GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT | GL43.GL_BUFFER_UPDATE_BARRIER_BIT);
+            poolCompactShader.unbind();
+        }
+
+        int kept = Math.min(maxParticles, oldMaxParticles);
+        particleBuffer = reallocate(particleBuffer, (long) kept * PARTICLE_STRUCT_SIZE, (long) maxParticles * PARTICLE_STRUCT_SIZE);
+        particleIndicesBuffer = reallocate(particleIndicesBuffer, (long) kept * 4, (long) maxParticles * 4);
+        bindComputeBuffers();
+
+        // New slots arrive zeroed (dead), push them onto the stack
+        if (maxParticles > oldMaxParticles)
+            rebuildFreeList();
+
+        pool.resized();
+        stats.setCapacity(maxParticles);
+        System.out.println("[INFO]: Particle pool resized " + oldMaxParticles + " -> " + maxParticles);
+    }
+
+    // New buffer of newSize bytes holding the first keptSize bytes of the old one, the rest cleared to 0
+    private static int reallocate(int oldBuffer, long keptSize, long newSize)
+    {
+        int newBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, newBuffer);
+        GL15.glBufferData(GL31.GL_COPY_WRITE_BUFFER, newSize, GL15.GL_DYNAMIC_DRAW);
+        if (newSize > keptSize)
+            GL43.glClearBufferSubData(GL31.GL_COPY_WRITE_BUFFER, GL30.GL_R32UI, keptSize, newSize - keptSize, GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_INT, ZERO);
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, oldBuffer);
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, keptSize);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        GL15.glDeleteBuffers(oldBuffer);
+        return newBuffer;
+    }
+
+    // Packs every visible emitter with a non-zero spawn rate and the running total of spawns
+    private void buildSpawnTable()
+    {
+        int[] visibleSlots = emitterLod.getVisibleSlots();
+        int visibleCount = emitterLod.getVisibleCount();
+        long base = MemoryUtil.memAddress(spawnTableData);
+        int entries = 0;
+        int total = 0;
+
+        for (int i = 0; i < visibleCount; i++)
+        {
+            int dense = emitters.getDenseIndex(visibleSlots[i]);
+            int rate = (int) emitters.getSpawnRate(dense);
+            if (rate <= 0)
+                continue;
+            total += rate;
+            long entry = base + 16 + (long) entries * 8;
+            MemoryUtil.memPutInt(entry, dense);
+            MemoryUtil.memPutInt(entry + 4, total);
+            entries++;
+        }
+        MemoryUtil.memPutInt(base, entries);
+        MemoryUtil.memPutInt(base + 4, total);
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, spawnTableBuffer);
+        GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, 16 + (long) entries * 8, base);
+        EngineMetrics.UPLOAD_BYTES.add(16 + (long) entries * 8);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    // The fused pipeline never touches the free-list stack, rebuild it from particle lifetimes
+    private void rebuildFreeList()
+    {
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, computeStateBuffer);
+        GL43.glClearBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, GL30.GL_R32UI, 0, 8, GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_INT, ZERO);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        freeListRebuildShader.bind();
+        GL43.glDispatchCompute(ceilDiv(computeParams.MAX_PARTICLES, GROUP_SIZE), 1, 1);
+        GL43.glMemoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+        freeListRebuildShader.unbind();
+        freeListStale = false;
+    }
+
+    /** Captures the particle state at the end of this frame's simulation, without stalling the frame. */
+    public void captureSnapshot(Path path)
+    {
+        pendingSnapshotPath = path;
+    }
+
+    /** Replaces the particle and emitter state with a snapshot written by captureSnapshot(). */
+    public void restoreSnapshot(Path path) throws IOException
+    {
+        freeListStale = snapshot.restore(path);
+    }
+
+    public void setPipeline(Pipeline pipeline)
+    {
+        if (this.pipeline == Pipeline.FUSED && pipeline == Pipeline.SEPARATE)
+            freeListStale = true;
+        this.pipeline = pipeline;
+    }
+
+    public Pipeline getPipeline()
+    {
+        return pipeline;
+    }
+
+    public boolean areSubgroupsUsed()
+    {
+        return subgroupsSupported;
+    }
+
+    public GpuTimer getComputeTimer()
+    {
+        return computeTimer;
+    }
+
+    /**
+     * Switches the rasterization strategy, takes effect from the next frame.
+     * @param batchSize quads per instance for INDEXED and ARRAYS, a power of two that divides the pool
+     *                  alignment (the larger of the workgroup size and instanceSize); ignored for QUAD_PER_INSTANCE
+     */
+    public void setDrawStrategy(DrawStrategy drawStrategy, int batchSize)
+    {
+        if (drawStrategy == DrawStrategy.QUAD_PER_INSTANCE)
+            batchSize = 1;
+        int alignment = Math.max(GROUP_SIZE, instanceSize);
+        if (batchSize <= 0 || Integer.bitCount(batchSize) != 1 || batchSize > alignment)
+            throw new IllegalArgumentException("[Error]: Particle batch size must be a power of two up to " + alignment + ", got " + batchSize);
+
+        if (drawStrategy == DrawStrategy.INDEXED && batchSize != eboQuads)
+            uploadQuadIndices(batchSize);
+
+        this.drawStrategy = drawStrategy;
+        this.batchSize = batchSize;
+        shader.bind();
+        glUniform1i(batchSizeLocation, batchSize);
+        glUniform1i(verticesPerQuadLocation, drawStrategy == DrawStrategy.ARRAYS ? 6 : 4);
+        shader.unbind();
+    }
+
+    public DrawStrategy getDrawStrategy()
+    {
+        return drawStrategy;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Draws particles at 1/factor of the frame resolution and upsamples them, factor 1 draws them directly.
+     * @param factor 1, 2 or 4
+     */
+    public void setResolutionFactor(int factor)
+    {
+        offscreenTarget.setFactor(factor);
+    }
+
+    /** Selects how this effect's particles are blended, takes effect from the next frame. */
+    public void setBlendMode(BlendMode blendMode)
+    {
+        this.blendMode = blendMode;
+        shader.bind();
+        glUniform1i(weightedOitLocation, blendMode == BlendMode.WEIGHTED_OIT ? 1 : 0);
+        shader.unbind();
+    }
+
+    public BlendMode getBlendMode()
+    {
+        return blendMode;
+    }
+
+    public int getResolutionFactor()
+    {
+        return offscreenTarget.getFactor();
+    }
+
+    /** GPU time of the particle draw, including the offscreen pass when enabled. */
+    public GpuTimer getRasterTimer()
+    {
+        return rasterTimer;
+    }
+
+    public ParticleStats getStats()
+    {
+        return stats;
+    }
+
+    /** World-space half extent of a particle quad at scale 1. */
+    public void setQuadHalfSize(float quadHalfSize)
+    {
+        this.quadHalfSize = quadHalfSize;
+        shader.bind();
+        glUniform1f(quadHalfSizeLocation, quadHalfSize);
+        shader.unbind();
+    }
+
+    public int getInstanceSize()
+    {
+        return instanceSize;
+    }
+
+    public ParticlePool getPool()
+    {
+        return pool;
+    }
+
+    int getParticleBuffer()
+    {
+        return particleBuffer;
+    }
+
+    int getParticleIndicesBuffer()
+    {
+        return particleIndicesBuffer;
+    }
+
+    int getComputeStateBuffer()
+    {
+        return computeStateBuffer;
+    }
+
+    int getEmitterBuffer()
+    {
+        return emitterBuffer;
+    }
+
+    public int getMaxParticles()
+    {
+        return computeParams.MAX_PARTICLES;
+    }
+
+    public EmitterRegistry getEmitters()
+    {
+        return emitters;
+    }
+
+    public EmitterLod getEmitterLod()
+    {
+        return emitterLod;
+    }
+
+    /**
+     * Registers this renderer's quality knobs, cheapest to lose first: spawn rate, particle render
+     * resolution, emitter culling distance (culling is forced on while lowered), then the particle budget
+     * capping the pool.
+     */
+    public void registerQualityKnobs(QualityGovernor governor)
+    {
+        governor.addKnob(new QualityGovernor.Knob("spawn rate", new float[]{1.0f, 0.75f, 0.5f, 0.35f, 0.25f},
+                scale -> emitterLod.setSpawnRateScale((float) scale)));
+
+        int factor = offscreenTarget.getFactor();
+        governor.addKnob(new QualityGovernor.Knob("particle resolution", factor == 1 ? new float[]{1, 2, 4} : new float[]{factor, 4},
+                divisor -> offscreenTarget.setFactor((int) divisor)));
+
+        boolean cullingEnabled = emitterLod.isCullingEnabled();
+        float maxDistance = emitterLod.getMaxDistance();
+        governor.addKnob(new QualityGovernor.Knob("cull distance", new float[]{maxDistance, maxDistance * 0.5f, maxDistance * 0.25f},
+                distance ->
+                {
+                    emitterLod.setCullingEnabled(cullingEnabled || distance < maxDistance);
+                    emitterLod.setMaxDistance((float) distance);
+                }));
+
+        int maxCapacity = pool.getMaxCapacity();
+        governor.addKnob(new QualityGovernor.Knob("particle budget", new float[]{maxCapacity, maxCapacity / 2, maxCapacity / 4},
+                budget -> pool.setBudget(budget >= maxCapacity ? Integer.MAX_VALUE : (int) budget)));
+    }
+
+    /** Unregisters from the Renderer and frees everything, for renderers torn down before shutdown. */
+    public void destroy()
+    {
+        Renderer.renderer.renderables.remove(renderCall);
+        Renderer.renderer.cleanupCalls.remove(cleanupCall);
+        cleanup();
     }
 
     public void cleanup()
     {
+        for (Metric metric : new Metric[]{aliveMetric, capacityMetric, computeMetric, rasterMetric})
+            EngineMetrics.registry.remove(metric);
+        snapshot.cleanup();
+        stats.cleanup();
+        emitters.cleanup();
+        OffHeap.free(spawnTableData);
+        computeTimer.cleanup();
+        rasterTimer.cleanup();
+        offscreenTarget.cleanup();
+        oitTarget.cleanup();
+        textureAtlas.cleanup();
         shader.cleanup();
         initializationShader.cleanup();
         emissionShader.cleanup();
         simulationShader.cleanup();
+        fusedShader.cleanup();
+        freeListRebuildShader.cleanup();
+        poolCompactShader.cleanup();
+        chunkCullShader.cleanup();
 
         GL30.glDeleteBuffers(particleBuffer);
         GL30.glDeleteBuffers(particleIndicesBuffer);
         GL30.glDeleteBuffers(computeStateBuffer);
         GL30.glDeleteBuffers(computeParametersBuffer);
         GL30.glDeleteBuffers(emitterBuffer);
+        GL30.glDeleteBuffers(spawnTableBuffer);
+        GL30.glDeleteBuffers(visibleChunkBuffer);
+        GL30.glDeleteBuffers(drawCommandBuffer);
 
         glDeleteVertexArrays(vaoId);
         GL30.glDeleteBuffers(eboId);
@@ -0,0 +1,300 @@
+package org.example;
+
+import org.example.utils.OffHeap;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoints the complete particle simulation to a file and restores it.
+ *
+ * Capture never waits on the GPU: the particle, allocator, compute state and emitter SSBOs are copied
+ * into a persistently mapped staging buffer and fenced. Once the fence has signalled (polled each frame)
+ * a background thread copies the staging memory straight into a memory-mapped file. Restore maps the file
+ * and hands the mapped sections to glBufferSubData, so a warm restart costs one upload per buffer.
+ *
+ * File layout (native byte order): 64 byte header, then particles, allocator stack, compute state,
+ * emitter SSBO and the CPU emitter registry state, back to back.
+ */
+public class ParticleSnapshot
+{
+    private static final int MAGIC = 0x4E535041; // "APSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int FLAG_FREE_LIST_STALE = 1;
+
+    private enum State
+    {
+        IDLE,
+        COPYING,
+        WRITING
+    }
+
+    private final ParticleRenderer renderer;
+    private final EmitterRegistry emitters;
+
+    private State state = State.IDLE;
+    private Path capturePath;
+    private long captureStart;
+    private int stagingBuffer;
+    private long stagingAddress;
+    private long fence;
+    private ByteBuffer header;
+    private ByteBuffer registryState;
+    private Thread writer;
+    private volatile boolean writeDone;
+    private volatile IOException writeError;
+
+    // Buffer ids are looked up on every capture / restore, the pool reallocates them when it resizes
+    public ParticleSnapshot(ParticleRenderer renderer, EmitterRegistry emitters)
+    {
+        this.renderer = renderer;
+        this.emitters = emitters;
+    }
+
+    /**
+     * Starts an asynchronous capture of the current GPU state. Must run after the frame's compute passes.
+     *
+     * @return false if a previous capture is still in flight
+     */
+    public boolean capture(Path path, int maxParticles, boolean freeListStale)
+    {
+        if (state != State.IDLE)
+            return false;
+
+        long particleBytes = (long) maxParticles * ParticleRenderer.PARTICLE_STRUCT_SIZE;
+        long indicesBytes = (long) maxParticles * 4;
+        long stateBytes = ParticleRenderer.COMPUTE_STATE_SIZE;
+        long emitterBytes = (long) emitters.getCount() * EmitterRegistry.EMITTER_STRUCT_SIZE;
+        long gpuBytes = particleBytes + indicesBytes + stateBytes + emitterBytes;
+
+        header = OffHeap.calloc(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, maxParticles);
+        header.putInt(12, freeListStale ? FLAG_FREE_LIST_STALE : 0);
+        header.putLong(16, particleBytes);
+        header.putLong(24, indicesBytes);
+        header.putLong(32, stateBytes);
+        header.putLong(40, emitterBytes);
+        header.putLong(48, emitters.getStateSize());
+
+        // The CPU side is small, copy it now so the registry can keep changing while the GPU copy is in flight
+        registryState = OffHeap.alloc((int) emitters.getStateSize());
+        emitters.writeState(MemoryUtil.memAddress(registryState));
+
+        int flags = GL30.GL_MAP_READ_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+        stagingBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, stagingBuffer);
+        GL44.glBufferStorage(GL31.GL_COPY_WRITE_BUFFER, gpuBytes, flags);
+        stagingAddress = GL30.nglMapBufferRange(GL31.GL_COPY_WRITE_BUFFER, 0, gpuBytes, flags);
+
+        // Compute writes have to land before the copies read them
+        GL43.glMemoryBarrier(GL43.GL_BUFFER_UPDATE_BARRIER_BIT);
+        long offset = 0;
+        offset = copy(renderer.getParticleBuffer(), offset, particleBytes);
+        offset = copy(renderer.getParticleIndicesBuffer(), offset, indicesBytes);
+        offset = copy(renderer.getComputeStateBuffer(), offset, stateBytes);
+        copy(renderer.getEmitterBuffer(), offset, emitterBytes);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        fence = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        capturePath = path;
+        captureStart = System.nanoTime();
+        state = State.COPYING;
+        return true;
+    }
+
+    private long copy(int source, long offset, long size)
+    {
+        if (size > 0)
+        {
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, source);
+            GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, offset, size);
+        }
+        return offset + size;
+    }
+
+    /** Advances an in-flight capture without blocking, called once per frame. */
+    public void poll()
+    {
+        if (state == State.COPYING)
+        {
+            int status = GL32.glClientWaitSync(fence, 0, 0L);
+            if (status != GL32.GL_ALREADY_SIGNALED && status != GL32.GL_CONDITION_SATISFIED)
+                return;
+            GL32.glDeleteSync(fence);
+            fence = 0L;
+
+            writeDone = false;
+            writeError = null;
+            writer = new Thread(this::writeFile, "particle-snapshot-writer");
+            writer.setDaemon(true);
+            writer.start();
+            state = State.WRITING;
+        }
+        else if (state == State.WRITING && writeDone)
+        {
+            if (writeError != null)
+            {
+                System.err.println("[ERROR]: Unable to write particle snapshot " + capturePath);
+                writeError.printStackTrace();
+            }
+            else
+            {
+                System.out.printf("[INFO]: Particle snapshot written to %s in %.1f ms%n", capturePath, (System.nanoTime() - captureStart) / 1_000_000.0);
+            }
+            releaseCapture();
+        }
+    }
+
+    // Writer thread: staging (GPU visible) memory -> mapped file
+    private void writeFile()
+    {
+        long gpuBytes = header.getLong(16) + header.getLong(24) + header.getLong(32) + header.getLong(40);
+        long total = HEADER_SIZE + gpuBytes + registryState.capacity();
+
+        try (FileChannel channel = FileChannel.open(capturePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+            long address = MemoryUtil.memAddress(file);
+            MemoryUtil.memCopy(MemoryUtil.memAddress(header), address, HEADER_SIZE);
+            MemoryUtil.memCopy(stagingAddress, address + HEADER_SIZE, gpuBytes);
+            MemoryUtil.memCopy(MemoryUtil.memAddress(registryState), address + HEADER_SIZE + gpuBytes, registryState.capacity());
+            file.force();
+        }
+        catch (IOException e)
+        {
+            writeError = e;
+        }
+        writeDone = true;
+    }
+
+    private void releaseCapture()
+    {
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, stagingBuffer);
+        GL15.glUnmapBuffer(GL31.GL_COPY_WRITE_BUFFER);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        GL15.glDeleteBuffers(stagingBuffer);
+        stagingBuffer = 0;
+        stagingAddress = 0L;
+
+        OffHeap.free(header);
+        OffHeap.free(registryState);
+        header = null;
+        registryState = null;
+        writer = null;
+        state = State.IDLE;
+    }
+
+    /**
+     * Maps a snapshot file and uploads it over the current particle state, resizing the pool to the
+     * snapshot's size when the pool limits allow it.
+     *
+     * @return true if the restored allocator stack is stale and has to be rebuilt before the separate pipeline runs
+     */
+    public boolean restore(Path path) throws IOException
+    {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException("[Error]: Particle snapshot is truncated: " + path);
+
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            file.order(ByteOrder.nativeOrder());
+            if (file.getInt(0) != MAGIC || file.getInt(4) != VERSION)
+                throw new IOException("[Error]: Not a particle snapshot (or wrong version): " + path);
+            int maxParticles = file.getInt(8);
+            ParticlePool pool = renderer.getPool();
+            if (maxParticles < pool.getMinCapacity() || maxParticles > pool.getMaxCapacity() || pool.align(maxParticles) != maxParticles)
+                throw new IOException("[Error]: Particle snapshot holds " + maxParticles + " particles, outside the pool limits ["
+                        + pool.getMinCapacity() + ", " + pool.getMaxCapacity() + "]");
+
+            long particleBytes = file.getLong(16);
+            long indicesBytes = file.getLong(24);
+            long stateBytes = file.getLong(32);
+            long emitterBytes = file.getLong(40);
+            long registryBytes = file.getLong(48);
+            // Every section has to fit its destination and the file, anything else would read or write out of bounds
+            if (particleBytes < 0 || particleBytes > (long) maxParticles * ParticleRenderer.PARTICLE_STRUCT_SIZE
+                    || indicesBytes < 0 || indicesBytes > (long) maxParticles * 4
+                    || stateBytes < 0 || stateBytes > ParticleRenderer.COMPUTE_STATE_SIZE
+                    || emitterBytes < 0 || emitterBytes > (long) emitters.getCapacity() * EmitterRegistry.EMITTER_STRUCT_SIZE
+                    || registryBytes < 8)
+                throw new IOException("[Error]: Particle snapshot has invalid section sizes: " + path);
+            if (HEADER_SIZE + particleBytes + indicesBytes + stateBytes + emitterBytes + registryBytes > channel.size())
+                throw new IOException("[Error]: Particle snapshot is truncated: " + path);
+            // The registry section must have been written by a registry of the same capacity
+            long registryOffset = HEADER_SIZE + particleBytes + indicesBytes + stateBytes + emitterBytes;
+            int emitterCount = file.getInt((int) registryOffset);
+            int freeSlotCount = file.getInt((int) registryOffset + 4);
+            if (emitterCount < 0 || emitterCount > emitters.getCapacity() || registryBytes != emitters.getStateSize(emitterCount)
+                    || freeSlotCount < 0 || freeSlotCount > emitters.getCapacity() - emitterCount
+                    || emitterBytes != (long) emitterCount * EmitterRegistry.EMITTER_STRUCT_SIZE)
+                throw new IOException("[Error]: Particle snapshot was saved with a different emitter capacity: " + path);
+
+            renderer.resizePool(maxParticles);
+
+            long address = MemoryUtil.memAddress(file) + HEADER_SIZE;
+            address = upload(renderer.getParticleBuffer(), address, particleBytes);
+            address = upload(renderer.getParticleIndicesBuffer(), address, indicesBytes);
+            address = upload(renderer.getComputeStateBuffer(), address, stateBytes);
+            address = upload(renderer.getEmitterBuffer(), address, emitterBytes);
+            emitters.readState(address);
+
+            System.out.printf("[INFO]: Particle snapshot restored from %s in %.1f ms%n", path, (System.nanoTime() - start) / 1_000_000.0);
+            return (file.getInt(12) & FLAG_FREE_LIST_STALE) != 0;
+        }
+    }
+
+    private long upload(int buffer, long address, long size)
+    {
+        if (size > 0)
+        {
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, buffer);
+            GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, size, address);
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+        }
+        return address + size;
+    }
+
+    public boolean isBusy()
+    {
+        return state != State.IDLE;
+    }
+
+    public void cleanup()
+    {
+        if (state == State.IDLE)
+            return;
+        if (fence != 0L)
+            GL32.glDeleteSync(fence);
+        if (writer != null)
+        {
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        releaseCapture();
+    }
+}
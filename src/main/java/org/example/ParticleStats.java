@@ -0,0 +1,165 @@
+package org.example;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Live particle counters read back from ComputeState without stalling the pipeline.
+ *
+ * Each frame the whole ComputeState block (alive count, free slots and the per-pass spawned / freed /
+ * spawn ticket counters) is copied into one slot of a persistently mapped ring and fenced. Slots are
+ * only read once their fence has signalled, so the gauges lag the current frame by up to RING_SIZE - 1
+ * frames. If the GPU falls so far behind that the next slot is still in flight, that frame's sample is
+ * dropped instead of waited on.
+ */
+public class ParticleStats
+{
+    private static final int RING_SIZE = 3;
+    private static final int SLOT_SIZE = ParticleRenderer.COMPUTE_STATE_SIZE;
+
+    private final int buffer;
+    private final long address;
+    private final long[] fences = new long[RING_SIZE];
+    private final int[] slotFrame = new int[RING_SIZE];
+    private int maxParticles;
+    private int current = 0;
+    private int frame = 0;
+
+    // Gauges, from the newest completed sample
+    private int alive;
+    private int freeSlots;
+    private int spawned;
+    private int freed;
+    private int spawnTickets;
+    private int sampleFrame = -1;
+    private long droppedSamples;
+
+    public ParticleStats(int maxParticles)
+    {
+        this.maxParticles = maxParticles;
+
+        int flags = GL30.GL_MAP_READ_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+        buffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, buffer);
+        GL44.glBufferStorage(GL31.GL_COPY_WRITE_BUFFER, (long) RING_SIZE * SLOT_SIZE, flags);
+        address = GL30.nglMapBufferRange(GL31.GL_COPY_WRITE_BUFFER, 0, (long) RING_SIZE * SLOT_SIZE, flags);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /** Collects finished samples and queues a copy of this frame's ComputeState. Runs after the compute passes. */
+    public void capture(int computeStateBuffer)
+    {
+        frame++;
+        collect();
+
+        if (fences[current] != 0L)
+        {
+            droppedSamples++;
+            return;
+        }
+
+        GL43.glMemoryBarrier(GL43.GL_BUFFER_UPDATE_BARRIER_BIT);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, computeStateBuffer);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, buffer);
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, (long) current * SLOT_SIZE, SLOT_SIZE);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        fences[current] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slotFrame[current] = frame;
+        current = (current + 1) % RING_SIZE;
+    }
+
+    // Oldest slot first so the newest signalled sample ends up in the gauges
+    private void collect()
+    {
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            int slot = (current + i) % RING_SIZE;
+            if (fences[slot] == 0L)
+                continue;
+
+            int status = GL32.glClientWaitSync(fences[slot], 0, 0L);
+            if (status != GL32.GL_ALREADY_SIGNALED && status != GL32.GL_CONDITION_SATISFIED)
+                continue;
+            GL32.glDeleteSync(fences[slot]);
+            fences[slot] = 0L;
+
+            // ComputeState: num_particles, NEW_PARTICLES, spawned, freed, spawn_cursor
+            long sample = address + (long) slot * SLOT_SIZE;
+            alive = MemoryUtil.memGetInt(sample);
+            freeSlots = MemoryUtil.memGetInt(sample + 4);
+            spawned = MemoryUtil.memGetInt(sample + 8);
+            freed = MemoryUtil.memGetInt(sample + 12);
+            spawnTickets = MemoryUtil.memGetInt(sample + 16);
+            sampleFrame = slotFrame[slot];
+        }
+    }
+
+    /** Pool size occupancy is measured against, updated when the pool is resized. */
+    public void setCapacity(int maxParticles)
+    {
+        this.maxParticles = maxParticles;
+    }
+
+    public int getAlive()
+    {
+        return alive;
+    }
+
+    /** Slots left on the allocator stack, only maintained by the separate pipeline. */
+    public int getFreeSlots()
+    {
+        return freeSlots;
+    }
+
+    public int getSpawned()
+    {
+        return spawned;
+    }
+
+    public int getFreed()
+    {
+        return freed;
+    }
+
+    /** Spawn tickets claimed by workgroups this frame, fused pipeline only. */
+    public int getSpawnTickets()
+    {
+        return spawnTickets;
+    }
+
+    public float getOccupancy()
+    {
+        return (float) alive / maxParticles;
+    }
+
+    /** Frames between the current frame and the one the gauges describe. */
+    public int getLatencyFrames()
+    {
+        return sampleFrame < 0 ? -1 : frame - sampleFrame;
+    }
+
+    public long getDroppedSamples()
+    {
+        return droppedSamples;
+    }
+
+    public void cleanup()
+    {
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            if (fences[i] != 0L)
+                GL32.glDeleteSync(fences[i]);
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, buffer);
+        GL15.glUnmapBuffer(GL31.GL_COPY_WRITE_BUFFER);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        GL15.glDeleteBuffers(buffer);
+    }
+}
@@ -1,13 +1,52 @@
 package org.example;
 
+import org.example.audio.AudioEngine;
+import org.example.ecs.World;
+import org.lwjgl.glfw.GLFW;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class ParticleSystem {
+    public static final Path SNAPSHOT_PATH = Paths.get("particles.snapshot");
+    public static final int MIN_POOL_SIZE = 4096;
+    public static final int MAX_POOL_SIZE = 1 << 20;
+
     private ParticleRenderer particleRenderer;
+    private EmitterSystem emitterSystem;
+    private int demoEmitter = World.INVALID_ENTITY;
+    private boolean saveKeyDown = false;
+    private boolean loadKeyDown = false;
+    private boolean cycleKeyDown = false;
+    private boolean resolutionKeyDown = false;
+    private boolean blendKeyDown = false;
+    private boolean occlusionKeyDown = false;
 
     public void initializeRenderer()
+    {
+        initializeRenderer(ParticleRenderer.DEFAULT_MAX_PARTICLES);
+        // The demo pool follows demand instead of being provisioned for the worst case
+        if (particleRenderer != null)
+        {
+            particleRenderer.getPool().setLimits(MIN_POOL_SIZE, MAX_POOL_SIZE);
+            QualityGovernor governor = EngineManager.engineManager.getQualityGovernor();
+            if (governor != null)
+                particleRenderer.registerQualityKnobs(governor);
+        }
+    }
+
+    public void initializeRenderer(int maxParticles)
     {
         try
         {
-            particleRenderer = new ParticleRenderer();
+            particleRenderer = new ParticleRenderer(maxParticles);
+            // Demo emitter at the origin
+            emitterSystem = new EmitterSystem(World.world, particleRenderer.getEmitters());
+            demoEmitter = emitterSystem.create(0f, 0f, 0f, 0f, 0f, 0f, 100.0f, 1.0f, 1.0f);
+            // A low streamed hum so the emitter can be heard, and found, with audio on
+            if (AudioEngine.audio != null)
+                emitterSystem.attachSound(demoEmitter, AudioEngine.audio.createTone(110.0f, 4.0f, 44100, true), 0.8f, 1.0f);
         }
         catch (Exception e)
         {
@@ -15,12 +54,88 @@ public class ParticleSystem {
             e.printStackTrace();
         }
 
-        EngineManager.engineManager.updatesToRun.add(this::update);
+        // Without a renderer there is nothing for the hotkeys to drive
+        if (particleRenderer != null)
+            EngineManager.engineManager.updatesToRun.add(this::update);
     }
 
 
     public void update()
     {
+        // F5 checkpoints the simulation, F9 restores the last checkpoint
+        WindowManager window = Main.getWindow();
+        boolean save = window.isKeyPressed(GLFW.GLFW_KEY_F5);
+        boolean load = window.isKeyPressed(GLFW.GLFW_KEY_F9);
+        if (save && !saveKeyDown)
+            particleRenderer.captureSnapshot(SNAPSHOT_PATH);
+        if (load && !loadKeyDown)
+            restoreSnapshot();
+        saveKeyDown = save;
+        loadKeyDown = load;
+
+        // F6 cycles the rasterization strategy
+        boolean cycle = window.isKeyPressed(GLFW.GLFW_KEY_F6);
+        if (cycle && !cycleKeyDown)
+        {
+            ParticleRenderer.DrawStrategy[] strategies = ParticleRenderer.DrawStrategy.values();
+            ParticleRenderer.DrawStrategy next = strategies[(particleRenderer.getDrawStrategy().ordinal() + 1) % strategies.length];
+            particleRenderer.setDrawStrategy(next, particleRenderer.getInstanceSize());
+            System.out.println("[INFO]: Particle draw strategy " + next + " (batch " + particleRenderer.getBatchSize() + ")");
+        }
+        cycleKeyDown = cycle;
+
+        // F7 cycles the particle render resolution: full, half, quarter
+        boolean resolution = window.isKeyPressed(GLFW.GLFW_KEY_F7);
+        if (resolution && !resolutionKeyDown)
+        {
+            int factor = particleRenderer.getResolutionFactor() == 4 ? 1 : particleRenderer.getResolutionFactor() * 2;
+            particleRenderer.setResolutionFactor(factor);
+            System.out.println("[INFO]: Particle resolution 1/" + factor);
+        }
+        resolutionKeyDown = resolution;
+
+        // F8 toggles weighted blended OIT for the demo effect
+        boolean blend = window.isKeyPressed(GLFW.GLFW_KEY_F8);
+        if (blend && !blendKeyDown)
+        {
+            ParticleRenderer.BlendMode mode = particleRenderer.getBlendMode() == ParticleRenderer.BlendMode.ALPHA
+                    ? ParticleRenderer.BlendMode.WEIGHTED_OIT : ParticleRenderer.BlendMode.ALPHA;
+            particleRenderer.setBlendMode(mode);
+            System.out.println("[INFO]: Particle blend mode " + mode);
+        }
+        blendKeyDown = blend;
+
+        // F4 toggles Hi-Z occlusion culling of particle chunks and meshes
+        boolean occlusion = window.isKeyPressed(GLFW.GLFW_KEY_F4);
+        if (occlusion && !occlusionKeyDown)
+        {
+            HiZPyramid hiZ = Renderer.renderer.getHiZPyramid();
+            hiZ.setEnabled(!hiZ.isEnabled());
+            System.out.println("[INFO]: Hi-Z occlusion culling " + (hiZ.isEnabled() ? "on" : "off"));
+        }
+        occlusionKeyDown = occlusion;
+    }
+
+    public void restoreSnapshot()
+    {
+        try
+        {
+            particleRenderer.restoreSnapshot(SNAPSHOT_PATH);
+        }
+        catch (IOException e)
+        {
+            System.out.println("[ERROR]: Unable to restore particles from " + SNAPSHOT_PATH);
+            e.printStackTrace();
+        }
+    }
 
+    public EmitterSystem getEmitterSystem()
+    {
+        return emitterSystem;
+    }
+
+    public ParticleRenderer getRenderer()
+    {
+        return particleRenderer;
     }
 }
@@ -0,0 +1,185 @@
+package org.example;
+
+import org.example.metrics.EngineMetrics;
+import org.example.utils.OffHeap;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.stb.STBEasyFont;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * On-screen frame-time graphs and counters, drawn with a SpriteBatch over everything else. F3 toggles it.
+ *
+ * The graphs show the last HISTORY frames of wall-clock and GPU frame time, bars turn yellow past one
+ * 60 Hz frame and red past two. The counter text is laid out a few times per second with stb_easy_font,
+ * which turns text into solid rectangles; they are cached and redrawn as plain quads every frame, so the
+ * per-frame cost is one solid-rectangle batch and no allocation.
+ */
+public class PerformanceHud
+{
+    private static final int HISTORY = 240;
+    private static final float GRAPH_HEIGHT = 60.0f;
+    private static final float GRAPH_MAX_MS = 33.3f;  // top of the graph, two 60 Hz frames
+    private static final float BUDGET_MS = 16.67f;
+    private static final float MARGIN = 8.0f;
+    private static final float TEXT_SCALE = 2.0f;
+    private static final int MAX_TEXT_RECTS = 4096;
+    private static final long TEXT_INTERVAL = 250_000_000L; // ns
+
+    private final SpriteBatch batch;
+    private final ByteBuffer fontVertices;
+
+    private final float[] frameMs = new float[HISTORY];
+    private final float[] gpuMs = new float[HISTORY];
+    private int historyIndex = 0;
+    private float lastCpuMs = 0.0f;
+
+    // Text rectangles from the last layout: x, y, width, height
+    private final float[] textRects = new float[MAX_TEXT_RECTS * 4];
+    private int textRectCount = 0;
+    private float textWidth = 0.0f;
+    private float textHeight = 0.0f;
+    private long lastLayout = 0;
+
+    private boolean visible = true;
+    private boolean toggleKeyDown = false;
+
+    public PerformanceHud() throws Exception
+    {
+        batch = new SpriteBatch(HISTORY * 2 + MAX_TEXT_RECTS + 16);
+        // 4 vertices of 16 bytes per rectangle, see stb_easy_font.h
+        fontVertices = OffHeap.alloc(MAX_TEXT_RECTS * 4 * 16);
+    }
+
+    /** Records one frame, called by EngineManager once the frame's timings are known. */
+    public void recordFrame(float frameTimeMs, float cpuMs, float gpuFrameMs)
+    {
+        frameMs[historyIndex] = frameTimeMs;
+        gpuMs[historyIndex] = gpuFrameMs;
+        historyIndex = (historyIndex + 1) % HISTORY;
+        lastCpuMs = cpuMs;
+
+        boolean toggle = Main.getWindow().isKeyPressed(GLFW.GLFW_KEY_F3);
+        if (toggle && !toggleKeyDown)
+            visible = !visible;
+        toggleKeyDown = toggle;
+    }
+
+    /** Renderer overlay, draws the HUD over the finished frame. */
+    public void render()
+    {
+        if (!visible)
+            return;
+
+        long now = System.nanoTime();
+        if (now - lastLayout >= TEXT_INTERVAL)
+        {
+            lastLayout = now;
+            layoutText();
+        }
+
+        float graphWidth = HISTORY;
+        float panelWidth = Math.max(graphWidth, textWidth) + MARGIN * 2.0f;
+        float panelHeight = textHeight + (GRAPH_HEIGHT + MARGIN) * 2.0f + MARGIN * 2.0f;
+
+        batch.begin();
+        batch.drawRect(MARGIN, MARGIN, panelWidth, panelHeight, 0.0f, 0.0f, 0.0f, 0.6f);
+
+        float x = MARGIN * 2.0f;
+        for (int i = 0; i < textRectCount; i++)
+        {
+            int base = i * 4;
+            batch.drawRect(x + textRects[base], MARGIN * 2.0f + textRects[base + 1], textRects[base + 2], textRects[base + 3], 1.0f, 1.0f, 1.0f, 1.0f);
+        }
+
+        float y = MARGIN * 2.0f + textHeight;
+        drawGraph(frameMs, x, y, graphWidth);
+        drawGraph(gpuMs, x, y + GRAPH_HEIGHT + MARGIN, graphWidth);
+        batch.end();
+    }
+
+    // Oldest frame on the left, one pixel per frame
+    private void drawGraph(float[] samples, float x, float y, float width)
+    {
+        batch.drawRect(x, y, width, GRAPH_HEIGHT, 1.0f, 1.0f, 1.0f, 0.08f);
+        for (int i = 0; i < HISTORY; i++)
+        {
+            float ms = samples[(historyIndex + i) % HISTORY];
+            float height = Math.min(ms / GRAPH_MAX_MS, 1.0f) * GRAPH_HEIGHT;
+            if (ms <= BUDGET_MS)
+                batch.drawRect(x + i, y + GRAPH_HEIGHT - height, 1.0f, height, 0.3f, 0.9f, 0.3f, 0.9f);
+            else if (ms <= GRAPH_MAX_MS)
+                batch.drawRect(x + i, y + GRAPH_HEIGHT - height, 1.0f, height, 0.95f, 0.8f, 0.2f, 0.9f);
+            else
+                batch.drawRect(x + i, y + GRAPH_HEIGHT - height, 1.0f, height, 0.95f, 0.25f, 0.2f, 0.9f);
+        }
+        // 60 Hz budget line
+        float budgetY = y + GRAPH_HEIGHT - BUDGET_MS / GRAPH_MAX_MS * GRAPH_HEIGHT;
+        batch.drawRect(x, budgetY, width, 1.0f, 1.0f, 1.0f, 1.0f, 0.35f);
+    }
+
+    private void layoutText()
+    {
+        float average = 0.0f;
+        float max = 0.0f;
+        for (float ms : frameMs)
+        {
+            average += ms;
+            max = Math.max(max, ms);
+        }
+        average /= HISTORY;
+        float lastFrame = frameMs[(historyIndex + HISTORY - 1) % HISTORY];
+        float lastGpu = gpuMs[(historyIndex + HISTORY - 1) % HISTORY];
+
+        StringBuilder text = new StringBuilder(256);
+        text.append(String.format(Locale.ROOT, "%d FPS  frame %.2f ms  avg %.2f  max %.2f\n",
+                average > 0.0f ? Math.round(1000.0f / average) : 0, lastFrame, average, max));
+        text.append(String.format(Locale.ROOT, "cpu %.2f ms  gpu %.2f ms\n", lastCpuMs, lastGpu));
+        text.append(String.format(Locale.ROOT, "particles %,d / %,d\n",
+                (long) EngineMetrics.registry.sumGauges("particles_alive"), (long) EngineMetrics.registry.sumGauges("particles_capacity")));
+        text.append(String.format(Locale.ROOT, "upload %.1f KB/frame\n", EngineMetrics.UPLOAD_BYTES_FRAME.get() / 1024.0));
+        QualityGovernor governor = EngineManager.engineManager.getQualityGovernor();
+        if (governor != null)
+            text.append(String.format(Locale.ROOT, "target %.2f ms  governor avg %.2f ms\n", governor.getTargetMs(), governor.getAverageMs()));
+        text.append(String.format(Locale.ROOT, "hud %d sprites  %d draws\n", batch.getSpritesDrawn(), batch.getDrawCalls()));
+        text.append("frame ms / gpu ms");
+
+        // Each rectangle is 4 vertices (x, y, z, color); corners 0 and 2 are opposite
+        fontVertices.clear();
+        int rects = Math.min(STBEasyFont.stb_easy_font_print(0.0f, 0.0f, text, null, fontVertices), MAX_TEXT_RECTS);
+        long address = MemoryUtil.memAddress(fontVertices);
+        for (int i = 0; i < rects; i++)
+        {
+            long quad = address + i * 64L;
+            float x0 = MemoryUtil.memGetFloat(quad);
+            float y0 = MemoryUtil.memGetFloat(quad + 4);
+            float x1 = MemoryUtil.memGetFloat(quad + 32);
+            float y1 = MemoryUtil.memGetFloat(quad + 36);
+            textRects[i * 4] = x0 * TEXT_SCALE;
+            textRects[i * 4 + 1] = y0 * TEXT_SCALE;
+            textRects[i * 4 + 2] = (x1 - x0) * TEXT_SCALE;
+            textRects[i * 4 + 3] = (y1 - y0) * TEXT_SCALE;
+        }
+        textRectCount = rects;
+        textWidth = STBEasyFont.stb_easy_font_width(text) * TEXT_SCALE;
+        textHeight = STBEasyFont.stb_easy_font_height(text) * TEXT_SCALE + MARGIN;
+    }
+
+    public void setVisible(boolean visible)
+    {
+        this.visible = visible;
+    }
+
+    public boolean isVisible()
+    {
+        return visible;
+    }
+
+    public void cleanup()
+    {
+        batch.cleanup();
+        OffHeap.free(fontVertices);
+    }
+}
@@ -0,0 +1,207 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Holds the frame time to a target by stepping quality knobs up and down.
+ *
+ * Each frame gets the CPU time (input, update and render submission) and the GPU time of the frame;
+ * their maximum is averaged over a short window. When the average stays above the target for a while,
+ * the first knob that can still be lowered drops one level. When it stays well below the target for much
+ * longer, the last lowered knob is raised again. Knobs are registered cheapest-to-lose first, so recovery
+ * restores the most visible quality first. After every change the governor waits before looking again,
+ * which together with the separate degrade / recover thresholds keeps it from oscillating.
+ */
+public class QualityGovernor
+{
+    private static final int WINDOW = 30;
+
+    /** One quality setting, level 0 is full quality and each higher level is cheaper. */
+    public static class Knob
+    {
+        private final String name;
+        private final float[] values;
+        private final DoubleConsumer apply;
+        private int level = 0;
+
+        public Knob(String name, float[] values, DoubleConsumer apply)
+        {
+            this.name = name;
+            this.values = values;
+            this.apply = apply;
+        }
+
+        void setLevel(int level)
+        {
+            this.level = level;
+            apply.accept(values[level]);
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getLevel()
+        {
+            return level;
+        }
+
+        public float getValue()
+        {
+            return values[level];
+        }
+
+        boolean canLower()
+        {
+            return level < values.length - 1;
+        }
+    }
+
+    private final List<Knob> knobs = new ArrayList<>();
+    private float targetMs;
+    private float degradeRatio = 1.05f; // above target * ratio counts against quality
+    private float recoverRatio = 0.8f;  // below target * ratio counts towards recovery
+    private int degradeFrames = 15;
+    private int recoverFrames = 180;
+    private int cooldownFrames = 45;
+
+    private final float[] samples = new float[WINDOW];
+    private int sampleCount = 0;
+    private int sampleIndex = 0;
+    private float sampleTotal = 0.0f;
+
+    private int overFrames = 0;
+    private int underFrames = 0;
+    private int cooldown = 0;
+    private long frame = 0;
+
+    public QualityGovernor(float targetMs)
+    {
+        this.targetMs = targetMs;
+    }
+
+    /** Knobs are lowered in registration order and raised in reverse. */
+    public void addKnob(Knob knob)
+    {
+        knobs.add(knob);
+    }
+
+    public void update(float cpuMs, float gpuMs)
+    {
+        frame++;
+        float frameMs = Math.max(cpuMs, gpuMs);
+        sampleTotal += frameMs - samples[sampleIndex];
+        samples[sampleIndex] = frameMs;
+        sampleIndex = (sampleIndex + 1) % WINDOW;
+        if (sampleCount < WINDOW)
+        {
+            sampleCount++;
+            return;
+        }
+
+        if (cooldown > 0)
+        {
+            cooldown--;
+            return;
+        }
+
+        float average = sampleTotal / WINDOW;
+        overFrames = average > targetMs * degradeRatio ? overFrames + 1 : 0;
+        underFrames = average < targetMs * recoverRatio ? underFrames + 1 : 0;
+
+        if (overFrames >= degradeFrames)
+            lower(average, cpuMs, gpuMs);
+        else if (underFrames >= recoverFrames)
+            raise(average);
+    }
+
+    private void lower(float average, float cpuMs, float gpuMs)
+    {
+        for (Knob knob : knobs)
+        {
+            if (!knob.canLower())
+                continue;
+            knob.setLevel(knob.getLevel() + 1);
+            log(String.format(Locale.ROOT, "%.2f ms over %.2f ms target (cpu %.2f, gpu %.2f): %s -> %s",
+                    average, targetMs, cpuMs, gpuMs, knob.getName(), formatValue(knob.getValue())));
+            changed();
+            return;
+        }
+        // Everything is already at its lowest, keep quiet until the frame time moves
+        changed();
+    }
+
+    private void raise(float average)
+    {
+        for (int i = knobs.size() - 1; i >= 0; i--)
+        {
+            Knob knob = knobs.get(i);
+            if (knob.getLevel() == 0)
+                continue;
+            knob.setLevel(knob.getLevel() - 1);
+            log(String.format(Locale.ROOT, "%.2f ms under %.2f ms target: %s -> %s",
+                    average, targetMs, knob.getName(), formatValue(knob.getValue())));
+            changed();
+            return;
+        }
+        underFrames = 0;
+    }
+
+    private void changed()
+    {
+        overFrames = 0;
+        underFrames = 0;
+        cooldown = cooldownFrames;
+    }
+
+    private void log(String message)
+    {
+        System.out.println("[GOVERNOR]: frame " + frame + ": " + message);
+    }
+
+    private static String formatValue(float value)
+    {
+        return value == (int) value ? Integer.toString((int) value) : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /** Puts every knob back to full quality. */
+    public void reset()
+    {
+        for (Knob knob : knobs)
+            knob.setLevel(0);
+        changed();
+    }
+
+    public List<Knob> getKnobs()
+    {
+        return knobs;
+    }
+
+    public void setTargetMs(float targetMs)
+    {
+        this.targetMs = targetMs;
+    }
+
+    public float getTargetMs()
+    {
+        return targetMs;
+    }
+
+    public float getAverageMs()
+    {
+        return sampleCount == 0 ? 0.0f : sampleTotal / sampleCount;
+    }
+
+    public void setHysteresis(float degradeRatio, int degradeFrames, float recoverRatio, int recoverFrames, int cooldownFrames)
+    {
+        this.degradeRatio = degradeRatio;
+        this.degradeFrames = degradeFrames;
+        this.recoverRatio = recoverRatio;
+        this.recoverFrames = recoverFrames;
+        this.cooldownFrames = cooldownFrames;
+    }
+}
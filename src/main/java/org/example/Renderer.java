@@ -1,5 +1,6 @@
 package org.example;
 
+import org.example.jfr.FrameCallbackEvent;
 import org.joml.Matrix4f;
 
 import java.util.ArrayList;
@@ -10,14 +11,23 @@ import static org.lwjgl.opengl.GL11.*;
 public class Renderer
 {
     public static Renderer renderer;
-    public Matrix4f projViewMatrix;
+    public Matrix4f projViewMatrix = new Matrix4f();
 
+    public List<Runnable> opaqueRenderables = new ArrayList<>();  // drawn first, e.g. meshes particles are depth-tested against
     public List<Runnable> renderables = new ArrayList<>();
+    public List<Runnable> overlays = new ArrayList<>();  // drawn after every renderable, e.g. the HUD
     public List<Runnable> cleanupCalls = new ArrayList<>();
 
+    private final FrameConstants frameConstants;
+    private final HiZPyramid hiZPyramid;
+    private float time = 0.0f;
+    private int frameIndex = 0;
+
     public Renderer() throws Exception
     {
         renderer = this;
+        frameConstants = new FrameConstants();
+        hiZPyramid = new HiZPyramid();
     }
 
     public void render()
@@ -25,10 +35,43 @@ public class Renderer
         glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-        projViewMatrix  = new Matrix4f(Main.getWindow().getProjectionMatrix()).mul(Camera.camera.getViewMatrix());
+        WindowManager window = Main.getWindow();
+        if (window.isResize())
+        {
+            window.updateProjectMatrix();
+            window.setResize(false);
+        }
+
+        Matrix4f viewMatrix = Camera.camera.getViewMatrix();
+        projViewMatrix.set(window.getProjectionMatrix()).mul(viewMatrix);
+
+        // Upload the shared frame constants once, every program reads them from the same binding
+        float dt = EngineManager.getDeltaTime();
+        time += dt;
+        frameConstants.update(viewMatrix, window.getProjectionMatrix(), projViewMatrix, Camera.camera.getPosition(),
+                window.getWidth(), window.getHeight(), time, dt, frameIndex++);
 
+        int index = 0;
+        for (Runnable renderFunction : opaqueRenderables) {
+            FrameCallbackEvent event = new FrameCallbackEvent();
+            event.begin();
+            renderFunction.run();
+            event.finish(EngineManager.getFrameIndex(), FrameCallbackEvent.RENDERABLES, index++, renderFunction);
+        }
+        // Occlusion culling depth, only worth building when something opaque was drawn
+        if (hiZPyramid.isEnabled() && !opaqueRenderables.isEmpty())
+            hiZPyramid.build(window.getWidth(), window.getHeight(), projViewMatrix);
         for (Runnable renderFunction : renderables) {
+            FrameCallbackEvent event = new FrameCallbackEvent();
+            event.begin();
             renderFunction.run();
+            event.finish(EngineManager.getFrameIndex(), FrameCallbackEvent.RENDERABLES, index++, renderFunction);
+        }
+        for (Runnable overlay : overlays) {
+            FrameCallbackEvent event = new FrameCallbackEvent();
+            event.begin();
+            overlay.run();
+            event.finish(EngineManager.getFrameIndex(), FrameCallbackEvent.RENDERABLES, index++, overlay);
         }
     }
 
@@ -37,10 +80,28 @@ public class Renderer
         for (Runnable cleanupCall : cleanupCalls) {
             cleanupCall.run();
         }
+        frameConstants.cleanup();
+        hiZPyramid.cleanup();
     }
 
     public Matrix4f getProjViewMatrix()
     {
         return projViewMatrix;
     }
+
+    /** Milliseconds of simulated time, the sum of every frame's dt. */
+    public float getTime()
+    {
+        return time;
+    }
+
+    public HiZPyramid getHiZPyramid()
+    {
+        return hiZPyramid;
+    }
+
+    public FrameConstants getFrameConstants()
+    {
+        return frameConstants;
+    }
 }
@@ -1,5 +1,7 @@
 package org.example;
 
+import org.example.jfr.ShaderCompileEvent;
+import org.example.metrics.EngineMetrics;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL43;
 
@@ -48,22 +50,58 @@ public class ShaderManager
         if (shaderID == 0)
             throw new Exception("[Error]: Creating Shader Type: " +  shaderType);
 
+        ShaderCompileEvent event = new ShaderCompileEvent();
+        event.begin();
+        long start = System.nanoTime();
         GL20.glShaderSource(shaderID, shaderCode);
         GL20.glCompileShader(shaderID);
 
         if (GL20.glGetShaderi(shaderID, GL20.GL_COMPILE_STATUS) == 0)
             throw new Exception("[Error]: compiling shader code failed: TYPE: " + shaderType + " Info " + GL20.glGetShaderInfoLog(shaderID, 1024));
+        // The status query waits for the compile, drivers that compile lazily report part of it at link time
+        EngineMetrics.SHADER_COMPILE.observe(EngineMetrics.millisSince(start));
+        commit(event, stageName(shaderType));
 
         GL20.glAttachShader(programID, shaderID);
 
         return shaderID;
     }
 
+    private static void commit(ShaderCompileEvent event, String stage)
+    {
+        event.end();
+        if (!event.shouldCommit())
+            return;
+        event.frameIndex = EngineManager.getFrameIndex();
+        event.stage = stage;
+        event.commit();
+    }
+
+    private static String stageName(int shaderType)
+    {
+        switch (shaderType)
+        {
+            case GL20.GL_VERTEX_SHADER:
+                return "vertex";
+            case GL20.GL_FRAGMENT_SHADER:
+                return "fragment";
+            case GL43.GL_COMPUTE_SHADER:
+                return "compute";
+            default:
+                return Integer.toString(shaderType);
+        }
+    }
+
     public void link() throws Exception
     {
+        ShaderCompileEvent event = new ShaderCompileEvent();
+        event.begin();
+        long start = System.nanoTime();
         GL20.glLinkProgram(programID);
         if (GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == 0)
             throw new Exception("[Error]: Linking shader code failed" + " Info " + GL20.glGetProgramInfoLog(programID, 1024));
+        EngineMetrics.SHADER_COMPILE.observe(EngineMetrics.millisSince(start));
+        commit(event, "link");
 
         if (vertexShaderID != 0)
             GL20.glDetachShader(programID, vertexShaderID);
@@ -0,0 +1,258 @@
+package org.example;
+
+import org.example.utils.Loader;
+import org.joml.Vector2f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Batched 2D quads (HUD, overlays) in pixel coordinates with the origin at the top left.
+ *
+ * Sprites are accumulated between begin() and end() into a CPU staging array. end() groups them by
+ * atlas, copies them into one region of a persistently mapped stream buffer and issues one glDrawArrays
+ * per atlas, plus one for solid rectangles. The vertex shader pulls the sprite records from the region
+ * (sprite_vertex.glsl), so there are no vertex attributes. The stream has RING_SIZE regions, each fenced
+ * after its draws; a region is only written again once the GPU is done with it.
+ *
+ * Solid rectangles are drawn first, then each atlas in the order it was first used in the frame; within
+ * a group sprites keep their submission order.
+ */
+public class SpriteBatch
+{
+    public static final int MAX_ATLASES = 8;
+    private static final int RING_SIZE = 3;
+    private static final int FLOATS_PER_SPRITE = 12; // rect, uv rect, color
+    private static final int SPRITE_SIZE = FLOATS_PER_SPRITE * Float.BYTES;
+    private static final long FENCE_TIMEOUT = 1_000_000_000L; // ns
+
+    private final int capacity;
+    private final long regionSize;
+    private final int buffer;
+    private final long address;
+    private final long[] fences = new long[RING_SIZE];
+    private int region = 0;
+
+    private final ShaderManager shader;
+    private final int atlasUniformLocation;
+    private final int vaoId;
+
+    // Staging, in submission order; atlas 0 is "no atlas"
+    private final float[] staging;
+    private final byte[] spriteAtlas;
+    private final TextureAtlas[] atlases = new TextureAtlas[MAX_ATLASES + 1];
+    private final int[] groupCounts = new int[MAX_ATLASES + 1];
+    private final int[] groupStarts = new int[MAX_ATLASES + 1];
+    private final Vector2f offset = new Vector2f();
+    private int atlasCount = 1;
+    private int count = 0;
+    private boolean drawing = false;
+
+    private int drawCalls = 0;
+    private int spritesDrawn = 0;
+    private long droppedSprites = 0;
+
+    public SpriteBatch(int capacity) throws Exception
+    {
+        this.capacity = capacity;
+        staging = new float[capacity * FLOATS_PER_SPRITE];
+        spriteAtlas = new byte[capacity];
+
+        // Regions start at a multiple of 256, enough for any SSBO offset alignment
+        regionSize = ((long) capacity * SPRITE_SIZE + 255) & ~255L;
+        int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+        buffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, buffer);
+        GL44.glBufferStorage(GL43.GL_SHADER_STORAGE_BUFFER, RING_SIZE * regionSize, flags);
+        address = GL30.nglMapBufferRange(GL43.GL_SHADER_STORAGE_BUFFER, 0, RING_SIZE * regionSize, flags);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        shader = new ShaderManager();
+        shader.createVertexShader(Loader.loadShader("/shaders/sprite_vertex.glsl"));
+        shader.createFragmentShader(Loader.loadShader("/shaders/sprite_fragment.glsl"));
+        shader.link();
+        atlasUniformLocation = shader.getUniformLocation("atlasHandle");
+
+        // Empty VAO, sprites are pulled from the storage buffer
+        vaoId = GL30.glGenVertexArrays();
+    }
+
+    public void begin()
+    {
+        if (drawing)
+            throw new IllegalStateException("[Error]: SpriteBatch.begin() called twice without end()");
+        drawing = true;
+        count = 0;
+        atlasCount = 1;
+        drawCalls = 0;
+        spritesDrawn = 0;
+    }
+
+    /** Draws cell index of atlas (TextureAtlas.getTextureOffset) stretched over the rectangle, tinted by the color. */
+    public void draw(TextureAtlas atlas, int index, float x, float y, float width, float height, float r, float g, float b, float a)
+    {
+        atlas.getTextureOffset(index, offset);
+        add(atlasSlot(atlas), x, y, width, height, offset.x, offset.y, atlas.getTextureSizeX(), atlas.getTextureSizeY(), r, g, b, a);
+    }
+
+    /** Draws a solid rectangle. */
+    public void drawRect(float x, float y, float width, float height, float r, float g, float b, float a)
+    {
+        add(0, x, y, width, height, 0.0f, 0.0f, 0.0f, 0.0f, r, g, b, a);
+    }
+
+    private int atlasSlot(TextureAtlas atlas)
+    {
+        for (int i = 1; i < atlasCount; i++)
+        {
+            if (atlases[i] == atlas)
+                return i;
+        }
+        if (atlasCount == atlases.length)
+            throw new IllegalStateException("[Error]: SpriteBatch supports at most " + MAX_ATLASES + " atlases per frame");
+        atlases[atlasCount] = atlas;
+        return atlasCount++;
+    }
+
+    private void add(int atlas, float x, float y, float width, float height, float u, float v, float uWidth, float vHeight,
+                     float r, float g, float b, float a)
+    {
+        if (count == capacity)
+        {
+            droppedSprites++;
+            return;
+        }
+        int base = count * FLOATS_PER_SPRITE;
+        staging[base] = x;
+        staging[base + 1] = y;
+        staging[base + 2] = width;
+        staging[base + 3] = height;
+        staging[base + 4] = u;
+        staging[base + 5] = v;
+        staging[base + 6] = uWidth;
+        staging[base + 7] = vHeight;
+        staging[base + 8] = r;
+        staging[base + 9] = g;
+        staging[base + 10] = b;
+        staging[base + 11] = a;
+        spriteAtlas[count] = (byte) atlas;
+        count++;
+    }
+
+    /** Uploads the sprites grouped by atlas and draws them, one draw call per group. */
+    public void end()
+    {
+        if (!drawing)
+            throw new IllegalStateException("[Error]: SpriteBatch.end() called without begin()");
+        drawing = false;
+        if (count == 0)
+            return;
+
+        waitForRegion();
+
+        // Counting sort by atlas, stable within each group
+        for (int i = 0; i < atlasCount; i++)
+            groupCounts[i] = 0;
+        for (int i = 0; i < count; i++)
+            groupCounts[spriteAtlas[i]]++;
+        int start = 0;
+        for (int i = 0; i < atlasCount; i++)
+        {
+            groupStarts[i] = start;
+            start += groupCounts[i];
+        }
+
+        long regionAddress = address + region * regionSize;
+        for (int i = 0; i < count; i++)
+        {
+            int slot = groupStarts[spriteAtlas[i]]++;
+            long target = regionAddress + (long) slot * SPRITE_SIZE;
+            int base = i * FLOATS_PER_SPRITE;
+            for (int f = 0; f < FLOATS_PER_SPRITE; f++)
+                MemoryUtil.memPutFloat(target + (long) f * Float.BYTES, staging[base + f]);
+        }
+
+        // DRAW
+        GL11.glDisable(GL11.GL_DEPTH_TEST);
+        GL11.glDepthMask(false);
+        shader.bind();
+        GL30.glBindVertexArray(vaoId);
+        GL30.glBindBufferRange(GL43.GL_SHADER_STORAGE_BUFFER, 6, buffer, region * regionSize, (long) count * SPRITE_SIZE);
+        int first = 0;
+        for (int i = 0; i < atlasCount; i++)
+        {
+            if (groupCounts[i] == 0)
+                continue;
+            if (i > 0)
+                atlases[i].bind(atlasUniformLocation);
+            GL11.glDrawArrays(GL11.GL_TRIANGLES, first * 6, groupCounts[i] * 6);
+            first += groupCounts[i];
+            drawCalls++;
+        }
+        GL30.glBindVertexArray(0);
+        shader.unbind();
+        GL11.glDepthMask(true);
+        GL11.glEnable(GL11.GL_DEPTH_TEST);
+
+        fences[region] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        region = (region + 1) % RING_SIZE;
+        spritesDrawn = count;
+        for (int i = 1; i < atlasCount; i++)
+            atlases[i] = null;
+    }
+
+    // Only blocks when the GPU is RING_SIZE frames behind
+    private void waitForRegion()
+    {
+        long fence = fences[region];
+        if (fence == 0L)
+            return;
+        int result = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+        if (result == GL32.GL_TIMEOUT_EXPIRED || result == GL32.GL_WAIT_FAILED)
+            System.out.println("[ERROR]: Sprite stream region " + region + " still in use after waiting");
+        GL32.glDeleteSync(fence);
+        fences[region] = 0L;
+    }
+
+    /** Draw calls issued by the last end(). */
+    public int getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /** Sprites drawn by the last end(). */
+    public int getSpritesDrawn()
+    {
+        return spritesDrawn;
+    }
+
+    /** Sprites that did not fit into the capacity, since creation. */
+    public long getDroppedSprites()
+    {
+        return droppedSprites;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public void cleanup()
+    {
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            if (fences[i] != 0L)
+                GL32.glDeleteSync(fences[i]);
+        }
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, buffer);
+        GL15.glUnmapBuffer(GL43.GL_SHADER_STORAGE_BUFFER);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+        GL15.glDeleteBuffers(buffer);
+        GL30.glDeleteVertexArrays(vaoId);
+        shader.cleanup();
+    }
+}
@@ -1,7 +1,10 @@
 package org.example;
 
+import org.example.jfr.TextureLoadEvent;
+import org.example.metrics.EngineMetrics;
 import org.example.utils.Loader;
 import org.joml.Vector2f;
+import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.stb.STBImage;
@@ -22,10 +25,14 @@ public class TextureAtlas
     private int width, height;
     private float textureSizeX, textureSizeY;
     private int stride;
+    private boolean bindless;
 
     public TextureAtlas(String filePath, int textureUniformLocation, int stride)
     {
         this.stride = stride;
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
         ByteBuffer image;
         // Load image using stb_image
         try (MemoryStack stack = MemoryStack.stackPush())
@@ -67,15 +74,63 @@ public class TextureAtlas
             // Generate mipmaps
             glGenerateMipmap(GL_TEXTURE_2D);
 
-            textureHandle = glGetTextureHandleARB(textureID);
-            glMakeTextureHandleResidentARB(textureHandle);
-            glUniformHandleui64ARB(textureUniformLocation, textureHandle);
+            // Software rasterizers (llvmpipe) have no bindless textures, fall back to texture unit 0
+            bindless = GL.getCapabilities().GL_ARB_bindless_texture;
+            if (bindless)
+            {
+                textureHandle = glGetTextureHandleARB(textureID);
+                glMakeTextureHandleResidentARB(textureHandle);
+                glUniformHandleui64ARB(textureUniformLocation, textureHandle);
+            }
+            else
+            {
+                glUniform1i(textureUniformLocation, 0);
+            }
 
             GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
             STBImage.stbi_image_free(image);
+            EngineMetrics.TEXTURE_LOAD.observe(EngineMetrics.millisSince(start));
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.frameIndex = EngineManager.getFrameIndex();
+                event.path = filePath;
+                event.width = width;
+                event.height = height;
+                event.commit();
+            }
+        }
+    }
+
+    /** Binds the atlas to texture unit 0 when bindless handles are unavailable, no-op otherwise. */
+    public void bind()
+    {
+        if (!bindless)
+            glBindTextureUnit(0, textureID);
+    }
+
+    /**
+     * Points a sampler uniform of the currently bound program at this atlas: the bindless handle when
+     * available, texture unit 0 otherwise. For programs other than the one the atlas was created with.
+     */
+    public void bind(int textureUniformLocation)
+    {
+        if (bindless)
+        {
+            glUniformHandleui64ARB(textureUniformLocation, textureHandle);
+        }
+        else
+        {
+            glBindTextureUnit(0, textureID);
+            glUniform1i(textureUniformLocation, 0);
         }
     }
 
+    public boolean isBindless()
+    {
+        return bindless;
+    }
+
     public long getHandle()
     {
         return textureHandle;
@@ -84,7 +139,8 @@ public class TextureAtlas
 
     public void cleanup()
     {
-        glMakeTextureHandleNonResidentARB(textureHandle);
+        if (bindless)
+            glMakeTextureHandleNonResidentARB(textureHandle);
         glDeleteTextures(textureID);
     }
 
@@ -114,6 +170,12 @@ public class TextureAtlas
     }
 
     public Vector2f getTextureOffset(int index)
+    {
+        return getTextureOffset(index, new Vector2f());
+    }
+
+    /** Allocation-free getTextureOffset(int), writes the offset into dest and returns it. */
+    public Vector2f getTextureOffset(int index, Vector2f dest)
     {
         int atlasWidth = width / stride;
         int atlasHeight = height / stride;
@@ -124,6 +186,6 @@ public class TextureAtlas
         float textureOffsetX = column * textureSizeX;
         float textureOffsetY = (atlasHeight - row - 1) * textureSizeY;  // Y flipped (OpenGL flips Y)
 
-        return new Vector2f(textureOffsetX, textureOffsetY);
+        return dest.set(textureOffsetX, textureOffsetY);
     }
 }
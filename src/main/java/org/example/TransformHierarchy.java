@@ -0,0 +1,535 @@
+package org.example;
+
+import org.example.metrics.EngineMetrics;
+import org.example.utils.OffHeap;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parent/child transforms for everything that moves together.
+ *
+ * Nodes are int handles (slot + generation, like EmitterRegistry handles). Local translation, rotation
+ * (quaternion) and scale are primitive arrays kept sorted by depth, so update() walks one level at a time
+ * through contiguous memory and every parent is final before its children are read. Levels are split
+ * across the fork/join pool once they are large enough; nodes of one level never write the same memory.
+ *
+ * Only dirty subtrees are recomputed: a node is redone when its own local transform changed or its parent
+ * was redone this update. World matrices are kept per slot, so a node's GPU index never changes, in an
+ * off-heap column already in the std430 mat4 layout; upload() copies the 64-node blocks that changed
+ * straight from it into the SSBO shaders read at BINDING.
+ *
+ * Creating, destroying and reparenting nodes only marks the depth order stale, it is rebuilt once at the
+ * next update.
+ */
+public class TransformHierarchy
+{
+    public static TransformHierarchy transforms;
+
+    public static final int INVALID_HANDLE = 0;
+    public static final int BINDING = 12;
+    public static final int MATRIX_SIZE = 64;
+
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final int NO_PARENT = -1;
+    private static final int DIRTY_BLOCK_SHIFT = 6; // 64 matrices per upload block
+    private static final int PARALLEL_LEVEL = 4096;  // levels smaller than this are done on the calling thread
+    private static final int TASK_SIZE = 1024;
+
+    private final int capacity;
+
+    // Per slot
+    private final int[] slotGeneration;
+    private final int[] slotToDense;   // -1 when the slot is free
+    private final int[] slotParent;    // parent slot or NO_PARENT
+    private final int[] slotDepth;
+    private final int[] changedStamp;  // update in which the world matrix was last recomputed
+    private final int[] freeSlots;
+    private int freeSlotCount;
+
+    // Dense, sorted by depth; two sets so the order can be rebuilt without allocating
+    private Columns columns;
+    private Columns spare;
+    private int count = 0;
+    private int[] levelStart = new int[16]; // nodes of depth d are [levelStart[d], levelStart[d + 1])
+    private int levels = 0;
+    private boolean orderDirty = false;
+    private int dirtyCount = 0;
+
+    // World matrices, per slot
+    private final ByteBuffer world;
+    private final long worldAddress;
+    private int buffer = 0; // created by the first upload, the hierarchy itself needs no GL context
+    private int stamp = 0;
+    private int updatedStamp = -1; // stamp of the last update, -1 when it had nothing to do
+    private int uploadedStamp = 0;
+
+    private final ForkJoinPool pool;
+
+    private static final class Columns
+    {
+        final int[] slot;
+        final float[] tx, ty, tz;
+        final float[] qx, qy, qz, qw;
+        final float[] sx, sy, sz;
+        final boolean[] dirty;
+
+        Columns(int capacity)
+        {
+            slot = new int[capacity];
+            tx = new float[capacity];
+            ty = new float[capacity];
+            tz = new float[capacity];
+            qx = new float[capacity];
+            qy = new float[capacity];
+            qz = new float[capacity];
+            qw = new float[capacity];
+            sx = new float[capacity];
+            sy = new float[capacity];
+            sz = new float[capacity];
+            dirty = new boolean[capacity];
+        }
+
+        void copy(int from, Columns to, int index)
+        {
+            to.slot[index] = slot[from];
+            to.tx[index] = tx[from];
+            to.ty[index] = ty[from];
+            to.tz[index] = tz[from];
+            to.qx[index] = qx[from];
+            to.qy[index] = qy[from];
+            to.qz[index] = qz[from];
+            to.qw[index] = qw[from];
+            to.sx[index] = sx[from];
+            to.sy[index] = sy[from];
+            to.sz[index] = sz[from];
+            to.dirty[index] = dirty[from];
+        }
+    }
+
+    public TransformHierarchy(int capacity)
+    {
+        this(capacity, ForkJoinPool.commonPool());
+    }
+
+    public TransformHierarchy(int capacity, ForkJoinPool pool)
+    {
+        if (capacity <= 0 || capacity > SLOT_MASK + 1)
+            throw new IllegalArgumentException("Transform capacity must be in [1, " + (SLOT_MASK + 1) + "]: " + capacity);
+        transforms = this;
+        this.capacity = capacity;
+        this.pool = pool;
+
+        slotGeneration = new int[capacity];
+        slotToDense = new int[capacity];
+        slotParent = new int[capacity];
+        slotDepth = new int[capacity];
+        changedStamp = new int[capacity];
+        freeSlots = new int[capacity];
+        Arrays.fill(slotToDense, -1);
+        // Hand out low slots first
+        for (int i = 0; i < capacity; i++)
+            freeSlots[i] = capacity - i - 1;
+        freeSlotCount = capacity;
+        columns = new Columns(capacity);
+        spare = new Columns(capacity);
+
+        world = OffHeap.calloc(capacity * MATRIX_SIZE);
+        worldAddress = MemoryUtil.memAddress(world);
+    }
+
+    /** New node with an identity local transform, parentHandle may be INVALID_HANDLE for a root. */
+    public int create(int parentHandle)
+    {
+        if (freeSlotCount == 0)
+            throw new IllegalStateException("[Error]: Transform hierarchy is full (" + capacity + ")");
+        int parent = parentHandle == INVALID_HANDLE ? NO_PARENT : resolve(parentHandle);
+
+        int slot = freeSlots[--freeSlotCount];
+        int generation = (slotGeneration[slot] + 1) & GENERATION_MASK;
+        if (generation == 0)
+            generation = 1; // generation 0 is reserved so INVALID_HANDLE never resolves
+        slotGeneration[slot] = generation;
+        slotParent[slot] = parent;
+
+        // Appended out of depth order, sorted in at the next update
+        int dense = count++;
+        slotToDense[slot] = dense;
+        columns.slot[dense] = slot;
+        columns.tx[dense] = columns.ty[dense] = columns.tz[dense] = 0.0f;
+        columns.qx[dense] = columns.qy[dense] = columns.qz[dense] = 0.0f;
+        columns.qw[dense] = 1.0f;
+        columns.sx[dense] = columns.sy[dense] = columns.sz[dense] = 1.0f;
+        columns.dirty[dense] = true;
+        dirtyCount++;
+        orderDirty = true;
+        return (generation << SLOT_BITS) | slot;
+    }
+
+    /** Removes a node; its children move up to its parent and keep their local transforms. */
+    public void destroy(int handle)
+    {
+        int slot = resolve(handle);
+        int parent = slotParent[slot];
+        for (int i = 0; i < count; i++)
+        {
+            int child = columns.slot[i];
+            if (slotParent[child] == slot)
+            {
+                slotParent[child] = parent;
+                markDirty(i);
+            }
+        }
+
+        // Swap the last node into the hole, the order is rebuilt anyway
+        int dense = slotToDense[slot];
+        int last = --count;
+        if (columns.dirty[dense])
+            dirtyCount--;
+        if (dense != last)
+        {
+            columns.copy(last, columns, dense);
+            slotToDense[columns.slot[dense]] = dense;
+        }
+        slotToDense[slot] = -1;
+        freeSlots[freeSlotCount++] = slot;
+        orderDirty = true;
+    }
+
+    public boolean isAlive(int handle)
+    {
+        int slot = handle & SLOT_MASK;
+        return handle != INVALID_HANDLE && slot < capacity && slotToDense[slot] >= 0 && slotGeneration[slot] == handle >>> SLOT_BITS;
+    }
+
+    /** Attaches a node to a new parent (INVALID_HANDLE detaches it), keeping its local transform. */
+    public void setParent(int handle, int parentHandle)
+    {
+        int slot = resolve(handle);
+        int parent = parentHandle == INVALID_HANDLE ? NO_PARENT : resolve(parentHandle);
+        for (int ancestor = parent; ancestor != NO_PARENT; ancestor = slotParent[ancestor])
+        {
+            if (ancestor == slot)
+                throw new IllegalArgumentException("Transform " + handle + " can not be parented to its own descendant " + parentHandle);
+        }
+        slotParent[slot] = parent;
+        markDirty(slotToDense[slot]);
+        orderDirty = true;
+    }
+
+    public void setTranslation(int handle, float x, float y, float z)
+    {
+        int dense = slotToDense[resolve(handle)];
+        columns.tx[dense] = x;
+        columns.ty[dense] = y;
+        columns.tz[dense] = z;
+        markDirty(dense);
+    }
+
+    /** Rotation as a unit quaternion. */
+    public void setRotation(int handle, float x, float y, float z, float w)
+    {
+        int dense = slotToDense[resolve(handle)];
+        columns.qx[dense] = x;
+        columns.qy[dense] = y;
+        columns.qz[dense] = z;
+        columns.qw[dense] = w;
+        markDirty(dense);
+    }
+
+    public void setRotationY(int handle, float angle)
+    {
+        setRotation(handle, 0.0f, (float) Math.sin(angle * 0.5f), 0.0f, (float) Math.cos(angle * 0.5f));
+    }
+
+    public void setScale(int handle, float x, float y, float z)
+    {
+        int dense = slotToDense[resolve(handle)];
+        columns.sx[dense] = x;
+        columns.sy[dense] = y;
+        columns.sz[dense] = z;
+        markDirty(dense);
+    }
+
+    private void markDirty(int dense)
+    {
+        if (columns.dirty[dense])
+            return;
+        columns.dirty[dense] = true;
+        dirtyCount++;
+    }
+
+    /** Recomputes the world matrices of the dirty subtrees. Cheap when nothing changed, safe to call more than once a frame. */
+    public void update()
+    {
+        if (dirtyCount == 0 && !orderDirty)
+        {
+            updatedStamp = -1;
+            return;
+        }
+        if (orderDirty)
+            sortByDepth();
+
+        stamp++;
+        for (int level = 0; level < levels; level++)
+        {
+            int from = levelStart[level];
+            int to = levelStart[level + 1];
+            if (to - from < PARALLEL_LEVEL)
+                computeRange(from, to);
+            else
+                pool.invoke(new LevelTask(from, to));
+        }
+        dirtyCount = 0;
+        updatedStamp = stamp;
+    }
+
+    // Counting sort of the nodes by depth into the spare columns
+    private void sortByDepth()
+    {
+        // Depth of every node, walking up until a node whose depth is already known this pass
+        int pass = -(stamp + 1); // negative marks cannot collide with real depths
+        int maxDepth = 0;
+        for (int i = 0; i < count; i++)
+            slotDepth[columns.slot[i]] = pass;
+        for (int i = 0; i < count; i++)
+        {
+            int slot = columns.slot[i];
+            if (slotDepth[slot] != pass)
+                continue;
+            // Climb to the first ancestor with a known depth, then fill the chain back down
+            int top = slot;
+            int steps = 0;
+            while (slotParent[top] != NO_PARENT && slotDepth[slotParent[top]] == pass)
+            {
+                top = slotParent[top];
+                steps++;
+            }
+            int depth = slotParent[top] == NO_PARENT ? 0 : slotDepth[slotParent[top]] + 1;
+            for (int node = slot, d = depth + steps; ; node = slotParent[node], d--)
+            {
+                slotDepth[node] = d;
+                if (node == top)
+                    break;
+            }
+            maxDepth = Math.max(maxDepth, depth + steps);
+        }
+
+        levels = count == 0 ? 0 : maxDepth + 1;
+        if (levelStart.length < levels + 1)
+            levelStart = new int[Math.max(levels + 1, levelStart.length * 2)];
+        Arrays.fill(levelStart, 0, levels + 1, 0);
+        for (int i = 0; i < count; i++)
+            levelStart[slotDepth[columns.slot[i]] + 1]++;
+        for (int level = 0; level < levels; level++)
+            levelStart[level + 1] += levelStart[level];
+
+        int[] next = Arrays.copyOf(levelStart, levels);
+        for (int i = 0; i < count; i++)
+        {
+            int index = next[slotDepth[columns.slot[i]]]++;
+            columns.copy(i, spare, index);
+            slotToDense[spare.slot[index]] = index;
+        }
+        Columns sorted = spare;
+        spare = columns;
+        columns = sorted;
+        orderDirty = false;
+    }
+
+    // world = parentWorld * translate * rotate * scale, for the nodes of [from, to) that need it
+    private void computeRange(int from, int to)
+    {
+        Columns c = columns;
+        for (int i = from; i < to; i++)
+        {
+            int slot = c.slot[i];
+            int parent = slotParent[slot];
+            if (!c.dirty[i] && (parent == NO_PARENT || changedStamp[parent] != stamp))
+                continue;
+            c.dirty[i] = false;
+            changedStamp[slot] = stamp;
+
+            float x = c.qx[i], y = c.qy[i], z = c.qz[i], w = c.qw[i];
+            float sx = c.sx[i], sy = c.sy[i], sz = c.sz[i];
+            float l00 = (1.0f - 2.0f * (y * y + z * z)) * sx, l01 = 2.0f * (x * y + z * w) * sx, l02 = 2.0f * (x * z - y * w) * sx;
+            float l10 = 2.0f * (x * y - z * w) * sy, l11 = (1.0f - 2.0f * (x * x + z * z)) * sy, l12 = 2.0f * (y * z + x * w) * sy;
+            float l20 = 2.0f * (x * z + y * w) * sz, l21 = 2.0f * (y * z - x * w) * sz, l22 = (1.0f - 2.0f * (x * x + y * y)) * sz;
+            float l30 = c.tx[i], l31 = c.ty[i], l32 = c.tz[i];
+
+            long out = worldAddress + (long) slot * MATRIX_SIZE;
+            if (parent == NO_PARENT)
+            {
+                putColumn(out, l00, l01, l02, 0.0f);
+                putColumn(out + 16, l10, l11, l12, 0.0f);
+                putColumn(out + 32, l20, l21, l22, 0.0f);
+                putColumn(out + 48, l30, l31, l32, 1.0f);
+                continue;
+            }
+
+            // Affine parent: only its upper 3x4 matters
+            long p = worldAddress + (long) parent * MATRIX_SIZE;
+            float p00 = MemoryUtil.memGetFloat(p), p01 = MemoryUtil.memGetFloat(p + 4), p02 = MemoryUtil.memGetFloat(p + 8);
+            float p10 = MemoryUtil.memGetFloat(p + 16), p11 = MemoryUtil.memGetFloat(p + 20), p12 = MemoryUtil.memGetFloat(p + 24);
+            float p20 = MemoryUtil.memGetFloat(p + 32), p21 = MemoryUtil.memGetFloat(p + 36), p22 = MemoryUtil.memGetFloat(p + 40);
+            float p30 = MemoryUtil.memGetFloat(p + 48), p31 = MemoryUtil.memGetFloat(p + 52), p32 = MemoryUtil.memGetFloat(p + 56);
+            putColumn(out, p00 * l00 + p10 * l01 + p20 * l02, p01 * l00 + p11 * l01 + p21 * l02, p02 * l00 + p12 * l01 + p22 * l02, 0.0f);
+            putColumn(out + 16, p00 * l10 + p10 * l11 + p20 * l12, p01 * l10 + p11 * l11 + p21 * l12, p02 * l10 + p12 * l11 + p22 * l12, 0.0f);
+            putColumn(out + 32, p00 * l20 + p10 * l21 + p20 * l22, p01 * l20 + p11 * l21 + p21 * l22, p02 * l20 + p12 * l21 + p22 * l22, 0.0f);
+            putColumn(out + 48, p00 * l30 + p10 * l31 + p20 * l32 + p30, p01 * l30 + p11 * l31 + p21 * l32 + p31, p02 * l30 + p12 * l31 + p22 * l32 + p32, 1.0f);
+        }
+    }
+
+    private static void putColumn(long address, float x, float y, float z, float w)
+    {
+        MemoryUtil.memPutFloat(address, x);
+        MemoryUtil.memPutFloat(address + 4, y);
+        MemoryUtil.memPutFloat(address + 8, z);
+        MemoryUtil.memPutFloat(address + 12, w);
+    }
+
+    // Splits a level in halves down to TASK_SIZE nodes
+    private final class LevelTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        LevelTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= TASK_SIZE)
+            {
+                computeRange(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(from, middle), new LevelTask(middle, to));
+        }
+    }
+
+    /** Sends the matrices recomputed by the last update to the GPU, in runs of 64-node blocks. */
+    public void upload()
+    {
+        if (buffer == 0)
+        {
+            buffer = GL45.glCreateBuffers();
+            GL45.glNamedBufferStorage(buffer, (long) capacity * MATRIX_SIZE, GL44.GL_DYNAMIC_STORAGE_BIT);
+            uploadedStamp = -1;
+        }
+        if (uploadedStamp == stamp)
+            return;
+        int blocks = (capacity + (1 << DIRTY_BLOCK_SHIFT) - 1) >> DIRTY_BLOCK_SHIFT;
+        int block = 0;
+        while (block < blocks)
+        {
+            if (!blockChanged(block))
+            {
+                block++;
+                continue;
+            }
+            // Merge runs of changed blocks into one upload
+            int first = block;
+            while (block < blocks && blockChanged(block))
+                block++;
+            long offset = (long) (first << DIRTY_BLOCK_SHIFT) * MATRIX_SIZE;
+            long size = (long) (Math.min(block << DIRTY_BLOCK_SHIFT, capacity) - (first << DIRTY_BLOCK_SHIFT)) * MATRIX_SIZE;
+            GL45.nglNamedBufferSubData(buffer, offset, size, worldAddress + offset);
+            EngineMetrics.UPLOAD_BYTES.add(size);
+        }
+        uploadedStamp = stamp;
+    }
+
+    // Anything recomputed since the last upload
+    private boolean blockChanged(int block)
+    {
+        int end = Math.min((block + 1) << DIRTY_BLOCK_SHIFT, capacity);
+        for (int slot = block << DIRTY_BLOCK_SHIFT; slot < end; slot++)
+        {
+            if (changedStamp[slot] > uploadedStamp)
+                return true;
+        }
+        return false;
+    }
+
+    /** Binds the world matrices, indexed by getGpuIndex(), as std430 mat4[] at BINDING. */
+    public void bind()
+    {
+        upload();
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, BINDING, buffer);
+    }
+
+    /** Index of the node's world matrix in the GPU buffer, stable for the node's lifetime. */
+    public int getGpuIndex(int handle)
+    {
+        return resolve(handle);
+    }
+
+    /** Whether the last update recomputed the node's world matrix. */
+    public boolean hasChanged(int handle)
+    {
+        return changedStamp[resolve(handle)] == updatedStamp;
+    }
+
+    /** World matrix as of the last update. */
+    public Matrix4f getWorldMatrix(int handle, Matrix4f dest)
+    {
+        return dest.setFromAddress(worldAddress + (long) resolve(handle) * MATRIX_SIZE);
+    }
+
+    /** World position as of the last update. */
+    public Vector3f getWorldPosition(int handle, Vector3f dest)
+    {
+        long address = worldAddress + (long) resolve(handle) * MATRIX_SIZE + 48;
+        return dest.set(MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4), MemoryUtil.memGetFloat(address + 8));
+    }
+
+    /** Address of the node's world matrix (column-major floats) for tight loops; valid until cleanup. */
+    public long getWorldAddress(int handle)
+    {
+        return worldAddress + (long) resolve(handle) * MATRIX_SIZE;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public int getLevels()
+    {
+        return levels;
+    }
+
+    private int resolve(int handle)
+    {
+        if (!isAlive(handle))
+            throw new IllegalArgumentException("Stale or invalid transform handle: " + handle);
+        return handle & SLOT_MASK;
+    }
+
+    public void cleanup()
+    {
+        if (buffer != 0)
+            GL15.glDeleteBuffers(buffer);
+        OffHeap.free(world);
+    }
+}
@@ -0,0 +1,150 @@
+package org.example;
+
+import org.example.utils.Loader;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL45;
+
+/**
+ * Weighted blended order-independent transparency (McGuire and Bavoil 2013) for particles.
+ *
+ * begin() copies the depth of the framebuffer particles would otherwise draw into and binds an
+ * accumulation (RGBA16F, additive) and a revealage (R8, multiplicative) target; fragment.glsl writes both
+ * when its weightedOit uniform is set. end() resolves them back over the original framebuffer with that
+ * framebuffer's blending, so the result does not depend on the order particles are drawn in and needs no sort.
+ * Works at whatever resolution the destination has, including the reduced-resolution offscreen target.
+ */
+public class WeightedOitTarget
+{
+    private static final float[] ZERO = {0.0f, 0.0f, 0.0f, 0.0f};
+    private static final float[] ONE = {1.0f, 0.0f, 0.0f, 0.0f};
+    private static final int[] DRAW_BUFFERS = {GL30.GL_COLOR_ATTACHMENT0, GL30.GL_COLOR_ATTACHMENT1};
+
+    private final ShaderManager resolveShader;
+    private final int vaoId;
+
+    private int width = 0;
+    private int height = 0;
+    private int accumulationTexture = 0;
+    private int revealageTexture = 0;
+    private int depthTexture = 0;
+    private int framebuffer = 0;
+
+    private int destination;
+    private final int[] destinationBlend = new int[4];
+
+    public WeightedOitTarget() throws Exception
+    {
+        resolveShader = new ShaderManager();
+        resolveShader.createVertexShader(Loader.loadShader("/shaders/fullscreen_vertex.glsl"));
+        resolveShader.createFragmentShader(Loader.loadShader("/shaders/particle_oit_resolve.glsl"));
+        resolveShader.link();
+
+        resolveShader.bind();
+        GL20.glUniform1i(resolveShader.getUniformLocation("accumulation"), 0);
+        GL20.glUniform1i(resolveShader.getUniformLocation("revealage"), 1);
+        resolveShader.unbind();
+
+        // Empty VAO for the attribute-less fullscreen triangle
+        vaoId = GL30.glGenVertexArrays();
+    }
+
+    /**
+     * Binds the OIT targets in place of the current framebuffer.
+     * @param width  size of the current framebuffer's viewport
+     * @param height size of the current framebuffer's viewport
+     * @return false when the viewport is 0x0 (minimized): nothing is bound and the pass should be skipped
+     */
+    public boolean begin(int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+            return false;
+        if (width != this.width || height != this.height)
+            allocate(width, height);
+
+        // Remember where to resolve to and how that target blends
+        destination = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        destinationBlend[0] = GL11.glGetInteger(GL14.GL_BLEND_SRC_RGB);
+        destinationBlend[1] = GL11.glGetInteger(GL14.GL_BLEND_DST_RGB);
+        destinationBlend[2] = GL11.glGetInteger(GL14.GL_BLEND_SRC_ALPHA);
+        destinationBlend[3] = GL11.glGetInteger(GL14.GL_BLEND_DST_ALPHA);
+
+        // Destination depth, particles are still hidden behind opaque geometry
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, depthTexture);
+        GL11.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        GL30.glClearBufferfv(GL11.GL_COLOR, 0, ZERO);
+        GL30.glClearBufferfv(GL11.GL_COLOR, 1, ONE);
+
+        // Accumulation adds up, revealage multiplies by (1 - alpha)
+        GL40.glBlendFunci(0, GL11.GL_ONE, GL11.GL_ONE);
+        GL40.glBlendFunci(1, GL11.GL_ZERO, GL11.GL_ONE_MINUS_SRC_COLOR);
+        return true;
+    }
+
+    /** Resolves over the framebuffer that was bound at begin() and restores its blending. */
+    public void end()
+    {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, destination);
+        GL14.glBlendFuncSeparate(destinationBlend[0], destinationBlend[1], destinationBlend[2], destinationBlend[3]);
+
+        GL11.glDisable(GL11.GL_DEPTH_TEST);
+        GL30.glBindVertexArray(vaoId);
+        resolveShader.bind();
+        GL45.glBindTextureUnit(0, accumulationTexture);
+        GL45.glBindTextureUnit(1, revealageTexture);
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, 3);
+        resolveShader.unbind();
+        GL30.glBindVertexArray(0);
+        GL11.glEnable(GL11.GL_DEPTH_TEST);
+    }
+
+    private void allocate(int width, int height)
+    {
+        release();
+        this.width = width;
+        this.height = height;
+
+        accumulationTexture = createTexture(GL30.GL_RGBA16F, width, height);
+        revealageTexture = createTexture(GL30.GL_R8, width, height);
+        depthTexture = createTexture(GL30.GL_DEPTH_COMPONENT32F, width, height);
+
+        framebuffer = GL45.glCreateFramebuffers();
+        GL45.glNamedFramebufferTexture(framebuffer, GL30.GL_COLOR_ATTACHMENT0, accumulationTexture, 0);
+        GL45.glNamedFramebufferTexture(framebuffer, GL30.GL_COLOR_ATTACHMENT1, revealageTexture, 0);
+        GL45.glNamedFramebufferTexture(framebuffer, GL30.GL_DEPTH_ATTACHMENT, depthTexture, 0);
+        GL45.glNamedFramebufferDrawBuffers(framebuffer, DRAW_BUFFERS);
+        if (GL45.glCheckNamedFramebufferStatus(framebuffer, GL30.GL_FRAMEBUFFER) != GL30.GL_FRAMEBUFFER_COMPLETE)
+            System.out.println("[ERROR]: Weighted OIT framebuffer is incomplete");
+    }
+
+    private static int createTexture(int internalFormat, int width, int height)
+    {
+        int texture = GL45.glCreateTextures(GL11.GL_TEXTURE_2D);
+        GL45.glTextureStorage2D(texture, 1, internalFormat, width, height);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL45.glTextureParameteri(texture, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        return texture;
+    }
+
+    private void release()
+    {
+        if (framebuffer == 0)
+            return;
+        GL30.glDeleteFramebuffers(framebuffer);
+        GL11.glDeleteTextures(new int[]{accumulationTexture, revealageTexture, depthTexture});
+        framebuffer = 0;
+    }
+
+    public void cleanup()
+    {
+        release();
+        GL30.glDeleteVertexArrays(vaoId);
+        resolveShader.cleanup();
+    }
+}
@@ -14,6 +14,8 @@ public class WindowManager
     public static final float FOV = (float) Math.toRadians(60);
     public static final float Z_NEAR = 0.01f;
     public static final float Z_FAR = 1000f;
+    public static final int KEY_WORDS = InputState.KEY_WORDS;
+    private static final int INPUT_QUEUE_CAPACITY = 1024;
 
     private final String title;
 
@@ -27,6 +29,13 @@ public class WindowManager
     private double lastMouseX, lastMouseY; // Initial mouse position (center of screen)
 
     private boolean mouseLocked = false;
+    private boolean headless = false;
+
+    // Callbacks only queue events, the input state is updated by its consumer once per frame
+    // so it can be recorded and replayed (see InputTrace)
+    private final InputEventQueue inputQueue = new InputEventQueue(INPUT_QUEUE_CAPACITY);
+    private final InputState input = new InputState(inputQueue);
+    private boolean replaying = false;
 
 
     public WindowManager(String title, int width, int height, boolean vSync)
@@ -85,6 +94,8 @@ public class WindowManager
         });
 
         GLFW.glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
+           if (key >= 0 && action != GLFW.GLFW_REPEAT && !replaying)
+               inputQueue.pushKey(key, action);
            if (key == GLFW.GLFW_KEY_ESCAPE && action == GLFW.GLFW_RELEASE)
            {
                if (mouseLocked)
@@ -116,8 +127,11 @@ public class WindowManager
             GLFW.glfwSwapInterval(1);
 
 
-        GLFW.glfwShowWindow(window);
-        GLFW.glfwFocusWindow(window);
+        if (!headless)
+        {
+            GLFW.glfwShowWindow(window);
+            GLFW.glfwFocusWindow(window);
+        }
 
         GL.createCapabilities();
 
@@ -136,6 +150,8 @@ public class WindowManager
 
         GLFW.glfwSetMouseButtonCallback(window, (window, button, action, mods) ->
         {
+            if (!replaying)
+                inputQueue.pushMouseButton(button, action);
             if (button == GLFW.GLFW_MOUSE_BUTTON_LEFT && action == GLFW.GLFW_PRESS)
             {
                 GLFW.glfwSetInputMode(window, GLFW.GLFW_CURSOR, GLFW.GLFW_CURSOR_DISABLED); // Lock the cursor back on left-click
@@ -146,7 +162,13 @@ public class WindowManager
         // Register the window resize callback
         GLFW.glfwSetFramebufferSizeCallback(window, (windowHandle, width, height) ->
         {
+            // Minimizing reports 0x0, keep the last size instead of a projection with a NaN aspect
+            if (width == 0 || height == 0)
+                return;
             GL20.glViewport(0, 0, width, height);  // Adjust viewport when window is resized
+            this.width = width;
+            this.height = height;
+            this.setResize(true); // Renderer rebuilds the projection and frame constants
         });
 
         updateProjectMatrix();
@@ -176,7 +198,70 @@ public class WindowManager
 
     public boolean isKeyPressed(int keycode)
     {
-        return GLFW.glfwGetKey(window, keycode) == GLFW.GLFW_PRESS;
+        return input.isKeyPressed(keycode);
+    }
+
+    public void setKeyPressed(int keycode, boolean pressed)
+    {
+        input.setKeyPressed(keycode, pressed);
+    }
+
+    /** 64 keys of the latched key state, bit i of word w is key w * 64 + i. */
+    public long getKeyWord(int word)
+    {
+        return input.getKeyWord(word);
+    }
+
+    /**
+     * Applies the events queued by the callbacks since the last frame and latches the mouse movement.
+     * A simulation running on another thread skips this and calls getInput().poll() itself.
+     */
+    public void beginFrame()
+    {
+        input.poll();
+    }
+
+    public float getMouseDeltaX()
+    {
+        return input.getMouseDeltaX();
+    }
+
+    public float getMouseDeltaY()
+    {
+        return input.getMouseDeltaY();
+    }
+
+    public void setMouseDelta(float deltaX, float deltaY)
+    {
+        input.setMouseDelta(deltaX, deltaY);
+    }
+
+    /** Consumer side of the input queue, used from one thread only. */
+    public InputState getInput()
+    {
+        return input;
+    }
+
+    public InputEventQueue getInputQueue()
+    {
+        return inputQueue;
+    }
+
+    /** While replaying, live keyboard and mouse events are ignored and the trace drives the input state. */
+    public void setReplaying(boolean replaying)
+    {
+        this.replaying = replaying;
+    }
+
+    public boolean isHeadless()
+    {
+        return headless;
+    }
+
+    /** Keeps the window hidden, must be set before init(). */
+    public void setHeadless(boolean headless)
+    {
+        this.headless = headless;
     }
 
     public boolean windowShouldClose()
@@ -237,10 +322,13 @@ public class WindowManager
         return projectionMatrix.setPerspective(FOV, aspectRatio, Z_NEAR, Z_FAR);
     }
 
-    public void setCursorCallback(Camera camera)
+    public void setCursorCallback()
     {
-        GLFW.glfwSetInputMode(window, GLFW.GLFW_CURSOR, GLFW.GLFW_CURSOR_DISABLED);
-        mouseLocked = true;
+        if (!headless)
+        {
+            GLFW.glfwSetInputMode(window, GLFW.GLFW_CURSOR, GLFW.GLFW_CURSOR_DISABLED);
+            mouseLocked = true;
+        }
 
         GLFW.glfwSetCursorPosCallback(window, (window, xpos, ypos) ->
         {
@@ -249,7 +337,14 @@ public class WindowManager
 
             lastMouseX = xpos;
             lastMouseY = ypos;
-            camera.processMouseMovement(xOffset, yOffset);
+            if (!replaying)
+                inputQueue.pushMouseMove((float) xOffset, (float) yOffset);
+        });
+
+        GLFW.glfwSetScrollCallback(window, (window, xOffset, yOffset) ->
+        {
+            if (!replaying)
+                inputQueue.pushScroll((float) xOffset, (float) yOffset);
         });
 
     }
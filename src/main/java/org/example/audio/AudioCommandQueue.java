@@ -0,0 +1,162 @@
+package org.example.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer / single-consumer ring of sound source commands, the frame thread's only way
+ * of changing what the audio thread plays apart from source and listener positions (see AudioEngine).
+ *
+ * Same layout as InputEventQueue: each command is two longs, a header (op, source slot) and a payload
+ * whose meaning depends on the op. Nothing is allocated after construction. When the ring is full the
+ * producer drops the command and counts it instead of blocking the frame.
+ */
+public class AudioCommandQueue
+{
+    /** Payload: clip id, looping flag. The gain and priority follow in a SET_GAIN from the same push. */
+    public static final int CREATE = 1;
+    public static final int PLAY = 2;
+    public static final int STOP = 3;
+    public static final int DESTROY = 4;
+    /** Payload: gain, priority. */
+    public static final int SET_GAIN = 5;
+
+    private final long[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next command to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next command to write, written by the producer
+    private long cachedHead = 0; // producer's last view of head
+    private long dropped = 0;    // producer side only
+
+    /** @param capacity commands, rounded up to a power of two */
+    public AudioCommandQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /** Queues a create and the source's gain together, so the audio thread never sees one without the other. */
+    public boolean pushCreate(int slot, int clip, boolean looping, float gain, float priority)
+    {
+        if (!hasRoom(2))
+        {
+            dropped++;
+            return false;
+        }
+        put(header(CREATE, slot), (long) clip << 32 | (looping ? 1L : 0L));
+        put(header(SET_GAIN, slot), pack(gain, priority));
+        return true;
+    }
+
+    public boolean pushSetGain(int slot, float gain, float priority)
+    {
+        return push(header(SET_GAIN, slot), pack(gain, priority));
+    }
+
+    public boolean push(int op, int slot)
+    {
+        return push(header(op, slot), 0L);
+    }
+
+    private boolean push(long header, long payload)
+    {
+        if (!hasRoom(1))
+        {
+            dropped++;
+            return false;
+        }
+        put(header, payload);
+        return true;
+    }
+
+    private boolean hasRoom(int commands)
+    {
+        long t = tail.get();
+        if (t + commands - 1 - cachedHead > mask)
+        {
+            cachedHead = head.get();
+            return t + commands - 1 - cachedHead <= mask;
+        }
+        return true;
+    }
+
+    private void put(long header, long payload)
+    {
+        long t = tail.get();
+        int slot = (int) (t & mask) << 1;
+        ring[slot] = header;
+        ring[slot + 1] = payload;
+        // Release: the slot is visible before the new tail
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Hands every queued command to the consumer, consumer thread only.
+     * @return the number of commands drained
+     */
+    public int drain(Consumer consumer)
+    {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++)
+        {
+            int slot = (int) (i & mask) << 1;
+            consumer.accept(ring[slot], ring[slot + 1]);
+        }
+        if (t != h)
+            head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    /** Commands dropped because the audio thread fell behind, producer thread only. */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    public static int op(long header)
+    {
+        return (int) (header & 0xFF);
+    }
+
+    public static int slot(long header)
+    {
+        return (int) (header >>> 8);
+    }
+
+    public static int clip(long payload)
+    {
+        return (int) (payload >>> 32);
+    }
+
+    public static boolean looping(long payload)
+    {
+        return (payload & 1L) != 0;
+    }
+
+    public static float gain(long payload)
+    {
+        return Float.intBitsToFloat((int) (payload >>> 32));
+    }
+
+    public static float priority(long payload)
+    {
+        return Float.intBitsToFloat((int) payload);
+    }
+
+    private static long header(int op, int slot)
+    {
+        return op | (long) slot << 8;
+    }
+
+    private static long pack(float x, float y)
+    {
+        return (long) Float.floatToRawIntBits(x) << 32 | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    /** Receives drained commands without boxing. */
+    public interface Consumer
+    {
+        void accept(long header, long payload);
+    }
+}
@@ -0,0 +1,242 @@
+package org.example.audio;
+
+import org.example.utils.Loader;
+import org.example.utils.OffHeap;
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that loads clips and keeps the streaming voices' rings full.
+ *
+ * Static clips are decoded whole with stb_vorbis and handed to the audio thread, which turns them into
+ * OpenAL buffers. Streamed clips stay encoded (or as raw PCM for generated clips) and every stream opens
+ * its own stb_vorbis decoder on them, so any number of voices can play one clip from different frames.
+ */
+class AudioDecoder implements Runnable
+{
+    private static final long IDLE_NANOS = 2_000_000L;
+
+    private final AudioEngine engine;
+    private final AudioStream[] streams;
+    private final ConcurrentLinkedQueue<AudioEngine.ClipData> loads = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Streamed clips, decoder thread only; a clip is either encoded Vorbis or PCM
+    private final ByteBuffer[] clipEncoded = new ByteBuffer[AudioEngine.MAX_CLIPS];
+    private final ShortBuffer[] clipPcm = new ShortBuffer[AudioEngine.MAX_CLIPS];
+    private final int[] clipChannels = new int[AudioEngine.MAX_CLIPS];
+    private final long[] clipFrames = new long[AudioEngine.MAX_CLIPS];
+
+    AudioDecoder(AudioEngine engine, AudioStream[] streams)
+    {
+        this.engine = engine;
+        this.streams = streams;
+        thread = new Thread(this, "audio-decoder");
+        thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    /** Loads clip.resource, or adopts clip.pcm as a streamed clip. Any thread. */
+    void submit(AudioEngine.ClipData clip)
+    {
+        loads.add(clip);
+        LockSupport.unpark(thread);
+    }
+
+    void stop()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            AudioEngine.ClipData clip;
+            while ((clip = loads.poll()) != null)
+                load(clip);
+            boolean busy = false;
+            for (AudioStream stream : streams)
+                busy |= service(stream);
+            if (!busy)
+                LockSupport.parkNanos(IDLE_NANOS);
+        }
+
+        for (AudioStream stream : streams)
+            closeVorbis(stream);
+        for (ShortBuffer pcm : clipPcm)
+        {
+            if (pcm != null)
+                OffHeap.free(pcm);
+        }
+        AudioEngine.ClipData clip;
+        while ((clip = loads.poll()) != null)
+            clip.free();
+    }
+
+    private void load(AudioEngine.ClipData clip)
+    {
+        if (clip.pcm != null)
+        {
+            // Generated PCM to stream, the decoder keeps the samples
+            clipPcm[clip.id] = clip.pcm;
+            clipChannels[clip.id] = clip.channels;
+            clipFrames[clip.id] = clip.frames;
+            engine.clipReady(new AudioEngine.ClipData(clip.id, null, true, null, clip.channels, clip.rate, clip.frames));
+            return;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            ByteBuffer encoded = Loader.loadResource(clip.resource);
+            IntBuffer error = stack.mallocInt(1);
+            if (clip.streamed)
+            {
+                long vorbis = STBVorbis.stb_vorbis_open_memory(encoded, error, null);
+                if (vorbis == MemoryUtil.NULL)
+                    throw new IllegalStateException("[Error]: stb_vorbis error " + error.get(0));
+                STBVorbisInfo info = STBVorbisInfo.mallocStack(stack);
+                STBVorbis.stb_vorbis_get_info(vorbis, info);
+                int channels = info.channels();
+                int rate = info.sample_rate();
+                long frames = STBVorbis.stb_vorbis_stream_length_in_samples(vorbis);
+                STBVorbis.stb_vorbis_close(vorbis);
+                checkChannels(channels, clip.resource);
+                clipEncoded[clip.id] = encoded;
+                clipChannels[clip.id] = channels;
+                clipFrames[clip.id] = frames;
+                engine.clipReady(new AudioEngine.ClipData(clip.id, clip.resource, true, null, channels, rate, frames));
+            }
+            else
+            {
+                IntBuffer channels = stack.mallocInt(1);
+                IntBuffer rate = stack.mallocInt(1);
+                ShortBuffer pcm = STBVorbis.stb_vorbis_decode_memory(encoded, channels, rate);
+                if (pcm == null)
+                    throw new IllegalStateException("[Error]: stb_vorbis could not decode " + clip.resource);
+                AudioEngine.ClipData decoded = new AudioEngine.ClipData(clip.id, clip.resource, false, pcm, channels.get(0), rate.get(0), pcm.remaining() / channels.get(0));
+                decoded.libcOwned = true;
+                if (channels.get(0) > AudioStream.MAX_CHANNELS)
+                {
+                    decoded.free();
+                    checkChannels(channels.get(0), clip.resource);
+                }
+                engine.clipReady(decoded);
+            }
+            System.out.println("[INFO]: Loaded sound " + clip.resource + (clip.streamed ? " (streamed)" : ""));
+        }
+        catch (Exception e)
+        {
+            System.out.println("[ERROR]: Unable to load sound " + clip.resource);
+            e.printStackTrace();
+            engine.clipReady(new AudioEngine.ClipData(clip.id, clip.resource, clip.streamed, null, 0, 0, 0));
+        }
+    }
+
+    private static void checkChannels(int channels, String resource)
+    {
+        if (channels < 1 || channels > AudioStream.MAX_CHANNELS)
+            throw new IllegalStateException("[Error]: " + resource + " has " + channels + " channels, at most " + AudioStream.MAX_CHANNELS + " are supported");
+    }
+
+    /** Writes one chunk if the stream needs one, returns whether it did any work. */
+    private boolean service(AudioStream stream)
+    {
+        if (stream.adoptRequest())
+        {
+            closeVorbis(stream);
+            int clip = stream.decoderClip;
+            if (clip >= 0)
+            {
+                stream.decoderFrame = clipFrames[clip] > 0 ? stream.decoderFrame % clipFrames[clip] : 0;
+                if (clipEncoded[clip] != null)
+                {
+                    // A decoder that fails to open reads nothing, which ends the stream below
+                    stream.vorbis = STBVorbis.stb_vorbis_open_memory(clipEncoded[clip], (IntBuffer) null, null);
+                    if (stream.vorbis != MemoryUtil.NULL)
+                        STBVorbis.stb_vorbis_seek(stream.vorbis, (int) stream.decoderFrame);
+                }
+            }
+        }
+        int clip = stream.decoderClip;
+        if (clip < 0 || stream.decoderEnded || stream.isFull())
+            return false;
+
+        ShortBuffer out = stream.beginChunk();
+        int frames = 0;
+        boolean end = false;
+        boolean rewound = false;
+        while (frames < AudioStream.CHUNK_FRAMES)
+        {
+            int read = read(stream, clip, out, frames, AudioStream.CHUNK_FRAMES - frames);
+            frames += read;
+            stream.decoderFrame += read;
+            if (read > 0)
+            {
+                rewound = false;
+                continue;
+            }
+            // End of the clip: wrap around, or finish the stream when there is nothing to loop
+            if (!stream.decoderLooping || rewound)
+            {
+                end = true;
+                break;
+            }
+            rewound = true;
+            stream.decoderFrame = 0;
+            if (stream.vorbis != MemoryUtil.NULL)
+                STBVorbis.stb_vorbis_seek_start(stream.vorbis);
+        }
+        stream.commitChunk(frames, end);
+        stream.decoderEnded = end;
+        return true;
+    }
+
+    private int read(AudioStream stream, int clip, ShortBuffer out, int frame, int frames)
+    {
+        int channels = clipChannels[clip];
+        if (stream.vorbis != MemoryUtil.NULL)
+        {
+            out.limit((frame + frames) * channels).position(frame * channels);
+            return STBVorbis.stb_vorbis_get_samples_short_interleaved(stream.vorbis, channels, out);
+        }
+        ShortBuffer pcm = clipPcm[clip];
+        int count = (int) Math.min(frames, clipFrames[clip] - stream.decoderFrame);
+        if (pcm == null || count <= 0)
+            return 0;
+        MemoryUtil.memCopy(MemoryUtil.memAddress0(pcm) + stream.decoderFrame * channels * 2L, MemoryUtil.memAddress0(out) + frame * channels * 2L, count * channels * 2L);
+        return count;
+    }
+
+    private static void closeVorbis(AudioStream stream)
+    {
+        if (stream.vorbis != MemoryUtil.NULL)
+        {
+            STBVorbis.stb_vorbis_close(stream.vorbis);
+            stream.vorbis = MemoryUtil.NULL;
+        }
+    }
+}
@@ -0,0 +1,858 @@
+package org.example.audio;
+
+import org.example.metrics.Counter;
+import org.example.metrics.EngineMetrics;
+import org.example.metrics.Gauge;
+import org.example.utils.OffHeap;
+import org.joml.Vector3f;
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.libc.LibCStdlib;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.AL_SAMPLE_OFFSET;
+import static org.lwjgl.openal.ALC10.*;
+import static org.lwjgl.openal.ALC11.ALC_MONO_SOURCES;
+
+/**
+ * Sound on OpenAL, run by its own thread so the frame thread never waits on the device or a decoder.
+ *
+ * The frame thread creates sound sources (up to MAX_SOURCES, far more than any device has voices) and
+ * changes them through an AudioCommandQueue; positions of sources and the listener are plain float
+ * arrays it writes directly and the audio thread reads without locking, so a position may be a tick
+ * stale or mix two updates, which is inaudible. Every tick the audio thread scores the playing sources
+ * by priority, gain and distance and gives the hardware voices to the best ones. The rest are virtual:
+ * they only advance their play cursor, and continue from it when they win a voice back.
+ *
+ * Clips are static (decoded once into an OpenAL buffer) or streamed: a streaming voice queues a few
+ * small OpenAL buffers filled from its AudioStream ring, which the AudioDecoder thread keeps full.
+ *
+ * Works with any OpenAL Soft backend, including the null and wave ones for machines without sound:
+ * ALSOFT_DRIVERS=null, or ALSOFT_DRIVERS=wave with an alsoft.ini holding [wave] file=out.wav.
+ */
+public class AudioEngine
+{
+    /** The running engine, null when audio is off or the device could not be opened. */
+    public static AudioEngine audio;
+
+    public static final int INVALID_HANDLE = 0;
+    public static final int MAX_SOURCES = 8192;
+    public static final int MAX_CLIPS = 256;
+    public static final int MAX_VOICES = 32;
+    public static final int STREAM_BUFFERS = 4;
+    /** Distance up to which a source plays at full gain, both for OpenAL's attenuation and the scores. */
+    public static final float REFERENCE_DISTANCE = 2.0f;
+
+    private static final int SLOT_BITS = 13;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final long TICK_NANOS = 5_000_000L;
+    private static final float REAL_VOICE_BONUS = 1.25f; // keeps voices from flapping between equal sources
+
+    public static final Gauge VOICES = EngineMetrics.registry.gauge("audio_voices_real", "Sound sources playing on a hardware voice");
+    public static final Gauge VIRTUAL = EngineMetrics.registry.gauge("audio_sources_virtual", "Playing sound sources without a voice, only advancing in time");
+    public static final Counter UNDERRUNS = EngineMetrics.registry.counter("audio_stream_underruns_total", "Times a streaming voice ran dry and had to restart");
+    public static final Counter DROPPED = EngineMetrics.registry.counter("audio_commands_dropped_total", "Sound source commands dropped because the audio thread fell behind");
+
+    /** A clip on its way to the decoder or the audio thread. */
+    static final class ClipData
+    {
+        final int id;
+        final String resource;
+        final boolean streamed;
+        final ShortBuffer pcm;
+        final int channels;
+        final int rate;
+        final long frames;
+        boolean libcOwned = false; // pcm came from stb_vorbis rather than OffHeap
+
+        ClipData(int id, String resource, boolean streamed, ShortBuffer pcm, int channels, int rate, long frames)
+        {
+            this.id = id;
+            this.resource = resource;
+            this.streamed = streamed;
+            this.pcm = pcm;
+            this.channels = channels;
+            this.rate = rate;
+            this.frames = frames;
+        }
+
+        void free()
+        {
+            if (pcm == null)
+                return;
+            if (libcOwned)
+                LibCStdlib.free(pcm);
+            else
+                OffHeap.free(pcm);
+        }
+    }
+
+    private static final byte CLIP_LOADING = 0;
+    private static final byte CLIP_READY = 1;
+    private static final byte CLIP_FAILED = 2;
+
+    private final String deviceName;
+    private final int maxVoices;
+    private final AudioCommandQueue commands = new AudioCommandQueue(MAX_SOURCES * 2);
+    private final ConcurrentLinkedQueue<ClipData> readyClips = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private Thread thread;
+    private volatile boolean running = false;
+    private volatile boolean initialized = false;
+
+    // Frame thread: handles, clip ids and the positions the audio thread reads
+    private final int[] slotGeneration = new int[MAX_SOURCES];
+    private final int[] freeSlots = new int[MAX_SOURCES];
+    private int freeCount;
+    private int nextClip = 0;
+    private final float[] positions = new float[MAX_SOURCES * 3];
+    private final float[] listener = new float[9]; // position, at, up
+    private volatile int listenerSerial = 0;
+
+    // Audio thread: devices, voices, clips and sources
+    private long device;
+    private long context;
+    private int voiceCount;
+    private VoiceAllocator allocator;
+    private AudioDecoder decoder;
+    private AudioStream[] streams;
+    private int[] voiceSource;
+    private int[] voiceOwner;
+    private int[] streamBuffers;      // STREAM_BUFFERS per voice
+    private int[] streamBufferFrames; // frames held by each of them
+    private int[] freeBuffers;        // per voice, the stream buffers not queued
+    private int[] freeBufferCount;
+    private long[] voiceStartFrame;
+    private long[] voicePlayedFrames;
+    private boolean[] voiceStreamEnded;
+    private boolean[] voiceStarted;
+
+    private final int[] clipBuffer = new int[MAX_CLIPS];
+    private final int[] clipChannels = new int[MAX_CLIPS];
+    private final int[] clipRate = new int[MAX_CLIPS];
+    private final long[] clipFrames = new long[MAX_CLIPS];
+    private final boolean[] clipStreamed = new boolean[MAX_CLIPS];
+    private final byte[] clipState = new byte[MAX_CLIPS];
+
+    private final boolean[] alive = new boolean[MAX_SOURCES];
+    private final boolean[] playing = new boolean[MAX_SOURCES];
+    private final int[] sourceClip = new int[MAX_SOURCES];
+    private final boolean[] sourceLooping = new boolean[MAX_SOURCES];
+    private final float[] sourceGain = new float[MAX_SOURCES];
+    private final float[] sourcePriority = new float[MAX_SOURCES];
+    private final double[] sourceCursor = new double[MAX_SOURCES]; // frames
+    private final int[] sourceVoice = new int[MAX_SOURCES];
+    private final float[] scores = new float[MAX_SOURCES];
+    private final long[] selectedTick = new long[MAX_SOURCES];
+    private final int[] candidates = new int[MAX_SOURCES];
+    private int[] selected;
+    private int highWater = 0;
+    private long tickCount = 0;
+    private final float[] listenerCopy = new float[9];
+    private int appliedListenerSerial = 0;
+    private final AudioCommandQueue.Consumer apply = this::apply;
+
+    // Stats, written by the audio thread
+    private volatile int realVoices = 0;
+    private volatile int playingSources = 0;
+
+    /**
+     * @param deviceName OpenAL device to open, null for the default one
+     * @param maxVoices upper bound on the hardware voices used, the device may offer fewer
+     */
+    public AudioEngine(String deviceName, int maxVoices)
+    {
+        this.deviceName = deviceName;
+        this.maxVoices = maxVoices;
+        for (int i = 0; i < MAX_SOURCES; i++)
+        {
+            freeSlots[i] = MAX_SOURCES - 1 - i;
+            sourceVoice[i] = -1;
+            selectedTick[i] = -1;
+        }
+        freeCount = MAX_SOURCES;
+    }
+
+    public AudioEngine(String deviceName)
+    {
+        this(deviceName, MAX_VOICES);
+    }
+
+    /**
+     * Opens the device on the audio thread and starts ticking.
+     * @return false when the device could not be opened, audio stays off
+     */
+    public boolean start()
+    {
+        running = true;
+        thread = new Thread(this::run, "audio");
+        thread.setDaemon(true);
+        thread.start();
+        try
+        {
+            started.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (!initialized)
+        {
+            running = false;
+            return false;
+        }
+        audio = this;
+        return true;
+    }
+
+    public void stop()
+    {
+        if (!running)
+            return;
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (audio == this)
+            audio = null;
+    }
+
+    // ---- Frame thread API ----
+
+    /**
+     * Loads an Ogg Vorbis resource on the decoder thread; sources can use the id right away and start
+     * sounding once it is loaded. Streamed clips are decoded while they play instead of up front.
+     */
+    public int loadClip(String resource, boolean streamed)
+    {
+        int id = allocateClip();
+        decoder.submit(new ClipData(id, resource, streamed, null, 0, 0, 0));
+        return id;
+    }
+
+    /** Makes a clip of interleaved 16-bit samples, which are copied. */
+    public int createClip(ShortBuffer samples, int channels, int rate, boolean streamed)
+    {
+        if (channels < 1 || channels > AudioStream.MAX_CHANNELS)
+            throw new IllegalArgumentException("Clips need 1 to " + AudioStream.MAX_CHANNELS + " channels: " + channels);
+        int id = allocateClip();
+        ShortBuffer copy = OffHeap.allocShort(samples.remaining());
+        MemoryUtil.memCopy(samples, copy);
+        ClipData clip = new ClipData(id, null, streamed, copy, channels, rate, samples.remaining() / channels);
+        if (streamed)
+            decoder.submit(clip);
+        else
+            clipReady(clip);
+        return id;
+    }
+
+    /**
+     * Makes a mono clip of a sine tone with a slow swell, rounded to whole periods so it loops without
+     * a click. Handy for tests and placeholder sounds.
+     */
+    public int createTone(float frequency, float seconds, int rate, boolean streamed)
+    {
+        int periods = Math.max(1, Math.round(frequency * seconds));
+        int frames = Math.round(periods * rate / frequency);
+        ShortBuffer samples = OffHeap.allocShort(frames);
+        try
+        {
+            for (int i = 0; i < frames; i++)
+            {
+                double t = (double) i / frames;
+                double swell = 0.6 + 0.4 * Math.sin(2.0 * Math.PI * t);
+                samples.put(i, (short) (Math.sin(2.0 * Math.PI * periods * t) * swell * 0.5 * Short.MAX_VALUE));
+            }
+            return createClip(samples, 1, rate, streamed);
+        }
+        finally
+        {
+            OffHeap.free(samples);
+        }
+    }
+
+    private int allocateClip()
+    {
+        if (nextClip == MAX_CLIPS)
+            throw new IllegalStateException("[Error]: More than " + MAX_CLIPS + " sound clips");
+        return nextClip++;
+    }
+
+    /**
+     * Creates a stopped sound source, mono clips are positioned in 3D.
+     * @param priority how much the source matters next to others at the same loudness, 1 is normal
+     * @return the source handle, INVALID_HANDLE when all MAX_SOURCES are in use
+     */
+    public int createSource(int clip, float x, float y, float z, float gain, float priority, boolean looping)
+    {
+        if (freeCount == 0)
+            return INVALID_HANDLE;
+        int slot = freeSlots[--freeCount];
+        int generation = (slotGeneration[slot] + 1) & GENERATION_MASK;
+        if (generation == 0)
+            generation = 1;
+        slotGeneration[slot] = generation;
+        setPositionSlot(slot, x, y, z);
+        if (!commands.pushCreate(slot, clip, looping, gain, priority))
+            DROPPED.increment();
+        return (generation << SLOT_BITS) | slot;
+    }
+
+    public void setPosition(int handle, float x, float y, float z)
+    {
+        if (isValid(handle))
+            setPositionSlot(handle & SLOT_MASK, x, y, z);
+    }
+
+    private void setPositionSlot(int slot, float x, float y, float z)
+    {
+        positions[slot * 3] = x;
+        positions[slot * 3 + 1] = y;
+        positions[slot * 3 + 2] = z;
+    }
+
+    public void setGain(int handle, float gain, float priority)
+    {
+        if (isValid(handle) && !commands.pushSetGain(handle & SLOT_MASK, gain, priority))
+            DROPPED.increment();
+    }
+
+    /** Plays the source from the start. */
+    public void play(int handle)
+    {
+        push(handle, AudioCommandQueue.PLAY);
+    }
+
+    public void stop(int handle)
+    {
+        push(handle, AudioCommandQueue.STOP);
+    }
+
+    public void destroy(int handle)
+    {
+        if (!isValid(handle))
+            return;
+        int slot = handle & SLOT_MASK;
+        push(handle, AudioCommandQueue.DESTROY);
+        // Bump the generation so stale handles stop resolving
+        slotGeneration[slot] = (slotGeneration[slot] + 1) & GENERATION_MASK;
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void push(int handle, int op)
+    {
+        if (isValid(handle) && !commands.push(op, handle & SLOT_MASK))
+            DROPPED.increment();
+    }
+
+    public boolean isValid(int handle)
+    {
+        int slot = handle & SLOT_MASK;
+        int generation = (handle >>> SLOT_BITS) & GENERATION_MASK;
+        return handle != INVALID_HANDLE && generation != 0 && slotGeneration[slot] == generation;
+    }
+
+    /** Moves the listener, usually from the camera each frame. */
+    public void setListener(Vector3f position, Vector3f front, Vector3f up)
+    {
+        listener[0] = position.x;
+        listener[1] = position.y;
+        listener[2] = position.z;
+        listener[3] = front.x;
+        listener[4] = front.y;
+        listener[5] = front.z;
+        listener[6] = up.x;
+        listener[7] = up.y;
+        listener[8] = up.z;
+        listenerSerial++;
+    }
+
+    /** Hardware voices in the pool, 0 before start(). */
+    public int getVoiceCount()
+    {
+        return voiceCount;
+    }
+
+    /** Sources on a hardware voice as of the last tick. */
+    public int getRealVoices()
+    {
+        return realVoices;
+    }
+
+    /** Playing sources, real and virtual, as of the last tick. */
+    public int getPlayingSources()
+    {
+        return playingSources;
+    }
+
+    /** Whether the source had a voice in the last tick; racy, meant for tests and debug views. */
+    public boolean isReal(int handle)
+    {
+        return isValid(handle) && sourceVoice[handle & SLOT_MASK] >= 0;
+    }
+
+    // ---- Audio thread ----
+
+    void clipReady(ClipData clip)
+    {
+        readyClips.add(clip);
+    }
+
+    private void run()
+    {
+        try
+        {
+            init();
+            initialized = true;
+        }
+        catch (Throwable e)
+        {
+            System.out.println("[ERROR]: Unable to open the audio device" + (deviceName != null ? " " + deviceName : ""));
+            e.printStackTrace();
+            destroyContext();
+            started.countDown();
+            return;
+        }
+        started.countDown();
+
+        long last = System.nanoTime();
+        while (running)
+        {
+            long now = System.nanoTime();
+            tick((now - last) / 1_000_000_000.0);
+            last = now;
+            long remaining = TICK_NANOS - (System.nanoTime() - now);
+            if (remaining > 0)
+                LockSupport.parkNanos(remaining);
+        }
+        cleanup();
+    }
+
+    private void init()
+    {
+        device = alcOpenDevice(deviceName);
+        if (device == MemoryUtil.NULL)
+            throw new IllegalStateException("[Error]: alcOpenDevice failed");
+        ALCCapabilities deviceCaps = ALC.createCapabilities(device);
+        context = alcCreateContext(device, (IntBuffer) null);
+        if (context == MemoryUtil.NULL || !alcMakeContextCurrent(context))
+            throw new IllegalStateException("[Error]: Unable to create an OpenAL context");
+        AL.createCapabilities(deviceCaps);
+
+        int monoSources = alcGetInteger(device, ALC_MONO_SOURCES);
+        voiceCount = Math.max(1, monoSources > 0 ? Math.min(maxVoices, monoSources) : maxVoices);
+        allocator = new VoiceAllocator(voiceCount);
+        selected = new int[voiceCount];
+        streams = new AudioStream[voiceCount];
+        voiceSource = new int[voiceCount];
+        voiceOwner = new int[voiceCount];
+        streamBuffers = new int[voiceCount * STREAM_BUFFERS];
+        streamBufferFrames = new int[voiceCount * STREAM_BUFFERS];
+        freeBuffers = new int[voiceCount * STREAM_BUFFERS];
+        freeBufferCount = new int[voiceCount];
+        voiceStartFrame = new long[voiceCount];
+        voicePlayedFrames = new long[voiceCount];
+        voiceStreamEnded = new boolean[voiceCount];
+        voiceStarted = new boolean[voiceCount];
+        for (int v = 0; v < voiceCount; v++)
+        {
+            streams[v] = new AudioStream();
+            voiceSource[v] = alGenSources();
+            voiceOwner[v] = -1;
+            alSourcef(voiceSource[v], AL_REFERENCE_DISTANCE, REFERENCE_DISTANCE);
+            for (int b = 0; b < STREAM_BUFFERS; b++)
+            {
+                streamBuffers[v * STREAM_BUFFERS + b] = alGenBuffers();
+                freeBuffers[v * STREAM_BUFFERS + b] = streamBuffers[v * STREAM_BUFFERS + b];
+            }
+            freeBufferCount[v] = STREAM_BUFFERS;
+        }
+        int error = alGetError();
+        if (error != AL_NO_ERROR)
+            throw new IllegalStateException("[Error]: OpenAL error " + error + " while creating the voices");
+
+        decoder = new AudioDecoder(this, streams);
+        decoder.start();
+        System.out.println("[INFO]: Audio on " + alcGetString(device, ALC_DEVICE_SPECIFIER) + " with " + voiceCount + " voices");
+    }
+
+    private void tick(double seconds)
+    {
+        tickCount++;
+        commands.drain(apply);
+        ClipData clip;
+        while ((clip = readyClips.poll()) != null)
+            adopt(clip);
+        applyListener();
+
+        // Voices first: streams are refilled and sources that finished let go of theirs
+        for (int v = 0; v < voiceCount; v++)
+        {
+            int source = voiceOwner[v];
+            if (source < 0)
+                continue;
+            if (clipStreamed[sourceClip[source]] ? serviceStream(v) : alGetSourcei(voiceSource[v], AL_SOURCE_STATE) == AL_STOPPED)
+                finish(source);
+        }
+
+        // Score every playing source, virtual ones move on by the elapsed time
+        int count = 0;
+        int playingCount = 0;
+        for (int source = 0; source < highWater; source++)
+        {
+            if (!playing[source])
+                continue;
+            int id = sourceClip[source];
+            if (clipState[id] == CLIP_FAILED)
+            {
+                playing[source] = false;
+                continue;
+            }
+            playingCount++;
+            if (clipState[id] != CLIP_READY)
+                continue;
+            if (sourceVoice[source] < 0 && !advance(source, seconds))
+            {
+                playingCount--;
+                continue;
+            }
+            scores[source] = score(source);
+            candidates[count++] = source;
+        }
+
+        // Voices go to the best scores: losers first hand theirs back, then winners take them
+        int winners = allocator.select(candidates, count, scores, selected);
+        for (int i = 0; i < winners; i++)
+            selectedTick[selected[i]] = tickCount;
+        for (int v = 0; v < voiceCount; v++)
+        {
+            if (voiceOwner[v] >= 0 && selectedTick[voiceOwner[v]] != tickCount)
+                demote(v);
+        }
+        for (int i = 0; i < winners; i++)
+        {
+            if (sourceVoice[selected[i]] < 0)
+                promote(selected[i], freeVoice());
+        }
+
+        int real = 0;
+        for (int v = 0; v < voiceCount; v++)
+        {
+            int source = voiceOwner[v];
+            if (source < 0)
+                continue;
+            real++;
+            alSource3f(voiceSource[v], AL_POSITION, positions[source * 3], positions[source * 3 + 1], positions[source * 3 + 2]);
+            alSourcef(voiceSource[v], AL_GAIN, sourceGain[source]);
+        }
+        realVoices = real;
+        playingSources = playingCount;
+        VOICES.set(real);
+        VIRTUAL.set(playingCount - real);
+    }
+
+    private void apply(long header, long payload)
+    {
+        int source = AudioCommandQueue.slot(header);
+        switch (AudioCommandQueue.op(header))
+        {
+            case AudioCommandQueue.CREATE:
+                finish(source);
+                alive[source] = true;
+                sourceClip[source] = AudioCommandQueue.clip(payload);
+                sourceLooping[source] = AudioCommandQueue.looping(payload);
+                sourceCursor[source] = 0.0;
+                highWater = Math.max(highWater, source + 1);
+                break;
+            case AudioCommandQueue.SET_GAIN:
+                sourceGain[source] = AudioCommandQueue.gain(payload);
+                sourcePriority[source] = AudioCommandQueue.priority(payload);
+                break;
+            case AudioCommandQueue.PLAY:
+                finish(source);
+                playing[source] = alive[source];
+                break;
+            case AudioCommandQueue.STOP:
+                finish(source);
+                break;
+            case AudioCommandQueue.DESTROY:
+                finish(source);
+                alive[source] = false;
+                break;
+        }
+    }
+
+    private void adopt(ClipData clip)
+    {
+        int id = clip.id;
+        if (clip.channels == 0)
+        {
+            clipState[id] = CLIP_FAILED;
+            return;
+        }
+        clipChannels[id] = clip.channels;
+        clipRate[id] = clip.rate;
+        clipFrames[id] = clip.frames;
+        clipStreamed[id] = clip.streamed;
+        if (!clip.streamed)
+        {
+            clipBuffer[id] = alGenBuffers();
+            alBufferData(clipBuffer[id], format(clip.channels), clip.pcm, clip.rate);
+            clip.free();
+        }
+        clipState[id] = CLIP_READY;
+    }
+
+    private void applyListener()
+    {
+        int serial = listenerSerial;
+        if (serial == appliedListenerSerial)
+            return;
+        appliedListenerSerial = serial;
+        System.arraycopy(listener, 0, listenerCopy, 0, 9);
+        alListener3f(AL_POSITION, listenerCopy[0], listenerCopy[1], listenerCopy[2]);
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            alListenerfv(AL_ORIENTATION, stack.floats(listenerCopy[3], listenerCopy[4], listenerCopy[5], listenerCopy[6], listenerCopy[7], listenerCopy[8]));
+        }
+    }
+
+    // Loudness the listener would hear, weighted by priority; inverse distance clamped like OpenAL's default model
+    private float score(int source)
+    {
+        float dx = positions[source * 3] - listenerCopy[0];
+        float dy = positions[source * 3 + 1] - listenerCopy[1];
+        float dz = positions[source * 3 + 2] - listenerCopy[2];
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        float score = sourceGain[source] * sourcePriority[source] * REFERENCE_DISTANCE / Math.max(REFERENCE_DISTANCE, distance);
+        if (score <= 0.0f)
+            return -1.0f;
+        return sourceVoice[source] >= 0 ? score * REAL_VOICE_BONUS : score;
+    }
+
+    /** Moves a virtual source's cursor on, returns false when it reached the end and stopped. */
+    private boolean advance(int source, double seconds)
+    {
+        int id = sourceClip[source];
+        double cursor = sourceCursor[source] + seconds * clipRate[id];
+        if (cursor >= clipFrames[id])
+        {
+            if (!sourceLooping[source] || clipFrames[id] == 0)
+            {
+                playing[source] = false;
+                sourceCursor[source] = 0.0;
+                return false;
+            }
+            cursor %= clipFrames[id];
+        }
+        sourceCursor[source] = cursor;
+        return true;
+    }
+
+    private int freeVoice()
+    {
+        for (int v = 0; v < voiceCount; v++)
+        {
+            if (voiceOwner[v] < 0)
+                return v;
+        }
+        throw new IllegalStateException("[Error]: No free voice");
+    }
+
+    private void promote(int source, int v)
+    {
+        int id = sourceClip[source];
+        int al = voiceSource[v];
+        voiceOwner[v] = source;
+        sourceVoice[source] = v;
+        alSource3f(al, AL_POSITION, positions[source * 3], positions[source * 3 + 1], positions[source * 3 + 2]);
+        alSourcef(al, AL_GAIN, sourceGain[source]);
+        if (clipStreamed[id])
+        {
+            // The decoder loops streamed clips, the voice only plays what is queued
+            alSourcei(al, AL_LOOPING, AL_FALSE);
+            voiceStartFrame[v] = (long) sourceCursor[source];
+            voicePlayedFrames[v] = 0;
+            voiceStreamEnded[v] = false;
+            voiceStarted[v] = false;
+            streams[v].request(id, voiceStartFrame[v], sourceLooping[source]);
+            serviceStream(v);
+        }
+        else
+        {
+            alSourcei(al, AL_BUFFER, clipBuffer[id]);
+            alSourcei(al, AL_LOOPING, sourceLooping[source] ? AL_TRUE : AL_FALSE);
+            alSourcei(al, AL_SAMPLE_OFFSET, (int) sourceCursor[source]);
+            alSourcePlay(al);
+        }
+    }
+
+    /** Takes the voice from its source, which carries on virtually from where the voice was. */
+    private void demote(int v)
+    {
+        int source = voiceOwner[v];
+        int id = sourceClip[source];
+        int al = voiceSource[v];
+        double cursor;
+        if (clipStreamed[id])
+        {
+            unqueueProcessed(v);
+            cursor = voiceStartFrame[v] + voicePlayedFrames[v] + alGetSourcei(al, AL_SAMPLE_OFFSET);
+        }
+        else
+        {
+            cursor = alGetSourcei(al, AL_SAMPLE_OFFSET);
+        }
+        release(v);
+        sourceCursor[source] = sourceLooping[source] && clipFrames[id] > 0 ? cursor % clipFrames[id] : cursor;
+    }
+
+    /** Stops the source and rewinds it, freeing its voice. */
+    private void finish(int source)
+    {
+        if (sourceVoice[source] >= 0)
+            release(sourceVoice[source]);
+        playing[source] = false;
+        sourceCursor[source] = 0.0;
+    }
+
+    private void release(int v)
+    {
+        int al = voiceSource[v];
+        alSourceStop(al);
+        // Detaching the buffers unqueues every stream buffer at once
+        alSourcei(al, AL_BUFFER, 0);
+        if (clipStreamed[sourceClip[voiceOwner[v]]])
+        {
+            streams[v].request(-1, 0, false);
+            for (int b = 0; b < STREAM_BUFFERS; b++)
+                freeBuffers[v * STREAM_BUFFERS + b] = streamBuffers[v * STREAM_BUFFERS + b];
+            freeBufferCount[v] = STREAM_BUFFERS;
+        }
+        sourceVoice[voiceOwner[v]] = -1;
+        voiceOwner[v] = -1;
+    }
+
+    /**
+     * Recycles the played buffers of a streaming voice, queues the chunks the decoder has ready and
+     * restarts the voice if it ran dry. Returns true once the stream played to its end.
+     */
+    private boolean serviceStream(int v)
+    {
+        int al = voiceSource[v];
+        int id = sourceClip[voiceOwner[v]];
+        unqueueProcessed(v);
+
+        AudioStream stream = streams[v];
+        while (freeBufferCount[v] > 0 && !voiceStreamEnded[v])
+        {
+            int chunk = stream.peek();
+            if (chunk < 0)
+                break;
+            int frames = stream.getChunkFrames(chunk);
+            voiceStreamEnded[v] = stream.isChunkEnd(chunk);
+            if (frames > 0)
+            {
+                int buffer = freeBuffers[v * STREAM_BUFFERS + --freeBufferCount[v]];
+                alBufferData(buffer, format(clipChannels[id]), stream.getChunk(chunk, clipChannels[id]), clipRate[id]);
+                streamBufferFrames[bufferIndex(v, buffer)] = frames;
+                alSourceQueueBuffers(al, buffer);
+            }
+            stream.release();
+        }
+
+        int queued = STREAM_BUFFERS - freeBufferCount[v];
+        if (alGetSourcei(al, AL_SOURCE_STATE) == AL_PLAYING)
+            return false;
+        if (queued == 0)
+            return voiceStreamEnded[v];
+        if (!voiceStarted[v])
+        {
+            // Wait for a full queue before the first play, unless the clip is shorter
+            if (queued < STREAM_BUFFERS && !voiceStreamEnded[v])
+                return false;
+            voiceStarted[v] = true;
+        }
+        else
+        {
+            UNDERRUNS.increment();
+        }
+        alSourcePlay(al);
+        return false;
+    }
+
+    private void unqueueProcessed(int v)
+    {
+        int al = voiceSource[v];
+        int processed = alGetSourcei(al, AL_BUFFERS_PROCESSED);
+        for (int i = 0; i < processed; i++)
+        {
+            int buffer = alSourceUnqueueBuffers(al);
+            voicePlayedFrames[v] += streamBufferFrames[bufferIndex(v, buffer)];
+            freeBuffers[v * STREAM_BUFFERS + freeBufferCount[v]++] = buffer;
+        }
+    }
+
+    private int bufferIndex(int v, int buffer)
+    {
+        for (int b = v * STREAM_BUFFERS; b < (v + 1) * STREAM_BUFFERS; b++)
+        {
+            if (streamBuffers[b] == buffer)
+                return b;
+        }
+        throw new IllegalStateException("[Error]: Buffer " + buffer + " is not one of voice " + v + "'s");
+    }
+
+    private static int format(int channels)
+    {
+        return channels == 2 ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
+    }
+
+    private void cleanup()
+    {
+        decoder.stop();
+        for (int v = 0; v < voiceCount; v++)
+        {
+            alSourceStop(voiceSource[v]);
+            alDeleteSources(voiceSource[v]);
+            streams[v].cleanup();
+        }
+        alDeleteBuffers(streamBuffers);
+        for (int id = 0; id < MAX_CLIPS; id++)
+        {
+            if (clipBuffer[id] != 0)
+                alDeleteBuffers(clipBuffer[id]);
+        }
+        ClipData clip;
+        while ((clip = readyClips.poll()) != null)
+            clip.free();
+        destroyContext();
+    }
+
+    private void destroyContext()
+    {
+        if (context != MemoryUtil.NULL)
+        {
+            alcMakeContextCurrent(MemoryUtil.NULL);
+            alcDestroyContext(context);
+        }
+        if (device != MemoryUtil.NULL)
+            alcCloseDevice(device);
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.audio;
+
+import org.example.utils.OffHeap;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap ring of decoded PCM chunks between the decoder thread (producer) and one streaming voice on
+ * the audio thread (consumer).
+ *
+ * The audio thread asks for a clip from a frame with request(); the decoder picks the request up, tags
+ * every chunk it writes with the request's serial and the audio thread skips chunks of older requests,
+ * so switching clips or seeking never has to wait for the ring to drain. Request fields are published
+ * seqlock style: the serial is odd while they are written.
+ */
+public class AudioStream
+{
+    public static final int CHUNKS = 8;
+    public static final int CHUNK_FRAMES = 4096;
+    public static final int MAX_CHANNELS = 2;
+
+    private final ShortBuffer samples;
+    private final ShortBuffer[] producerViews = new ShortBuffer[CHUNKS];
+    private final ShortBuffer[] consumerViews = new ShortBuffer[CHUNKS];
+    private final int[] chunkFrames = new int[CHUNKS];
+    private final int[] chunkSerial = new int[CHUNKS];
+    private final boolean[] chunkEnd = new boolean[CHUNKS];
+    private final AtomicLong written = new AtomicLong(); // chunks written, by the decoder
+    private final AtomicLong read = new AtomicLong();    // chunks consumed or skipped, by the audio thread
+
+    // Current request, written by the audio thread; all volatile so the serial check covers the fields
+    private volatile int requestSerial = 0;
+    private volatile int requestClip = -1;
+    private volatile long requestFrame;
+    private volatile boolean requestLooping;
+
+    // Decoder thread state for the request it is serving
+    int decoderSerial = 0;
+    int decoderClip = -1;
+    long decoderFrame;
+    boolean decoderLooping;
+    boolean decoderEnded;
+    long vorbis = 0L;
+
+    public AudioStream()
+    {
+        samples = OffHeap.allocShort(CHUNKS * CHUNK_FRAMES * MAX_CHANNELS);
+        for (int i = 0; i < CHUNKS; i++)
+        {
+            int offset = i * CHUNK_FRAMES * MAX_CHANNELS;
+            producerViews[i] = MemoryUtil.memSlice(samples, offset, CHUNK_FRAMES * MAX_CHANNELS);
+            consumerViews[i] = MemoryUtil.memSlice(samples, offset, CHUNK_FRAMES * MAX_CHANNELS);
+        }
+    }
+
+    // ---- Audio thread ----
+
+    /** Streams clip from frame, or stops streaming when clip is negative. */
+    public void request(int clip, long frame, boolean looping)
+    {
+        int serial = requestSerial;
+        requestSerial = serial + 1;
+        requestClip = clip;
+        requestFrame = frame;
+        requestLooping = looping;
+        requestSerial = serial + 2;
+    }
+
+    /** Index of the next chunk of the current request, or -1 when none is ready yet. */
+    public int peek()
+    {
+        long r = read.get();
+        long w = written.get();
+        int serial = requestSerial;
+        // Chunks of older requests are thrown away
+        while (r < w && chunkSerial[(int) (r % CHUNKS)] != serial)
+            r++;
+        read.lazySet(r);
+        return r < w ? (int) (r % CHUNKS) : -1;
+    }
+
+    /** The chunk's samples, limited to its frames; valid until the chunk is released. */
+    public ShortBuffer getChunk(int chunk, int channels)
+    {
+        ShortBuffer view = consumerViews[chunk];
+        view.clear().limit(chunkFrames[chunk] * channels);
+        return view;
+    }
+
+    public int getChunkFrames(int chunk)
+    {
+        return chunkFrames[chunk];
+    }
+
+    /** True for the last chunk of a clip that does not loop. */
+    public boolean isChunkEnd(int chunk)
+    {
+        return chunkEnd[chunk];
+    }
+
+    /** Hands the chunk peek() returned back to the decoder. */
+    public void release()
+    {
+        read.lazySet(read.get() + 1);
+    }
+
+    // ---- Decoder thread ----
+
+    /** Copies the current request into the decoder fields, false while it is being written or unchanged. */
+    boolean adoptRequest()
+    {
+        int serial = requestSerial;
+        if (serial == decoderSerial || (serial & 1) != 0)
+            return false;
+        int clip = requestClip;
+        long frame = requestFrame;
+        boolean looping = requestLooping;
+        if (requestSerial != serial)
+            return false;
+        decoderSerial = serial;
+        decoderClip = clip;
+        decoderFrame = frame;
+        decoderLooping = looping;
+        decoderEnded = false;
+        return true;
+    }
+
+    boolean isFull()
+    {
+        return written.get() - read.get() >= CHUNKS;
+    }
+
+    ShortBuffer beginChunk()
+    {
+        ShortBuffer view = producerViews[(int) (written.get() % CHUNKS)];
+        view.clear();
+        return view;
+    }
+
+    void commitChunk(int frames, boolean end)
+    {
+        long w = written.get();
+        int chunk = (int) (w % CHUNKS);
+        chunkFrames[chunk] = frames;
+        chunkSerial[chunk] = decoderSerial;
+        chunkEnd[chunk] = end;
+        // Release: the samples and chunk fields are visible before the new count
+        written.lazySet(w + 1);
+    }
+
+    public void cleanup()
+    {
+        OffHeap.free(samples);
+    }
+}
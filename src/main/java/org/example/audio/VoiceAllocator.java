@@ -0,0 +1,94 @@
+package org.example.audio;
+
+/**
+ * Picks which sound sources get one of the limited hardware voices: the ones with the highest score,
+ * found with a min-heap of the best so far in O(n log voices). Pure and allocation-free after
+ * construction so it can run every audio tick.
+ */
+public class VoiceAllocator
+{
+    private final int voices;
+    private final int[] heap;   // source indices, lowest score at the root
+    private final float[] heapScore;
+    private int size;
+
+    public VoiceAllocator(int voices)
+    {
+        this.voices = voices;
+        heap = new int[voices];
+        heapScore = new float[voices];
+    }
+
+    /**
+     * Selects up to voices sources among candidates[0, count) by scores[source], skipping scores below 0.
+     * @param selected receives the selected source indices, in no particular order
+     * @return the number of selected sources
+     */
+    public int select(int[] candidates, int count, float[] scores, int[] selected)
+    {
+        size = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int source = candidates[i];
+            float score = scores[source];
+            if (score < 0.0f)
+                continue;
+            if (size < voices)
+            {
+                heap[size] = source;
+                heapScore[size] = score;
+                siftUp(size++);
+            }
+            else if (score > heapScore[0])
+            {
+                heap[0] = source;
+                heapScore[0] = score;
+                siftDown(0);
+            }
+        }
+        System.arraycopy(heap, 0, selected, 0, size);
+        return size;
+    }
+
+    public int getVoices()
+    {
+        return voices;
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0)
+        {
+            int parent = (i - 1) >> 1;
+            if (heapScore[parent] <= heapScore[i])
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i)
+    {
+        while (true)
+        {
+            int left = 2 * i + 1;
+            if (left >= size)
+                return;
+            int smallest = left + 1 < size && heapScore[left + 1] < heapScore[left] ? left + 1 : left;
+            if (heapScore[i] <= heapScore[smallest])
+                return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        int source = heap[a];
+        heap[a] = heap[b];
+        heap[b] = source;
+        float score = heapScore[a];
+        heapScore[a] = heapScore[b];
+        heapScore[b] = score;
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.benchmark;
+
+import org.example.audio.AudioEngine;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs the audio engine without a window on OpenAL Soft's null backend (or the wave one, to listen to
+ * the result afterwards) and checks the voice pool:
+ *   gradle audioTest -Psources=2000 [-Pclip=/sounds/loop.ogg]
+ *
+ * Creates thousands of looping sources on a static and a streamed tone, plus short one-shots, and moves
+ * the listener through them for a few seconds. Exits with 1 if more sources than voices are real, if no
+ * voice is used, if the loudest source near the listener stays virtual or the one-shots never end.
+ */
+public class AudioSmokeTest
+{
+    private static final int RATE = 44100;
+    private static final int ONE_SHOTS = 100;
+    private static final long RUN_MILLIS = 3000;
+    private static final float SPREAD = 200.0f;
+    private static final long SEED = 42L;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int sources = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String resource = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+        AudioEngine audio = new AudioEngine(System.getProperty("audio.device"));
+        if (!audio.start())
+        {
+            System.out.println("[ERROR]: No audio device");
+            System.exit(1);
+        }
+        boolean ok = run(audio, sources, resource);
+        audio.stop();
+        System.out.println(ok ? "[INFO]: Audio checks passed" : "[ERROR]: Audio checks failed");
+        if (!ok)
+            System.exit(1);
+    }
+
+    private static boolean run(AudioEngine audio, int sources, String resource) throws InterruptedException
+    {
+        Random random = new Random(SEED);
+        int hum = audio.createTone(110.0f, 2.0f, RATE, false);
+        int streamed = resource != null ? audio.loadClip(resource, true) : audio.createTone(220.0f, 3.0f, RATE, true);
+        int blip = audio.createTone(880.0f, 0.25f, RATE, false);
+
+        for (int i = 0; i < sources; i++)
+        {
+            int clip = i % 2 == 0 ? hum : streamed;
+            int source = audio.createSource(clip, (random.nextFloat() - 0.5f) * SPREAD, 0.0f, (random.nextFloat() - 0.5f) * SPREAD,
+                    0.2f + random.nextFloat() * 0.8f, 1.0f, true);
+            audio.play(source);
+        }
+        int[] oneShots = new int[ONE_SHOTS];
+        for (int i = 0; i < ONE_SHOTS; i++)
+        {
+            oneShots[i] = audio.createSource(blip, (random.nextFloat() - 0.5f) * SPREAD, 0.0f, (random.nextFloat() - 0.5f) * SPREAD, 1.0f, 1.0f, false);
+            audio.play(oneShots[i]);
+        }
+        // Right at the listener and important, it must always be heard
+        int loudest = audio.createSource(streamed, 0.0f, 0.0f, 0.0f, 1.0f, 10.0f, true);
+        audio.play(loudest);
+
+        Vector3f position = new Vector3f();
+        Vector3f front = new Vector3f(0.0f, 0.0f, -1.0f);
+        Vector3f up = new Vector3f(0.0f, 1.0f, 0.0f);
+        boolean ok = true;
+        int maxReal = 0;
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < RUN_MILLIS)
+        {
+            // Walk the listener in a circle, dragging the important source along
+            double angle = (System.currentTimeMillis() - start) / 1000.0;
+            position.set((float) Math.cos(angle) * SPREAD / 4.0f, 0.0f, (float) Math.sin(angle) * SPREAD / 4.0f);
+            audio.setListener(position, front, up);
+            audio.setPosition(loudest, position.x, position.y, position.z);
+            Thread.sleep(16);
+            maxReal = Math.max(maxReal, audio.getRealVoices());
+        }
+
+        int expected = sources + 1;
+        System.out.println(String.format(Locale.ROOT, "[INFO]: %d voices, at most %d real; %d sources playing, %d real, %d underruns",
+                audio.getVoiceCount(), maxReal, audio.getPlayingSources(), audio.getRealVoices(), AudioEngine.UNDERRUNS.get()));
+        if (maxReal > audio.getVoiceCount() || maxReal == 0)
+        {
+            System.out.println("[ERROR]: " + maxReal + " real voices, expected between 1 and " + audio.getVoiceCount());
+            ok = false;
+        }
+        if (audio.getPlayingSources() != expected)
+        {
+            System.out.println("[ERROR]: " + audio.getPlayingSources() + " sources playing, expected " + expected + " once the one-shots ended");
+            ok = false;
+        }
+        if (!audio.isReal(loudest))
+        {
+            System.out.println("[ERROR]: The source at the listener is virtual");
+            ok = false;
+        }
+        return ok;
+    }
+}
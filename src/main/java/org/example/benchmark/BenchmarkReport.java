@@ -0,0 +1,156 @@
+package org.example.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes benchmark results as JSON and CSV, and compares them against a baseline CSV from an earlier run.
+ * A scenario regresses when its average or p95 frame time exceeds the baseline by more than the threshold.
+ */
+public final class BenchmarkReport
+{
+    static final String CSV_HEADER = "scenario,frames,avg_frame_ms,p50_frame_ms,p95_frame_ms,p99_frame_ms,max_frame_ms,avg_compute_ms,avg_raster_ms,avg_alive";
+
+    /** One metric of one scenario that got slower than the baseline allows. */
+    public static class Regression
+    {
+        final String scenario;
+        final String metric;
+        final double baseline;
+        final double current;
+
+        Regression(String scenario, String metric, double baseline, double current)
+        {
+            this.scenario = scenario;
+            this.metric = metric;
+            this.baseline = baseline;
+            this.current = current;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%s %s: %.3f ms -> %.3f ms (%+.1f%%)", scenario, metric, baseline, current, (current / baseline - 1.0) * 100.0);
+        }
+    }
+
+    private BenchmarkReport()
+    {
+    }
+
+    public static void writeCsv(Path path, List<ScenarioResult> results) throws IOException
+    {
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (ScenarioResult r : results)
+        {
+            csv.append(String.format(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.1f%n",
+                    r.name, r.frames, r.avgFrameMs, r.p50FrameMs, r.p95FrameMs, r.p99FrameMs, r.maxFrameMs, r.avgComputeMs, r.avgRasterMs, r.avgAlive));
+        }
+        Files.write(path, csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void writeJson(Path path, String suite, Map<String, String> environment, List<ScenarioResult> results,
+                                 List<Regression> regressions, double threshold) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"suite\": ").append(quote(suite)).append(",\n");
+
+        json.append("  \"environment\": {");
+        String separator = "\n";
+        for (Map.Entry<String, String> entry : environment.entrySet())
+        {
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"scenarios\": [");
+        separator = "\n";
+        for (ScenarioResult r : results)
+        {
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    {\"name\": %s, \"frames\": %d, \"avg_frame_ms\": %.4f, \"p50_frame_ms\": %.4f, \"p95_frame_ms\": %.4f, "
+                            + "\"p99_frame_ms\": %.4f, \"max_frame_ms\": %.4f, \"avg_compute_ms\": %.4f, \"avg_raster_ms\": %.4f, \"avg_alive\": %.1f}",
+                    quote(r.name), r.frames, r.avgFrameMs, r.p50FrameMs, r.p95FrameMs, r.p99FrameMs, r.maxFrameMs, r.avgComputeMs, r.avgRasterMs, r.avgAlive));
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append(String.format(Locale.ROOT, "  \"regression_threshold\": %.4f,\n", threshold));
+        json.append("  \"regressions\": [");
+        separator = "\n";
+        for (Regression regression : regressions)
+        {
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    {\"scenario\": %s, \"metric\": %s, \"baseline_ms\": %.4f, \"current_ms\": %.4f}",
+                    quote(regression.scenario), quote(regression.metric), regression.baseline, regression.current));
+            separator = ",\n";
+        }
+        json.append(regressions.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Reads avg and p95 frame times by scenario name from a CSV written by writeCsv(), columns are found by name. */
+    public static Map<String, double[]> readBaseline(Path path) throws IOException
+    {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        List<String> header = lines.isEmpty() ? new ArrayList<>() : Arrays.asList(lines.get(0).split(","));
+        int avgColumn = header.indexOf("avg_frame_ms");
+        int p95Column = header.indexOf("p95_frame_ms");
+        if (header.isEmpty() || !header.get(0).equals("scenario") || avgColumn < 0 || p95Column < 0)
+            throw new IOException("[Error]: Not a benchmark CSV: " + path);
+
+        Map<String, double[]> baseline = new HashMap<>();
+        for (int i = 1; i < lines.size(); i++)
+        {
+            String[] columns = lines.get(i).split(",");
+            if (columns.length <= Math.max(avgColumn, p95Column))
+                continue;
+            baseline.put(columns[0], new double[]{Double.parseDouble(columns[avgColumn]), Double.parseDouble(columns[p95Column])});
+        }
+        return baseline;
+    }
+
+    /** Scenarios missing from the baseline are skipped, so adding a scenario never fails the gate. */
+    public static List<Regression> compare(List<ScenarioResult> results, Map<String, double[]> baseline, double threshold)
+    {
+        List<Regression> regressions = new ArrayList<>();
+        for (ScenarioResult r : results)
+        {
+            double[] reference = baseline.get(r.name);
+            if (reference == null)
+                continue;
+            if (r.avgFrameMs > reference[0] * (1.0 + threshold))
+                regressions.add(new Regression(r.name, "avg_frame_ms", reference[0], r.avgFrameMs));
+            if (r.p95FrameMs > reference[1] * (1.0 + threshold))
+                regressions.add(new Regression(r.name, "p95_frame_ms", reference[1], r.p95FrameMs));
+        }
+        return regressions;
+    }
+
+    private static String quote(String value)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\').append(c);
+            else if (c < 0x20)
+                quoted.append(String.format("\\u%04x", (int) c));
+            else
+                quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+}
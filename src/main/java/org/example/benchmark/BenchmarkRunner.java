@@ -0,0 +1,230 @@
+package org.example.benchmark;
+
+import org.example.Camera;
+import org.example.EmitterRegistry;
+import org.example.EngineManager;
+import org.example.ParticleRenderer;
+import org.lwjgl.opengl.GL11;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Drives the engine through a suite of scenarios, one after another in a single run.
+ *
+ * Each scenario gets a fresh ParticleRenderer with its own MAX_PARTICLES, MAX_EMITTERS and instanceSize,
+ * a deterministic emitter field and camera path (positions depend on the frame number only), a warm-up
+ * and a measured window. Results go to results.json / results.csv in the output directory; with a
+ * baseline CSV any regression beyond the threshold makes the process exit with status 1.
+ *
+ * Runs on software GL too: xvfb-run with LIBGL_ALWAYS_SOFTWARE=1 (see the benchmark task in build.gradle).
+ */
+public class BenchmarkRunner
+{
+    private static final float MEAN_LIFE = 2000.0f;     // ms
+    private static final float EXPECTED_LIFE_FRAMES = 120.0f;
+    private static final float EMITTER_SPACING = 4.0f;
+    private static final float FIELD_DISTANCE = 10.0f;
+    private static final int ATLAS_TEXTURES = 16;
+
+    private final String suite;
+    private final List<Scenario> scenarios;
+    private final Path outputDirectory;
+    private final Path baselinePath;
+    private final double threshold;
+    private final List<ScenarioResult> results = new ArrayList<>();
+
+    private int scenarioIndex = -1;
+    private Scenario scenario;
+    private ParticleRenderer renderer;
+    private int frame;
+    private long lastFrameTime;
+    private float[] frameMs;
+    private double aliveTotal;
+    private float fieldDepth;
+
+    public BenchmarkRunner(String suite, Path outputDirectory, Path baselinePath, double threshold)
+    {
+        this.suite = suite;
+        this.scenarios = Scenarios.get(suite);
+        this.outputDirectory = outputDirectory;
+        this.baselinePath = baselinePath;
+        this.threshold = threshold;
+    }
+
+    /** Registers with the engine loop, call once the engine is running. */
+    public void start()
+    {
+        EngineManager.engineManager.updatesToRun.add(this::update);
+        System.out.println("[BENCH]: Running suite '" + suite + "' (" + scenarios.size() + " scenarios) on " + GL11.glGetString(GL11.GL_RENDERER));
+        nextScenario();
+    }
+
+    private void update()
+    {
+        if (scenario == null)
+            return;
+
+        long now = System.nanoTime();
+        float elapsedMs = (now - lastFrameTime) / 1_000_000.0f;
+        lastFrameTime = now;
+
+        int measuredFrame = frame - scenario.warmupFrames;
+        if (measuredFrame == 0)
+        {
+            renderer.getComputeTimer().reset();
+            renderer.getRasterTimer().reset();
+        }
+        else if (measuredFrame > 0)
+        {
+            // Each sample is the previous frame, measured from update to update
+            frameMs[measuredFrame - 1] = elapsedMs;
+            aliveTotal += renderer.getStats().getAlive();
+        }
+
+        if (measuredFrame == scenario.measuredFrames)
+        {
+            finishScenario();
+            nextScenario();
+            return;
+        }
+
+        moveCamera();
+        frame++;
+    }
+
+    private void nextScenario()
+    {
+        scenarioIndex++;
+        if (scenarioIndex >= scenarios.size())
+        {
+            scenario = null;
+            finishSuite();
+            return;
+        }
+
+        scenario = scenarios.get(scenarioIndex);
+        try
+        {
+            renderer = new ParticleRenderer(scenario.maxParticles, scenario.maxEmitters, scenario.instanceSize);
+        }
+        catch (Exception e)
+        {
+            System.out.println("[ERROR]: Unable to create particle renderer for scenario " + scenario.name);
+            e.printStackTrace();
+            EngineManager.engineManager.setExitCode(2);
+            EngineManager.engineManager.stop();
+            scenario = null;
+            return;
+        }
+        renderer.setQuadHalfSize(scenario.quadHalfSize);
+        renderer.setDrawStrategy(scenario.drawStrategy, scenario.batchSize);
+        // Authored spawn rates regardless of screen size, culling still applies
+        renderer.getEmitterLod().setFullDetailPixels(1.0f);
+        createEmitters();
+
+        frameMs = new float[scenario.measuredFrames];
+        aliveTotal = 0.0;
+        frame = 0;
+        moveCamera();
+        lastFrameTime = System.nanoTime();
+    }
+
+    // Emitters on a cube grid in front of the camera, spawn rates sized to keep the pool near full
+    private void createEmitters()
+    {
+        EmitterRegistry emitters = renderer.getEmitters();
+        int count = scenario.emitterCount;
+        int side = (int) Math.ceil(Math.cbrt(count));
+        float spawnRate = (float) Math.max(1.0, Math.ceil(scenario.maxParticles / (count * EXPECTED_LIFE_FRAMES)));
+        fieldDepth = side * EMITTER_SPACING;
+
+        for (int i = 0; i < count; i++)
+        {
+            float x = (i % side - side * 0.5f) * EMITTER_SPACING;
+            float y = ((i / side) % side - side * 0.5f) * EMITTER_SPACING;
+            float z = FIELD_DISTANCE + (i / (side * side)) * EMITTER_SPACING;
+            int handle = emitters.create(x, y, z, 0f, 0f, 0f, MEAN_LIFE, 1.0f, i % ATLAS_TEXTURES);
+            emitters.setSpawnParameters(handle, spawnRate, EMITTER_SPACING * 2.0f);
+        }
+    }
+
+    private void moveCamera()
+    {
+        if (scenario.cameraPath == Scenario.CameraPath.STATIC)
+        {
+            Camera.camera.setPose(0.0f, 0.0f, -3.0f, 90.0f, 0.0f);
+            return;
+        }
+
+        // From in front of the field to behind it, sweeping left and right on the way
+        float t = (float) frame / (scenario.warmupFrames + scenario.measuredFrames);
+        float z = -FIELD_DISTANCE + t * (FIELD_DISTANCE * 3.0f + fieldDepth);
+        float yaw = 90.0f + 40.0f * (float) Math.sin(t * Math.PI * 4.0);
+        float pitch = 10.0f * (float) Math.sin(t * Math.PI * 2.0);
+        Camera.camera.setPose(0.0f, 0.0f, z, yaw, pitch);
+    }
+
+    private void finishScenario()
+    {
+        ScenarioResult result = ScenarioResult.of(scenario.name, frameMs, scenario.measuredFrames,
+                renderer.getComputeTimer().getAverageMs(), renderer.getRasterTimer().getAverageMs(), aliveTotal / scenario.measuredFrames);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "[BENCH]: %-28s avg %8.3f ms  p95 %8.3f ms  compute %8.3f ms  raster %8.3f ms  alive %10.0f%n",
+                result.name, result.avgFrameMs, result.p95FrameMs, result.avgComputeMs, result.avgRasterMs, result.avgAlive);
+
+        renderer.destroy();
+        renderer = null;
+    }
+
+    private void finishSuite()
+    {
+        int exitCode = 0;
+        try
+        {
+            List<BenchmarkReport.Regression> regressions = new ArrayList<>();
+            if (baselinePath != null)
+            {
+                regressions = BenchmarkReport.compare(results, BenchmarkReport.readBaseline(baselinePath), threshold);
+                for (BenchmarkReport.Regression regression : regressions)
+                    System.out.println("[BENCH]: REGRESSION " + regression);
+                System.out.println("[BENCH]: " + regressions.size() + " regression(s) against " + baselinePath
+                        + String.format(Locale.ROOT, " (threshold %.0f%%)", threshold * 100.0));
+                if (!regressions.isEmpty())
+                    exitCode = 1;
+            }
+
+            Files.createDirectories(outputDirectory);
+            BenchmarkReport.writeCsv(outputDirectory.resolve("results.csv"), results);
+            BenchmarkReport.writeJson(outputDirectory.resolve("results.json"), suite, environment(), results, regressions, threshold);
+            System.out.println("[BENCH]: Results written to " + outputDirectory.toAbsolutePath());
+        }
+        catch (IOException e)
+        {
+            System.out.println("[ERROR]: Unable to write benchmark results");
+            e.printStackTrace();
+            exitCode = 2;
+        }
+
+        EngineManager.engineManager.setExitCode(exitCode);
+        EngineManager.engineManager.stop();
+    }
+
+    private static Map<String, String> environment()
+    {
+        Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("gl_vendor", String.valueOf(GL11.glGetString(GL11.GL_VENDOR)));
+        environment.put("gl_renderer", String.valueOf(GL11.glGetString(GL11.GL_RENDERER)));
+        environment.put("gl_version", String.valueOf(GL11.glGetString(GL11.GL_VERSION)));
+        environment.put("java_version", System.getProperty("java.version"));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        environment.put("cpus", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        return environment;
+    }
+}
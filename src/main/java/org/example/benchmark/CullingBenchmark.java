@@ -0,0 +1,161 @@
+package org.example.benchmark;
+
+import org.example.WindowManager;
+import org.example.utils.Bvh;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * CPU-only check and benchmark of the Bvh scene index, no window or GL context needed:
+ *   gradle cullingBenchmark -Pboxes=4000000
+ *
+ * Fills a world with random boxes, builds the tree, then for a camera orbiting the world compares the
+ * serial and parallel frustum queries against testing every box, moves a slice of the boxes, refits and
+ * compares again. Prints build, refit and query times and exits with 1 if any query disagrees.
+ */
+public class CullingBenchmark
+{
+    private static final float WORLD_HALF_SIZE = 2000.0f;
+    private static final int VIEWS = 16;
+    private static final int MOVED_FRACTION = 10; // 1 / MOVED_FRACTION of the boxes move between views
+    private static final long SEED = 42L;
+
+    private final int count;
+    private final float[] boxes;
+    private final Bvh bvh;
+    private final Random random = new Random(SEED);
+
+    public CullingBenchmark(int count)
+    {
+        this.count = count;
+        boxes = new float[count * 6];
+        bvh = new Bvh(count);
+    }
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        boolean ok = new CullingBenchmark(count).run();
+        if (!ok)
+            System.exit(1);
+    }
+
+    public boolean run()
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        System.out.println("[INFO]: " + count + " boxes, " + pool.getParallelism() + " worker threads");
+        for (int i = 0; i < count; i++)
+            place(i);
+
+        long start = System.nanoTime();
+        bvh.build();
+        log("build", start, bvh.getNodeCount() + " nodes");
+
+        int[] serial = new int[count];
+        int[] parallel = new int[count];
+        int[] brute = new int[count];
+        FrustumIntersection frustum = new FrustumIntersection();
+        Matrix4f projection = new Matrix4f().perspective(WindowManager.FOV, 16.0f / 9.0f, WindowManager.Z_NEAR, WindowManager.Z_FAR);
+        Matrix4f projView = new Matrix4f();
+
+        boolean ok = true;
+        double serialMs = 0.0, parallelMs = 0.0, bruteMs = 0.0, refitMs = 0.0;
+        for (int view = 0; view < VIEWS; view++)
+        {
+            // Camera on a circle inside the world, looking across it
+            double angle = 2.0 * Math.PI * view / VIEWS;
+            float eyeX = (float) Math.cos(angle) * WORLD_HALF_SIZE * 0.5f;
+            float eyeZ = (float) Math.sin(angle) * WORLD_HALF_SIZE * 0.5f;
+            projView.set(projection).lookAt(eyeX, 0.0f, eyeZ, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+            frustum.set(projView);
+
+            start = System.nanoTime();
+            int bruteCount = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int base = i * 6;
+                if (frustum.testAab(boxes[base], boxes[base + 1], boxes[base + 2], boxes[base + 3], boxes[base + 4], boxes[base + 5]))
+                    brute[bruteCount++] = i;
+            }
+            bruteMs += millisSince(start);
+
+            start = System.nanoTime();
+            int serialCount = bvh.query(frustum, serial);
+            serialMs += millisSince(start);
+
+            start = System.nanoTime();
+            int parallelCount = bvh.queryParallel(frustum, parallel, pool);
+            parallelMs += millisSince(start);
+
+            ok &= same("serial", view, brute, bruteCount, serial, serialCount);
+            ok &= same("parallel", view, brute, bruteCount, parallel, parallelCount);
+
+            // Jitter a slice of the boxes for the next view
+            for (int i = view % MOVED_FRACTION; i < count; i += MOVED_FRACTION)
+                jitter(i);
+            start = System.nanoTime();
+            bvh.update();
+            refitMs += millisSince(start);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "[INFO]: per view: brute force %.2f ms, serial %.2f ms, parallel %.2f ms, refit of %d boxes %.2f ms",
+                bruteMs / VIEWS, serialMs / VIEWS, parallelMs / VIEWS, count / MOVED_FRACTION, refitMs / VIEWS));
+        System.out.println(ok ? "[INFO]: All queries match brute force" : "[ERROR]: Queries differ from brute force");
+        return ok;
+    }
+
+    private void place(int i)
+    {
+        float x = (random.nextFloat() * 2.0f - 1.0f) * WORLD_HALF_SIZE;
+        float y = (random.nextFloat() * 2.0f - 1.0f) * WORLD_HALF_SIZE * 0.1f;
+        float z = (random.nextFloat() * 2.0f - 1.0f) * WORLD_HALF_SIZE;
+        float half = 0.25f + random.nextFloat() * 2.0f;
+        setBox(i, x - half, y - half, z - half, x + half, y + half, z + half);
+    }
+
+    private void jitter(int i)
+    {
+        int base = i * 6;
+        float dx = random.nextFloat() - 0.5f, dy = random.nextFloat() - 0.5f, dz = random.nextFloat() - 0.5f;
+        setBox(i, boxes[base] + dx, boxes[base + 1] + dy, boxes[base + 2] + dz, boxes[base + 3] + dx, boxes[base + 4] + dy, boxes[base + 5] + dz);
+    }
+
+    private void setBox(int i, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int base = i * 6;
+        boxes[base] = minX;
+        boxes[base + 1] = minY;
+        boxes[base + 2] = minZ;
+        boxes[base + 3] = maxX;
+        boxes[base + 4] = maxY;
+        boxes[base + 5] = maxZ;
+        bvh.setBounds(i, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    // Order differs between brute force and the tree, compare sorted copies
+    private static boolean same(String name, int view, int[] expected, int expectedCount, int[] actual, int actualCount)
+    {
+        int[] a = Arrays.copyOf(expected, expectedCount);
+        int[] b = Arrays.copyOf(actual, actualCount);
+        Arrays.sort(b);
+        if (Arrays.equals(a, b))
+            return true;
+        System.out.println("[ERROR]: View " + view + ": " + name + " query found " + actualCount + " boxes, brute force " + expectedCount);
+        return false;
+    }
+
+    private static void log(String what, long start, String detail)
+    {
+        System.out.println(String.format(Locale.ROOT, "[INFO]: %s %.2f ms (%s)", what, millisSince(start), detail));
+    }
+
+    private static double millisSince(long start)
+    {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
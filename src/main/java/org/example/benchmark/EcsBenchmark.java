@@ -0,0 +1,226 @@
+package org.example.benchmark;
+
+import org.example.ecs.Chunk;
+import org.example.ecs.CommandBuffer;
+import org.example.ecs.Components;
+import org.example.ecs.Query;
+import org.example.ecs.World;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * CPU-only check and benchmark of the entity component system, no window or GL context needed:
+ *   gradle ecsBenchmark -Pentities=100000
+ *
+ * Moves the same entities with a velocity each tick three ways: objects holding JOML vectors (visited in
+ * a shuffled order, as objects end up scattered over the heap), a serial query over the component
+ * columns and a parallel one. Then destroys every entity that crossed a plane and spawns a replacement
+ * through the query's command buffers. Prints per-tick times and exits with 1 if the results differ.
+ */
+public class EcsBenchmark
+{
+    private static final int TICKS = 200;
+    private static final float DELTA_TIME = 16.0f;
+    private static final float BOUND = 100.0f;
+    private static final long SEED = 42L;
+
+    private static final class MovingObject
+    {
+        final Vector3f position = new Vector3f();
+        final Vector3f velocity = new Vector3f();
+    }
+
+    private final int count;
+    private final World world;
+    private final List<MovingObject> objects;
+    private final Query moving;
+    private final Query.ChunkConsumer integrateSerial = EcsBenchmark::integrate;
+    private final Query.ParallelChunkConsumer integrateParallel = (chunk, commands) -> integrate(chunk);
+    private final Query.ParallelChunkConsumer respawn = this::respawn;
+
+    public EcsBenchmark(int count)
+    {
+        this.count = count;
+        world = new World(count);
+        objects = new ArrayList<>(count);
+        moving = world.query(Components.POSITION, Components.VELOCITY);
+    }
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        EcsBenchmark benchmark = new EcsBenchmark(count);
+        boolean ok = benchmark.run();
+        benchmark.world.cleanup();
+        if (!ok)
+            System.exit(1);
+    }
+
+    public boolean run()
+    {
+        Random random = new Random(SEED);
+        for (int i = 0; i < count; i++)
+        {
+            float x = random.nextFloat() * BOUND, y = random.nextFloat() * BOUND, z = random.nextFloat() * BOUND;
+            float vx = random.nextFloat() - 0.5f, vy = random.nextFloat() - 0.5f, vz = random.nextFloat() - 0.5f;
+            MovingObject object = new MovingObject();
+            object.position.set(x, y, z);
+            object.velocity.set(vx, vy, vz);
+            objects.add(object);
+            int entity = world.create(Components.POSITION, Components.VELOCITY);
+            world.setFloat3(entity, Components.POSITION, x, y, z);
+            world.setFloat3(entity, Components.VELOCITY, vx, vy, vz);
+        }
+        Collections.shuffle(objects, random);
+        System.out.println("[INFO]: " + count + " entities, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        // Warm up, then time each way; the columns are stepped back between the serial and parallel runs
+        for (int tick = 0; tick < TICKS / 4; tick++)
+            tickObjects();
+        double objectMs = 0.0, serialMs = 0.0, parallelMs = 0.0;
+        for (int tick = 0; tick < TICKS; tick++)
+        {
+            long start = System.nanoTime();
+            tickObjects();
+            objectMs += millisSince(start);
+        }
+        for (int tick = 0; tick < TICKS / 4; tick++)
+            moving.forEachChunk(integrateSerial);
+        for (int tick = 0; tick < TICKS; tick++)
+        {
+            long start = System.nanoTime();
+            moving.forEachChunk(integrateSerial);
+            serialMs += millisSince(start);
+        }
+        // Undo the extra ticks so both sides end up integrated the same number of times
+        for (int tick = 0; tick < TICKS + TICKS / 4; tick++)
+            moving.forEachChunk(EcsBenchmark::reverse);
+        for (int tick = 0; tick < TICKS; tick++)
+        {
+            long start = System.nanoTime();
+            moving.forEachChunkParallel(integrateParallel);
+            parallelMs += millisSince(start);
+        }
+        for (int tick = 0; tick < TICKS / 4; tick++)
+            moving.forEachChunk(integrateSerial);
+
+        boolean ok = compare();
+
+        // Structural changes from a parallel query, applied after it
+        long start = System.nanoTime();
+        moving.forEachChunkParallel(respawn);
+        double respawnMs = millisSince(start);
+        if (world.getEntityCount() != count || moving.count() != count)
+        {
+            System.out.println("[ERROR]: " + world.getEntityCount() + " entities after respawning, expected " + count);
+            ok = false;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "[INFO]: per tick: objects %.3f ms, columns %.3f ms, parallel columns %.3f ms; respawn pass %.2f ms",
+                objectMs / TICKS, serialMs / TICKS, parallelMs / TICKS, respawnMs));
+        System.out.println(ok ? "[INFO]: Columns match the objects" : "[ERROR]: Columns differ from the objects");
+        return ok;
+    }
+
+    private void tickObjects()
+    {
+        for (MovingObject object : objects)
+            object.position.fma(DELTA_TIME, object.velocity);
+    }
+
+    private static void integrate(Chunk chunk)
+    {
+        step(chunk, DELTA_TIME);
+    }
+
+    private static void reverse(Chunk chunk)
+    {
+        step(chunk, -DELTA_TIME);
+    }
+
+    private static void step(Chunk chunk, float deltaTime)
+    {
+        long position = chunk.address(Components.POSITION);
+        long velocity = chunk.address(Components.VELOCITY);
+        long end = chunk.size() * 12L;
+        for (long offset = 0; offset < end; offset += 4)
+            MemoryUtil.memPutFloat(position + offset, MemoryUtil.memGetFloat(position + offset) + MemoryUtil.memGetFloat(velocity + offset) * deltaTime);
+    }
+
+    // Entities below the plane are replaced by a fresh one at the origin with the same velocity
+    private void respawn(Chunk chunk, CommandBuffer commands)
+    {
+        long position = chunk.address(Components.POSITION);
+        long velocity = chunk.address(Components.VELOCITY);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            if (MemoryUtil.memGetFloat(position + row * 12L + 4) >= 0.0f)
+                continue;
+            commands.destroy(chunk.getEntity(row));
+            int entity = commands.create(Components.POSITION, Components.VELOCITY);
+            for (int lane = 0; lane < 3; lane++)
+                commands.setFloat(entity, Components.VELOCITY, lane, MemoryUtil.memGetFloat(velocity + row * 12L + lane * 4L));
+        }
+    }
+
+    // Float sums differ by order, compare sorted positions with a tolerance
+    private boolean compare()
+    {
+        float[] expected = new float[count * 3];
+        for (int i = 0; i < count; i++)
+        {
+            Vector3f position = objects.get(i).position;
+            expected[i * 3] = position.x;
+            expected[i * 3 + 1] = position.y;
+            expected[i * 3 + 2] = position.z;
+        }
+        float[] actual = new float[count * 3];
+        int[] next = {0};
+        moving.forEachChunk(chunk -> {
+            long position = chunk.address(Components.POSITION);
+            for (int i = 0; i < chunk.size() * 3; i++)
+                actual[next[0]++] = MemoryUtil.memGetFloat(position + i * 4L);
+        });
+        sortByPosition(expected);
+        sortByPosition(actual);
+        for (int i = 0; i < expected.length; i++)
+        {
+            if (Math.abs(expected[i] - actual[i]) > 1e-2f * Math.max(1.0f, Math.abs(expected[i])))
+            {
+                System.out.println("[ERROR]: Entity " + i / 3 + " is at " + actual[i] + ", expected " + expected[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void sortByPosition(float[] positions)
+    {
+        int n = positions.length / 3;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            int x = Float.compare(positions[a * 3], positions[b * 3]);
+            if (x != 0)
+                return x;
+            int y = Float.compare(positions[a * 3 + 1], positions[b * 3 + 1]);
+            return y != 0 ? y : Float.compare(positions[a * 3 + 2], positions[b * 3 + 2]);
+        });
+        float[] copy = positions.clone();
+        for (int i = 0; i < n; i++)
+            System.arraycopy(copy, order[i] * 3, positions, i * 3, 3);
+    }
+
+    private static double millisSince(long start)
+    {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
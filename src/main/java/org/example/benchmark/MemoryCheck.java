@@ -0,0 +1,169 @@
+package org.example.benchmark;
+
+import org.example.utils.FrameArena;
+import org.example.utils.OffHeap;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * CPU-only check and benchmark of the frame arena and the off-heap accounting, no window or GL context
+ * needed:
+ *   gradle memoryCheck -Pframes=2000 [-PdebugMemory]
+ *
+ * Simulates frames that each take a few dozen scratch buffers of mixed sizes, write to them and read them
+ * back, three ways: from the frame arena, with malloc/free per buffer and as GC-managed direct buffers.
+ * Then checks alignment, that the arena grows past an overflowing frame, and that a deliberate leak is
+ * reported and disappears once freed. Exits with 1 if a check fails.
+ */
+public class MemoryCheck
+{
+    private static final int BUFFERS_PER_FRAME = 64;
+    private static final int MAX_BUFFER = 4 * 1024;
+    private static final long SEED = 42L;
+
+    private final int frames;
+    private final int[] sizes;
+
+    public MemoryCheck(int frames)
+    {
+        this.frames = frames;
+        sizes = new int[frames * BUFFERS_PER_FRAME];
+        Random random = new Random(SEED);
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = 1 + random.nextInt(MAX_BUFFER);
+    }
+
+    public static void main(String[] args)
+    {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        boolean ok = new MemoryCheck(frames).run();
+        System.out.println(ok ? "[INFO]: Memory checks passed" : "[ERROR]: Memory checks failed");
+        if (!ok)
+            System.exit(1);
+    }
+
+    public boolean run()
+    {
+        FrameArena arena = new FrameArena();
+        boolean ok = true;
+
+        // Warm up each way, then time it
+        long arenaSum = 0, mallocSum = 0, directSum = 0;
+        double arenaMs = 0.0, mallocMs = 0.0, directMs = 0.0;
+        for (int round = 0; round < 2; round++)
+        {
+            long start = System.nanoTime();
+            arenaSum = framesFromArena(arena);
+            arenaMs = millisSince(start);
+            start = System.nanoTime();
+            mallocSum = framesFromMalloc();
+            mallocMs = millisSince(start);
+            start = System.nanoTime();
+            directSum = framesFromDirectBuffers();
+            directMs = millisSince(start);
+        }
+        System.out.println(String.format(Locale.ROOT, "[INFO]: %d frames of %d scratch buffers: arena %.2f ms, malloc/free %.2f ms, direct buffers %.2f ms",
+                frames, BUFFERS_PER_FRAME, arenaMs, mallocMs, directMs));
+        if (arenaSum != mallocSum || arenaSum != directSum)
+        {
+            System.out.println("[ERROR]: Checksums differ: arena " + arenaSum + ", malloc " + mallocSum + ", direct " + directSum);
+            ok = false;
+        }
+
+        // A frame bigger than the block overflows once, then fits
+        int capacity = arena.getCapacity();
+        long overflowed = FrameArena.OVERFLOW.get();
+        for (int i = 0; i < 4; i++)
+            arena.malloc(capacity / 2);
+        arena.reset();
+        if (FrameArena.OVERFLOW.get() == overflowed || arena.getCapacity() < 2 * capacity)
+        {
+            System.out.println("[ERROR]: Arena did not overflow and grow, capacity " + arena.getCapacity());
+            ok = false;
+        }
+        overflowed = FrameArena.OVERFLOW.get();
+        for (int i = 0; i < 4; i++)
+            arena.malloc(capacity / 2);
+        arena.reset();
+        if (FrameArena.OVERFLOW.get() != overflowed)
+        {
+            System.out.println("[ERROR]: Arena still overflows after growing to " + arena.getCapacity());
+            ok = false;
+        }
+        arena.cleanup();
+
+        // A leak shows up in the report until it is freed
+        ByteBuffer leak = OffHeap.alloc(1234);
+        if (OffHeap.report() != 1)
+            ok = false;
+        OffHeap.free(leak);
+        if (OffHeap.report() != 0)
+            ok = false;
+        return ok;
+    }
+
+    private long framesFromArena(FrameArena arena)
+    {
+        long sum = 0;
+        for (int frame = 0; frame < frames; frame++)
+        {
+            for (int i = 0; i < BUFFERS_PER_FRAME; i++)
+            {
+                ByteBuffer buffer = arena.malloc(sizes[frame * BUFFERS_PER_FRAME + i]);
+                if ((MemoryUtil.memAddress(buffer) & (FrameArena.ALIGNMENT - 1)) != 0)
+                    throw new IllegalStateException("[Error]: Unaligned arena address " + MemoryUtil.memAddress(buffer));
+                sum += use(buffer, frame + i);
+            }
+            arena.reset();
+        }
+        return sum;
+    }
+
+    private long framesFromMalloc()
+    {
+        long sum = 0;
+        for (int frame = 0; frame < frames; frame++)
+        {
+            for (int i = 0; i < BUFFERS_PER_FRAME; i++)
+            {
+                ByteBuffer buffer = MemoryUtil.memAlloc(sizes[frame * BUFFERS_PER_FRAME + i]);
+                sum += use(buffer, frame + i);
+                MemoryUtil.memFree(buffer);
+            }
+        }
+        return sum;
+    }
+
+    private long framesFromDirectBuffers()
+    {
+        long sum = 0;
+        for (int frame = 0; frame < frames; frame++)
+        {
+            for (int i = 0; i < BUFFERS_PER_FRAME; i++)
+                sum += use(BufferUtils.createByteBuffer(sizes[frame * BUFFERS_PER_FRAME + i]), frame + i);
+        }
+        return sum;
+    }
+
+    // Writes one int per cache line and reads them back, enough to touch the memory without the
+    // copying drowning out the cost of getting it
+    private static long use(ByteBuffer buffer, int seed)
+    {
+        int lines = buffer.capacity() / 64;
+        for (int i = 0; i < lines; i++)
+            buffer.putInt(i * 64, seed + i);
+        long sum = 0;
+        for (int i = 0; i < lines; i++)
+            sum += buffer.getInt(i * 64);
+        return sum;
+    }
+
+    private static double millisSince(long start)
+    {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.benchmark;
+
+import org.example.ParticleRenderer;
+
+/**
+ * One benchmark workload: the particle renderer configuration, how many emitters to place and how
+ * the camera moves while frames are measured.
+ */
+public class Scenario
+{
+    public enum CameraPath
+    {
+        STATIC,     // looking straight at the emitter field
+        FLY_THROUGH // flying through the emitter field, emitters enter and leave the frustum
+    }
+
+    final String name;
+    final int maxParticles;
+    final int maxEmitters;
+    final int emitterCount;
+    final int instanceSize;
+    final float quadHalfSize;
+    final CameraPath cameraPath;
+    final int warmupFrames;
+    final int measuredFrames;
+    final ParticleRenderer.DrawStrategy drawStrategy;
+    final int batchSize;
+
+    public Scenario(String name, int maxParticles, int maxEmitters, int emitterCount, int instanceSize,
+                    float quadHalfSize, CameraPath cameraPath, int warmupFrames, int measuredFrames)
+    {
+        this(name, maxParticles, maxEmitters, emitterCount, instanceSize, quadHalfSize, cameraPath, warmupFrames, measuredFrames,
+                ParticleRenderer.DrawStrategy.INDEXED, instanceSize);
+    }
+
+    /** @param batchSize quads per instance of drawStrategy, at most instanceSize (ignored for QUAD_PER_INSTANCE) */
+    public Scenario(String name, int maxParticles, int maxEmitters, int emitterCount, int instanceSize,
+                    float quadHalfSize, CameraPath cameraPath, int warmupFrames, int measuredFrames,
+                    ParticleRenderer.DrawStrategy drawStrategy, int batchSize)
+    {
+        if (maxParticles % instanceSize != 0)
+            throw new IllegalArgumentException("[Error]: " + name + ": maxParticles must be a multiple of instanceSize");
+        if (emitterCount > maxEmitters)
+            throw new IllegalArgumentException("[Error]: " + name + ": more emitters than maxEmitters");
+
+        this.name = name;
+        this.maxParticles = maxParticles;
+        this.maxEmitters = maxEmitters;
+        this.emitterCount = emitterCount;
+        this.instanceSize = instanceSize;
+        this.quadHalfSize = quadHalfSize;
+        this.cameraPath = cameraPath;
+        this.warmupFrames = warmupFrames;
+        this.measuredFrames = measuredFrames;
+        this.drawStrategy = drawStrategy;
+        this.batchSize = batchSize;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+}
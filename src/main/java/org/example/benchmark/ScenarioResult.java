@@ -0,0 +1,66 @@
+package org.example.benchmark;
+
+import java.util.Arrays;
+
+/** Measurements of one scenario run. Frame times are wall clock, compute and raster times come from GPU timers. */
+public class ScenarioResult
+{
+    final String name;
+    final int frames;
+    final double avgFrameMs;
+    final double p50FrameMs;
+    final double p95FrameMs;
+    final double p99FrameMs;
+    final double maxFrameMs;
+    final double avgComputeMs;
+    final double avgRasterMs;
+    final double avgAlive;
+
+    ScenarioResult(String name, double avgFrameMs, double p50FrameMs, double p95FrameMs, double p99FrameMs,
+                   double maxFrameMs, double avgComputeMs, double avgRasterMs, double avgAlive, int frames)
+    {
+        this.name = name;
+        this.frames = frames;
+        this.avgFrameMs = avgFrameMs;
+        this.p50FrameMs = p50FrameMs;
+        this.p95FrameMs = p95FrameMs;
+        this.p99FrameMs = p99FrameMs;
+        this.maxFrameMs = maxFrameMs;
+        this.avgComputeMs = avgComputeMs;
+        this.avgRasterMs = avgRasterMs;
+        this.avgAlive = avgAlive;
+    }
+
+    /** Sorts frameMs in place to read the percentiles. */
+    static ScenarioResult of(String name, float[] frameMs, int frames, double avgComputeMs, double avgRasterMs, double avgAlive)
+    {
+        double total = 0.0;
+        for (int i = 0; i < frames; i++)
+            total += frameMs[i];
+        Arrays.sort(frameMs, 0, frames);
+
+        return new ScenarioResult(name, total / frames, percentile(frameMs, frames, 0.50), percentile(frameMs, frames, 0.95),
+                percentile(frameMs, frames, 0.99), frameMs[frames - 1], avgComputeMs, avgRasterMs, avgAlive, frames);
+    }
+
+    private static double percentile(float[] sorted, int count, double fraction)
+    {
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public double getAvgFrameMs()
+    {
+        return avgFrameMs;
+    }
+
+    public double getP95FrameMs()
+    {
+        return p95FrameMs;
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.benchmark;
+
+import org.example.ParticleRenderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The named benchmark suites.
+ *
+ * "full" sweeps particle counts (16k to 4M), emitter counts (1 to 10k), emitter capacity and
+ * instanceSize, the particle draw strategies (raster-*) at several batch sizes, plus a camera fly-through
+ * and an atlas-heavy scene with large overlapping sprites.
+ * "quick" is a small subset with short runs, meant for software GL on machines without a GPU.
+ */
+public final class Scenarios
+{
+    private static final int K = 1024;
+    private static final int DEFAULT_QUAD = 32;
+
+    private Scenarios()
+    {
+    }
+
+    public static List<Scenario> get(String suite)
+    {
+        switch (suite)
+        {
+            case "full":
+                return full();
+            case "quick":
+                return quick();
+            default:
+                throw new IllegalArgumentException("[Error]: Unknown benchmark suite '" + suite + "' (full, quick)");
+        }
+    }
+
+    public static List<Scenario> full()
+    {
+        List<Scenario> scenarios = new ArrayList<>();
+        int warmup = 120;
+        int measured = 600;
+
+        for (int particles : new int[]{16 * K, 64 * K, 256 * K, 1024 * K, 4096 * K})
+            scenarios.add(new Scenario("particles-" + label(particles), particles, 1 * K, 100, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+
+        for (int emitterCount : new int[]{1, 10, 100, 1000, 10_000})
+            scenarios.add(new Scenario("emitters-" + emitterCount, 1024 * K, emitterCount, emitterCount, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+
+        // Same live emitters, full default capacity: cost of the registry and SSBO size alone
+        scenarios.add(new Scenario("emitters-100-capacity-" + label(ParticleRenderer.DEFAULT_MAX_EMITTERS), 1024 * K, ParticleRenderer.DEFAULT_MAX_EMITTERS, 100, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+
+        for (int instanceSize : new int[]{8, 32, 128})
+            scenarios.add(new Scenario("instance-size-" + instanceSize, 1024 * K, 1 * K, 100, instanceSize, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+
+        // Same pool and emitters for every strategy, instanceSize 128 so that every batch size is allowed
+        for (int batchSize : new int[]{8, 32, 128})
+        {
+            scenarios.add(raster(ParticleRenderer.DrawStrategy.INDEXED, batchSize, 1024 * K, warmup, measured));
+            scenarios.add(raster(ParticleRenderer.DrawStrategy.ARRAYS, batchSize, 1024 * K, warmup, measured));
+        }
+        scenarios.add(raster(ParticleRenderer.DrawStrategy.QUAD_PER_INSTANCE, 1, 1024 * K, warmup, measured));
+
+        scenarios.add(new Scenario("fly-through", 1024 * K, 10_000, 10_000, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.FLY_THROUGH, warmup, measured));
+        scenarios.add(new Scenario("atlas-heavy", 256 * K, 1 * K, 1000, DEFAULT_QUAD, 4.0f, Scenario.CameraPath.STATIC, warmup, measured));
+        return scenarios;
+    }
+
+    public static List<Scenario> quick()
+    {
+        List<Scenario> scenarios = new ArrayList<>();
+        int warmup = 30;
+        int measured = 120;
+
+        scenarios.add(new Scenario("particles-16k", 16 * K, 1 * K, 100, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+        scenarios.add(new Scenario("particles-256k", 256 * K, 1 * K, 100, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+        scenarios.add(new Scenario("emitters-1000", 64 * K, 1000, 1000, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.STATIC, warmup, measured));
+        scenarios.add(raster(ParticleRenderer.DrawStrategy.INDEXED, 32, 64 * K, warmup, measured));
+        scenarios.add(raster(ParticleRenderer.DrawStrategy.ARRAYS, 32, 64 * K, warmup, measured));
+        scenarios.add(raster(ParticleRenderer.DrawStrategy.QUAD_PER_INSTANCE, 1, 64 * K, warmup, measured));
+        scenarios.add(new Scenario("fly-through", 64 * K, 1000, 1000, DEFAULT_QUAD, 0.5f, Scenario.CameraPath.FLY_THROUGH, warmup, measured));
+        scenarios.add(new Scenario("atlas-heavy", 64 * K, 1 * K, 100, DEFAULT_QUAD, 4.0f, Scenario.CameraPath.STATIC, warmup, measured));
+        return scenarios;
+    }
+
+    private static Scenario raster(ParticleRenderer.DrawStrategy strategy, int batchSize, int particles, int warmup, int measured)
+    {
+        String name = "raster-" + strategy.name().toLowerCase(Locale.ROOT).replace('_', '-') + (strategy == ParticleRenderer.DrawStrategy.QUAD_PER_INSTANCE ? "" : "-" + batchSize);
+        return new Scenario(name, particles, 1 * K, 100, 128, 0.5f, Scenario.CameraPath.STATIC, warmup, measured, strategy, batchSize);
+    }
+
+    private static String label(int count)
+    {
+        if (count >= 1024 * K && count % (1024 * K) == 0)
+            return (count / (1024 * K)) + "m";
+        if (count >= K && count % K == 0)
+            return (count / K) + "k";
+        return Integer.toString(count);
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.benchmark;
+
+import org.example.TransformHierarchy;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * CPU-only check and benchmark of TransformHierarchy, no window or GL context needed:
+ *   gradle transformBenchmark -Pnodes=1000000
+ *
+ * Builds a random forest, then compares the hierarchy's world matrices against one Matrix4f per node
+ * multiplied parent first, after a full update and after updates where a small slice of the nodes moved.
+ * Prints the update times of both and exits with 1 if any matrix differs.
+ */
+public class TransformBenchmark
+{
+    private static final int ROUNDS = 20;
+    private static final int MOVED_FRACTION = 100; // 1 / MOVED_FRACTION of the nodes move each round
+    private static final int ROOT_FRACTION = 64;   // about one node in ROOT_FRACTION starts a new tree
+    private static final long SEED = 42L;
+
+    private final int count;
+    private final TransformHierarchy hierarchy;
+    private final int[] handles;
+    private final int[] parents;
+    private final Matrix4f[] locals;
+    private final Matrix4f[] worlds;
+    private final Random random = new Random(SEED);
+    private final Quaternionf rotation = new Quaternionf();
+    private final Matrix4f scratch = new Matrix4f();
+
+    public TransformBenchmark(int count)
+    {
+        this.count = count;
+        hierarchy = new TransformHierarchy(count, ForkJoinPool.commonPool());
+        handles = new int[count];
+        parents = new int[count];
+        locals = new Matrix4f[count];
+        worlds = new Matrix4f[count];
+    }
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        TransformBenchmark benchmark = new TransformBenchmark(count);
+        boolean ok = benchmark.run();
+        benchmark.hierarchy.cleanup();
+        if (!ok)
+            System.exit(1);
+    }
+
+    public boolean run()
+    {
+        // Parents always come earlier and are picked uniformly, giving wide trees about ln(count) deep
+        for (int i = 0; i < count; i++)
+        {
+            parents[i] = i == 0 || random.nextInt(ROOT_FRACTION) == 0 ? -1 : random.nextInt(i);
+            handles[i] = hierarchy.create(parents[i] < 0 ? TransformHierarchy.INVALID_HANDLE : handles[parents[i]]);
+            locals[i] = new Matrix4f();
+            worlds[i] = new Matrix4f();
+            place(i);
+        }
+
+        long start = System.nanoTime();
+        hierarchy.update();
+        double firstMs = millisSince(start);
+        start = System.nanoTime();
+        updateObjects();
+        double objectFullMs = millisSince(start);
+        System.out.println(String.format(Locale.ROOT, "[INFO]: %d nodes in %d levels, %d worker threads; first update %.2f ms (sort included), objects %.2f ms",
+                count, hierarchy.getLevels(), ForkJoinPool.commonPool().getParallelism(), firstMs, objectFullMs));
+        boolean ok = compare("full update");
+
+        double partialMs = 0.0, objectMs = 0.0;
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            for (int i = round % MOVED_FRACTION; i < count; i += MOVED_FRACTION)
+                place(i);
+            start = System.nanoTime();
+            hierarchy.update();
+            partialMs += millisSince(start);
+            start = System.nanoTime();
+            updateObjects();
+            objectMs += millisSince(start);
+        }
+        ok &= compare("partial updates");
+
+        System.out.println(String.format(Locale.ROOT, "[INFO]: per round with 1/%d of the nodes moved: hierarchy %.2f ms, objects %.2f ms",
+                MOVED_FRACTION, partialMs / ROUNDS, objectMs / ROUNDS));
+        System.out.println(ok ? "[INFO]: All world matrices match" : "[ERROR]: World matrices differ");
+        return ok;
+    }
+
+    private void place(int i)
+    {
+        float x = random.nextFloat() * 4.0f - 2.0f, y = random.nextFloat() * 4.0f - 2.0f, z = random.nextFloat() * 4.0f - 2.0f;
+        rotation.rotationXYZ(random.nextFloat(), random.nextFloat(), random.nextFloat());
+        float scale = 0.9f + random.nextFloat() * 0.2f;
+        hierarchy.setTranslation(handles[i], x, y, z);
+        hierarchy.setRotation(handles[i], rotation.x, rotation.y, rotation.z, rotation.w);
+        hierarchy.setScale(handles[i], scale, scale, scale);
+        locals[i].translationRotateScale(x, y, z, rotation.x, rotation.y, rotation.z, rotation.w, scale, scale, scale);
+    }
+
+    // The object way: every node, every time, parents first
+    private void updateObjects()
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (parents[i] < 0)
+                worlds[i].set(locals[i]);
+            else
+                worlds[parents[i]].mul(locals[i], worlds[i]);
+        }
+    }
+
+    private boolean compare(String what)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            hierarchy.getWorldMatrix(handles[i], scratch);
+            if (!scratch.equals(worlds[i], 1e-2f))
+            {
+                System.out.println("[ERROR]: After the " + what + " node " + i + " is\n" + scratch + "expected\n" + worlds[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double millisSince(long start)
+    {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.ecs;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Table of every entity with exactly one set of components, split into chunks. Rows are numbered
+ * across the chunks (chunk << Chunk.SHIFT | row in chunk) and kept packed: every chunk but the last is
+ * full, and removing a row moves the archetype's last row into the hole.
+ */
+public final class Archetype
+{
+    private final long mask;
+    private final ComponentType[] types;
+    private final int[] columnOfType = new int[ComponentType.MAX_TYPES];
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int count = 0;
+
+    Archetype(long mask)
+    {
+        this.mask = mask;
+        types = new ComponentType[Long.bitCount(mask)];
+        Arrays.fill(columnOfType, -1);
+        int column = 0;
+        for (int id = 0; id < ComponentType.MAX_TYPES; id++)
+        {
+            if ((mask & (1L << id)) == 0)
+                continue;
+            types[column] = ComponentType.get(id);
+            columnOfType[id] = column++;
+        }
+    }
+
+    public long getMask()
+    {
+        return mask;
+    }
+
+    ComponentType[] getTypes()
+    {
+        return types;
+    }
+
+    /** Column of a component in this archetype's chunks, -1 when it has none. */
+    int getColumn(ComponentType type)
+    {
+        return columnOfType[type.getId()];
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    int getChunkCount()
+    {
+        return chunks.size();
+    }
+
+    Chunk getChunk(int index)
+    {
+        return chunks.get(index);
+    }
+
+    Chunk chunkOf(int row)
+    {
+        return chunks.get(row >>> Chunk.SHIFT);
+    }
+
+    /** Appends a zeroed row for the entity, returns the row. */
+    int add(int entity)
+    {
+        int row = count++;
+        int chunkIndex = row >>> Chunk.SHIFT;
+        if (chunkIndex == chunks.size())
+            chunks.add(new Chunk(this));
+        Chunk chunk = chunks.get(chunkIndex);
+        int local = row & (Chunk.CAPACITY - 1);
+        for (int column = 0; column < types.length; column++)
+        {
+            int size = types[column].getSize();
+            MemoryUtil.memSet(chunk.address(column) + (long) local * size, 0, size);
+        }
+        chunk.setEntity(local, entity);
+        chunk.count = local + 1;
+        return row;
+    }
+
+    /** Swap-removes a row, returns the entity now in it or World.INVALID_ENTITY when the row was last. */
+    int remove(int row)
+    {
+        int last = --count;
+        Chunk lastChunk = chunkOf(last);
+        int lastLocal = last & (Chunk.CAPACITY - 1);
+        int moved = World.INVALID_ENTITY;
+        if (row != last)
+        {
+            Chunk chunk = chunkOf(row);
+            int local = row & (Chunk.CAPACITY - 1);
+            for (int column = 0; column < types.length; column++)
+            {
+                int size = types[column].getSize();
+                MemoryUtil.memCopy(lastChunk.address(column) + (long) lastLocal * size, chunk.address(column) + (long) local * size, size);
+            }
+            moved = lastChunk.getEntity(lastLocal);
+            chunk.setEntity(local, moved);
+        }
+        lastChunk.count = lastLocal;
+
+        // Keep one empty chunk around so an entity bouncing across the boundary does not reallocate
+        while (chunks.size() > 1 && chunks.get(chunks.size() - 1).count == 0 && chunks.get(chunks.size() - 2).count == 0)
+            chunks.remove(chunks.size() - 1).free();
+        return moved;
+    }
+
+    /** Copies the components both archetypes have from a row of this one to a row of another. */
+    void copyRow(int row, Archetype destination, int destinationRow)
+    {
+        Chunk source = chunkOf(row);
+        Chunk target = destination.chunkOf(destinationRow);
+        int local = row & (Chunk.CAPACITY - 1);
+        int targetLocal = destinationRow & (Chunk.CAPACITY - 1);
+        for (int column = 0; column < types.length; column++)
+        {
+            int targetColumn = destination.getColumn(types[column]);
+            if (targetColumn < 0)
+                continue;
+            int size = types[column].getSize();
+            MemoryUtil.memCopy(source.address(column) + (long) local * size, target.address(targetColumn) + (long) targetLocal * size, size);
+        }
+    }
+
+    void free()
+    {
+        for (Chunk chunk : chunks)
+            chunk.free();
+        chunks.clear();
+        count = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(types);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.ecs;
+
+import org.example.utils.OffHeap;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Up to CAPACITY entities of one archetype, one off-heap column per component. Rows [0, size()) are
+ * live and packed. Systems iterate a chunk through the raw column addresses:
+ *
+ *   long position = chunk.address(Components.POSITION);
+ *   for (int row = 0; row < chunk.size(); row++)
+ *       x = MemoryUtil.memGetFloat(position + row * 12L);
+ *
+ * Lane `lane` of row `row` is at address + (row * lanes + lane) * 4. Different chunks can be written
+ * from different threads; the rows of one chunk belong to whichever thread was handed the chunk.
+ */
+public final class Chunk
+{
+    public static final int SHIFT = 10;
+    public static final int CAPACITY = 1 << SHIFT;
+
+    private final Archetype archetype;
+    private final ByteBuffer[] columns;
+    private final long[] addresses;
+    private final int[] entities = new int[CAPACITY];
+    int count = 0;
+
+    Chunk(Archetype archetype)
+    {
+        this.archetype = archetype;
+        ComponentType[] types = archetype.getTypes();
+        columns = new ByteBuffer[types.length];
+        addresses = new long[types.length];
+        for (int i = 0; i < types.length; i++)
+        {
+            columns[i] = OffHeap.calloc(CAPACITY * types[i].getSize());
+            addresses[i] = MemoryUtil.memAddress(columns[i]);
+        }
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public Archetype getArchetype()
+    {
+        return archetype;
+    }
+
+    /** Entity handle stored in a row. */
+    public int getEntity(int row)
+    {
+        return entities[row];
+    }
+
+    void setEntity(int row, int entity)
+    {
+        entities[row] = entity;
+    }
+
+    public boolean has(ComponentType type)
+    {
+        return archetype.getColumn(type) >= 0;
+    }
+
+    /** Base address of a component column; the archetype must have the component. */
+    public long address(ComponentType type)
+    {
+        int column = archetype.getColumn(type);
+        if (column < 0)
+            throw new IllegalArgumentException("Archetype " + archetype + " has no " + type);
+        return addresses[column];
+    }
+
+    long address(int column)
+    {
+        return addresses[column];
+    }
+
+    public float getFloat(ComponentType type, int row, int lane)
+    {
+        return MemoryUtil.memGetFloat(address(type) + ((long) row * type.getLanes() + lane) * 4L);
+    }
+
+    public void putFloat(ComponentType type, int row, int lane, float value)
+    {
+        MemoryUtil.memPutFloat(address(type) + ((long) row * type.getLanes() + lane) * 4L, value);
+    }
+
+    public int getInt(ComponentType type, int row, int lane)
+    {
+        return MemoryUtil.memGetInt(address(type) + ((long) row * type.getLanes() + lane) * 4L);
+    }
+
+    public void putInt(ComponentType type, int row, int lane, int value)
+    {
+        MemoryUtil.memPutInt(address(type) + ((long) row * type.getLanes() + lane) * 4L, value);
+    }
+
+    void free()
+    {
+        for (ByteBuffer column : columns)
+            OffHeap.free(column);
+    }
+}
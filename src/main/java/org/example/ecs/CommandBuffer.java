@@ -0,0 +1,134 @@
+package org.example.ecs;
+
+import java.util.Arrays;
+
+/**
+ * Structural changes recorded while queries iterate, applied in order by playback().
+ *
+ * Commands are packed into int arrays, so recording allocates nothing once the arrays have grown.
+ * create() returns a placeholder handle (negative) that later commands in the same buffer can use;
+ * playback resolves it to the real entity. Commands on an entity that is gone by the time they run
+ * (destroyed twice from two chunks, for example) are skipped. A buffer is used by one thread at a time.
+ */
+public class CommandBuffer
+{
+    private static final int CREATE = 0;
+    private static final int DESTROY = 1;
+    private static final int ADD = 2;
+    private static final int REMOVE = 3;
+    private static final int SET = 4;
+
+    // Four ints per command: op, entity, type id or mask index, lane; SET values in values[]
+    private int[] commands = new int[64];
+    private int commandCount = 0;
+    private long[] masks = new long[8];
+    private int maskCount = 0;
+    private int[] values = new int[16];
+    private int valueCount = 0;
+    private int[] created = new int[8];
+    private int createdCount = 0;
+
+    /** Entity created at playback, returns a placeholder handle for this buffer's later commands. */
+    public int create(ComponentType... types)
+    {
+        long mask = 0L;
+        for (ComponentType type : types)
+            mask |= type.mask();
+        if (maskCount == masks.length)
+            masks = Arrays.copyOf(masks, maskCount * 2);
+        masks[maskCount] = mask;
+        record(CREATE, World.INVALID_ENTITY, maskCount++, 0);
+        return -(++createdCount);
+    }
+
+    public void destroy(int entity)
+    {
+        record(DESTROY, entity, 0, 0);
+    }
+
+    public void add(int entity, ComponentType type)
+    {
+        record(ADD, entity, type.getId(), 0);
+    }
+
+    public void remove(int entity, ComponentType type)
+    {
+        record(REMOVE, entity, type.getId(), 0);
+    }
+
+    public void setFloat(int entity, ComponentType type, int lane, float value)
+    {
+        setInt(entity, type, lane, Float.floatToRawIntBits(value));
+    }
+
+    public void setInt(int entity, ComponentType type, int lane, int value)
+    {
+        if (valueCount == values.length)
+            values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = value;
+        record(SET, entity, type.getId(), lane);
+    }
+
+    private void record(int op, int entity, int argument, int lane)
+    {
+        if (commandCount + 4 > commands.length)
+            commands = Arrays.copyOf(commands, commands.length * 2);
+        commands[commandCount++] = op;
+        commands[commandCount++] = entity;
+        commands[commandCount++] = argument;
+        commands[commandCount++] = lane;
+    }
+
+    public boolean isEmpty()
+    {
+        return commandCount == 0;
+    }
+
+    /** Applies the commands to the world and clears the buffer. */
+    public void playback(World world)
+    {
+        if (commandCount == 0)
+            return;
+        if (created.length < createdCount)
+            created = new int[createdCount];
+
+        int createdIndex = 0;
+        int valueIndex = 0;
+        for (int i = 0; i < commandCount; i += 4)
+        {
+            int op = commands[i];
+            int entity = commands[i + 1];
+            if (entity < 0)
+                entity = created[-entity - 1];
+            int argument = commands[i + 2];
+            switch (op)
+            {
+                case CREATE:
+                    created[createdIndex++] = world.create(world.archetypeForMask(masks[argument]));
+                    break;
+                case DESTROY:
+                    if (world.isAlive(entity))
+                        world.destroy(entity);
+                    break;
+                case ADD:
+                    if (world.isAlive(entity))
+                        world.add(entity, ComponentType.get(argument));
+                    break;
+                case REMOVE:
+                    if (world.isAlive(entity))
+                        world.remove(entity, ComponentType.get(argument));
+                    break;
+                case SET:
+                    int value = values[valueIndex++];
+                    ComponentType type = ComponentType.get(argument);
+                    if (world.isAlive(entity) && world.has(entity, type))
+                        world.setInt(entity, type, commands[i + 3], value);
+                    break;
+            }
+        }
+        commandCount = 0;
+        maskCount = 0;
+        valueCount = 0;
+        createdCount = 0;
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.ecs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A component is a fixed number of 4-byte lanes of one primitive kind, stored per entity in an
+ * off-heap column of its archetype. Types are defined once, usually as constants (see Components),
+ * and get a small id so an archetype is identified by a 64-bit mask.
+ */
+public final class ComponentType
+{
+    public enum Kind
+    {
+        FLOAT,
+        INT
+    }
+
+    public static final int MAX_TYPES = 64;
+
+    private static final List<ComponentType> types = new ArrayList<>();
+    private static volatile ComponentType[] byId = new ComponentType[0]; // lock-free lookup for playback
+
+    private final int id;
+    private final String name;
+    private final Kind kind;
+    private final int lanes;
+
+    private ComponentType(int id, String name, Kind kind, int lanes)
+    {
+        this.id = id;
+        this.name = name;
+        this.kind = kind;
+        this.lanes = lanes;
+    }
+
+    public static synchronized ComponentType define(String name, Kind kind, int lanes)
+    {
+        if (types.size() == MAX_TYPES)
+            throw new IllegalStateException("[Error]: More than " + MAX_TYPES + " component types");
+        if (lanes <= 0)
+            throw new IllegalArgumentException("Component " + name + " needs at least one lane: " + lanes);
+        ComponentType type = new ComponentType(types.size(), name, kind, lanes);
+        types.add(type);
+        byId = types.toArray(new ComponentType[0]);
+        return type;
+    }
+
+    static ComponentType get(int id)
+    {
+        return byId[id];
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public int getLanes()
+    {
+        return lanes;
+    }
+
+    /** Bytes per entity in the column. */
+    public int getSize()
+    {
+        return lanes * 4;
+    }
+
+    long mask()
+    {
+        return 1L << id;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.ecs;
+
+import static org.example.ecs.ComponentType.Kind.FLOAT;
+import static org.example.ecs.ComponentType.Kind.INT;
+
+/** The engine's component types, lanes in the order listed. */
+public final class Components
+{
+    /** x, y, z in world space. */
+    public static final ComponentType POSITION = ComponentType.define("position", FLOAT, 3);
+    /** x, y, z in world units per millisecond. */
+    public static final ComponentType VELOCITY = ComponentType.define("velocity", FLOAT, 3);
+    /** yaw, pitch in degrees. */
+    public static final ComponentType ORIENTATION = ComponentType.define("orientation", FLOAT, 2);
+    /** Fly camera: speed in world units per millisecond, mouse sensitivity in degrees per pixel. */
+    public static final ComponentType CAMERA = ComponentType.define("camera", FLOAT, 2);
+    /** EmitterRegistry handle of a particle emitter. */
+    public static final ComponentType EMITTER = ComponentType.define("emitter", INT, 1);
+    /** MeshRenderer instance id, then mesh id. */
+    public static final ComponentType MESH_INSTANCE = ComponentType.define("meshInstance", INT, 2);
+    /** Rotation about Y: phase in radians, rate in radians per millisecond. */
+    public static final ComponentType SPIN = ComponentType.define("spin", FLOAT, 2);
+    /** TransformHierarchy handle the entity follows. */
+    public static final ComponentType TRANSFORM = ComponentType.define("transform", INT, 1);
+    /** AudioEngine handle of a sound source that follows the entity's position. */
+    public static final ComponentType SOUND = ComponentType.define("sound", INT, 1);
+
+    private Components()
+    {
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.ecs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Iterates the chunks of every archetype that has all of a set of components (and none of an
+ * excluded set). Matching archetypes are cached and picked up incrementally as the world creates new
+ * ones, so a query is meant to be built once and kept by its system.
+ */
+public class Query
+{
+    /** Called with each non-empty chunk, on the update thread. */
+    public interface ChunkConsumer
+    {
+        void accept(Chunk chunk);
+    }
+
+    /** Called with each non-empty chunk from a pool thread; structural changes go into commands. */
+    public interface ParallelChunkConsumer
+    {
+        void accept(Chunk chunk, CommandBuffer commands);
+    }
+
+    private final World world;
+    private final long with;
+    private long without = 0L;
+
+    private Archetype[] matches = new Archetype[4];
+    private int matchCount = 0;
+    private int archetypesSeen = 0;
+
+    private Chunk[] chunks = new Chunk[16];
+    private int chunkCount = 0;
+    private CommandBuffer[] buffers = new CommandBuffer[0];
+
+    Query(World world, ComponentType... with)
+    {
+        this.world = world;
+        long mask = 0L;
+        for (ComponentType type : with)
+            mask |= type.mask();
+        this.with = mask;
+    }
+
+    /** Skips archetypes with any of these components. */
+    public Query without(ComponentType... types)
+    {
+        for (ComponentType type : types)
+            without |= type.mask();
+        matchCount = 0;
+        archetypesSeen = 0;
+        return this;
+    }
+
+    private void refresh()
+    {
+        int archetypes = world.getArchetypeCount();
+        for (; archetypesSeen < archetypes; archetypesSeen++)
+        {
+            Archetype archetype = world.getArchetype(archetypesSeen);
+            long mask = archetype.getMask();
+            if ((mask & with) != with || (mask & without) != 0)
+                continue;
+            if (matchCount == matches.length)
+                matches = Arrays.copyOf(matches, matchCount * 2);
+            matches[matchCount++] = archetype;
+        }
+    }
+
+    private void gatherChunks()
+    {
+        refresh();
+        chunkCount = 0;
+        for (int i = 0; i < matchCount; i++)
+        {
+            Archetype archetype = matches[i];
+            for (int c = 0; c < archetype.getChunkCount(); c++)
+            {
+                Chunk chunk = archetype.getChunk(c);
+                if (chunk.size() == 0)
+                    continue;
+                if (chunkCount == chunks.length)
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                chunks[chunkCount++] = chunk;
+            }
+        }
+    }
+
+    /** Matching entities. */
+    public int count()
+    {
+        refresh();
+        int count = 0;
+        for (int i = 0; i < matchCount; i++)
+            count += matches[i].size();
+        return count;
+    }
+
+    public void forEachChunk(ChunkConsumer consumer)
+    {
+        gatherChunks();
+        world.beginIteration();
+        try
+        {
+            for (int i = 0; i < chunkCount; i++)
+                consumer.accept(chunks[i]);
+        }
+        finally
+        {
+            world.endIteration();
+        }
+    }
+
+    public void forEachChunkParallel(ParallelChunkConsumer consumer)
+    {
+        forEachChunkParallel(consumer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the consumer over the chunks on a fork/join pool, one chunk per task. Each chunk gets its own
+     * command buffer; they are played back in chunk order once every chunk is done, so the result does not
+     * depend on thread timing.
+     */
+    public void forEachChunkParallel(ParallelChunkConsumer consumer, ForkJoinPool pool)
+    {
+        gatherChunks();
+        if (chunkCount == 0)
+            return;
+        if (buffers.length < chunkCount)
+        {
+            int old = buffers.length;
+            buffers = Arrays.copyOf(buffers, chunkCount);
+            for (int i = old; i < chunkCount; i++)
+                buffers[i] = new CommandBuffer();
+        }
+
+        world.beginIteration();
+        try
+        {
+            if (chunkCount == 1)
+                consumer.accept(chunks[0], buffers[0]);
+            else
+                pool.invoke(new ChunkTask(consumer, 0, chunkCount));
+        }
+        finally
+        {
+            world.endIteration();
+        }
+        for (int i = 0; i < chunkCount; i++)
+            buffers[i].playback(world);
+    }
+
+    // Splits the chunk range in halves down to single chunks
+    private final class ChunkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelChunkConsumer consumer;
+        private final int from;
+        private final int to;
+
+        ChunkTask(ParallelChunkConsumer consumer, int from, int to)
+        {
+            this.consumer = consumer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                consumer.accept(chunks[from], buffers[from]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(consumer, from, middle), new ChunkTask(consumer, middle, to));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.example.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entity component system with archetype storage.
+ *
+ * Entities are int handles (slot + generation, like EmitterRegistry handles) that stay valid until the
+ * entity is destroyed. The components of an entity live in the archetype table for its exact set of
+ * components, as off-heap primitive columns (see Chunk), so systems walk contiguous memory instead of
+ * objects. Adding or removing a component moves the entity to another archetype.
+ *
+ * Structural changes (create, destroy, add, remove) are not allowed while a Query is iterating; systems
+ * record them in a CommandBuffer instead. getCommands() is the world's own buffer, played back by
+ * flush() after the frame's updates; parallel queries hand out one buffer per chunk and play them back
+ * themselves. Everything but the column writes inside a query must happen on the update thread.
+ */
+public class World
+{
+    public static World world;
+
+    public static final int INVALID_ENTITY = 0;
+
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    // Per slot
+    private int[] slotGeneration;
+    private int[] slotArchetype; // index into archetypes, -1 when the slot is free
+    private int[] slotRow;
+    private int[] freeSlots;
+    private int freeSlotCount = 0;
+    private int slotCount = 0; // high water mark
+
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final Map<Long, Integer> archetypeByMask = new HashMap<>();
+    private final CommandBuffer commands = new CommandBuffer();
+    private int entityCount = 0;
+    private int iterating = 0;
+
+    public World()
+    {
+        this(1024);
+    }
+
+    public World(int initialCapacity)
+    {
+        world = this;
+        int capacity = Math.max(16, initialCapacity);
+        slotGeneration = new int[capacity];
+        slotArchetype = new int[capacity];
+        slotRow = new int[capacity];
+        freeSlots = new int[capacity];
+        Arrays.fill(slotArchetype, -1);
+    }
+
+    /** The archetype for a set of components, created on first use. Reuse it to create many entities. */
+    public Archetype archetype(ComponentType... types)
+    {
+        long mask = 0L;
+        for (ComponentType type : types)
+            mask |= type.mask();
+        return archetypeForMask(mask);
+    }
+
+    Archetype archetypeForMask(long mask)
+    {
+        return archetypes.get(archetypeIndex(mask));
+    }
+
+    private int archetypeIndex(long mask)
+    {
+        Integer index = archetypeByMask.get(mask);
+        if (index != null)
+            return index;
+        archetypes.add(new Archetype(mask));
+        archetypeByMask.put(mask, archetypes.size() - 1);
+        return archetypes.size() - 1;
+    }
+
+    /** New entity with zeroed components. */
+    public int create(ComponentType... types)
+    {
+        return create(archetype(types));
+    }
+
+    public int create(Archetype archetype)
+    {
+        checkNotIterating();
+        int slot;
+        if (freeSlotCount > 0)
+            slot = freeSlots[--freeSlotCount];
+        else
+        {
+            if (slotCount == SLOT_MASK + 1)
+                throw new IllegalStateException("[Error]: World is full (" + (SLOT_MASK + 1) + " entities)");
+            if (slotCount == slotGeneration.length)
+                grow();
+            slot = slotCount++;
+        }
+
+        int generation = (slotGeneration[slot] + 1) & GENERATION_MASK;
+        if (generation == 0)
+            generation = 1; // generation 0 is reserved so INVALID_ENTITY never resolves
+        slotGeneration[slot] = generation;
+        int entity = (generation << SLOT_BITS) | slot;
+
+        slotArchetype[slot] = archetypeIndex(archetype.getMask());
+        slotRow[slot] = archetype.add(entity);
+        entityCount++;
+        return entity;
+    }
+
+    public void destroy(int entity)
+    {
+        checkNotIterating();
+        int slot = resolve(entity);
+        Archetype archetype = archetypes.get(slotArchetype[slot]);
+        int moved = archetype.remove(slotRow[slot]);
+        if (moved != INVALID_ENTITY)
+            slotRow[moved & SLOT_MASK] = slotRow[slot];
+        slotArchetype[slot] = -1;
+        freeSlots[freeSlotCount++] = slot;
+        entityCount--;
+    }
+
+    public boolean isAlive(int entity)
+    {
+        int slot = entity & SLOT_MASK;
+        return entity != INVALID_ENTITY && slot < slotCount && slotArchetype[slot] >= 0 && slotGeneration[slot] == entity >>> SLOT_BITS;
+    }
+
+    public boolean has(int entity, ComponentType type)
+    {
+        return archetypes.get(slotArchetype[resolve(entity)]).getColumn(type) >= 0;
+    }
+
+    /** Adds a zeroed component, nothing happens when the entity already has it. */
+    public void add(int entity, ComponentType type)
+    {
+        int slot = resolve(entity);
+        long mask = archetypes.get(slotArchetype[slot]).getMask();
+        if ((mask & type.mask()) == 0)
+            move(slot, mask | type.mask());
+    }
+
+    public void remove(int entity, ComponentType type)
+    {
+        int slot = resolve(entity);
+        long mask = archetypes.get(slotArchetype[slot]).getMask();
+        if ((mask & type.mask()) != 0)
+            move(slot, mask & ~type.mask());
+    }
+
+    // Moves an entity to the archetype for mask, keeping the components both have
+    private void move(int slot, long mask)
+    {
+        checkNotIterating();
+        Archetype source = archetypes.get(slotArchetype[slot]);
+        int destinationIndex = archetypeIndex(mask);
+        Archetype destination = archetypes.get(destinationIndex);
+        int entity = (slotGeneration[slot] << SLOT_BITS) | slot;
+
+        int row = destination.add(entity);
+        source.copyRow(slotRow[slot], destination, row);
+        int moved = source.remove(slotRow[slot]);
+        if (moved != INVALID_ENTITY)
+            slotRow[moved & SLOT_MASK] = slotRow[slot];
+        slotArchetype[slot] = destinationIndex;
+        slotRow[slot] = row;
+    }
+
+    public float getFloat(int entity, ComponentType type, int lane)
+    {
+        int slot = resolve(entity);
+        return chunkOf(slot).getFloat(type, slotRow[slot] & (Chunk.CAPACITY - 1), lane);
+    }
+
+    public void setFloat(int entity, ComponentType type, int lane, float value)
+    {
+        int slot = resolve(entity);
+        chunkOf(slot).putFloat(type, slotRow[slot] & (Chunk.CAPACITY - 1), lane, value);
+    }
+
+    public void setFloat3(int entity, ComponentType type, float x, float y, float z)
+    {
+        int slot = resolve(entity);
+        Chunk chunk = chunkOf(slot);
+        int row = slotRow[slot] & (Chunk.CAPACITY - 1);
+        chunk.putFloat(type, row, 0, x);
+        chunk.putFloat(type, row, 1, y);
+        chunk.putFloat(type, row, 2, z);
+    }
+
+    public int getInt(int entity, ComponentType type, int lane)
+    {
+        int slot = resolve(entity);
+        return chunkOf(slot).getInt(type, slotRow[slot] & (Chunk.CAPACITY - 1), lane);
+    }
+
+    public void setInt(int entity, ComponentType type, int lane, int value)
+    {
+        int slot = resolve(entity);
+        chunkOf(slot).putInt(type, slotRow[slot] & (Chunk.CAPACITY - 1), lane, value);
+    }
+
+    private Chunk chunkOf(int slot)
+    {
+        return archetypes.get(slotArchetype[slot]).chunkOf(slotRow[slot]);
+    }
+
+    /** Entities with all of the given components; cache the query, it tracks new archetypes itself. */
+    public Query query(ComponentType... with)
+    {
+        return new Query(this, with);
+    }
+
+    /** Structural changes recorded by systems outside of queries, applied by flush(). */
+    public CommandBuffer getCommands()
+    {
+        return commands;
+    }
+
+    /** Applies the world's command buffer, EngineManager calls it after the frame's updates. */
+    public void flush()
+    {
+        commands.playback(this);
+    }
+
+    int getArchetypeCount()
+    {
+        return archetypes.size();
+    }
+
+    Archetype getArchetype(int index)
+    {
+        return archetypes.get(index);
+    }
+
+    void beginIteration()
+    {
+        iterating++;
+    }
+
+    void endIteration()
+    {
+        iterating--;
+    }
+
+    private void checkNotIterating()
+    {
+        if (iterating > 0)
+            throw new IllegalStateException("[Error]: Structural change while iterating a query, record it in a CommandBuffer");
+    }
+
+    private int resolve(int entity)
+    {
+        if (!isAlive(entity))
+            throw new IllegalArgumentException("Stale or invalid entity handle: " + entity);
+        return entity & SLOT_MASK;
+    }
+
+    private void grow()
+    {
+        int capacity = Math.min(slotGeneration.length * 2, SLOT_MASK + 1);
+        slotGeneration = Arrays.copyOf(slotGeneration, capacity);
+        slotRow = Arrays.copyOf(slotRow, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        int old = slotArchetype.length;
+        slotArchetype = Arrays.copyOf(slotArchetype, capacity);
+        Arrays.fill(slotArchetype, old, capacity, -1);
+    }
+
+    public int getEntityCount()
+    {
+        return entityCount;
+    }
+
+    public void cleanup()
+    {
+        for (Archetype archetype : archetypes)
+            archetype.free();
+        archetypes.clear();
+        archetypeByMask.clear();
+        entityCount = 0;
+        slotCount = 0;
+        freeSlotCount = 0;
+    }
+}
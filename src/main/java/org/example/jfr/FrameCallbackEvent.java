@@ -0,0 +1,48 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One entry of EngineManager.updatesToRun, lateUpdatesToRun or Renderer.renderables running for a frame. */
+@Name("org.example.FrameCallback")
+@Label("Frame Callback")
+@Category({"Engine", "Frame"})
+@StackTrace(false)
+public class FrameCallbackEvent extends Event
+{
+    public static final String UPDATES = "updatesToRun";
+    public static final String LATE_UPDATES = "lateUpdatesToRun";
+    public static final String RENDERABLES = "renderables";
+
+    @Label("Frame Index")
+    public long frameIndex;
+
+    @Label("List")
+    @Description("updatesToRun, lateUpdatesToRun or renderables")
+    public String list;
+
+    @Label("Index")
+    @Description("Position of the callback in its list")
+    public int index;
+
+    @Label("Callback")
+    @Description("Class of the callback, lambdas and method references name their declaring class")
+    public String callback;
+
+    /** Ends the event and commits it if the recording wants it, the strings are only built then. */
+    public void finish(long frameIndex, String list, int index, Runnable callback)
+    {
+        end();
+        if (!shouldCommit())
+            return;
+        this.frameIndex = frameIndex;
+        this.list = list;
+        this.index = index;
+        this.callback = callback.getClass().getName();
+        commit();
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A whole iteration of EngineManager's frame loop, spikes line up with GC, JIT and lock events. */
+@Name("org.example.Frame")
+@Label("Frame")
+@Category({"Engine", "Frame"})
+@StackTrace(false)
+public class FrameEvent extends Event
+{
+    @Label("Frame Index")
+    public long frameIndex;
+}
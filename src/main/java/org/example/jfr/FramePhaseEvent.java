@@ -0,0 +1,39 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One phase of EngineManager's frame loop: input, update, render or swap (window.update). */
+@Name("org.example.FramePhase")
+@Label("Frame Phase")
+@Category({"Engine", "Frame"})
+@StackTrace(false)
+public class FramePhaseEvent extends Event
+{
+    public static final String INPUT = "input";
+    public static final String UPDATE = "update";
+    public static final String RENDER = "render";
+    public static final String SWAP = "swap";
+
+    @Label("Frame Index")
+    public long frameIndex;
+
+    @Label("Phase")
+    @Description("input, update, render or swap")
+    public String phase;
+
+    /** Ends the event and commits it if the recording wants it. */
+    public void finish(long frameIndex, String phase)
+    {
+        end();
+        if (!shouldCommit())
+            return;
+        this.frameIndex = frameIndex;
+        this.phase = phase;
+        commit();
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.example.EngineManager;
+
+/**
+ * GPU time of a pass, committed when its timer query resolves a few frames after the pass ran.
+ * frameIndex is the frame the result arrived in.
+ */
+@Name("org.example.GpuPass")
+@Label("GPU Pass")
+@Category({"Engine", "GPU"})
+@StackTrace(false)
+public class GpuPassEvent extends Event
+{
+    @Label("Frame Index")
+    public long frameIndex;
+
+    @Label("Pass")
+    public String pass;
+
+    @Label("GPU Time")
+    @Description("Time between the pass's start and end timestamps on the GPU")
+    @Timespan(Timespan.NANOSECONDS)
+    public long gpuTime;
+
+    /** Commits the result of a GPU timer if the recording wants it. */
+    public static void record(String pass, double gpuMs)
+    {
+        GpuPassEvent event = new GpuPassEvent();
+        if (!event.shouldCommit())
+            return;
+        event.frameIndex = EngineManager.getFrameIndex();
+        event.pass = pass;
+        event.gpuTime = (long) (gpuMs * 1_000_000.0);
+        event.commit();
+    }
+}
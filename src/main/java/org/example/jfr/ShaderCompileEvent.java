@@ -0,0 +1,19 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Compiling one shader stage or linking one program in ShaderManager. */
+@Name("org.example.ShaderCompile")
+@Label("Shader Compile")
+@Category({"Engine", "Loading"})
+public class ShaderCompileEvent extends Event
+{
+    @Label("Frame Index")
+    public long frameIndex;
+
+    @Label("Stage")
+    public String stage;
+}
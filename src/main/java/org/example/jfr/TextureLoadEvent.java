@@ -0,0 +1,25 @@
+package org.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Decoding and uploading one texture in TextureAtlas. */
+@Name("org.example.TextureLoad")
+@Label("Texture Load")
+@Category({"Engine", "Loading"})
+public class TextureLoadEvent extends Event
+{
+    @Label("Frame Index")
+    public long frameIndex;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
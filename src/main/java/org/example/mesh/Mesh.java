@@ -0,0 +1,167 @@
+package org.example.mesh;
+
+/**
+ * CPU side geometry for the MeshRenderer: interleaved vertices (position, normal, uv) and triangle
+ * indices, plus a bounding sphere used for culling. Registering it with MeshRenderer.addMesh copies it
+ * into the shared buffers, the arrays are not kept.
+ */
+public class Mesh
+{
+    public static final int FLOATS_PER_VERTEX = 8;
+
+    private final float[] vertices;
+    private final int[] indices;
+    private final float centerX, centerY, centerZ, radius;
+
+    public Mesh(float[] vertices, int[] indices)
+    {
+        if (vertices.length % FLOATS_PER_VERTEX != 0)
+            throw new IllegalArgumentException("[Error]: Mesh vertices must be position, normal and uv, " + FLOATS_PER_VERTEX + " floats each");
+        this.vertices = vertices;
+        this.indices = indices;
+
+        // Sphere around the bounding box center, loose but cheap
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < vertices.length; i += FLOATS_PER_VERTEX)
+        {
+            minX = Math.min(minX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            minZ = Math.min(minZ, vertices[i + 2]);
+            maxX = Math.max(maxX, vertices[i]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+            maxZ = Math.max(maxZ, vertices[i + 2]);
+        }
+        centerX = (minX + maxX) * 0.5f;
+        centerY = (minY + maxY) * 0.5f;
+        centerZ = (minZ + maxZ) * 0.5f;
+        float radiusSquared = 0.0f;
+        for (int i = 0; i < vertices.length; i += FLOATS_PER_VERTEX)
+        {
+            float dx = vertices[i] - centerX, dy = vertices[i + 1] - centerY, dz = vertices[i + 2] - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        radius = (float) Math.sqrt(radiusSquared);
+    }
+
+    /** Unit cube centered on the origin, one face per side so normals and uvs are flat. */
+    public static Mesh cube()
+    {
+        // Normal, then the two axes spanning the face
+        float[][] faces = {
+                { 1, 0, 0,   0, 0, -1,   0, 1, 0},
+                {-1, 0, 0,   0, 0, 1,    0, 1, 0},
+                { 0, 1, 0,   1, 0, 0,    0, 0, -1},
+                { 0, -1, 0,  1, 0, 0,    0, 0, 1},
+                { 0, 0, 1,   1, 0, 0,    0, 1, 0},
+                { 0, 0, -1, -1, 0, 0,    0, 1, 0},
+        };
+        float[] vertices = new float[6 * 4 * FLOATS_PER_VERTEX];
+        int[] indices = new int[6 * 6];
+        int v = 0, i = 0;
+        for (int face = 0; face < 6; face++)
+        {
+            float[] f = faces[face];
+            int first = face * 4;
+            for (int corner = 0; corner < 4; corner++)
+            {
+                float u = (corner & 1) == 0 ? -0.5f : 0.5f;
+                float w = (corner & 2) == 0 ? -0.5f : 0.5f;
+                vertices[v++] = f[0] * 0.5f + f[3] * u + f[6] * w;
+                vertices[v++] = f[1] * 0.5f + f[4] * u + f[7] * w;
+                vertices[v++] = f[2] * 0.5f + f[5] * u + f[8] * w;
+                vertices[v++] = f[0];
+                vertices[v++] = f[1];
+                vertices[v++] = f[2];
+                vertices[v++] = u + 0.5f;
+                vertices[v++] = w + 0.5f;
+            }
+            // Counter-clockwise seen from outside
+            indices[i++] = first;
+            indices[i++] = first + 1;
+            indices[i++] = first + 3;
+            indices[i++] = first;
+            indices[i++] = first + 3;
+            indices[i++] = first + 2;
+        }
+        return new Mesh(vertices, indices);
+    }
+
+    /** Sphere of radius 0.5 around the origin with the given number of segments around and rings from pole to pole. */
+    public static Mesh sphere(int segments, int rings)
+    {
+        float[] vertices = new float[(segments + 1) * (rings + 1) * FLOATS_PER_VERTEX];
+        int[] indices = new int[segments * rings * 6];
+        int v = 0;
+        for (int ring = 0; ring <= rings; ring++)
+        {
+            double theta = Math.PI * ring / rings;
+            for (int segment = 0; segment <= segments; segment++)
+            {
+                double phi = 2.0 * Math.PI * segment / segments;
+                float x = (float) (Math.sin(theta) * Math.cos(phi));
+                float y = (float) Math.cos(theta);
+                float z = (float) (Math.sin(theta) * Math.sin(phi));
+                vertices[v++] = x * 0.5f;
+                vertices[v++] = y * 0.5f;
+                vertices[v++] = z * 0.5f;
+                vertices[v++] = x;
+                vertices[v++] = y;
+                vertices[v++] = z;
+                vertices[v++] = (float) segment / segments;
+                vertices[v++] = 1.0f - (float) ring / rings;
+            }
+        }
+        int i = 0;
+        for (int ring = 0; ring < rings; ring++)
+        {
+            for (int segment = 0; segment < segments; segment++)
+            {
+                int a = ring * (segments + 1) + segment;
+                int b = a + segments + 1;
+                indices[i++] = a;
+                indices[i++] = a + 1;
+                indices[i++] = b;
+                indices[i++] = a + 1;
+                indices[i++] = b + 1;
+                indices[i++] = b;
+            }
+        }
+        return new Mesh(vertices, indices);
+    }
+
+    public float[] getVertices()
+    {
+        return vertices;
+    }
+
+    public int[] getIndices()
+    {
+        return indices;
+    }
+
+    public int getVertexCount()
+    {
+        return vertices.length / FLOATS_PER_VERTEX;
+    }
+
+    public float getCenterX()
+    {
+        return centerX;
+    }
+
+    public float getCenterY()
+    {
+        return centerY;
+    }
+
+    public float getCenterZ()
+    {
+        return centerZ;
+    }
+
+    public float getRadius()
+    {
+        return radius;
+    }
+}
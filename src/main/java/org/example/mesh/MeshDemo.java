@@ -0,0 +1,162 @@
+package org.example.mesh;
+
+import org.example.EmitterSystem;
+import org.example.EngineManager;
+import org.example.Renderer;
+import org.example.TextureAtlas;
+import org.example.TransformHierarchy;
+import org.example.ecs.Archetype;
+import org.example.ecs.Chunk;
+import org.example.ecs.Components;
+import org.example.ecs.Query;
+import org.example.ecs.World;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Demo scene for the mesh renderer: a grid of cubes and spheres around the particle emitter, with a
+ * slice of them spinning every frame so the dirty-block instance upload is exercised too. Every instance
+ * is an entity with POSITION, MESH_INSTANCE and SPIN components.
+ *
+ * Above the grid a carousel exercises the transform hierarchy: a turning hub, cubes on its arms, a moon
+ * circling each cube and a particle emitter riding the first cube. Those entities carry a TRANSFORM
+ * component instead of a position and take their model matrices from the hierarchy.
+ */
+public class MeshDemo
+{
+    private static final float SPACING = 3.0f;
+    private static final int SPINNING_SLICE = 16; // 1 / SPINNING_SLICE of the instances move each frame
+    private static final int MATERIALS = 16;
+
+    private static final float SPIN_RATE = 0.001f; // radians per millisecond
+    private static final int CAROUSEL_ARMS = 8;
+    private static final float CAROUSEL_RADIUS = 10.0f;
+    private static final float MOON_RADIUS = 2.0f;
+
+    private final MeshRenderer meshRenderer;
+    private final Query spinning;
+    private final Query.ChunkConsumer spin = this::spin;
+    private final TransformHierarchy transforms;
+    private final int hub;
+    private final int[] arms = new int[CAROUSEL_ARMS];
+    private final Query attached;
+    private final Query.ChunkConsumer follow = this::follow;
+    private final Matrix4f model = new Matrix4f();
+    private float time;
+    private int frame = 0;
+
+    /** @param emitters emitter system to hang an emitter on the carousel, may be null */
+    public MeshDemo(int count, EmitterSystem emitters) throws Exception
+    {
+        meshRenderer = new MeshRenderer(65536, 262144, 16, count + CAROUSEL_ARMS * 2, MATERIALS);
+        int cube = meshRenderer.addMesh(Mesh.cube());
+        int sphere = meshRenderer.addMesh(Mesh.sphere(24, 16));
+
+        TextureAtlas atlas = meshRenderer.loadAtlas("/textures/particle_atlas.png", 32);
+        int[] materials = new int[MATERIALS];
+        for (int i = 0; i < MATERIALS; i++)
+        {
+            float hue = (float) i / MATERIALS;
+            materials[i] = i % 2 == 0
+                    ? meshRenderer.addMaterial(atlas, i, 1.0f, 1.0f, 1.0f, 1.0f)
+                    : meshRenderer.addMaterial(null, 0, 0.5f + 0.5f * (float) Math.cos(6.283f * hue),
+                            0.5f + 0.5f * (float) Math.cos(6.283f * (hue + 0.33f)), 0.5f + 0.5f * (float) Math.cos(6.283f * (hue + 0.67f)), 1.0f);
+        }
+
+        // Square grid on the XZ plane, one layer below the emitter
+        int side = (int) Math.ceil(Math.sqrt(count));
+        World world = World.world;
+        Archetype archetype = world.archetype(Components.POSITION, Components.MESH_INSTANCE, Components.SPIN);
+        for (int i = 0; i < count; i++)
+        {
+            float x = (i % side - side * 0.5f) * SPACING;
+            float z = (i / side - side * 0.5f) * SPACING;
+            int mesh = i % 3 == 0 ? sphere : cube;
+            model.translation(x, -4.0f, z);
+            int entity = world.create(archetype);
+            world.setFloat3(entity, Components.POSITION, x, -4.0f, z);
+            world.setInt(entity, Components.MESH_INSTANCE, 0, meshRenderer.addInstance(mesh, materials[i % MATERIALS], model));
+            world.setInt(entity, Components.MESH_INSTANCE, 1, mesh);
+            world.setFloat(entity, Components.SPIN, 0, i);
+            world.setFloat(entity, Components.SPIN, 1, SPIN_RATE);
+        }
+        spinning = world.query(Components.POSITION, Components.MESH_INSTANCE, Components.SPIN);
+
+        // Carousel: hub -> arm (cube) -> moon (sphere), three levels of the hierarchy
+        transforms = TransformHierarchy.transforms;
+        hub = transforms.create(TransformHierarchy.INVALID_HANDLE);
+        transforms.setTranslation(hub, 0.0f, 6.0f, 0.0f);
+        Archetype follower = world.archetype(Components.MESH_INSTANCE, Components.TRANSFORM);
+        for (int i = 0; i < CAROUSEL_ARMS; i++)
+        {
+            double angle = 2.0 * Math.PI * i / CAROUSEL_ARMS;
+            arms[i] = transforms.create(hub);
+            transforms.setTranslation(arms[i], (float) Math.cos(angle) * CAROUSEL_RADIUS, 0.0f, (float) Math.sin(angle) * CAROUSEL_RADIUS);
+            int moon = transforms.create(arms[i]);
+            transforms.setTranslation(moon, MOON_RADIUS, 0.0f, 0.0f);
+            transforms.setScale(moon, 0.4f, 0.4f, 0.4f);
+            addFollower(world, follower, cube, materials[i % MATERIALS], arms[i]);
+            addFollower(world, follower, sphere, materials[(i + 1) % MATERIALS], moon);
+        }
+        attached = world.query(Components.MESH_INSTANCE, Components.TRANSFORM);
+        if (emitters != null)
+            emitters.attach(emitters.create(0f, 0f, 0f, 0f, 0f, 0f, 100.0f, 0.5f, 2.0f), arms[0]);
+        System.out.println("[INFO]: Mesh demo with " + count + " instances (" + (meshRenderer.isBindless() ? "bindless" : "single atlas") + " materials)");
+
+        EngineManager.engineManager.updatesToRun.add(this::update);
+        EngineManager.engineManager.lateUpdatesToRun.add(() -> attached.forEachChunk(follow));
+    }
+
+    private void addFollower(World world, Archetype archetype, int mesh, int material, int node)
+    {
+        int entity = world.create(archetype);
+        world.setInt(entity, Components.MESH_INSTANCE, 0, meshRenderer.addInstance(mesh, material, model.identity()));
+        world.setInt(entity, Components.MESH_INSTANCE, 1, mesh);
+        world.setInt(entity, Components.TRANSFORM, 0, node);
+    }
+
+    private void update()
+    {
+        time = Renderer.renderer.getTime();
+        spinning.forEachChunk(spin);
+
+        // Turn the hub and the arms, their children follow once EngineManager updates the hierarchy
+        transforms.setRotationY(hub, time * SPIN_RATE * 0.5f);
+        for (int i = 0; i < CAROUSEL_ARMS; i++)
+            transforms.setRotationY(arms[i], time * SPIN_RATE * 3.0f + i);
+        frame++;
+    }
+
+    // The vertex shader reads the nodes' world matrices, only the bounds of nodes that moved need refreshing
+    private void follow(Chunk chunk)
+    {
+        long instance = chunk.address(Components.MESH_INSTANCE);
+        long transform = chunk.address(Components.TRANSFORM);
+        for (int row = 0; row < chunk.size(); row++)
+        {
+            int node = MemoryUtil.memGetInt(transform + row * 4L);
+            if (transforms.hasChanged(node))
+                meshRenderer.setTransformNode(MemoryUtil.memGetInt(instance + row * 8L), node);
+        }
+    }
+
+    // MeshRenderer marks dirty blocks as transforms change, so this stays on the update thread
+    private void spin(Chunk chunk)
+    {
+        long position = chunk.address(Components.POSITION);
+        long instance = chunk.address(Components.MESH_INSTANCE);
+        long spin = chunk.address(Components.SPIN);
+        for (int row = frame % SPINNING_SLICE; row < chunk.size(); row += SPINNING_SLICE)
+        {
+            float angle = MemoryUtil.memGetFloat(spin + row * 8L) + time * MemoryUtil.memGetFloat(spin + row * 8L + 4);
+            model.translation(MemoryUtil.memGetFloat(position + row * 12L), MemoryUtil.memGetFloat(position + row * 12L + 4),
+                    MemoryUtil.memGetFloat(position + row * 12L + 8)).rotateY(angle);
+            meshRenderer.setTransform(MemoryUtil.memGetInt(instance + row * 8L), model);
+        }
+    }
+
+    public MeshRenderer getMeshRenderer()
+    {
+        return meshRenderer;
+    }
+}
@@ -0,0 +1,579 @@
+package org.example.mesh;
+
+import org.example.HiZPyramid;
+import org.example.Renderer;
+import org.example.ShaderManager;
+import org.example.TextureAtlas;
+import org.example.TransformHierarchy;
+import org.example.metrics.EngineMetrics;
+import org.example.utils.Bvh;
+import org.example.utils.Loader;
+import org.example.utils.OffHeap;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GPU-driven static / instanced mesh rendering.
+ *
+ * Every mesh lives in one shared vertex buffer and one shared index buffer. Instances (model matrix,
+ * world bounding sphere, mesh, material, transform node) are kept off-heap in their std430 layout and
+ * mirrored to an SSBO; writes mark 64-instance blocks dirty and only dirty blocks are uploaded, like
+ * EmitterRegistry. Materials are a second SSBO holding the bindless handle of a TextureAtlas plus the
+ * cell's uv rect and a tint, so instances with different textures still share one draw.
+ *
+ * Each frame the visible instances are grouped by mesh into a draw list (instance indices, read through
+ * an instanced vertex attribute so baseInstance selects each mesh's range) and one indirect command per
+ * mesh; the whole scene is then a single glMultiDrawElementsIndirect. Visibility comes from a Bvh over the
+ * instances' world bounds, refit as they move and culled in parallel against the frame's frustum. Without bindless textures every
+ * textured material samples the atlas bound to unit 0, so only one atlas can be used.
+ *
+ * Instances attached to a TransformHierarchy node skip their own model matrix: the vertex shader reads the
+ * node's world matrix from the hierarchy's SSBO, and only the bounds are refreshed here when the node moves.
+ */
+public class MeshRenderer
+{
+    // Instance struct in mesh_common.glsl: mat4 model, vec4 bounds, uvec4 mesh / material / transform = 96 bytes
+    public static final int INSTANCE_STRUCT_SIZE = 96;
+    // Material struct: uvec2 handle, uint textured, uint pad, vec4 uvRect, vec4 color = 48 bytes
+    public static final int MATERIAL_STRUCT_SIZE = 48;
+    // DrawElementsIndirectCommand: count, instanceCount, firstIndex, baseVertex, baseInstance
+    public static final int COMMAND_SIZE = 20;
+    public static final int INSTANCE_BINDING = 7;
+    public static final int MATERIAL_BINDING = 8;
+
+    private static final int VERTEX_SIZE = Mesh.FLOATS_PER_VERTEX * Float.BYTES;
+    private static final int DIRTY_BLOCK_SHIFT = 6; // 64 instances per dirty block
+    private static final int NONE = -1;
+    private static final int NO_TRANSFORM = -1; // the instance draws with its own model matrix
+
+    private final int maxVertices;
+    private final int maxIndices;
+    private final int maxMeshes;
+    private final int maxInstances;
+    private final int maxMaterials;
+
+    private final ShaderManager shader;
+    private final int fallbackAtlasLocation;
+    private final boolean bindless;
+    private final int vaoId;
+    private final int vertexBuffer;
+    private final int indexBuffer;
+    private final int instanceBuffer;
+    private final int materialBuffer;
+    private final int drawListBuffer;
+    private final int indirectBuffer;
+
+    // Meshes: ranges of the shared buffers
+    private int meshCount = 0;
+    private int vertexCount = 0;
+    private int indexCount = 0;
+    private final int[] meshFirstIndex;
+    private final int[] meshIndexCount;
+    private final int[] meshBaseVertex;
+    private final float[] meshBounds; // center xyz, radius per mesh
+
+    // Materials
+    private int materialCount = 0;
+    private TextureAtlas fallbackAtlas;
+    private final List<TextureAtlas> atlases = new ArrayList<>();
+
+    // Instances, off-heap in the GPU layout; free slots have mesh NONE
+    private final ByteBuffer instances;
+    private final long instancesAddress;
+    private final int[] instanceMesh;
+    private final int[] freeInstances;
+    private int freeInstanceCount = 0;
+    private int instanceCount = 0; // high water mark of used slots
+    private int liveInstances = 0;
+    private final long[] dirtyBlocks;
+    private boolean drawListDirty = true;
+
+    // Culling
+    private final Bvh sceneIndex;
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final int[] visible;
+    private boolean culling = true;
+
+    // Hi-Z occlusion culling of the frustum survivors against the previous frame's depth
+    private final ShaderManager cullShader;
+    private final int[] cullHiZLocations;
+    private final int candidateCountLocation;
+    private final int culledListBuffer;
+    private boolean occlusionCulling = true;
+    private boolean occluded = false; // the current draw list was built for occlusion culling
+
+    // Per-frame draw list, grouped by mesh
+    private final ByteBuffer drawList;
+    private final ByteBuffer commands;
+    private final int[] meshInstanceCounts;
+    private final int[] meshInstanceStarts;
+    private int drawCount = 0;
+    private int drawnInstances = 0;
+
+    private final Vector2f cellOffset = new Vector2f();
+
+    public MeshRenderer(int maxVertices, int maxIndices, int maxMeshes, int maxInstances, int maxMaterials) throws Exception
+    {
+        this.maxVertices = maxVertices;
+        this.maxIndices = maxIndices;
+        this.maxMeshes = maxMeshes;
+        this.maxInstances = maxInstances;
+        this.maxMaterials = maxMaterials;
+
+        // Software rasterizers (llvmpipe) have no bindless textures, fall back to texture unit 0
+        bindless = GL.getCapabilities().GL_ARB_bindless_texture;
+        shader = new ShaderManager();
+        shader.createVertexShader(Loader.loadShader("/shaders/mesh_vertex.glsl"));
+        if (bindless)
+            shader.createFragmentShader(Loader.loadShader("/shaders/mesh_fragment.glsl", "BINDLESS"));
+        else
+            shader.createFragmentShader(Loader.loadShader("/shaders/mesh_fragment.glsl"));
+        shader.link();
+        fallbackAtlasLocation = bindless ? -1 : shader.getUniformLocation("fallbackAtlas");
+
+        cullShader = new ShaderManager();
+        cullShader.createComputeShader(Loader.loadShader("/shaders/hiz_cull_meshes.glsl"));
+        cullShader.link();
+        cullHiZLocations = HiZPyramid.getUniformLocations(cullShader);
+        candidateCountLocation = cullShader.getUniformLocation("candidateCount");
+
+        meshFirstIndex = new int[maxMeshes];
+        meshIndexCount = new int[maxMeshes];
+        meshBaseVertex = new int[maxMeshes];
+        meshBounds = new float[maxMeshes * 4];
+        meshInstanceCounts = new int[maxMeshes];
+        meshInstanceStarts = new int[maxMeshes];
+
+        instances = OffHeap.calloc(maxInstances * INSTANCE_STRUCT_SIZE);
+        instancesAddress = MemoryUtil.memAddress(instances);
+        instanceMesh = new int[maxInstances];
+        Arrays.fill(instanceMesh, NONE);
+        freeInstances = new int[maxInstances];
+        sceneIndex = new Bvh(maxInstances);
+        visible = new int[maxInstances];
+        dirtyBlocks = new long[((maxInstances >> DIRTY_BLOCK_SHIFT) >> 6) + 1];
+        drawList = OffHeap.alloc(maxInstances * Integer.BYTES);
+        commands = OffHeap.alloc(maxMeshes * COMMAND_SIZE);
+
+        // SHARED GEOMETRY
+        vertexBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(vertexBuffer, (long) maxVertices * VERTEX_SIZE, GL44.GL_DYNAMIC_STORAGE_BIT);
+        indexBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(indexBuffer, (long) maxIndices * Integer.BYTES, GL44.GL_DYNAMIC_STORAGE_BIT);
+
+        // INSTANCES, MATERIALS, DRAW LIST AND COMMANDS
+        instanceBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(instanceBuffer, (long) maxInstances * INSTANCE_STRUCT_SIZE, GL44.GL_DYNAMIC_STORAGE_BIT);
+        materialBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(materialBuffer, (long) maxMaterials * MATERIAL_STRUCT_SIZE, GL44.GL_DYNAMIC_STORAGE_BIT);
+        drawListBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(drawListBuffer, (long) maxInstances * Integer.BYTES, GL44.GL_DYNAMIC_STORAGE_BIT);
+        indirectBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(indirectBuffer, (long) maxMeshes * COMMAND_SIZE, GL44.GL_DYNAMIC_STORAGE_BIT);
+        culledListBuffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(culledListBuffer, (long) maxInstances * Integer.BYTES, 0);
+
+        // VAO: binding 0 per vertex, binding 1 one instance index per instance (honours baseInstance)
+        vaoId = GL45.glCreateVertexArrays();
+        GL45.glVertexArrayVertexBuffer(vaoId, 0, vertexBuffer, 0, VERTEX_SIZE);
+        GL45.glVertexArrayElementBuffer(vaoId, indexBuffer);
+        GL45.glEnableVertexArrayAttrib(vaoId, 0);
+        GL45.glVertexArrayAttribFormat(vaoId, 0, 3, GL11.GL_FLOAT, false, 0);
+        GL45.glVertexArrayAttribBinding(vaoId, 0, 0);
+        GL45.glEnableVertexArrayAttrib(vaoId, 1);
+        GL45.glVertexArrayAttribFormat(vaoId, 1, 3, GL11.GL_FLOAT, false, 12);
+        GL45.glVertexArrayAttribBinding(vaoId, 1, 0);
+        GL45.glEnableVertexArrayAttrib(vaoId, 2);
+        GL45.glVertexArrayAttribFormat(vaoId, 2, 2, GL11.GL_FLOAT, false, 24);
+        GL45.glVertexArrayAttribBinding(vaoId, 2, 0);
+        GL45.glVertexArrayVertexBuffer(vaoId, 1, drawListBuffer, 0, Integer.BYTES);
+        GL45.glVertexArrayBindingDivisor(vaoId, 1, 1);
+        GL45.glEnableVertexArrayAttrib(vaoId, 3);
+        GL45.glVertexArrayAttribIFormat(vaoId, 3, 1, GL11.GL_UNSIGNED_INT, 0);
+        GL45.glVertexArrayAttribBinding(vaoId, 3, 1);
+
+        Renderer.renderer.opaqueRenderables.add(this::render);
+        Renderer.renderer.cleanupCalls.add(this::cleanup);
+    }
+
+    /** Copies the mesh into the shared buffers, returns its id. */
+    public int addMesh(Mesh mesh)
+    {
+        float[] vertices = mesh.getVertices();
+        int[] indices = mesh.getIndices();
+        if (meshCount == maxMeshes || vertexCount + mesh.getVertexCount() > maxVertices || indexCount + indices.length > maxIndices)
+            throw new IllegalStateException("[Error]: Mesh buffers are full (" + meshCount + " meshes, " + vertexCount + " vertices, " + indexCount + " indices)");
+
+        GL45.glNamedBufferSubData(vertexBuffer, (long) vertexCount * VERTEX_SIZE, vertices);
+        GL45.glNamedBufferSubData(indexBuffer, (long) indexCount * Integer.BYTES, indices);
+        EngineMetrics.UPLOAD_BYTES.add((long) vertices.length * Float.BYTES + (long) indices.length * Integer.BYTES);
+
+        int id = meshCount++;
+        meshFirstIndex[id] = indexCount;
+        meshIndexCount[id] = indices.length;
+        meshBaseVertex[id] = vertexCount;
+        meshBounds[id * 4] = mesh.getCenterX();
+        meshBounds[id * 4 + 1] = mesh.getCenterY();
+        meshBounds[id * 4 + 2] = mesh.getCenterZ();
+        meshBounds[id * 4 + 3] = mesh.getRadius();
+        vertexCount += mesh.getVertexCount();
+        indexCount += indices.length;
+        return id;
+    }
+
+    /** Loads an atlas for mesh materials, owned and cleaned up by the renderer. */
+    public TextureAtlas loadAtlas(String filePath, int stride)
+    {
+        shader.bind();
+        TextureAtlas atlas = new TextureAtlas(filePath, fallbackAtlasLocation, stride);
+        shader.unbind();
+        atlases.add(atlas);
+        return atlas;
+    }
+
+    /**
+     * Adds a material, returns its id.
+     * @param atlas texture atlas to sample, null for an untextured material
+     * @param cell  atlas cell (TextureAtlas.getTextureOffset) stretched over the mesh's uvs
+     */
+    public int addMaterial(TextureAtlas atlas, int cell, float r, float g, float b, float a)
+    {
+        if (materialCount == maxMaterials)
+            throw new IllegalStateException("[Error]: Mesh materials are full (" + maxMaterials + ")");
+        if (atlas != null && !bindless)
+        {
+            if (fallbackAtlas != null && fallbackAtlas != atlas)
+                System.out.println("[ERROR]: Bindless textures are unavailable, every mesh material samples the first atlas");
+            else
+                fallbackAtlas = atlas;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            ByteBuffer material = stack.calloc(MATERIAL_STRUCT_SIZE);
+            if (atlas != null)
+            {
+                atlas.getTextureOffset(cell, cellOffset);
+                material.putLong(0, atlas.getHandle());
+                material.putInt(8, 1);
+                material.putFloat(16, cellOffset.x);
+                material.putFloat(20, cellOffset.y);
+                material.putFloat(24, atlas.getTextureSizeX());
+                material.putFloat(28, atlas.getTextureSizeY());
+            }
+            material.putFloat(32, r);
+            material.putFloat(36, g);
+            material.putFloat(40, b);
+            material.putFloat(44, a);
+            GL45.glNamedBufferSubData(materialBuffer, (long) materialCount * MATERIAL_STRUCT_SIZE, material);
+        }
+        EngineMetrics.UPLOAD_BYTES.add(MATERIAL_STRUCT_SIZE);
+        return materialCount++;
+    }
+
+    /** Adds an instance of a mesh, returns its id; ids of removed instances are reused. */
+    public int addInstance(int mesh, int material, Matrix4f model)
+    {
+        // Before a slot is taken, so a bad call leaks nothing
+        if (mesh < 0 || mesh >= meshCount)
+            throw new IllegalArgumentException("[Error]: No mesh " + mesh + ", " + meshCount + " were added");
+        checkMaterial(material);
+        int id;
+        if (freeInstanceCount > 0)
+            id = freeInstances[--freeInstanceCount];
+        else if (instanceCount < maxInstances)
+            id = instanceCount++;
+        else
+            throw new IllegalStateException("[Error]: Mesh instances are full (" + maxInstances + ")");
+
+        instanceMesh[id] = mesh;
+        long address = instancesAddress + (long) id * INSTANCE_STRUCT_SIZE;
+        MemoryUtil.memPutInt(address + 80, mesh);
+        MemoryUtil.memPutInt(address + 84, material);
+        setTransform(id, model);
+        liveInstances++;
+        drawListDirty = true;
+        return id;
+    }
+
+    public void removeInstance(int id)
+    {
+        checkInstance(id);
+        instanceMesh[id] = NONE;
+        freeInstances[freeInstanceCount++] = id;
+        sceneIndex.remove(id);
+        liveInstances--;
+        drawListDirty = true;
+    }
+
+    /** Sets an instance's model matrix and refreshes its world bounding sphere, detaching it from any transform node. */
+    public void setTransform(int id, Matrix4f model)
+    {
+        checkInstance(id);
+        long address = instancesAddress + (long) id * INSTANCE_STRUCT_SIZE;
+        model.getToAddress(address);
+        MemoryUtil.memPutInt(address + 88, NO_TRANSFORM);
+        setBounds(id, address);
+    }
+
+    /**
+     * Makes the instance draw with a transform node's world matrix, read by the vertex shader, and refreshes
+     * its bounds from the node as of the last hierarchy update. Call again whenever the node has changed.
+     */
+    public void setTransformNode(int id, int transformHandle)
+    {
+        checkInstance(id);
+        TransformHierarchy transforms = TransformHierarchy.transforms;
+        MemoryUtil.memPutInt(instancesAddress + (long) id * INSTANCE_STRUCT_SIZE + 88, transforms.getGpuIndex(transformHandle));
+        setBounds(id, transforms.getWorldAddress(transformHandle));
+    }
+
+    // World sphere from a column-major model matrix: transformed center, radius scaled by the largest axis scale
+    private void setBounds(int id, long model)
+    {
+        int mesh = instanceMesh[id];
+        float x = meshBounds[mesh * 4], y = meshBounds[mesh * 4 + 1], z = meshBounds[mesh * 4 + 2];
+        float cx = MemoryUtil.memGetFloat(model) * x + MemoryUtil.memGetFloat(model + 16) * y + MemoryUtil.memGetFloat(model + 32) * z + MemoryUtil.memGetFloat(model + 48);
+        float cy = MemoryUtil.memGetFloat(model + 4) * x + MemoryUtil.memGetFloat(model + 20) * y + MemoryUtil.memGetFloat(model + 36) * z + MemoryUtil.memGetFloat(model + 52);
+        float cz = MemoryUtil.memGetFloat(model + 8) * x + MemoryUtil.memGetFloat(model + 24) * y + MemoryUtil.memGetFloat(model + 40) * z + MemoryUtil.memGetFloat(model + 56);
+        float radius = meshBounds[mesh * 4 + 3] * Math.max(columnLength(model), Math.max(columnLength(model + 16), columnLength(model + 32)));
+
+        long address = instancesAddress + (long) id * INSTANCE_STRUCT_SIZE;
+        MemoryUtil.memPutFloat(address + 64, cx);
+        MemoryUtil.memPutFloat(address + 68, cy);
+        MemoryUtil.memPutFloat(address + 72, cz);
+        MemoryUtil.memPutFloat(address + 76, radius);
+        sceneIndex.setBounds(id, cx - radius, cy - radius, cz - radius, cx + radius, cy + radius, cz + radius);
+        markDirty(id);
+    }
+
+    private static float columnLength(long column)
+    {
+        float x = MemoryUtil.memGetFloat(column), y = MemoryUtil.memGetFloat(column + 4), z = MemoryUtil.memGetFloat(column + 8);
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public void setMaterial(int id, int material)
+    {
+        checkInstance(id);
+        checkMaterial(material);
+        MemoryUtil.memPutInt(instancesAddress + (long) id * INSTANCE_STRUCT_SIZE + 84, material);
+        markDirty(id);
+    }
+
+    private void checkInstance(int id)
+    {
+        if (id < 0 || id >= instanceCount || instanceMesh[id] == NONE)
+            throw new IllegalArgumentException("[Error]: No live mesh instance " + id);
+    }
+
+    private void checkMaterial(int material)
+    {
+        if (material < 0 || material >= materialCount)
+            throw new IllegalArgumentException("[Error]: No material " + material + ", " + materialCount + " were added");
+    }
+
+    private void markDirty(int id)
+    {
+        int block = id >> DIRTY_BLOCK_SHIFT;
+        dirtyBlocks[block >> 6] |= 1L << block;
+    }
+
+    private void uploadInstances()
+    {
+        int blocks = (instanceCount + (1 << DIRTY_BLOCK_SHIFT) - 1) >> DIRTY_BLOCK_SHIFT;
+        int block = 0;
+        while (block < blocks)
+        {
+            if ((dirtyBlocks[block >> 6] & (1L << block)) == 0)
+            {
+                block++;
+                continue;
+            }
+            // Merge runs of dirty blocks into one upload
+            int first = block;
+            while (block < blocks && (dirtyBlocks[block >> 6] & (1L << block)) != 0)
+                block++;
+            long offset = (long) (first << DIRTY_BLOCK_SHIFT) * INSTANCE_STRUCT_SIZE;
+            long size = (long) (Math.min(block << DIRTY_BLOCK_SHIFT, instanceCount) - (first << DIRTY_BLOCK_SHIFT)) * INSTANCE_STRUCT_SIZE;
+            GL45.nglNamedBufferSubData(instanceBuffer, offset, size, instancesAddress + offset);
+            EngineMetrics.UPLOAD_BYTES.add(size);
+        }
+        Arrays.fill(dirtyBlocks, 0L);
+    }
+
+    // Groups the instances by mesh (counting sort) and writes one command per mesh with instances. For
+    // occlusion culling every mesh gets a command at its id with no instances, hiz_cull_meshes.glsl counts them.
+    private void buildDrawList(int[] ids, int count, boolean occlusion)
+    {
+        Arrays.fill(meshInstanceCounts, 0, meshCount, 0);
+        for (int i = 0; i < count; i++)
+            meshInstanceCounts[instanceMesh[ids[i]]]++;
+
+        drawCount = 0;
+        int start = 0;
+        for (int mesh = 0; mesh < meshCount; mesh++)
+        {
+            meshInstanceStarts[mesh] = start;
+            if (meshInstanceCounts[mesh] == 0 && !occlusion)
+                continue;
+            int command = drawCount++ * COMMAND_SIZE;
+            commands.putInt(command, meshIndexCount[mesh]);
+            commands.putInt(command + 4, occlusion ? 0 : meshInstanceCounts[mesh]);
+            commands.putInt(command + 8, meshFirstIndex[mesh]);
+            commands.putInt(command + 12, meshBaseVertex[mesh]);
+            commands.putInt(command + 16, start);
+            start += meshInstanceCounts[mesh];
+        }
+
+        for (int i = 0; i < count; i++)
+            drawList.putInt(meshInstanceStarts[instanceMesh[ids[i]]]++ * Integer.BYTES, ids[i]);
+        drawnInstances = start;
+
+        GL45.nglNamedBufferSubData(drawListBuffer, 0, (long) start * Integer.BYTES, MemoryUtil.memAddress(drawList));
+        GL45.nglNamedBufferSubData(indirectBuffer, 0, (long) drawCount * COMMAND_SIZE, MemoryUtil.memAddress(commands));
+        EngineMetrics.UPLOAD_BYTES.add((long) start * Integer.BYTES + (long) drawCount * COMMAND_SIZE);
+        drawListDirty = false;
+        occluded = occlusion;
+    }
+
+    // Culls the uploaded draw list into culledListBuffer, filling in the commands' instance counts
+    private void cullOccluded(HiZPyramid hiZ)
+    {
+        cullShader.bind();
+        hiZ.bind(cullHiZLocations);
+        GL30.glUniform1ui(candidateCountLocation, drawnInstances);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, INSTANCE_BINDING, instanceBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 9, drawListBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 10, indirectBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 11, culledListBuffer);
+        GL43.glDispatchCompute((drawnInstances + 63) / 64, 1, 1);
+        GL43.glMemoryBarrier(GL43.GL_COMMAND_BARRIER_BIT | GL43.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+        cullShader.unbind();
+    }
+
+    public void render()
+    {
+        uploadInstances();
+        HiZPyramid hiZ = Renderer.renderer.getHiZPyramid();
+        boolean occlusion = occlusionCulling && hiZ.isBuiltLastFrame();
+        if (culling)
+        {
+            sceneIndex.update();
+            frustum.set(Renderer.renderer.getProjViewMatrix());
+            buildDrawList(visible, sceneIndex.queryParallel(frustum, visible), occlusion);
+        }
+        else if (drawListDirty || occlusion || occlusion != occluded)
+        {
+            int count = 0;
+            for (int i = 0; i < instanceCount; i++)
+            {
+                if (instanceMesh[i] != NONE)
+                    visible[count++] = i;
+            }
+            buildDrawList(visible, count, occlusion);
+        }
+        if (drawCount == 0)
+            return;
+        if (occlusion && drawnInstances > 0)
+            cullOccluded(hiZ);
+        GL45.glVertexArrayVertexBuffer(vaoId, 1, occlusion ? culledListBuffer : drawListBuffer, 0, Integer.BYTES);
+
+        shader.bind();
+        if (!bindless && fallbackAtlas != null)
+            fallbackAtlas.bind(fallbackAtlasLocation);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, INSTANCE_BINDING, instanceBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, MATERIAL_BINDING, materialBuffer);
+        TransformHierarchy.transforms.bind();
+        GL30.glBindVertexArray(vaoId);
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, indirectBuffer);
+        GL43.glMultiDrawElementsIndirect(GL11.GL_TRIANGLES, GL11.GL_UNSIGNED_INT, 0, drawCount, 0);
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+        GL30.glBindVertexArray(0);
+        shader.unbind();
+    }
+
+    /** Frustum culling through the scene index, on by default; off draws every instance. */
+    public void setCulling(boolean culling)
+    {
+        this.culling = culling;
+        drawListDirty = true;
+    }
+
+    public boolean isCulling()
+    {
+        return culling;
+    }
+
+    /** Hi-Z occlusion culling after the frustum test, on by default; needs Renderer's pyramid to be enabled. */
+    public void setOcclusionCulling(boolean occlusionCulling)
+    {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    public boolean isOcclusionCulling()
+    {
+        return occlusionCulling;
+    }
+
+    public Bvh getSceneIndex()
+    {
+        return sceneIndex;
+    }
+
+    public int getMeshCount()
+    {
+        return meshCount;
+    }
+
+    public int getInstanceCount()
+    {
+        return liveInstances;
+    }
+
+    /** Indirect commands issued by the last render, one per mesh with instances. */
+    public int getDrawCount()
+    {
+        return drawCount;
+    }
+
+    /** Instances submitted by the last render, the visible ones when culling; before occlusion culling, which runs on the GPU. */
+    public int getDrawnInstances()
+    {
+        return drawnInstances;
+    }
+
+    public boolean isBindless()
+    {
+        return bindless;
+    }
+
+    public void cleanup()
+    {
+        GL15.glDeleteBuffers(new int[]{vertexBuffer, indexBuffer, instanceBuffer, materialBuffer, drawListBuffer, indirectBuffer, culledListBuffer});
+        GL30.glDeleteVertexArrays(vaoId);
+        shader.cleanup();
+        cullShader.cleanup();
+        for (TextureAtlas atlas : atlases)
+            atlas.cleanup();
+        OffHeap.free(instances);
+        OffHeap.free(drawList);
+        OffHeap.free(commands);
+    }
+}
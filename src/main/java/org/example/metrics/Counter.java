@@ -0,0 +1,41 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Monotonic count, safe to increment from any thread without allocating. */
+public class Counter extends Metric
+{
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name, String labels, String help)
+    {
+        super(name, labels, help);
+    }
+
+    public void increment()
+    {
+        value.incrementAndGet();
+    }
+
+    public void add(long amount)
+    {
+        value.addAndGet(amount);
+    }
+
+    public long get()
+    {
+        return value.get();
+    }
+
+    @Override
+    String type()
+    {
+        return "counter";
+    }
+
+    @Override
+    void write(StringBuilder out)
+    {
+        sample(out, name, labels, value.get());
+    }
+}
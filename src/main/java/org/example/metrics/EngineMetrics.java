@@ -0,0 +1,35 @@
+package org.example.metrics;
+
+/**
+ * The engine's metrics registry and the metrics recorded every frame. Times are in milliseconds like
+ * the rest of the engine. Per-effect metrics (particle counts, particle GPU passes) are registered by
+ * each ParticleRenderer with an effect label.
+ */
+public final class EngineMetrics
+{
+    public static final MetricsRegistry registry = new MetricsRegistry();
+
+    private static final String PHASE_HELP = "CPU time of a phase of EngineManager's frame loop";
+    public static final Histogram FRAME = registry.histogram("engine_frame_ms", "Wall-clock time of a whole frame", Histogram.FRAME_MS);
+    public static final Histogram PHASE_INPUT = registry.histogram("engine_frame_phase_ms", "phase=\"input\"", PHASE_HELP, Histogram.FRAME_MS);
+    public static final Histogram PHASE_UPDATE = registry.histogram("engine_frame_phase_ms", "phase=\"update\"", PHASE_HELP, Histogram.FRAME_MS);
+    public static final Histogram PHASE_RENDER = registry.histogram("engine_frame_phase_ms", "phase=\"render\"", PHASE_HELP, Histogram.FRAME_MS);
+    public static final Histogram PHASE_SWAP = registry.histogram("engine_frame_phase_ms", "phase=\"swap\"", PHASE_HELP, Histogram.FRAME_MS);
+    public static final Histogram GPU_FRAME = registry.histogram("gpu_pass_ms", "pass=\"frame\"", "GPU time of a render pass", Histogram.FRAME_MS);
+    public static final Counter FRAMES = registry.counter("engine_frames_total", "Frames rendered");
+
+    public static final Counter UPLOAD_BYTES = registry.counter("gpu_upload_bytes_total", "Bytes uploaded to GPU buffers with glBufferSubData");
+    public static final Gauge UPLOAD_BYTES_FRAME = registry.gauge("gpu_upload_bytes_frame", "Bytes uploaded to GPU buffers during the last frame");
+
+    public static final Histogram SHADER_COMPILE = registry.histogram("shader_compile_ms", "Time to compile one shader stage or link one program", Histogram.LOAD_MS);
+    public static final Histogram TEXTURE_LOAD = registry.histogram("texture_load_ms", "Time to decode and upload one texture", Histogram.LOAD_MS);
+
+    private EngineMetrics()
+    {
+    }
+
+    public static double millisSince(long startNanos)
+    {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.metrics;
+
+/** Last written value, safe to set from any thread without allocating. */
+public class Gauge extends Metric
+{
+    private volatile double value;
+
+    Gauge(String name, String labels, String help)
+    {
+        super(name, labels, help);
+    }
+
+    public void set(double value)
+    {
+        this.value = value;
+    }
+
+    public double get()
+    {
+        return value;
+    }
+
+    @Override
+    String type()
+    {
+        return "gauge";
+    }
+
+    @Override
+    void write(StringBuilder out)
+    {
+        sample(out, name, labels, value);
+    }
+}
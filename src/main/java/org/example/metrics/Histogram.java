@@ -0,0 +1,75 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution over fixed bucket bounds. observe() is a short scan over the bounds and two atomic adds,
+ * safe from any thread and allocation-free.
+ */
+public class Histogram extends Metric
+{
+    /** Bounds in milliseconds suited to frame phases and GPU passes. */
+    public static final double[] FRAME_MS = {0.1, 0.25, 0.5, 1, 2, 4, 8, 16, 33, 66, 100, 250};
+    /** Bounds in milliseconds suited to loading work (shader compiles, texture loads). */
+    public static final double[] LOAD_MS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500};
+
+    private final double[] bounds;
+    private final AtomicLongArray buckets; // not cumulative, the last one is +Inf
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+
+    Histogram(String name, String labels, String help, double[] bounds)
+    {
+        super(name, labels, help);
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void observe(double value)
+    {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket])
+            bucket++;
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+
+        long current;
+        do
+        {
+            current = sumBits.get();
+        } while (!sumBits.compareAndSet(current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value)));
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public double getSum()
+    {
+        return Double.longBitsToDouble(sumBits.get());
+    }
+
+    @Override
+    String type()
+    {
+        return "histogram";
+    }
+
+    @Override
+    void write(StringBuilder out)
+    {
+        String separator = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++)
+        {
+            cumulative += buckets.get(i);
+            sample(out, name + "_bucket", separator + "le=\"" + format(bounds[i]) + "\"", cumulative);
+        }
+        cumulative += buckets.get(bounds.length);
+        sample(out, name + "_bucket", separator + "le=\"+Inf\"", cumulative);
+        sample(out, name + "_sum", labels, getSum());
+        sample(out, name + "_count", labels, cumulative);
+    }
+}
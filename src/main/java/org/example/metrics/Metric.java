@@ -0,0 +1,43 @@
+package org.example.metrics;
+
+/** Common part of counters, gauges and histograms: identity and Prometheus text output. */
+public abstract class Metric
+{
+    final String name;
+    final String labels; // preformatted, e.g. phase="update", empty for none
+    final String help;
+
+    Metric(String name, String labels, String help)
+    {
+        this.name = name;
+        this.labels = labels;
+        this.help = help;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    abstract String type();
+
+    /** Appends the samples of this metric, without HELP / TYPE lines. */
+    abstract void write(StringBuilder out);
+
+    static void sample(StringBuilder out, String name, String labels, double value)
+    {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    static String format(double value)
+    {
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        if (value == (long) value)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewrites a text file with the registry's Prometheus text every interval, from a background thread.
+ * The file is replaced atomically so readers (or node_exporter's textfile collector) never see half of it.
+ */
+public class MetricsFileDump
+{
+    private final MetricsRegistry registry;
+    private final Path path;
+    private final ScheduledExecutorService executor;
+
+    public MetricsFileDump(MetricsRegistry registry, Path path, long intervalSeconds)
+    {
+        this.registry = registry;
+        this.path = path.toAbsolutePath();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::dump, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void dump()
+    {
+        try
+        {
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temporary, registry.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.out.println("[ERROR]: Unable to write metrics to " + path);
+            e.printStackTrace();
+        }
+    }
+
+    /** Writes one last dump and stops the thread. */
+    public void stop()
+    {
+        executor.shutdownNow();
+        dump();
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Named counters, gauges and histograms. Registering looks the metric up (the same name and labels return
+ * the same instance) and may allocate; keep the returned metric and record through it on hot paths.
+ * toPrometheusText() renders everything in the Prometheus text exposition format.
+ */
+public class MetricsRegistry
+{
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+    private final List<Metric> ordered = new CopyOnWriteArrayList<>();
+
+    public Counter counter(String name, String help)
+    {
+        return counter(name, "", help);
+    }
+
+    public Counter counter(String name, String labels, String help)
+    {
+        return register(new Counter(name, labels, help));
+    }
+
+    public Gauge gauge(String name, String help)
+    {
+        return gauge(name, "", help);
+    }
+
+    public Gauge gauge(String name, String labels, String help)
+    {
+        return register(new Gauge(name, labels, help));
+    }
+
+    public Histogram histogram(String name, String help, double[] bounds)
+    {
+        return histogram(name, "", help, bounds);
+    }
+
+    public Histogram histogram(String name, String labels, String help, double[] bounds)
+    {
+        return register(new Histogram(name, labels, help, bounds));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T register(T metric)
+    {
+        String key = metric.name + "{" + metric.labels + "}";
+        Metric existing = metrics.putIfAbsent(key, metric);
+        if (existing == null)
+        {
+            ordered.add(metric);
+            return metric;
+        }
+        if (existing.getClass() != metric.getClass())
+            throw new IllegalArgumentException("[Error]: Metric " + key + " is already registered as a " + existing.type());
+        return (T) existing;
+    }
+
+    /** Drops a metric, e.g. the per-effect ones of a destroyed particle renderer. */
+    public void remove(Metric metric)
+    {
+        metrics.remove(metric.name + "{" + metric.labels + "}");
+        ordered.remove(metric);
+    }
+
+    /** Sum of every gauge called name across its labels, e.g. live particles over all effects. Does not allocate. */
+    public double sumGauges(String name)
+    {
+        double sum = 0.0;
+        // By index, an iterator would allocate; the list only shrinks on the main thread, which calls this
+        for (int i = 0; i < ordered.size(); i++)
+        {
+            Metric metric = ordered.get(i);
+            if (metric instanceof Gauge && metric.name.equals(name))
+                sum += ((Gauge) metric).get();
+        }
+        return sum;
+    }
+
+    public String toPrometheusText()
+    {
+        // Samples of one name must be contiguous, HELP / TYPE once per name
+        List<String> names = new ArrayList<>();
+        for (Metric metric : ordered)
+        {
+            if (!names.contains(metric.name))
+                names.add(metric.name);
+        }
+
+        StringBuilder out = new StringBuilder(4096);
+        for (String name : names)
+        {
+            boolean header = false;
+            for (Metric metric : ordered)
+            {
+                if (!metric.name.equals(name))
+                    continue;
+                if (!header)
+                {
+                    out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+                    out.append("# TYPE ").append(name).append(' ').append(metric.type()).append('\n');
+                    header = true;
+                }
+                metric.write(out);
+            }
+        }
+        return out.toString();
+    }
+}
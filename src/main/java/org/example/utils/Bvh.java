@@ -0,0 +1,484 @@
+package org.example.utils;
+
+import org.joml.FrustumIntersection;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bounding volume hierarchy over axis-aligned boxes, keyed by small integer ids.
+ *
+ * build() sorts the items into leaves of at most LEAF_SIZE by median splits along the widest axis of
+ * their centers. Nodes are stored depth-first in flat arrays: the left child of an inner node directly
+ * follows it, and every subtree's items are one contiguous range of the leaf order. Moving an item marks
+ * its leaf and the leaf's ancestors dirty and refit() recomputes only those nodes, children before parents.
+ * Items added after the build wait in a pending list that queries test one by one; update() rebuilds once
+ * enough items were added or removed, or refits have grown the root too far, and refits otherwise.
+ *
+ * Queries test the boxes against a frustum. queryParallel() splits the tree across a fork/join pool: each
+ * task writes its subtree's visible ids into the output range of that subtree's items, and the join moves
+ * the right result down behind the left one, so the output is compact without any per-query allocation
+ * beyond the tasks themselves.
+ */
+public class Bvh
+{
+    private static final int LEAF_SIZE = 8;
+    private static final int PARALLEL_THRESHOLD = 8192; // subtrees with fewer items are culled by one task
+    private static final float REBUILD_FRACTION = 0.1f;  // pending + removed items, relative to the tree
+    private static final float REBUILD_GROWTH = 2.0f;    // root surface area, relative to the last build
+    private static final int NOT_INDEXED = -1;
+    private static final int PENDING = -2;
+
+    private final int capacity;
+
+    // Per item
+    private final float[] bounds; // min xyz, max xyz
+    private final int[] itemLeaf; // leaf node, NOT_INDEXED or PENDING
+    private final boolean[] removed;
+    private final int[] pendingIndex;
+    private final int[] pending;
+    private int pendingCount = 0;
+    private int removedCount = 0;
+    private int size = 0;
+
+    // Leaf order, every subtree covers [nodeFirst, nodeFirst + nodeCount)
+    private final int[] order;
+    private int orderCount = 0;
+
+    // Per node
+    private final float[] nodeBounds;
+    private final int[] nodeRight;  // right child, -1 for a leaf
+    private final int[] nodeFirst;
+    private final int[] nodeCount;
+    private final int[] nodeParent;
+    private final boolean[] nodeDirty;
+    private int nodes = 0;
+    private boolean dirty = false;
+    private float builtArea = 0.0f;
+
+    public Bvh(int capacity)
+    {
+        this.capacity = capacity;
+        bounds = new float[capacity * 6];
+        itemLeaf = new int[capacity];
+        removed = new boolean[capacity];
+        pendingIndex = new int[capacity];
+        pending = new int[capacity];
+        order = new int[capacity];
+        Arrays.fill(itemLeaf, NOT_INDEXED);
+
+        // Median splits never leave a leaf with fewer than LEAF_SIZE / 2 items
+        int maxNodes = 4 * capacity / LEAF_SIZE + 2;
+        nodeBounds = new float[maxNodes * 6];
+        nodeRight = new int[maxNodes];
+        nodeFirst = new int[maxNodes];
+        nodeCount = new int[maxNodes];
+        nodeParent = new int[maxNodes];
+        nodeDirty = new boolean[maxNodes];
+    }
+
+    /** Adds or moves an item. Moved items are refit on the next update(), new ones are pending until the next build. */
+    public void setBounds(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int base = id * 6;
+        bounds[base] = minX;
+        bounds[base + 1] = minY;
+        bounds[base + 2] = minZ;
+        bounds[base + 3] = maxX;
+        bounds[base + 4] = maxY;
+        bounds[base + 5] = maxZ;
+
+        int leaf = itemLeaf[id];
+        if (leaf == NOT_INDEXED)
+        {
+            itemLeaf[id] = PENDING;
+            pendingIndex[id] = pendingCount;
+            pending[pendingCount++] = id;
+            size++;
+            return;
+        }
+        if (leaf == PENDING)
+            return;
+        if (removed[id])
+        {
+            removed[id] = false;
+            removedCount--;
+            size++;
+        }
+        markDirty(leaf);
+    }
+
+    private void markDirty(int node)
+    {
+        while (node >= 0 && !nodeDirty[node])
+        {
+            nodeDirty[node] = true;
+            node = nodeParent[node];
+        }
+        dirty = true;
+    }
+
+    public void remove(int id)
+    {
+        int leaf = itemLeaf[id];
+        if (leaf == NOT_INDEXED || (leaf >= 0 && removed[id]))
+            return;
+        size--;
+        if (leaf == PENDING)
+        {
+            // Swap-remove from the pending list
+            int index = pendingIndex[id];
+            int last = pending[--pendingCount];
+            pending[index] = last;
+            pendingIndex[last] = index;
+            itemLeaf[id] = NOT_INDEXED;
+            return;
+        }
+        // Stays in its leaf until the next build, queries skip it
+        removed[id] = true;
+        removedCount++;
+    }
+
+    /** Rebuilds when the tree has drifted too far from the items, refits the moved ones otherwise. */
+    public void update()
+    {
+        float changed = pendingCount + removedCount;
+        if (changed > 0 && (orderCount == 0 || changed > orderCount * REBUILD_FRACTION))
+        {
+            build();
+            return;
+        }
+        refit();
+        if (orderCount > 0 && surfaceArea(0) > builtArea * REBUILD_GROWTH)
+            build();
+    }
+
+    /** Recomputes the bounds of every node above a moved item. */
+    public void refit()
+    {
+        if (!dirty)
+            return;
+        // Children always come after their parent
+        for (int node = nodes - 1; node >= 0; node--)
+        {
+            if (!nodeDirty[node])
+                continue;
+            nodeDirty[node] = false;
+            if (nodeRight[node] < 0)
+                leafBounds(node);
+            else
+                union(node, node + 1, nodeRight[node]);
+        }
+        dirty = false;
+    }
+
+    /** Builds the tree from scratch over every live item. */
+    public void build()
+    {
+        orderCount = 0;
+        for (int id = 0; id < capacity; id++)
+        {
+            if (itemLeaf[id] == NOT_INDEXED)
+                continue;
+            if (removed[id])
+            {
+                removed[id] = false;
+                itemLeaf[id] = NOT_INDEXED;
+                continue;
+            }
+            order[orderCount++] = id;
+        }
+        pendingCount = 0;
+        removedCount = 0;
+        nodes = 0;
+        dirty = false;
+        if (orderCount == 0)
+            return;
+        buildNode(0, orderCount, -1);
+        builtArea = surfaceArea(0);
+    }
+
+    private int buildNode(int first, int count, int parent)
+    {
+        int node = nodes++;
+        nodeFirst[node] = first;
+        nodeCount[node] = count;
+        nodeParent[node] = parent;
+        nodeDirty[node] = false;
+
+        if (count <= LEAF_SIZE)
+        {
+            nodeRight[node] = -1;
+            for (int i = first; i < first + count; i++)
+                itemLeaf[order[i]] = node;
+            leafBounds(node);
+            return node;
+        }
+
+        // Widest axis of the item centers (stored doubled, min + max)
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = first; i < first + count; i++)
+        {
+            int base = order[i] * 6;
+            float x = bounds[base] + bounds[base + 3];
+            float y = bounds[base + 1] + bounds[base + 4];
+            float z = bounds[base + 2] + bounds[base + 5];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        float extentX = maxX - minX, extentY = maxY - minY, extentZ = maxZ - minZ;
+        int axis = extentX >= extentY && extentX >= extentZ ? 0 : (extentY >= extentZ ? 1 : 2);
+
+        int half = count / 2;
+        select(first, first + count - 1, first + half, axis);
+        buildNode(first, half, node);
+        nodeRight[node] = buildNode(first + half, count - half, node);
+        union(node, node + 1, nodeRight[node]);
+        return node;
+    }
+
+    // Quickselect: order[k] ends up where a full sort by center along axis would put it
+    private void select(int left, int right, int k, int axis)
+    {
+        while (right > left)
+        {
+            int middle = (left + right) >>> 1;
+            float pivot = center(order[middle], axis);
+            int i = left, j = right;
+            while (i <= j)
+            {
+                while (center(order[i], axis) < pivot)
+                    i++;
+                while (center(order[j], axis) > pivot)
+                    j--;
+                if (i <= j)
+                {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+
+    private float center(int id, int axis)
+    {
+        return bounds[id * 6 + axis] + bounds[id * 6 + 3 + axis];
+    }
+
+    private void leafBounds(int node)
+    {
+        int base = node * 6;
+        nodeBounds[base] = nodeBounds[base + 1] = nodeBounds[base + 2] = Float.MAX_VALUE;
+        nodeBounds[base + 3] = nodeBounds[base + 4] = nodeBounds[base + 5] = -Float.MAX_VALUE;
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCount[node]; i++)
+        {
+            int item = order[i] * 6;
+            for (int axis = 0; axis < 3; axis++)
+            {
+                nodeBounds[base + axis] = Math.min(nodeBounds[base + axis], bounds[item + axis]);
+                nodeBounds[base + 3 + axis] = Math.max(nodeBounds[base + 3 + axis], bounds[item + 3 + axis]);
+            }
+        }
+    }
+
+    private void union(int node, int left, int right)
+    {
+        int base = node * 6;
+        for (int axis = 0; axis < 3; axis++)
+        {
+            nodeBounds[base + axis] = Math.min(nodeBounds[left * 6 + axis], nodeBounds[right * 6 + axis]);
+            nodeBounds[base + 3 + axis] = Math.max(nodeBounds[left * 6 + 3 + axis], nodeBounds[right * 6 + 3 + axis]);
+        }
+    }
+
+    private float surfaceArea(int node)
+    {
+        int base = node * 6;
+        float x = nodeBounds[base + 3] - nodeBounds[base];
+        float y = nodeBounds[base + 4] - nodeBounds[base + 1];
+        float z = nodeBounds[base + 5] - nodeBounds[base + 2];
+        return 2.0f * (x * y + y * z + z * x);
+    }
+
+    /**
+     * Writes the ids of every item whose box intersects the frustum into out, on the calling thread.
+     * @param out at least getCapacity() entries; subtrees are written at their place in the build order,
+     *            which still counts removed items until the next rebuild
+     * @return number of ids written
+     */
+    public int query(FrustumIntersection frustum, int[] out)
+    {
+        checkOut(out);
+        int written = orderCount == 0 ? 0 : collect(0, frustum, out, 0);
+        return queryPending(frustum, out, written);
+    }
+
+    /** query() split across the pool's workers, the ids come out in the same order; out as for query(). */
+    public int queryParallel(FrustumIntersection frustum, int[] out, ForkJoinPool pool)
+    {
+        checkOut(out);
+        int written = 0;
+        if (orderCount > 0)
+        {
+            CullTask task = new CullTask(0, frustum, out);
+            pool.invoke(task);
+            written = task.written;
+        }
+        return queryPending(frustum, out, written);
+    }
+
+    public int queryParallel(FrustumIntersection frustum, int[] out)
+    {
+        return queryParallel(frustum, out, ForkJoinPool.commonPool());
+    }
+
+    private void checkOut(int[] out)
+    {
+        if (out.length < capacity)
+            throw new IllegalArgumentException("[Error]: Query output holds " + out.length + " ids, the index can hold " + capacity);
+    }
+
+    private int queryPending(FrustumIntersection frustum, int[] out, int written)
+    {
+        for (int i = 0; i < pendingCount; i++)
+        {
+            if (testItem(frustum, pending[i]))
+                out[written++] = pending[i];
+        }
+        return written;
+    }
+
+    // Writes compactly from at, never past the end of the subtree's own range when at == nodeFirst
+    private int collect(int node, FrustumIntersection frustum, int[] out, int at)
+    {
+        int base = node * 6;
+        int result = frustum.intersectAab(nodeBounds[base], nodeBounds[base + 1], nodeBounds[base + 2],
+                nodeBounds[base + 3], nodeBounds[base + 4], nodeBounds[base + 5]);
+        if (result == FrustumIntersection.INSIDE)
+            return copyAll(node, out, at);
+        if (result != FrustumIntersection.INTERSECT)
+            return 0;
+
+        if (nodeRight[node] >= 0)
+        {
+            int written = collect(node + 1, frustum, out, at);
+            return written + collect(nodeRight[node], frustum, out, at + written);
+        }
+
+        int written = 0;
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCount[node]; i++)
+        {
+            int id = order[i];
+            if (!removed[id] && testItem(frustum, id))
+                out[at + written++] = id;
+        }
+        return written;
+    }
+
+    private int copyAll(int node, int[] out, int at)
+    {
+        if (removedCount == 0)
+        {
+            System.arraycopy(order, nodeFirst[node], out, at, nodeCount[node]);
+            return nodeCount[node];
+        }
+        int written = 0;
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCount[node]; i++)
+        {
+            if (!removed[order[i]])
+                out[at + written++] = order[i];
+        }
+        return written;
+    }
+
+    private boolean testItem(FrustumIntersection frustum, int id)
+    {
+        int base = id * 6;
+        return frustum.testAab(bounds[base], bounds[base + 1], bounds[base + 2], bounds[base + 3], bounds[base + 4], bounds[base + 5]);
+    }
+
+    // Culls one subtree into out[nodeFirst, nodeFirst + nodeCount), FrustumIntersection is only read
+    private class CullTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+        private final FrustumIntersection frustum;
+        private final int[] out;
+        int written;
+
+        CullTask(int node, FrustumIntersection frustum, int[] out)
+        {
+            this.node = node;
+            this.frustum = frustum;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int at = nodeFirst[node];
+            if (nodeCount[node] < PARALLEL_THRESHOLD || nodeRight[node] < 0)
+            {
+                written = collect(node, frustum, out, at);
+                return;
+            }
+
+            int base = node * 6;
+            int result = frustum.intersectAab(nodeBounds[base], nodeBounds[base + 1], nodeBounds[base + 2],
+                    nodeBounds[base + 3], nodeBounds[base + 4], nodeBounds[base + 5]);
+            if (result == FrustumIntersection.INSIDE)
+            {
+                written = copyAll(node, out, at);
+                return;
+            }
+            if (result != FrustumIntersection.INTERSECT)
+                return;
+
+            CullTask left = new CullTask(node + 1, frustum, out);
+            CullTask right = new CullTask(nodeRight[node], frustum, out);
+            left.fork();
+            right.compute();
+            left.join();
+
+            // The right subtree's range starts right after the left one's, close the gap
+            if (left.written < nodeCount[node + 1] && right.written > 0)
+                System.arraycopy(out, nodeFirst[nodeRight[node]], out, at + left.written, right.written);
+            written = left.written + right.written;
+        }
+    }
+
+    /** Live items, indexed or pending. */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int getNodeCount()
+    {
+        return nodes;
+    }
+
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+}
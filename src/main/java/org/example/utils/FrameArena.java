@@ -0,0 +1,149 @@
+package org.example.utils;
+
+import org.example.metrics.Counter;
+import org.example.metrics.EngineMetrics;
+import org.example.metrics.Gauge;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Linear allocator for off-heap scratch memory that only has to live until the end of the frame, like
+ * data on its way into glBufferData. Allocating bumps an offset into one block, reset() at the start of
+ * each frame takes everything back at once, so there is nothing to free and nothing to leak.
+ *
+ * Requests that do not fit get a dedicated allocation, released by the next reset(); the block then
+ * grows to the frame's peak so later frames fit again, up to MAX_CAPACITY. Frame thread only. With
+ * OffHeap.TRACKING the arena checks its thread and fills released memory with 0xCD, so a pointer kept
+ * past the frame reads garbage instead of data that happens to still be there.
+ */
+public class FrameArena
+{
+    public static FrameArena arena;
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int MAX_CAPACITY = 64 << 20;
+    public static final int ALIGNMENT = 16;
+
+    public static final Gauge USED = EngineMetrics.registry.gauge("frame_arena_bytes", "Scratch bytes taken from the frame arena during the last frame");
+    public static final Counter OVERFLOW = EngineMetrics.registry.counter("frame_arena_overflow_bytes_total", "Scratch bytes that did not fit the frame arena's block");
+
+    private final Thread owner;
+    private ByteBuffer block;
+    private long base;
+    private int capacity;
+    private int offset = 0;
+    private long peak = 0; // bytes this frame would have needed in one block
+    private final List<ByteBuffer> overflow = new ArrayList<>();
+
+    public FrameArena(int capacity)
+    {
+        owner = Thread.currentThread();
+        allocateBlock(capacity);
+        arena = this;
+    }
+
+    public FrameArena()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Address of bytes of uninitialized memory, aligned to alignment (a power of two). */
+    public long alloc(int bytes, int alignment)
+    {
+        checkThread();
+        long aligned = (base + offset + alignment - 1) & -alignment;
+        long end = aligned - base + bytes;
+        peak += end - offset;
+        if (end <= capacity)
+        {
+            offset = (int) end;
+            return aligned;
+        }
+        // Too big for what is left, served separately until the block grows
+        ByteBuffer buffer = OffHeap.alloc(bytes + alignment);
+        overflow.add(buffer);
+        OVERFLOW.add(bytes);
+        return (MemoryUtil.memAddress(buffer) + alignment - 1) & -alignment;
+    }
+
+    public ByteBuffer malloc(int bytes)
+    {
+        return MemoryUtil.memByteBuffer(alloc(bytes, ALIGNMENT), bytes);
+    }
+
+    public ByteBuffer calloc(int bytes)
+    {
+        long address = alloc(bytes, ALIGNMENT);
+        MemoryUtil.memSet(address, 0, bytes);
+        return MemoryUtil.memByteBuffer(address, bytes);
+    }
+
+    public IntBuffer mallocInt(int count)
+    {
+        return MemoryUtil.memIntBuffer(alloc(count * 4, ALIGNMENT), count);
+    }
+
+    public FloatBuffer mallocFloat(int count)
+    {
+        return MemoryUtil.memFloatBuffer(alloc(count * 4, ALIGNMENT), count);
+    }
+
+    /** Takes back everything handed out since the last reset, at the start of each frame. */
+    public void reset()
+    {
+        checkThread();
+        USED.set(peak);
+        if (OffHeap.TRACKING)
+            MemoryUtil.memSet(base, 0xCD, offset);
+        for (ByteBuffer buffer : overflow)
+            OffHeap.free(buffer);
+        overflow.clear();
+        if (peak > capacity && capacity < MAX_CAPACITY)
+        {
+            OffHeap.free(block);
+            allocateBlock(Math.min(MAX_CAPACITY, Integer.highestOneBit((int) Math.min(peak, MAX_CAPACITY) - 1) << 1));
+        }
+        offset = 0;
+        peak = 0;
+    }
+
+    /** Bytes in use in the block since the last reset. */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public void cleanup()
+    {
+        for (ByteBuffer buffer : overflow)
+            OffHeap.free(buffer);
+        overflow.clear();
+        OffHeap.free(block);
+        block = null;
+        if (arena == this)
+            arena = null;
+    }
+
+    private void allocateBlock(int bytes)
+    {
+        block = OffHeap.alloc(bytes);
+        base = MemoryUtil.memAddress(block);
+        capacity = bytes;
+    }
+
+    private void checkThread()
+    {
+        if (OffHeap.TRACKING && Thread.currentThread() != owner)
+            throw new IllegalStateException("[Error]: FrameArena used from " + Thread.currentThread().getName() + ", it belongs to " + owner.getName());
+    }
+}
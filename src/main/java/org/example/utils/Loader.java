@@ -1,9 +1,9 @@
 package org.example.utils;
 
-import jdk.jfr.internal.Utils;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.stb.STBImage;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
@@ -17,48 +17,92 @@ public class Loader {
     public static String loadShader(String filename) throws Exception
     {
         String result;
-        try(InputStream in = Utils.class.getResourceAsStream(filename);
+        try(InputStream in = Loader.class.getResourceAsStream(filename);
         Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
             result = scanner.useDelimiter("\\A").next();
         }
-        return result;
+        return resolveIncludes(filename, result);
     }
 
-    // Method to load an image from the resources folder
-    public static ByteBuffer loadImage(String fileName, int[] w, int[] h, int[] channels, boolean isTexture) throws Exception {
+    /** Loads a shader and injects a #define for each name right after its #version line. */
+    public static String loadShader(String filename, String... defines) throws Exception
+    {
+        String source = loadShader(filename);
+        if (defines.length == 0)
+            return source;
 
-        if (isTexture)
-            STBImage.stbi_set_flip_vertically_on_load(true);
-        // Load the image file as InputStream from the resources folder
-        try (InputStream inputStream = Utils.class.getResourceAsStream(fileName)) {
+        int versionEnd = source.startsWith("#version") ? source.indexOf('\n') + 1 : 0;
+        StringBuilder result = new StringBuilder(source.length() + defines.length * 32);
+        result.append(source, 0, versionEnd);
+        for (String define : defines)
+            result.append("#define ").append(define).append('\n');
+        result.append(source, versionEnd, source.length());
+        return result.toString();
+    }
+
+    // Replaces every line of the form #include "/shaders/file.glsl" with the contents of that resource
+    private static String resolveIncludes(String filename, String source) throws Exception
+    {
+        if (!source.contains("#include"))
+            return source;
+
+        StringBuilder result = new StringBuilder(source.length());
+        for (String line : source.split("\n", -1)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#include")) {
+                int start = trimmed.indexOf('"');
+                int end = trimmed.lastIndexOf('"');
+                if (start < 0 || end <= start)
+                    throw new Exception("[Error]: Malformed include in " + filename + ": " + trimmed);
+                result.append(loadShader(trimmed.substring(start + 1, end)));
+            } else {
+                result.append(line);
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Reads a resource into a direct buffer, flipped and ready to hand to native decoders. */
+    public static ByteBuffer loadResource(String fileName) throws IOException {
+        try (InputStream inputStream = Loader.class.getResourceAsStream(fileName)) {
             if (inputStream == null) {
-                throw new IllegalArgumentException("Image file not found: " + fileName);
+                throw new IllegalArgumentException("Resource not found: " + fileName);
             }
 
             // Read the InputStream into a ByteBuffer
-            ByteBuffer imageBuffer;
+            ByteBuffer buffer;
             try (ReadableByteChannel rbc = Channels.newChannel(inputStream)) {
-                imageBuffer = BufferUtils.createByteBuffer(8 * 1024);
+                buffer = BufferUtils.createByteBuffer(8 * 1024);
                 while (true) {
-                    int bytes = rbc.read(imageBuffer);
+                    int bytes = rbc.read(buffer);
                     if (bytes == -1) break;
-                    if (imageBuffer.remaining() == 0) {
-                        ByteBuffer newBuffer = BufferUtils.createByteBuffer(imageBuffer.capacity() * 2);
-                        imageBuffer.flip();
-                        newBuffer.put(imageBuffer);
-                        imageBuffer = newBuffer;
+                    if (buffer.remaining() == 0) {
+                        ByteBuffer newBuffer = BufferUtils.createByteBuffer(buffer.capacity() * 2);
+                        buffer.flip();
+                        newBuffer.put(buffer);
+                        buffer = newBuffer;
                     }
                 }
-                imageBuffer.flip();
+                buffer.flip();
             }
+            return buffer;
+        }
+    }
 
-            // Load the image from the ByteBuffer using STBImage
-            ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 4); // 4 for RGBA
-            if (image == null) {
-                throw new RuntimeException("Failed to load image: " + STBImage.stbi_failure_reason());
-            }
+    // Method to load an image from the resources folder
+    public static ByteBuffer loadImage(String fileName, int[] w, int[] h, int[] channels, boolean isTexture) throws Exception {
 
-            return image;  // This is the raw RGBA image data in a ByteBuffer
+        if (isTexture)
+            STBImage.stbi_set_flip_vertically_on_load(true);
+        ByteBuffer imageBuffer = loadResource(fileName);
+
+        // Load the image from the ByteBuffer using STBImage
+        ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 4); // 4 for RGBA
+        if (image == null) {
+            throw new RuntimeException("Failed to load image: " + STBImage.stbi_failure_reason());
         }
+
+        return image;  // This is the raw RGBA image data in a ByteBuffer
     }
 }
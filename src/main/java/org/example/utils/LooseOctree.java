@@ -0,0 +1,284 @@
+package org.example.utils;
+
+import org.joml.FrustumIntersection;
+
+import java.util.Arrays;
+
+/**
+ * Loose octree over bounding spheres, keyed by small integer ids.
+ *
+ * Nodes are allocated in blocks of eight inside flat int arrays and never freed; items are kept in
+ * intrusive doubly linked lists per node so insert, move and remove are O(depth) with no allocation
+ * after warm-up. Each node's loose bounds are twice its cell size, so a sphere is stored at the deepest
+ * level whose half size still covers its radius, in the cell that contains its center.
+ */
+public class LooseOctree
+{
+    private static final int NONE = -1;
+
+    private final float centerX, centerY, centerZ;
+    private final float halfSize;
+    private final int maxDepth;
+
+    // Per node
+    private int[] firstChild;
+    private int[] parent;
+    private int[] itemHead;
+    private int[] subtreeCount;
+    private float[] nodeCenter; // xyz per node
+    private float[] nodeHalf;
+    private int nodeCount;
+
+    // Per item
+    private final float[] itemX, itemY, itemZ, itemRadius;
+    private final int[] itemNode, itemNext, itemPrev;
+
+    // Traversal stacks for queries
+    private int[] stack = new int[512];
+    private int[] collectStack = new int[512];
+
+    public LooseOctree(float centerX, float centerY, float centerZ, float halfSize, int maxDepth, int maxItems)
+    {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.halfSize = halfSize;
+        this.maxDepth = maxDepth;
+
+        int initialNodes = 1024;
+        firstChild = new int[initialNodes];
+        parent = new int[initialNodes];
+        itemHead = new int[initialNodes];
+        subtreeCount = new int[initialNodes];
+        nodeCenter = new float[initialNodes * 3];
+        nodeHalf = new float[initialNodes];
+
+        itemX = new float[maxItems];
+        itemY = new float[maxItems];
+        itemZ = new float[maxItems];
+        itemRadius = new float[maxItems];
+        itemNode = new int[maxItems];
+        itemNext = new int[maxItems];
+        itemPrev = new int[maxItems];
+        Arrays.fill(itemNode, NONE);
+
+        // Root
+        nodeCount = 1;
+        firstChild[0] = NONE;
+        parent[0] = NONE;
+        itemHead[0] = NONE;
+        nodeCenter[0] = centerX;
+        nodeCenter[1] = centerY;
+        nodeCenter[2] = centerZ;
+        nodeHalf[0] = halfSize;
+    }
+
+    public void insert(int id, float x, float y, float z, float radius)
+    {
+        if (itemNode[id] != NONE)
+            remove(id);
+
+        itemX[id] = x;
+        itemY[id] = y;
+        itemZ[id] = z;
+        itemRadius[id] = radius;
+        link(id, findNode(x, y, z, radius));
+    }
+
+    /** Moves an item, only relinking it when it lands in a different cell. */
+    public void update(int id, float x, float y, float z, float radius)
+    {
+        if (itemNode[id] == NONE)
+        {
+            insert(id, x, y, z, radius);
+            return;
+        }
+
+        itemX[id] = x;
+        itemY[id] = y;
+        itemZ[id] = z;
+        itemRadius[id] = radius;
+
+        int node = findNode(x, y, z, radius);
+        if (node != itemNode[id])
+        {
+            unlink(id);
+            link(id, node);
+        }
+    }
+
+    public void remove(int id)
+    {
+        if (itemNode[id] != NONE)
+            unlink(id);
+    }
+
+    /**
+     * Writes the ids of every item whose sphere intersects the frustum into out.
+     * Subtrees fully inside the frustum are accepted without per-item tests.
+     *
+     * @return number of ids written, at most out.length
+     */
+    public int query(FrustumIntersection frustum, int[] out)
+    {
+        int written = 0;
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0)
+        {
+            int node = stack[--top];
+            if (subtreeCount[node] == 0)
+                continue;
+
+            // Loose bounds are twice the cell size
+            float loose = nodeHalf[node] * 2.0f;
+            float cx = nodeCenter[node * 3], cy = nodeCenter[node * 3 + 1], cz = nodeCenter[node * 3 + 2];
+            int result = node == 0
+                    ? FrustumIntersection.INTERSECT // items that left the world bounds still live in the root
+                    : frustum.intersectAab(cx - loose, cy - loose, cz - loose, cx + loose, cy + loose, cz + loose);
+
+            if (result == FrustumIntersection.INSIDE)
+            {
+                written = collectSubtree(node, out, written);
+                continue;
+            }
+            if (result != FrustumIntersection.INTERSECT)
+                continue;
+
+            for (int id = itemHead[node]; id != NONE && written < out.length; id = itemNext[id])
+            {
+                if (frustum.testSphere(itemX[id], itemY[id], itemZ[id], itemRadius[id]))
+                    out[written++] = id;
+            }
+
+            int child = firstChild[node];
+            if (child != NONE)
+            {
+                if (top + 8 > stack.length)
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                for (int i = 0; i < 8; i++)
+                    stack[top++] = child + i;
+            }
+        }
+        return written;
+    }
+
+    private int collectSubtree(int root, int[] out, int written)
+    {
+        int top = 0;
+        collectStack[top++] = root;
+        while (top > 0 && written < out.length)
+        {
+            int node = collectStack[--top];
+            if (subtreeCount[node] == 0)
+                continue;
+            for (int id = itemHead[node]; id != NONE && written < out.length; id = itemNext[id])
+                out[written++] = id;
+
+            int child = firstChild[node];
+            if (child != NONE)
+            {
+                if (top + 8 > collectStack.length)
+                    collectStack = Arrays.copyOf(collectStack, collectStack.length * 2);
+                for (int i = 0; i < 8; i++)
+                    collectStack[top++] = child + i;
+            }
+        }
+        return written;
+    }
+
+    private int findNode(float x, float y, float z, float radius)
+    {
+        // Outside the world bounds everything falls back to the root
+        if (Math.abs(x - centerX) > halfSize || Math.abs(y - centerY) > halfSize || Math.abs(z - centerZ) > halfSize)
+            return 0;
+
+        int node = 0;
+        for (int depth = 0; depth < maxDepth; depth++)
+        {
+            float childHalf = nodeHalf[node] * 0.5f;
+            if (radius > childHalf)
+                break;
+
+            if (firstChild[node] == NONE)
+                split(node);
+
+            int octant = (x >= nodeCenter[node * 3] ? 1 : 0)
+                    | (y >= nodeCenter[node * 3 + 1] ? 2 : 0)
+                    | (z >= nodeCenter[node * 3 + 2] ? 4 : 0);
+            node = firstChild[node] + octant;
+        }
+        return node;
+    }
+
+    private void split(int node)
+    {
+        ensureNodeCapacity(nodeCount + 8);
+        int child = nodeCount;
+        nodeCount += 8;
+        firstChild[node] = child;
+
+        float half = nodeHalf[node] * 0.5f;
+        for (int i = 0; i < 8; i++)
+        {
+            int c = child + i;
+            firstChild[c] = NONE;
+            parent[c] = node;
+            itemHead[c] = NONE;
+            subtreeCount[c] = 0;
+            nodeHalf[c] = half;
+            nodeCenter[c * 3] = nodeCenter[node * 3] + ((i & 1) != 0 ? half : -half);
+            nodeCenter[c * 3 + 1] = nodeCenter[node * 3 + 1] + ((i & 2) != 0 ? half : -half);
+            nodeCenter[c * 3 + 2] = nodeCenter[node * 3 + 2] + ((i & 4) != 0 ? half : -half);
+        }
+    }
+
+    private void ensureNodeCapacity(int required)
+    {
+        if (required <= firstChild.length)
+            return;
+        int size = Math.max(required, firstChild.length * 2);
+        firstChild = Arrays.copyOf(firstChild, size);
+        parent = Arrays.copyOf(parent, size);
+        itemHead = Arrays.copyOf(itemHead, size);
+        subtreeCount = Arrays.copyOf(subtreeCount, size);
+        nodeCenter = Arrays.copyOf(nodeCenter, size * 3);
+        nodeHalf = Arrays.copyOf(nodeHalf, size);
+    }
+
+    private void link(int id, int node)
+    {
+        itemNode[id] = node;
+        itemPrev[id] = NONE;
+        itemNext[id] = itemHead[node];
+        if (itemHead[node] != NONE)
+            itemPrev[itemHead[node]] = id;
+        itemHead[node] = id;
+        adjustCounts(node, 1);
+    }
+
+    private void unlink(int id)
+    {
+        int node = itemNode[id];
+        if (itemPrev[id] != NONE)
+            itemNext[itemPrev[id]] = itemNext[id];
+        else
+            itemHead[node] = itemNext[id];
+        if (itemNext[id] != NONE)
+            itemPrev[itemNext[id]] = itemPrev[id];
+        itemNode[id] = NONE;
+        adjustCounts(node, -1);
+    }
+
+    private void adjustCounts(int node, int delta)
+    {
+        for (; node != NONE; node = parent[node])
+            subtreeCount[node] += delta;
+    }
+
+    public int size()
+    {
+        return subtreeCount[0];
+    }
+}
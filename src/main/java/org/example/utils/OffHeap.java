@@ -0,0 +1,190 @@
+package org.example.utils;
+
+import org.example.metrics.Counter;
+import org.example.metrics.EngineMetrics;
+import org.example.metrics.Gauge;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The engine's long-lived off-heap allocations, MemoryUtil's allocator with accounting on top. Every
+ * allocation and free is counted, so live off-heap bytes show up as a metric and slow native growth
+ * over long runs can be told apart from the Java heap.
+ *
+ * With -Dengine.debugMemory=true (e.g. gradle profile -PdebugMemory) each allocation also records
+ * where it was made; report() lists the ones never freed at shutdown, and freeing memory that was not
+ * allocated here is reported as it happens. Safe to use from any thread. Short-lived per-frame scratch
+ * belongs in the FrameArena instead.
+ */
+public final class OffHeap
+{
+    public static final boolean TRACKING = Boolean.getBoolean("engine.debugMemory");
+    private static final int SITE_DEPTH = 4;
+
+    public static final Counter ALLOCATED = EngineMetrics.registry.counter("offheap_allocated_bytes_total", "Off-heap bytes allocated through OffHeap");
+    public static final Counter FREED = EngineMetrics.registry.counter("offheap_freed_bytes_total", "Off-heap bytes freed through OffHeap");
+    public static final Gauge LIVE = EngineMetrics.registry.gauge("offheap_live_bytes", "Off-heap bytes allocated through OffHeap and not freed, as of the last frame");
+    private static final Counter ALLOCATIONS = EngineMetrics.registry.counter("offheap_allocations_total", "Off-heap allocations made through OffHeap");
+    private static final Counter FREES = EngineMetrics.registry.counter("offheap_frees_total", "Off-heap allocations freed through OffHeap");
+
+    private static final Map<Long, Allocation> live = TRACKING ? new ConcurrentHashMap<>() : null;
+    private static final StackWalker walker = StackWalker.getInstance();
+
+    private static final class Allocation
+    {
+        final long bytes;
+        final StackTraceElement[] site;
+
+        Allocation(long bytes, StackTraceElement[] site)
+        {
+            this.bytes = bytes;
+            this.site = site;
+        }
+    }
+
+    private OffHeap()
+    {
+    }
+
+    public static ByteBuffer alloc(int bytes)
+    {
+        return track(MemoryUtil.memAlloc(bytes), bytes);
+    }
+
+    public static ByteBuffer calloc(int bytes)
+    {
+        return track(MemoryUtil.memCalloc(bytes), bytes);
+    }
+
+    public static IntBuffer allocInt(int count)
+    {
+        return track(MemoryUtil.memAllocInt(count), count * 4L);
+    }
+
+    public static IntBuffer callocInt(int count)
+    {
+        return track(MemoryUtil.memCallocInt(count), count * 4L);
+    }
+
+    public static FloatBuffer allocFloat(int count)
+    {
+        return track(MemoryUtil.memAllocFloat(count), count * 4L);
+    }
+
+    public static ShortBuffer allocShort(int count)
+    {
+        return track(MemoryUtil.memAllocShort(count), count * 2L);
+    }
+
+    /** Frees a buffer from one of the alloc methods, null is ignored. */
+    public static void free(Buffer buffer)
+    {
+        if (buffer == null)
+            return;
+        long bytes = (long) buffer.capacity() << shift(buffer);
+        if (TRACKING && live.remove(MemoryUtil.memAddress0(buffer)) == null)
+        {
+            System.out.println("[ERROR]: Freeing " + bytes + " off-heap bytes that OffHeap did not allocate or already freed, at");
+            printSite(site());
+        }
+        FREED.add(bytes);
+        FREES.increment();
+        MemoryUtil.memFree(buffer);
+    }
+
+    /** Bytes allocated and not freed yet. */
+    public static long getLiveBytes()
+    {
+        return ALLOCATED.get() - FREED.get();
+    }
+
+    /** Publishes the live bytes gauge, once per frame. */
+    public static void recordMetrics()
+    {
+        LIVE.set(getLiveBytes());
+    }
+
+    /**
+     * Prints what is still allocated, meant for shutdown after every owner cleaned up. With tracking the
+     * leaks are grouped by call site, largest first.
+     * @return the number of allocations still live
+     */
+    public static long report()
+    {
+        long count = ALLOCATIONS.get() - FREES.get();
+        if (count == 0)
+        {
+            System.out.println("[INFO]: No off-heap memory leaked");
+            return 0;
+        }
+        System.out.println("[ERROR]: " + count + " off-heap allocations (" + getLiveBytes() + " bytes) were never freed");
+        if (!TRACKING)
+        {
+            System.out.println("[INFO]: Run with -Dengine.debugMemory=true to see where they were allocated");
+            return count;
+        }
+
+        Map<List<StackTraceElement>, long[]> sites = new HashMap<>();
+        for (Allocation allocation : live.values())
+        {
+            long[] total = sites.computeIfAbsent(Arrays.asList(allocation.site), site -> new long[2]);
+            total[0]++;
+            total[1] += allocation.bytes;
+        }
+        List<Map.Entry<List<StackTraceElement>, long[]>> sorted = new ArrayList<>(sites.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (Map.Entry<List<StackTraceElement>, long[]> entry : sorted)
+        {
+            System.out.println("[ERROR]:   " + entry.getValue()[1] + " bytes in " + entry.getValue()[0] + " allocations from");
+            printSite(entry.getKey().toArray(new StackTraceElement[0]));
+        }
+        return count;
+    }
+
+    private static <T extends Buffer> T track(T buffer, long bytes)
+    {
+        ALLOCATED.add(bytes);
+        ALLOCATIONS.increment();
+        if (TRACKING)
+            live.put(MemoryUtil.memAddress0(buffer), new Allocation(bytes, site()));
+        return buffer;
+    }
+
+    // The first frames outside the allocators
+    private static StackTraceElement[] site()
+    {
+        return walker.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().equals(OffHeap.class.getName()) && !frame.getClassName().equals(FrameArena.class.getName()))
+                .limit(SITE_DEPTH)
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .toArray(StackTraceElement[]::new));
+    }
+
+    private static void printSite(StackTraceElement[] site)
+    {
+        for (StackTraceElement element : site)
+            System.out.println("[ERROR]:     at " + element);
+    }
+
+    private static int shift(Buffer buffer)
+    {
+        if (buffer instanceof ByteBuffer)
+            return 0;
+        if (buffer instanceof ShortBuffer)
+            return 1;
+        if (buffer instanceof IntBuffer || buffer instanceof FloatBuffer)
+            return 2;
+        return 3;
+    }
+}
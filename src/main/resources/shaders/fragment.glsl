@@ -5,8 +5,10 @@ in vec2 texCoord;
 uniform sampler2D atlasHandle;
 uniform vec2 textureOffset;
 uniform vec2 textureSize;
+uniform int weightedOit;  // 1 when drawing into the weighted blended OIT targets
 
-out vec4 fragColor;
+layout(location = 0) out vec4 fragColor;  // color, or weighted premultiplied accumulation
+layout(location = 1) out float revealage; // OIT only, product of (1 - alpha)
 
 void main()
 {
@@ -14,5 +16,14 @@ void main()
     vec2 flippedTexCoord = vec2(texCoord.x, 1.0 - texCoord.y);
 
     vec2 adjustedTexCoord = textureOffset + (flippedTexCoord * textureSize);
-    fragColor = texture(atlasHandle, adjustedTexCoord);
+    vec4 color = texture(atlasHandle, adjustedTexCoord);
+    if (weightedOit == 0) {
+        fragColor = color;
+        return;
+    }
+
+    // Weighted blended OIT (McGuire and Bavoil 2013, equation 10): nearer and more opaque fragments weigh more
+    float weight = clamp(pow(min(1.0, color.a * 10.0) + 0.01, 3.0) * 1e8 * pow(1.0 - gl_FragCoord.z * 0.9, 3.0), 1e-2, 3e3);
+    fragColor = vec4(color.rgb * color.a, color.a) * weight;
+    revealage = color.a;
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+// Per-frame constants, written once per frame by Renderer (see FrameConstants.java)
+struct FrameConstants {
+    mat4 view;
+    mat4 proj;
+    mat4 viewProj;
+    vec4 cameraPosition; // xyz for position, w unused
+    vec4 cameraRight;    // xyz for camera right axis, w unused
+    vec4 cameraUp;       // xyz for camera up axis, w unused
+    vec4 cameraForward;  // xyz for camera forward axis, w unused
+    vec4 viewport;       // width, height, 1 / width, 1 / height
+    float time;          // accumulated frame time in ms
+    float dt;            // Delta time in ms
+    uint frameIndex;
+    float pad;
+};
+
+layout(std140, binding = 1) uniform FrameConstantsBuffer {
+    FrameConstants frame;
+};
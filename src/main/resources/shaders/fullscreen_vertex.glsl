@@ -0,0 +1,7 @@
+#version 450 core
+
+// One triangle covering the screen, no vertex buffer: draw 3 vertices with any VAO bound
+void main() {
+    vec2 position = vec2(float((gl_VertexID & 1) << 2) - 1.0, float((gl_VertexID & 2) << 1) - 1.0);
+    gl_Position = vec4(position, 0.0, 1.0);
+}
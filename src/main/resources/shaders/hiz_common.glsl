@@ -0,0 +1,36 @@
+// Hi-Z occlusion test against the pyramid built by HiZPyramid.java, set up with HiZPyramid.bind()
+
+uniform sampler2D hiZ;
+uniform mat4 hiZViewProj; // the matrix the pyramid's depth was rendered with
+uniform int hiZLevels;
+
+// False only when the sphere is outside the frustum or entirely behind the depth in the pyramid
+bool hiZVisible(vec3 center, float radius) {
+    vec2 minUv = vec2(1.0);
+    vec2 maxUv = vec2(0.0);
+    float nearest = 1.0;
+    for (int i = 0; i < 8; i++) {
+        vec3 corner = center + radius * vec3((i & 1) != 0 ? 1.0 : -1.0, (i & 2) != 0 ? 1.0 : -1.0, (i & 4) != 0 ? 1.0 : -1.0);
+        vec4 clip = hiZViewProj * vec4(corner, 1.0);
+        if (clip.w <= 0.0)
+            return true; // reaches behind the camera, keep it
+        vec3 ndc = clip.xyz / clip.w;
+        minUv = min(minUv, ndc.xy * 0.5 + 0.5);
+        maxUv = max(maxUv, ndc.xy * 0.5 + 0.5);
+        nearest = min(nearest, ndc.z * 0.5 + 0.5);
+    }
+    if (any(greaterThan(minUv, vec2(1.0))) || any(lessThan(maxUv, vec2(0.0))) || nearest > 1.0)
+        return false;
+    minUv = clamp(minUv, 0.0, 1.0);
+    maxUv = clamp(maxUv, 0.0, 1.0);
+
+    // The level where the rectangle is at most one texel wide, so it touches at most 2x2 texels
+    vec2 extent = (maxUv - minUv) * vec2(textureSize(hiZ, 0));
+    int level = clamp(int(ceil(log2(max(max(extent.x, extent.y), 1.0)))), 0, hiZLevels - 1);
+    ivec2 levelSize = textureSize(hiZ, level);
+    ivec2 lo = min(ivec2(minUv * vec2(levelSize)), levelSize - 1);
+    ivec2 hi = min(ivec2(maxUv * vec2(levelSize)), levelSize - 1);
+    float farthest = max(max(texelFetch(hiZ, lo, level).r, texelFetch(hiZ, ivec2(hi.x, lo.y), level).r),
+                         max(texelFetch(hiZ, ivec2(lo.x, hi.y), level).r, texelFetch(hiZ, hi, level).r));
+    return nearest <= farthest;
+}
@@ -0,0 +1,37 @@
+#version 450 core
+
+// Occlusion culling of the mesh instances that passed the CPU frustum test. Survivors are appended to
+// their mesh's range of the culled draw list; the mesh's indirect command counts them.
+layout(local_size_x = 64) in;
+
+#include "/shaders/mesh_common.glsl"
+
+layout(std430, binding = 9) readonly buffer CandidateBuffer {
+    uint candidates[];
+};
+
+// One DrawElementsIndirectCommand (5 uints) per mesh: count, instanceCount, firstIndex, baseVertex, baseInstance
+layout(std430, binding = 10) buffer MeshCommandBuffer {
+    uint meshCommands[];
+};
+
+layout(std430, binding = 11) writeonly buffer CulledBuffer {
+    uint culled[];
+};
+
+#include "/shaders/hiz_common.glsl"
+
+uniform uint candidateCount;
+
+void main() {
+    uint index = gl_GlobalInvocationID.x;
+    if (index >= candidateCount)
+        return;
+
+    uint id = candidates[index];
+    MeshInstance meshInstance = meshInstances[id];
+    if (!hiZVisible(meshInstance.bounds.xyz, meshInstance.bounds.w))
+        return;
+    uint command = meshInstance.meshMaterial.x * 5u;
+    culled[meshCommands[command + 4u] + atomicAdd(meshCommands[command + 1u], 1u)] = id;
+}
@@ -0,0 +1,59 @@
+#version 450 core
+
+// Occlusion culling of particle chunks (the particles drawn by one instance). Each thread bounds the
+// live particles of one chunk and appends the chunk to the visible list when it passes the Hi-Z test;
+// the draw command's instanceCount is the append counter. Chunks without live particles are dropped.
+layout(local_size_x = 64) in;
+
+struct Particle {
+    vec4 pos;
+    vec4 vel;
+    vec4 lifeScaleTexture; // life, scale, texture, padding
+};
+
+layout(std430, binding = 2) readonly buffer ParticleBuffer {
+    Particle particles[];
+};
+
+layout(std430, binding = 9) writeonly buffer VisibleChunkBuffer {
+    uint visibleChunks[];
+};
+
+// DrawElementsIndirectCommand or DrawArraysIndirectCommand, instanceCount is the second uint in both
+layout(std430, binding = 10) buffer DrawCommandBuffer {
+    uint drawCommand[];
+};
+
+#include "/shaders/hiz_common.glsl"
+
+uniform uint chunkCount;
+uniform uint chunkSize;
+uniform float quadRadius; // quadHalfSize * sqrt(2), the corner distance of a scale 1 particle
+
+void main() {
+    uint chunk = gl_GlobalInvocationID.x;
+    if (chunk >= chunkCount)
+        return;
+
+    vec3 lo = vec3(3.0e38);
+    vec3 hi = vec3(-3.0e38);
+    float maxScale = 0.0;
+    bool alive = false;
+    for (uint i = 0u; i < chunkSize; i++) {
+        Particle particle = particles[chunk * chunkSize + i];
+        if (particle.lifeScaleTexture.x <= 0.0)
+            continue;
+        alive = true;
+        lo = min(lo, particle.pos.xyz);
+        hi = max(hi, particle.pos.xyz);
+        maxScale = max(maxScale, particle.lifeScaleTexture.y);
+    }
+    if (!alive)
+        return;
+
+    vec3 center = (lo + hi) * 0.5;
+    float radius = length(hi - lo) * 0.5 + maxScale * quadRadius;
+    if (!hiZVisible(center, radius))
+        return;
+    visibleChunks[atomicAdd(drawCommand[1], 1u)] = chunk;
+}
@@ -0,0 +1,42 @@
+#version 450 core
+
+// One level of the Hi-Z depth pyramid (HiZPyramid.java): level 0 copies the scene depth, every other
+// level keeps the farthest depth of the texels it covers in the level above.
+layout(local_size_x = 8, local_size_y = 8) in;
+
+uniform sampler2D sceneDepth;
+layout(r32f, binding = 0) uniform readonly image2D source;
+layout(r32f, binding = 1) uniform writeonly image2D destination;
+uniform int level;
+
+float load(ivec2 texel, ivec2 sourceSize) {
+    return imageLoad(source, min(texel, sourceSize - 1)).r;
+}
+
+void main() {
+    ivec2 texel = ivec2(gl_GlobalInvocationID.xy);
+    ivec2 size = imageSize(destination);
+    if (any(greaterThanEqual(texel, size)))
+        return;
+
+    float depth;
+    if (level == 0) {
+        depth = texelFetch(sceneDepth, texel, 0).r;
+    } else {
+        ivec2 sourceSize = imageSize(source);
+        ivec2 base = texel * 2;
+        depth = max(max(load(base, sourceSize), load(base + ivec2(1, 0), sourceSize)),
+                    max(load(base + ivec2(0, 1), sourceSize), load(base + ivec2(1, 1), sourceSize)));
+
+        // Odd source sizes: the last row / column of this level also covers the leftover source texels
+        bool extraX = (sourceSize.x & 1) == 1 && texel.x == size.x - 1;
+        bool extraY = (sourceSize.y & 1) == 1 && texel.y == size.y - 1;
+        if (extraX)
+            depth = max(depth, max(load(base + ivec2(2, 0), sourceSize), load(base + ivec2(2, 1), sourceSize)));
+        if (extraY)
+            depth = max(depth, max(load(base + ivec2(0, 2), sourceSize), load(base + ivec2(1, 2), sourceSize)));
+        if (extraX && extraY)
+            depth = max(depth, load(base + ivec2(2, 2), sourceSize));
+    }
+    imageStore(destination, texel, vec4(depth));
+}
@@ -0,0 +1,25 @@
+// Mesh instances and materials, written by MeshRenderer.java
+
+struct MeshInstance {
+    mat4 model;
+    vec4 bounds;       // world bounding sphere: center xyz, radius w
+    uvec4 meshMaterial; // x mesh, y material, z transform node (NO_TRANSFORM: use model)
+};
+
+const uint NO_TRANSFORM = 0xFFFFFFFFu;
+
+struct MeshMaterial {
+    uvec2 handle;  // bindless texture handle, unused without ARB_bindless_texture
+    uint textured;
+    uint pad;
+    vec4 uvRect;   // atlas cell offset and size
+    vec4 color;
+};
+
+layout(std430, binding = 7) readonly buffer MeshInstanceBuffer {
+    MeshInstance meshInstances[];
+};
+
+layout(std430, binding = 8) readonly buffer MeshMaterialBuffer {
+    MeshMaterial meshMaterials[];
+};
@@ -0,0 +1,35 @@
+#version 450 core
+
+#ifdef BINDLESS
+#extension GL_ARB_bindless_texture : require
+#endif
+
+#include "/shaders/mesh_common.glsl"
+
+in vec3 worldNormal;
+in vec2 texCoord;
+flat in uint material;
+
+#ifndef BINDLESS
+uniform sampler2D fallbackAtlas; // every textured material samples unit 0
+#endif
+
+const vec3 LIGHT_DIRECTION = vec3(0.36, 0.8, 0.48);
+
+out vec4 fragColor;
+
+void main() {
+    MeshMaterial meshMaterial = meshMaterials[material];
+    vec4 color = meshMaterial.color;
+    if (meshMaterial.textured != 0u) {
+        vec2 atlasCoord = meshMaterial.uvRect.xy + fract(texCoord) * meshMaterial.uvRect.zw;
+#ifdef BINDLESS
+        color *= texture(sampler2D(meshMaterial.handle), atlasCoord);
+#else
+        color *= texture(fallbackAtlas, atlasCoord);
+#endif
+    }
+
+    float diffuse = max(dot(normalize(worldNormal), LIGHT_DIRECTION), 0.0);
+    fragColor = vec4(color.rgb * (0.3 + 0.7 * diffuse), color.a);
+}
@@ -0,0 +1,31 @@
+#version 450 core
+
+#include "/shaders/frame_constants.glsl"
+#include "/shaders/mesh_common.glsl"
+
+layout(location = 0) in vec3 position;
+layout(location = 1) in vec3 normal;
+layout(location = 2) in vec2 uv;
+layout(location = 3) in uint instance; // from the draw list, advanced per instance from baseInstance
+
+// World matrices of the transform hierarchy, written by TransformHierarchy.java
+layout(std430, binding = 12) readonly buffer TransformBuffer {
+    mat4 worldMatrices[];
+};
+
+out vec3 worldNormal;
+out vec2 texCoord;
+flat out uint material;
+
+void main() {
+    MeshInstance meshInstance = meshInstances[instance];
+    uint transform = meshInstance.meshMaterial.z;
+    mat4 model = transform == NO_TRANSFORM ? meshInstance.model : worldMatrices[transform];
+    vec4 worldPosition = model * vec4(position, 1.0);
+    gl_Position = frame.viewProj * worldPosition;
+
+    // Uniform scale assumed, good enough for lighting
+    worldNormal = mat3(model) * normal;
+    texCoord = uv;
+    material = meshInstance.meshMaterial.y;
+}
@@ -0,0 +1,104 @@
+// Shared structures, bindings and spawn logic for the particle compute programs
+
+struct ComputeParameters {
+    uint MAX_PARTICLES;
+    uint MAX_EMITTERS;
+    uint num_emitters;
+    uint pad; // dt now comes from FrameConstants
+};
+
+// Particle structure matching the compute shader's output
+struct Particle {
+    vec4 pos;          // xyz for position, w for padding or other use
+    vec4 vel;          // xyz for velocity, w for padding or other use
+    vec4 lifeScaleTexture; // life, scale, texture, padding
+};
+
+struct Emitter {
+    vec4 pos;          // xyz for position, w for spawn rate (particles per frame, set by EmitterLod)
+    vec4 vel;          // xyz for velocity, w for padding or other use
+    vec4 lifeTypeScale; // life, scale, texture, size scale (set by EmitterLod)
+};
+
+struct ComputeState {
+    uint num_particles; // alive particles
+    uint NEW_PARTICLES; // free slots on the particle_allocator_buffer stack
+    uint spawned;       // particles spawned this frame
+    uint freed;         // particles that died this frame
+    uint spawn_cursor;  // spawn tickets handed out this frame (fused pipeline)
+    uint pad[3];
+};
+
+// Buffer Bindings
+layout(std140, binding = 0) uniform ComputeParametersBuffer {
+    ComputeParameters compute;
+};
+
+layout(std430, binding = 1) buffer ComputeStateBuffer {
+    ComputeState state;
+};
+
+layout(std430, binding = 2) buffer ParticleBuffer {
+    Particle particles[];
+};
+
+layout(std430, binding = 3) buffer ParticleIndices {
+    uint particle_allocator_buffer[];
+};
+
+layout(std430, binding = 4) buffer EmitterBuffer {
+    Emitter emitters[];
+};
+
+// Function to generate a pseudo-random float based on an index
+float get_random(uint index, uint seed) {
+    // Simple pseudo-random generator (e.g., Linear Congruential Generator)
+    uint a = 1664525u;
+    uint c = 1013904223u;
+    uint m = 0xFFFFFFFFu;
+    uint rand = (a * (seed + index) + c) & m;
+    return float(rand) / float(m);
+}
+
+// Function to generate a random direction within a sphere
+vec3 get_random_sphere(uint index, float radius, uint seed) {
+    float theta = get_random(index, seed) * 6.28318530718; // 2 * PI
+    float phi = acos(2.0 * get_random(index, seed) - 1.0);
+    float r = get_random(index, seed) * radius;
+
+    float sinPhi = sin(phi);
+    float x = r * sinPhi * cos(theta);
+    float y = r * sinPhi * sin(theta);
+    float z = r * cos(phi);
+
+    return vec3(x, y, z);
+}
+
+// Initializes the particle in slot particleIndex from an emitter
+void spawn_particle(uint particleIndex, Emitter emitter, uint seed) {
+    Particle newParticle;
+
+    // Position: Emitter position plus some random offset within a sphere
+    vec3 randomOffset = get_random_sphere(particleIndex, 1.0f, seed); // Radius = 1.0f
+    newParticle.pos = vec4(emitter.pos.xyz + randomOffset, 0.0f);
+
+    // Velocity: Emitter velocity plus some random variation
+    newParticle.vel = vec4(emitter.vel.xyz + vec3(
+        get_random(particleIndex, seed) * 0.1f - 0.05f,
+        get_random(particleIndex, seed) * 0.1f - 0.05f,
+        get_random(particleIndex, seed) * 0.1f - 0.05f
+    ), 0.0f);
+
+    // Lifetime: Mean lifetime with some randomness
+    newParticle.lifeScaleTexture.x = emitter.lifeTypeScale.x * (0.8f + get_random(particleIndex, seed) * 0.4f); // 80% to 120% of mean_life
+
+    // Scale: Random scale between 1 and 5, grown by the LOD size scale for distant emitters
+    newParticle.lifeScaleTexture.y = float(1u + uint(get_random(particleIndex, seed) * 4.0f)) * emitter.lifeTypeScale.w;
+
+    // Texture: Random texture index (assuming you have multiple textures)
+    newParticle.lifeScaleTexture.z = uint(get_random(particleIndex, seed) * 10.0f); // 0 to 9
+    newParticle.lifeScaleTexture.w = 0.0f;
+
+    // Write the new particle to the particle buffer
+    particles[particleIndex] = newParticle;
+}
@@ -0,0 +1,21 @@
+#version 450 core
+
+// Scene depth at the offscreen particle resolution. Each low resolution texel keeps the farthest depth
+// of its factor x factor block, so particles are only rejected where the whole block is occluded and
+// the upsample decides the edges at full resolution.
+
+uniform sampler2D sceneDepth;
+uniform int factor;
+
+void main() {
+    ivec2 base = ivec2(gl_FragCoord.xy) * factor;
+    ivec2 lastTexel = textureSize(sceneDepth, 0) - 1;
+
+    float depth = 0.0;
+    for (int y = 0; y < factor; y++) {
+        for (int x = 0; x < factor; x++) {
+            depth = max(depth, texelFetch(sceneDepth, min(base + ivec2(x, y), lastTexel), 0).r);
+        }
+    }
+    gl_FragDepth = depth;
+}
@@ -0,0 +1,41 @@
+#version 450
+
+#define GROUP_SIZE 128
+
+layout(local_size_x = GROUP_SIZE) in;
+
+#include "/shaders/frame_constants.glsl"
+#include "/shaders/particle_common.glsl"
+
+shared uint groupFree;
+shared uint groupBase;
+shared uint freeSlots[GROUP_SIZE];
+
+// Rebuilds the free-list stack and alive count from particle lifetimes.
+// Expects state.NEW_PARTICLES and state.num_particles cleared to 0 before dispatch.
+void main() {
+    uint global_id = gl_GlobalInvocationID.x;
+    uint local_id = gl_LocalInvocationIndex;
+
+    if (local_id == 0u) {
+        groupFree = 0u;
+    }
+    barrier();
+
+    bool inRange = global_id < compute.MAX_PARTICLES;
+    if (inRange && particles[global_id].lifeScaleTexture.x <= 0.0) {
+        freeSlots[atomicAdd(groupFree, 1u)] = global_id;
+    }
+    barrier();
+
+    if (local_id == 0u) {
+        groupBase = atomicAdd(state.NEW_PARTICLES, groupFree);
+        uint groupSlots = min(uint(GROUP_SIZE), compute.MAX_PARTICLES - min(compute.MAX_PARTICLES, gl_WorkGroupID.x * uint(GROUP_SIZE)));
+        atomicAdd(state.num_particles, groupSlots - groupFree);
+    }
+    barrier();
+
+    if (local_id < groupFree) {
+        particle_allocator_buffer[groupBase + local_id] = freeSlots[local_id];
+    }
+}
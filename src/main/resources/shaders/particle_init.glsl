@@ -4,15 +4,8 @@
 
 layout(local_size_x = GROUP_SIZE) in;
 
-struct ComputeParameters {
-    uint MAX_PARTICLES;
-    uint MAX_EMITTERS;
-    uint num_emitters;
-    float dt; // Delta time
-};
-
-layout(std140, binding = 0) uniform ComputeParametersBuffer {ComputeParameters compute;};
-layout(std430, binding = 3) buffer ParticleInicies {uint particle_allocator_buffer[];};
+#include "/shaders/frame_constants.glsl"
+#include "/shaders/particle_common.glsl"
 
 // every particle/ emitter
 void main() {
@@ -21,4 +14,4 @@ void main() {
     if (global_id < compute.MAX_PARTICLES) {
         particle_allocator_buffer[global_id] = compute.MAX_PARTICLES - global_id - 1u;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+#version 450 core
+
+// Resolves the weighted blended OIT targets over the destination, blended with the destination's usual
+// alpha blending (SRC_ALPHA, ONE_MINUS_SRC_ALPHA or its premultiplied variant).
+
+uniform sampler2D accumulation; // sum of weighted premultiplied color, weighted alpha in a
+uniform sampler2D revealage;    // product of (1 - alpha), 1 where nothing was drawn
+
+out vec4 fragColor;
+
+void main() {
+    ivec2 pixel = ivec2(gl_FragCoord.xy);
+    float reveal = texelFetch(revealage, pixel, 0).r;
+    if (reveal >= 1.0)
+        discard;
+
+    vec4 accum = texelFetch(accumulation, pixel, 0);
+    // Weights can overflow half floats with many bright layers
+    if (any(isinf(accum.rgb)))
+        accum.rgb = vec3(accum.a);
+
+    fragColor = vec4(accum.rgb / max(accum.a, 1e-5), 1.0 - reveal);
+}
@@ -0,0 +1,37 @@
+#version 450
+
+#define GROUP_SIZE 128
+
+layout(local_size_x = GROUP_SIZE) in;
+
+#include "/shaders/frame_constants.glsl"
+#include "/shaders/particle_common.glsl"
+
+// Old pool size, the particles in [compute.MAX_PARTICLES, sourceEnd) are being cut off
+uniform uint sourceEnd;
+
+// Moves live particles from the part of the pool being released into free slots below the new size.
+// Runs after particle_free_rebuild over the new size, so the stack only holds slots below MAX_PARTICLES.
+// Particles that find no free slot are dropped.
+void main() {
+    uint src = compute.MAX_PARTICLES + gl_GlobalInvocationID.x;
+    if (src >= sourceEnd || particles[src].lifeScaleTexture.x <= 0.0) {
+        return;
+    }
+
+    // Pop one slot, the compare-swap keeps the stack from underflowing once it runs dry
+    uint available = state.NEW_PARTICLES;
+    while (available > 0u) {
+        uint previous = atomicCompSwap(state.NEW_PARTICLES, available, available - 1u);
+        if (previous == available) {
+            break;
+        }
+        available = previous;
+    }
+    if (available == 0u) {
+        return;
+    }
+
+    particles[particle_allocator_buffer[available - 1u]] = particles[src];
+    atomicAdd(state.num_particles, 1u);
+}
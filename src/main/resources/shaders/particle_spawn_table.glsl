@@ -0,0 +1,22 @@
+// Visible emitters with a running total of their spawn requests, rebuilt every frame from EmitterLod
+layout(std430, binding = 5) readonly buffer SpawnTableBuffer {
+    uint spawn_entry_count;
+    uint spawn_total;
+    uint spawn_pad[2];
+    uvec2 spawn_entries[]; // x: emitter index, y: spawns requested by this and every earlier entry
+};
+
+// Finds the entry owning spawn ticket t, i.e. the first entry whose running total is above t
+uint find_spawn_entry(uint ticket) {
+    uint low = 0u;
+    uint high = spawn_entry_count;
+    while (low < high) {
+        uint mid = (low + high) >> 1u;
+        if (spawn_entries[mid].y <= ticket) {
+            low = mid + 1u;
+        } else {
+            high = mid;
+        }
+    }
+    return low;
+}
@@ -0,0 +1,106 @@
+#version 450
+
+#define GROUP_SIZE 128
+
+#ifdef USE_SUBGROUPS
+#extension GL_KHR_shader_subgroup_basic : require
+#extension GL_KHR_shader_subgroup_ballot : require
+#endif
+
+layout(local_size_x = GROUP_SIZE) in;
+
+#include "/shaders/frame_constants.glsl"
+#include "/shaders/particle_common.glsl"
+#include "/shaders/particle_spawn_table.glsl"
+
+// Dead slots owned by this workgroup, compacted after simulation
+shared uint deadSlots[GROUP_SIZE];
+shared uint groupDead;
+shared uint groupDeaths;
+shared uint groupTicket;
+shared uint groupSpawned;
+
+// Fused simulate + emit, one thread per particle slot.
+// Each workgroup only ever writes the GROUP_SIZE slots it owns, so spawning into its own dead slots
+// after a workgroup barrier is race free without a global barrier. Spawn requests from the spawn table
+// are handed out as tickets, one global atomic per workgroup, and never touch the free-list stack.
+void main() {
+    uint global_id = gl_GlobalInvocationID.x;
+    uint local_id = gl_LocalInvocationIndex;
+
+    if (local_id == 0u) {
+        groupDead = 0u;
+        groupDeaths = 0u;
+    }
+    barrier();
+
+    // SIMULATE
+    bool inRange = global_id < compute.MAX_PARTICLES;
+    bool dead = inRange;
+    bool died = false;
+    if (inRange) {
+        Particle p = particles[global_id];
+        if (p.lifeScaleTexture.x > 0.0) {
+            p.pos.xyz += p.vel.xyz * frame.dt;
+            p.lifeScaleTexture.x -= frame.dt;
+
+            if (p.lifeScaleTexture.x <= 0.0) {
+                p.lifeScaleTexture.x = 0.0;
+                died = true;
+            } else {
+                dead = false;
+            }
+            particles[global_id] = p;
+        }
+    }
+
+    // AGGREGATE dead slots and deaths into shared memory, no global atomics per particle
+#ifdef USE_SUBGROUPS
+    uvec4 deadBallot = subgroupBallot(dead);
+    uint subgroupDead = subgroupBallotBitCount(deadBallot);
+    uint subgroupDeaths = subgroupBallotBitCount(subgroupBallot(died));
+    uint subgroupBase = 0u;
+    if (subgroupElect()) {
+        subgroupBase = atomicAdd(groupDead, subgroupDead);
+        atomicAdd(groupDeaths, subgroupDeaths);
+    }
+    subgroupBase = subgroupBroadcastFirst(subgroupBase);
+    if (dead) {
+        deadSlots[subgroupBase + subgroupBallotExclusiveBitCount(deadBallot)] = global_id;
+    }
+#else
+    if (dead) {
+        deadSlots[atomicAdd(groupDead, 1u)] = global_id;
+    }
+    if (died) {
+        atomicAdd(groupDeaths, 1u);
+    }
+#endif
+    barrier();
+
+    // One global atomic per workgroup claims spawn tickets for every dead slot it owns
+    if (local_id == 0u) {
+        uint ticket = groupDead > 0u ? atomicAdd(state.spawn_cursor, groupDead) : spawn_total;
+        uint spawned = ticket >= spawn_total ? 0u : min(groupDead, spawn_total - ticket);
+        groupTicket = ticket;
+        groupSpawned = spawned;
+
+        if (spawned > 0u) {
+            atomicAdd(state.spawned, spawned);
+        }
+        if (groupDeaths > 0u) {
+            atomicAdd(state.freed, groupDeaths);
+        }
+        if (spawned != groupDeaths) {
+            atomicAdd(state.num_particles, spawned - groupDeaths); // wraps for a net decrease
+        }
+    }
+    barrier();
+
+    // EMIT into this workgroup's own dead slots
+    if (local_id < groupSpawned) {
+        uint ticket = groupTicket + local_id;
+        uvec2 entry = spawn_entries[find_spawn_entry(ticket)];
+        spawn_particle(deadSlots[local_id], emitters[entry.x], entry.x * 1000u + ticket);
+    }
+}
@@ -0,0 +1,51 @@
+#version 450 core
+
+// Composites the low resolution particle target over the full resolution frame.
+// Colors are premultiplied (blend ONE, ONE_MINUS_SRC_ALPHA). Where the four low resolution texels around
+// a pixel lie at about the pixel's own depth the result is bilinear; across a depth edge the texel whose
+// depth is closest to the pixel is taken instead, so particles do not bleed over nearer geometry.
+
+#include "/shaders/frame_constants.glsl"
+
+uniform sampler2D sceneDepth;     // full resolution
+uniform sampler2D particleColor;  // low resolution, premultiplied
+uniform sampler2D particleDepth;  // low resolution, downsampled scene depth
+uniform float edgeThreshold;      // relative linear depth difference treated as an edge
+
+out vec4 fragColor;
+
+float linearDepth(float depth) {
+    return frame.proj[3][2] / ((depth * 2.0 - 1.0) + frame.proj[2][2]);
+}
+
+void main() {
+    float depth = abs(linearDepth(texelFetch(sceneDepth, ivec2(gl_FragCoord.xy), 0).r));
+
+    vec2 lowSize = vec2(textureSize(particleColor, 0));
+    vec2 lowPosition = gl_FragCoord.xy * frame.viewport.zw * lowSize - 0.5;
+    ivec2 base = ivec2(floor(lowPosition));
+    vec2 f = fract(lowPosition);
+    ivec2 lastTexel = ivec2(lowSize) - 1;
+
+    const ivec2 offsets[4] = ivec2[4](ivec2(0, 0), ivec2(1, 0), ivec2(0, 1), ivec2(1, 1));
+    float bilinear[4] = float[4]((1.0 - f.x) * (1.0 - f.y), f.x * (1.0 - f.y), (1.0 - f.x) * f.y, f.x * f.y);
+
+    vec4 blended = vec4(0.0);
+    vec4 nearest = vec4(0.0);
+    float nearestDifference = 1e30;
+    bool edge = false;
+    for (int i = 0; i < 4; i++) {
+        ivec2 texel = clamp(base + offsets[i], ivec2(0), lastTexel);
+        vec4 color = texelFetch(particleColor, texel, 0);
+        float difference = abs(abs(linearDepth(texelFetch(particleDepth, texel, 0).r)) - depth);
+
+        blended += color * bilinear[i];
+        if (difference < nearestDifference) {
+            nearestDifference = difference;
+            nearest = color;
+        }
+        edge = edge || difference > edgeThreshold * depth;
+    }
+
+    fragColor = edge ? nearest : blended;
+}
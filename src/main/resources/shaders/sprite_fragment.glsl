@@ -0,0 +1,13 @@
+#version 450 core
+
+in vec2 texCoord;
+in vec4 color;
+flat in int textured;
+
+uniform sampler2D atlasHandle;
+
+out vec4 fragColor;
+
+void main() {
+    fragColor = textured == 1 ? texture(atlasHandle, texCoord) * color : color;
+}
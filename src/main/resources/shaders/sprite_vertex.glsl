@@ -0,0 +1,36 @@
+#version 450 core
+
+// One sprite of SpriteBatch's stream, rect and uv rect are position + size
+struct Sprite {
+    vec4 rect;   // x, y, width, height in pixels, origin at the top left of the viewport
+    vec4 uv;     // atlas offset and size from TextureAtlas, zero size for a solid rectangle
+    vec4 color;  // multiplies the texel, or the color of a solid rectangle
+};
+
+// The current region of the persistently mapped sprite stream
+layout(std430, binding = 6) readonly buffer SpriteBuffer {
+    Sprite sprites[];
+};
+
+#include "/shaders/frame_constants.glsl"
+
+// Corners of the two triangles of a sprite, y pointing down
+const vec2 CORNERS[6] = vec2[6](vec2(0.0, 0.0), vec2(0.0, 1.0), vec2(1.0, 0.0), vec2(1.0, 0.0), vec2(0.0, 1.0), vec2(1.0, 1.0));
+
+out vec2 texCoord;
+out vec4 color;
+flat out int textured;
+
+void main() {
+    // glDrawArrays' first vertex is included in gl_VertexID, every batch indexes the whole region
+    Sprite sprite = sprites[gl_VertexID / 6];
+    vec2 corner = CORNERS[gl_VertexID % 6];
+
+    vec2 position = sprite.rect.xy + corner * sprite.rect.zw;
+    gl_Position = vec4(position.x * frame.viewport.z * 2.0 - 1.0, 1.0 - position.y * frame.viewport.w * 2.0, 0.0, 1.0);
+
+    // Atlas rows run bottom to top, the top of the sprite is the top of its cell
+    texCoord = sprite.uv.xy + vec2(corner.x, 1.0 - corner.y) * sprite.uv.zw;
+    color = sprite.color;
+    textured = sprite.uv.z > 0.0 ? 1 : 0;
+}
@@ -12,19 +12,38 @@ layout(std430, binding = 2) readonly buffer ParticleBuffer {
     Particle particles[];
 };
 
+// Chunks that survived Hi-Z culling (hiz_cull_particles.glsl), indexed by instance when chunkCulling is set
+layout(std430, binding = 9) readonly buffer VisibleChunkBuffer {
+    uint visibleChunks[];
+};
+
+#include "/shaders/frame_constants.glsl"
+
 // Uniforms
-uniform int instanceSize;
-uniform mat4 projViewMatrix;
-uniform vec3 right;
-uniform vec3 up;
+uniform int instanceSize;     // quads per instance (batch size)
+uniform int verticesPerQuad;  // 4 when indexed or drawn as a strip, 6 for non-indexed triangles
+uniform float quadHalfSize;
+uniform int chunkCulling;
+
+// Corners of the two triangles of a quad without an index buffer, same order as the EBO
+const uint TRIANGLE_CORNERS[6] = uint[6](0u, 1u, 2u, 1u, 3u, 2u);
 
 // Outputs to the fragment shader
 out vec2 texCoord;
 
 void main() {
-    // Calculate quad index and particle index
-    uint quadIndex = uint(gl_VertexID) & 3u;
-    uint particleIndex = gl_InstanceID * instanceSize + (gl_VertexID >> 2);
+    // Calculate quad corner and particle index
+    uint quadIndex;
+    uint quadInBatch;
+    if (verticesPerQuad == 6) {
+        quadIndex = TRIANGLE_CORNERS[uint(gl_VertexID) % 6u];
+        quadInBatch = uint(gl_VertexID) / 6u;
+    } else {
+        quadIndex = uint(gl_VertexID) & 3u;
+        quadInBatch = uint(gl_VertexID) >> 2u;
+    }
+    uint chunk = chunkCulling != 0 ? visibleChunks[gl_InstanceID] : uint(gl_InstanceID);
+    uint particleIndex = chunk * uint(instanceSize) + quadInBatch;
 
     // Fetch particle data
     Particle particle = particles[particleIndex];
@@ -45,13 +64,13 @@ void main() {
     (float((quadIndex & 1u) << 1u) - 1.0),
     (float((quadIndex & 2u) - 1.0))
     );
-    vec3 vertexOffset = (right * offset.x + up * offset.y) * scale;
+    vec3 vertexOffset = (frame.cameraRight.xyz * offset.x + frame.cameraUp.xyz * offset.y) * (scale * quadHalfSize);
 
     // Compute the final position
     vec3 position = particle.pos.xyz + vertexOffset;
 
     // Transform to clip space
-    gl_Position = projViewMatrix * vec4(position, 1.0);
+    gl_Position = frame.viewProj * vec4(position, 1.0);
 
     // Calculate texture coordinates
     texCoord = offset * 0.5 + 0.5;